@@ -0,0 +1,75 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Daily active users as bitmaps of 100M bits, 12.5 MB each: counting a whole day, finding the first inactive user and
+ * intersecting two days. SETBIT is the single bit write the bulk operations are compared against.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Thread)
+public class BitmapBenchmark {
+    private static final long BITS = 100_000_000L;
+    private final Database database = new Database();
+
+    @Setup
+    public void setUp() {
+        final var random = new Random(42);
+        for (var day : List.of("day:1", "day:2")) {
+            // every user active on one day in ten, the last bit fixes the length
+            for (var user = random.nextInt(10); user < BITS; user += 1 + random.nextInt(19)) {
+                database.setBit(day, user, true);
+            }
+            database.setBit(day, BITS - 1, true);
+        }
+        // NOT of BITS clear bits, a string would be stored as UTF-8 and not hold 0xFF bytes
+        database.setBit("none", BITS - 1, false);
+        Database.bitOperation("not", "all", List.of("none"), key -> database);
+        if (database.bitPosition("all", false, Optional.empty()) != BITS) {
+            throw new IllegalStateException("expected every bit of the bitmap to be set");
+        }
+    }
+
+    @Benchmark
+    public long bitCount() {
+        return database.bitCount("day:1", Optional.empty());
+    }
+
+    /**
+     * The first clear bit of a bitmap with every bit set is past its end, so the whole bitmap is scanned.
+     */
+    @Benchmark
+    public long bitPosition() {
+        return database.bitPosition("all", false, Optional.empty());
+    }
+
+    @Benchmark
+    public long bitOperation() {
+        return Database.bitOperation("and", "both", List.of("day:1", "day:2"), key -> database);
+    }
+
+    @Benchmark
+    public boolean setBit() {
+        return database.setBit("day:1", ThreadLocalRandom.current().nextLong(BITS), true);
+    }
+}
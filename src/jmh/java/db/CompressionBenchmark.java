@@ -0,0 +1,90 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+
+import static java.util.Locale.ROOT;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * CPU cost of storing and reading JSON documents with and without compression, threshold 0 stores them as is. The
+ * memory saved is printed at the end of every trial from {@link Database#compressionStats}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    private static final int KEYS = 100;
+    @Param({"0", "1024"})
+    public int threshold;
+    @Param({"16384", "131072"})
+    public int size;
+    private final String[] keys = new String[KEYS];
+    private Database database;
+    private String document;
+
+    @Setup
+    public void setUp() {
+        final var encodingPolicy = new EncodingPolicy(threshold, 128, 64, 128, 64, 3000, 0);
+        database = new Database(LazyFree.lazyFree(), LazyFreePolicy.SYNC, encodingPolicy);
+        document = document(size);
+        for (var i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            database.set(keys[i], document);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportCompression() {
+        final var stats = database.compressionStats();
+        if (stats.values() > 0) {
+            System.out.printf(ROOT, "%nstored %d of %d bytes, ratio %.2f%n",
+                    stats.storedBytes(), stats.originalBytes(), (double) stats.originalBytes() / stats.storedBytes());
+        }
+    }
+
+    @Benchmark
+    public Optional<String> get() {
+        return database.get(keys[0]);
+    }
+
+    @Benchmark
+    public void set() {
+        database.set(keys[1], document);
+    }
+
+    /**
+     * Array of records with repeated field names and random values, about as compressible as typical API payloads.
+     */
+    private static String document(int size) {
+        final var random = new Random(42);
+        final var document = new StringBuilder("[");
+        for (var id = 0; document.length() < size; id++) {
+            document.append("{\"id\":").append(id)
+                    .append(",\"name\":\"user-").append(random.nextInt(1_000_000))
+                    .append("\",\"email\":\"user").append(random.nextInt(1_000_000)).append("@example.com\"")
+                    .append(",\"active\":").append(random.nextBoolean())
+                    .append(",\"score\":").append(random.nextInt(10_000) / 100.0)
+                    .append(",\"tags\":[\"alpha\",\"beta\"]},");
+        }
+        document.setLength(size - 1);
+        return document.append(']').toString();
+    }
+}
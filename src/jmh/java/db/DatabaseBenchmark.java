@@ -0,0 +1,53 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Cost of the data operation alone, without the hop to the keyspace thread measured by {@link KeyspaceBenchmark}. GET
+ * and SET of an existing key allocate nothing, {@code -prof gc} reports 0 bytes per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabaseBenchmark {
+    private static final int KEYS = 100_000;
+    private final Database database = new Database();
+    private final String[] keys = new String[KEYS];
+
+    @Setup
+    public void setUp() {
+        for (var i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            database.set(keys[i], "value");
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        final var key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        return database.get(key, Function.identity(), SharedIntegers::toString, bytes -> new String(bytes, UTF_8), "");
+    }
+
+    @Benchmark
+    public void set() {
+        database.set(keys[ThreadLocalRandom.current().nextInt(KEYS)], "value");
+    }
+}
@@ -0,0 +1,86 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * GET and SET issued by several connection threads at once, the way Master calls them. Subclasses only differ in the
+ * number of calling threads, JMH runs the inherited benchmarks for each of them. {@link #getTagged} routes keys with
+ * a hash tag, which {@link HashSlot} hashes only partly.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class KeyspaceBenchmark {
+    private static final int KEYS = 100_000;
+
+    @Param({"1", "4", "16"})
+    public int shards;
+
+    private Keyspace keyspace;
+    private String[] keys;
+    private String[] taggedKeys;
+
+    @Setup
+    public void setUp() {
+        keyspace = Keyspace.keyspace(shards);
+        keys = new String[KEYS];
+        taggedKeys = new String[KEYS];
+        for (var i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            taggedKeys[i] = "{user:" + i + "}:profile";
+            final var key = keys[i];
+            final var taggedKey = taggedKeys[i];
+            keyspace.run(key, db -> db.set(key, "value"));
+            keyspace.run(taggedKey, db -> db.set(taggedKey, "value"));
+        }
+    }
+
+    @Benchmark
+    public Optional<String> get() {
+        final var key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        return keyspace.execute(key, db -> db.get(key));
+    }
+
+    @Benchmark
+    public Optional<String> getTagged() {
+        final var key = taggedKeys[ThreadLocalRandom.current().nextInt(KEYS)];
+        return keyspace.execute(key, db -> db.get(key));
+    }
+
+    @Benchmark
+    public void set() {
+        final var key = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        keyspace.run(key, db -> db.set(key, "value"));
+    }
+
+    @Threads(1)
+    public static class OneThread extends KeyspaceBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends KeyspaceBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends KeyspaceBenchmark {
+    }
+}
@@ -0,0 +1,74 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Full collection pause with two million distinct 512 character values on the heap, threshold 0, and in the slab. A full
+ * collection marks every live object, like the old generation collections behind the p999 latency, so its time shows
+ * what the slab takes off the collector. GET and SET show what the copy between heap and slab costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+@State(Scope.Thread)
+public class OffHeapBenchmark {
+    private static final int KEYS = 2_000_000;
+    @Param({"0", "64"})
+    public int threshold;
+    private final String[] keys = new String[KEYS];
+    private Database database;
+
+    @Setup
+    public void setUp() {
+        final var encodingPolicy = new EncodingPolicy(0, 128, 64, 128, 64, 3000, threshold);
+        database = new Database(LazyFree.lazyFree(), LazyFreePolicy.SYNC, encodingPolicy);
+        for (var i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            database.set(keys[i], value(i));
+        }
+    }
+
+    @Benchmark
+    public void fullCollection() {
+        System.gc();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(NANOSECONDS)
+    public Optional<String> get() {
+        return database.get(keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(NANOSECONDS)
+    public void set() {
+        final var index = ThreadLocalRandom.current().nextInt(KEYS);
+        database.set(keys[index], value(index));
+    }
+
+    /**
+     * Every key gets a value of its own, a shared string would be a single object on the heap.
+     */
+    private static String value(int index) {
+        final var suffix = String.valueOf(index);
+        return "v".repeat(512 - suffix.length()) + suffix;
+    }
+}
@@ -0,0 +1,65 @@
+package db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Stack;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * XADD, XRANGE and XREAD against a single stream prefilled with the given number of entries. The 10M entries stream
+ * needs a few GB of heap.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+@State(Scope.Thread)
+public class StreamStoreBenchmark {
+    private static final String STREAM = "sensor:42";
+    private static final Map<String, String> FIELDS = Map.of("temperature", "21.5", "humidity", "40");
+
+    @Param({"1000", "100000", "10000000"})
+    public int entries;
+
+    private StreamStore streamStore;
+    private long nextSequenceNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        streamStore = StreamStore.streamStore();
+        for (var i = 1; i <= entries; i++) {
+            streamStore.put(STREAM, "1-" + i, FIELDS, Optional.empty());
+        }
+        nextSequenceNumber = entries + 1;
+    }
+
+    @Benchmark
+    public Pair xadd() {
+        return streamStore.put(STREAM, "1-" + nextSequenceNumber++, FIELDS, Optional.empty());
+    }
+
+    @Benchmark
+    public Stack<Entries> xrangeFirstHundred() {
+        return streamStore.range(STREAM, "1-1", "1-100");
+    }
+
+    @Benchmark
+    public Map<String, Stack<Entries>> xreadLastHundred() {
+        return streamStore.xread(Map.of(STREAM, "1-" + (entries - 100)));
+    }
+}
@@ -0,0 +1,82 @@
+package resp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Parsing of a pipelined batch of frames, one invocation decodes the whole batch. The readers are rewound instead of
+ * created per invocation and the arguments go to a reused list like on a connection, so {@code -prof gc} shows what
+ * decoding itself allocates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+    private final Encoder encoder = new Encoder();
+    private final Decoder decoder = new Decoder();
+
+    @Param({"1", "16", "128"})
+    public int pipeline;
+
+    private final List<String> arguments = new ArrayList<>();
+    private BufferedReader setFrames;
+    private BufferedReader getFrames;
+    private BufferedReader xaddFrames;
+
+    @Setup
+    public void setUp() throws IOException {
+        setFrames = frames(List.of("SET", "user:1000:session", "c2Vzc2lvbi10b2tlbi0xMjM0NTY3ODkw"));
+        getFrames = frames(List.of("GET", "user:1000:session"));
+        xaddFrames = frames(List.of("XADD", "sensor:42", "*", "temperature", "21.5", "humidity", "40"));
+    }
+
+    @Benchmark
+    public void set(Blackhole blackhole) throws IOException {
+        parse(setFrames, blackhole);
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) throws IOException {
+        parse(getFrames, blackhole);
+    }
+
+    @Benchmark
+    public void xadd(Blackhole blackhole) throws IOException {
+        parse(xaddFrames, blackhole);
+    }
+
+    private void parse(BufferedReader frames, Blackhole blackhole) throws IOException {
+        frames.reset();
+        for (var i = 0; i < pipeline; i++) {
+            blackhole.consume(decoder.parseCommand(frames, arguments));
+        }
+    }
+
+    private BufferedReader frames(List<String> command) throws IOException {
+        final var frames = encoder.encodeAsArray(command).repeat(pipeline);
+        final var reader = new BufferedReader(new StringReader(frames), frames.length() + 1);
+        reader.mark(frames.length() + 1);
+        return reader;
+    }
+}
@@ -0,0 +1,80 @@
+package resp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EncoderBenchmark {
+    private final Encoder encoder = new Encoder();
+
+    @Param({"16", "1024", "65536"})
+    public int valueSize;
+
+    @Param({"10", "1000"})
+    public int elements;
+
+    private String value;
+    private List<String> array;
+    private List<Map.Entry<String, Map<String, String>>> xrangeEntries;
+
+    @Setup
+    public void setUp() {
+        value = "x".repeat(valueSize);
+        array = IntStream.range(0, elements)
+                .mapToObj(it -> value)
+                .toList();
+        xrangeEntries = IntStream.range(0, elements)
+                .mapToObj(it -> Map.entry("1526985054069-" + it, Map.of("temperature", "36", "humidity", "95")))
+                .toList();
+    }
+
+    @Benchmark
+    public String bulkString() {
+        return encoder.encodeAsBulkString(value);
+    }
+
+    @Benchmark
+    public String array() {
+        return encoder.encodeAsArray(array);
+    }
+
+    /**
+     * Same nesting as the XRANGE reply written by the server: array of [id, [field, value, ...]].
+     */
+    @Benchmark
+    public String xrangeReply() {
+        final var encodedEntries = xrangeEntries.stream()
+                .map(it -> {
+                    final var encodedId = encoder.encodeAsBulkString(it.getKey());
+                    final var mapValues = it.getValue().entrySet()
+                            .stream()
+                            .flatMap(pair -> Stream.of(pair.getKey(), pair.getValue()))
+                            .toList();
+                    final var encodedMap = encoder.encodeAsArray(mapValues);
+                    return encoder.wrapContentAsArray(List.of(encodedId, encodedMap));
+                })
+                .toList();
+        return encoder.wrapContentAsArray(encodedEntries);
+    }
+}
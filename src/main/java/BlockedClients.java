@@ -0,0 +1,71 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Connections blocked on keys, like XREADGROUP with BLOCK. The connection thread parks until one of its keys changes
+ * and then retries, so a blocked client costs no CPU and no shard time while nothing happens.
+ */
+final class BlockedClients {
+    private final Map<String, Collection<Thread>> waiting;
+
+    BlockedClients() {
+        this.waiting = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The thread registers before the first attempt, a change racing with the attempt unparks it right away.
+     *
+     * @param keys          changes of these keys trigger another attempt
+     * @param timeoutMillis maximum time to wait, 0 waits forever
+     * @param attempt       result of the command, empty while the client has to wait
+     * @return result of the first successful attempt, empty on timeout
+     */
+    <T> Optional<T> await(Collection<String> keys, long timeoutMillis, Supplier<Optional<T>> attempt) {
+        final var thread = Thread.currentThread();
+        keys.forEach(key -> waiting.compute(key, (it, threads) -> {
+            final var updated = threads == null ? ConcurrentHashMap.<Thread>newKeySet() : threads;
+            updated.add(thread);
+            return updated;
+        }));
+        try {
+            final var deadline = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+            while (!Thread.currentThread().isInterrupted()) {
+                final var result = attempt.get();
+                if (result.isPresent()) {
+                    return result;
+                }
+                if (timeoutMillis == 0) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                final var remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return Optional.empty();
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return Optional.empty();
+        } finally {
+            keys.forEach(key -> waiting.computeIfPresent(key, (it, threads) -> {
+                threads.remove(thread);
+                return threads.isEmpty() ? null : threads;
+            }));
+        }
+    }
+
+    /**
+     * Called on the shard thread when a key changed, only wakes the waiting threads up.
+     */
+    void signal(String key) {
+        final var threads = waiting.get(key);
+        if (threads != null) {
+            threads.forEach(LockSupport::unpark);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import resp.Encoder;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Server side of client-side caching. In the default mode the server remembers which clients read a key and sends
+ * them one invalidation when the key changes, then forgets them until they read the key again. In broadcast mode
+ * clients receive invalidations of every key matching their prefixes and nothing is remembered per key.
+ * <p>
+ * Keys are invalidated from the shard threads, so the lookup is a single map removal and the pushes are written by a
+ * separate thread.
+ */
+final class ClientTracking {
+    private final Map<String, long[]> readersByKey;
+    private final Map<Long, TrackedClient> clients;
+    private final Map<Long, TrackedClient> broadcastingClients;
+    private final int maxKeys;
+    private final Encoder encoder;
+    private final BiConsumer<Socket, String> writer;
+    private final ExecutorService notifier;
+
+    private record TrackedClient(Socket socket, boolean broadcast, List<String> prefixes) {
+        TrackedClient {
+            requireNonNull(socket);
+            requireNonNull(prefixes);
+        }
+
+        boolean matches(String key) {
+            return prefixes.isEmpty() || prefixes.stream().anyMatch(key::startsWith);
+        }
+    }
+
+    ClientTracking(int maxKeys, Encoder encoder, BiConsumer<Socket, String> writer) {
+        this.readersByKey = new ConcurrentHashMap<>();
+        this.clients = new ConcurrentHashMap<>();
+        this.broadcastingClients = new ConcurrentHashMap<>();
+        this.maxKeys = maxKeys;
+        this.encoder = requireNonNull(encoder);
+        this.writer = requireNonNull(writer);
+        this.notifier = newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "client-tracking");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void enable(long clientId, Socket socket, boolean broadcast, List<String> prefixes) {
+        final var client = new TrackedClient(socket, broadcast, List.copyOf(prefixes));
+        disable(clientId);
+        clients.put(clientId, client);
+        if (broadcast) {
+            broadcastingClients.put(clientId, client);
+        }
+    }
+
+    /**
+     * Keys read by the client stay in the table until they change, invalidation then skips the unknown id.
+     */
+    void disable(long clientId) {
+        clients.remove(clientId);
+        broadcastingClients.remove(clientId);
+    }
+
+    boolean enabled(long clientId) {
+        return clients.containsKey(clientId);
+    }
+
+    /**
+     * Called before the read runs, so a write racing with the read still invalidates the key.
+     */
+    void rememberReads(long clientId, List<String> keys) {
+        final var client = clients.get(clientId);
+        if (client == null || client.broadcast()) {
+            return;
+        }
+        keys.forEach(key -> readersByKey.merge(key, new long[]{clientId}, (readers, reader) ->
+                Arrays.stream(readers).anyMatch(it -> it == clientId) ? readers : append(readers, clientId)));
+        while (readersByKey.size() > maxKeys) {
+            final var evicted = readersByKey.keySet().iterator().next();
+            invalidate(evicted);
+        }
+    }
+
+    void invalidate(String key) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        final var targets = new ArrayList<Socket>();
+        final var readers = readersByKey.remove(key);
+        if (readers != null) {
+            for (var reader : readers) {
+                final var client = clients.get(reader);
+                if (client != null && !client.broadcast()) {
+                    targets.add(client.socket());
+                }
+            }
+        }
+        broadcastingClients.values()
+                .stream()
+                .filter(it -> it.matches(key))
+                .forEach(it -> targets.add(it.socket()));
+        if (targets.isEmpty()) {
+            return;
+        }
+        notifier.execute(() -> {
+            final var message = encoder.wrapContentAsPush(List.of(
+                    encoder.encodeAsBulkString("invalidate"),
+                    encoder.encodeAsArray(List.of(key))
+            ));
+            targets.forEach(socket -> {
+                try {
+                    writer.accept(socket, message);
+                } catch (RuntimeException closedConnection) {
+                    // the connection thread cleans up once it notices the socket is gone
+                }
+            });
+        });
+    }
+
+    /**
+     * After FLUSHALL every tracking client drops its whole cache, signalled by an invalidation without keys.
+     */
+    void invalidateAll() {
+        readersByKey.clear();
+        final var targets = clients.values()
+                .stream()
+                .map(TrackedClient::socket)
+                .toList();
+        if (targets.isEmpty()) {
+            return;
+        }
+        notifier.execute(() -> {
+            final var message = encoder.wrapContentAsPush(List.of(
+                    encoder.encodeAsBulkString("invalidate"),
+                    encoder.encodeAsNull()
+            ));
+            targets.forEach(socket -> {
+                try {
+                    writer.accept(socket, message);
+                } catch (RuntimeException closedConnection) {
+                    // the connection thread cleans up once it notices the socket is gone
+                }
+            });
+        });
+    }
+
+    int trackedKeys() {
+        return readersByKey.size();
+    }
+
+    int trackingClients() {
+        return clients.size();
+    }
+
+    private static long[] append(long[] readers, long clientId) {
+        final var appended = Arrays.copyOf(readers, readers.length + 1);
+        appended[readers.length] = clientId;
+        return appended;
+    }
+}
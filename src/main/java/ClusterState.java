@@ -0,0 +1,236 @@
+import db.HashSlot;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+import static db.HashSlot.SLOTS;
+import static java.lang.Integer.parseInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+/**
+ * Which node owns which of the 16384 hash slots. The topology is static, given at startup through --cluster-nodes,
+ * and changes only through CLUSTER SETSLOT sent to every node by the operator.
+ */
+final class ClusterState {
+    private static final String LOCALHOST = "127.0.0.1";
+    private final boolean enabled;
+    private final Node myself;
+    private final Map<String, Node> nodes;
+    private final AtomicReferenceArray<Node> slots;
+    private final Map<Integer, Node> migrating;
+    private final Map<Integer, Node> importing;
+
+    record Node(String id, String host, int port) {
+        Node {
+            requireNonNull(id);
+            requireNonNull(host);
+        }
+
+        static Node node(String host, int port) {
+            return new Node(nodeId(host, port), host, port);
+        }
+    }
+
+    record SlotRange(int start, int end, Node owner) {
+        SlotRange {
+            requireNonNull(owner);
+        }
+    }
+
+    private ClusterState(boolean enabled, Node myself) {
+        this.enabled = enabled;
+        this.myself = requireNonNull(myself);
+        this.nodes = new ConcurrentHashMap<>();
+        this.slots = new AtomicReferenceArray<>(SLOTS);
+        this.migrating = new ConcurrentHashMap<>();
+        this.importing = new ConcurrentHashMap<>();
+        this.nodes.put(myself.id(), myself);
+    }
+
+    static ClusterState clusterState(Configuration config) {
+        final var topology = config.clusterNodes()
+                .filter(it -> config.clusterEnabled())
+                .map(ClusterState::parseTopology)
+                .orElse(List.of());
+        final var myself = topology.stream()
+                .map(SlotRange::owner)
+                .filter(it -> it.port() == config.port())
+                .findFirst()
+                .orElse(Node.node(LOCALHOST, config.port()));
+        final var clusterState = new ClusterState(config.clusterEnabled(), myself);
+        if (config.clusterEnabled() && topology.isEmpty()) {
+            clusterState.assignSlots(new SlotRange(0, SLOTS - 1, myself));
+        }
+        topology.forEach(clusterState::assignSlots);
+        return clusterState;
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    Node myself() {
+        return myself;
+    }
+
+    /**
+     * Decides whether this node may serve the keys.
+     * https://redis.io/docs/reference/cluster-spec/#redirection-and-resharding
+     *
+     * @param keys      of the command
+     * @param asking    whether the client sent ASKING right before this command
+     * @param keyExists whether the key is stored on this node
+     * @return error to send to the client instead of executing the command
+     */
+    Optional<String> redirect(List<String> keys, boolean asking, Predicate<String> keyExists) {
+        if (!enabled || keys.isEmpty()) {
+            return empty();
+        }
+        final var slot = HashSlot.slot(keys.get(0));
+        for (var key : keys) {
+            if (HashSlot.slot(key) != slot) {
+                return of("CROSSSLOT Keys in request don't hash to the same slot");
+            }
+        }
+        final var owner = slots.get(slot);
+        if (owner == null) {
+            return of("CLUSTERDOWN Hash slot not served");
+        }
+        if (owner.equals(myself)) {
+            final var target = migrating.get(slot);
+            if (target != null && !keys.stream().allMatch(keyExists)) {
+                return of("ASK %d %s:%d".formatted(slot, target.host(), target.port()));
+            }
+            return empty();
+        }
+        if (asking && importing.containsKey(slot)) {
+            return empty();
+        }
+        return of("MOVED %d %s:%d".formatted(slot, owner.host(), owner.port()));
+    }
+
+    List<SlotRange> slotRanges() {
+        final var ranges = new ArrayList<SlotRange>();
+        var start = 0;
+        for (var slot = 1; slot <= SLOTS; slot++) {
+            final var owner = slots.get(start);
+            if (slot == SLOTS || !Objects.equals(slots.get(slot), owner)) {
+                if (owner != null) {
+                    ranges.add(new SlotRange(start, slot - 1, owner));
+                }
+                start = slot;
+            }
+        }
+        return ranges;
+    }
+
+    Map<Node, List<SlotRange>> slotRangesByNode() {
+        final var rangesByNode = new LinkedHashMap<Node, List<SlotRange>>();
+        nodes.values().forEach(node -> rangesByNode.put(node, new ArrayList<>()));
+        slotRanges().forEach(range -> rangesByNode.get(range.owner()).add(range));
+        return rangesByNode;
+    }
+
+    int assignedSlots() {
+        var assigned = 0;
+        for (var slot = 0; slot < SLOTS; slot++) {
+            if (slots.get(slot) != null) {
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * CLUSTER SETSLOT slot MIGRATING|IMPORTING|NODE node-id or CLUSTER SETSLOT slot STABLE
+     *
+     * @param arguments of the SETSLOT subcommand
+     * @return error when the request can not be applied
+     */
+    Optional<String> setSlot(List<String> arguments) {
+        final var slot = parseInt(arguments.get(0));
+        if (slot < 0 || slot >= SLOTS) {
+            return of("ERR Invalid or out of range slot");
+        }
+        final var action = arguments.get(1).toLowerCase();
+        if (action.equals("stable")) {
+            migrating.remove(slot);
+            importing.remove(slot);
+            return empty();
+        }
+        final var node = nodes.get(arguments.get(2));
+        if (node == null) {
+            return of("ERR I don't know about node " + arguments.get(2));
+        }
+        final var ownedByMyself = myself.equals(slots.get(slot));
+        return switch (action) {
+            case "migrating" -> {
+                if (!ownedByMyself) {
+                    yield of("ERR I'm not the owner of hash slot " + slot);
+                }
+                migrating.put(slot, node);
+                yield empty();
+            }
+            case "importing" -> {
+                if (ownedByMyself) {
+                    yield of("ERR I'm already the owner of hash slot " + slot);
+                }
+                importing.put(slot, node);
+                yield empty();
+            }
+            case "node" -> {
+                slots.set(slot, node);
+                migrating.remove(slot);
+                importing.remove(slot);
+                yield empty();
+            }
+            default -> of("ERR Invalid CLUSTER SETSLOT action or number of arguments");
+        };
+    }
+
+    private void assignSlots(SlotRange range) {
+        nodes.putIfAbsent(range.owner().id(), range.owner());
+        for (var slot = range.start(); slot <= range.end(); slot++) {
+            slots.set(slot, range.owner());
+        }
+    }
+
+    private static List<SlotRange> parseTopology(String topology) {
+        final var ranges = new ArrayList<SlotRange>();
+        for (var entry : topology.split(",")) {
+            final var hostAndSlots = entry.trim().split("@");
+            final var hostAndPort = hostAndSlots[0].split(":");
+            final var node = Node.node(hostAndPort[0], parseInt(hostAndPort[1]));
+            final var range = hostAndSlots[1].split("-");
+            final var start = parseInt(range[0]);
+            final var end = range.length == 2 ? parseInt(range[1]) : start;
+            ranges.add(new SlotRange(start, end, node));
+        }
+        return ranges;
+    }
+
+    /**
+     * Node ids must be equal on every node of a statically configured cluster, so they are derived from the address.
+     */
+    private static String nodeId(String host, int port) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-1").digest((host + ":" + port).getBytes(UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import resp.Command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Total time and latency histograms per command name, call counts are the sum of histogram buckets. Every thread
+ * records into its own arrays, which are merged only when read, so recording takes no locks and no shared state.
+ * <p>
+ * Histograms use HdrHistogram-like log-linear buckets: every power of two range of nanoseconds is split into 32
+ * equally sized sub-buckets, which keeps the relative error of reported percentiles around 3%.
+ */
+final class CommandStats {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int MAX_MAGNITUDE = 40; // about 18 minutes in nanoseconds, longer calls are clamped
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+    /**
+     * Names as sent by clients, one command type can be sent under several names like ZRANK and ZREVRANK. A command
+     * missing from the table is not recorded, so every name the {@link resp.Decoder} accepts must be listed.
+     */
+    private static final List<String> COMMANDS = List.of(
+            "ping", "echo", "set", "get", "info", "replconf", "psync", "wait", "config", "type",
+            "incr", "decr", "incrby", "decrby", "incrbyfloat", "object",
+            "hset", "hget", "hmget", "hgetall", "hdel", "hincrby", "hscan",
+            "zadd", "zincrby", "zscore", "zcard", "zrank", "zrevrank", "zrange", "zrangebyscore", "zrem",
+            "zremrangebyscore",
+            "pfadd", "pfcount", "pfmerge", "setbit", "getbit", "bitcount", "bitpos", "bitop",
+            "expire", "pexpire", "ttl", "pttl",
+            "xadd", "xgroup", "xreadgroup", "xack", "xpending", "xclaim", "xautoclaim", "xtrim", "xrange", "xread",
+            "xinfo",
+            "asking", "cluster", "restore", "migrate", "latency", "memory", "hotkeys", "bigkeys", "slowlog",
+            "multi", "exec", "discard", "watch", "unwatch", "mget", "mset", "msetnx", "hello", "client",
+            "subscribe", "unsubscribe", "psubscribe", "punsubscribe", "publish",
+            "scan", "del", "exists", "unlink", "flushall"
+    );
+    // looked up ignoring case, so recording "GET" does not allocate a lower case copy
+    private static final Map<String, Integer> COMMAND_INDEX = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        for (var i = 0; i < COMMANDS.size(); i++) {
+            COMMAND_INDEX.put(COMMANDS.get(i), i);
+        }
+    }
+
+    private final List<Recorder> recorders;
+    private final ThreadLocal<Recorder> recorder;
+
+    record Snapshot(String command, long calls, long totalNanos, long[] histogram) {
+
+        double averageMicros() {
+            return calls == 0 ? 0 : totalNanos / 1000.0 / calls;
+        }
+
+        double percentileMicros(double percentile) {
+            final var countAtPercentile = max(1, (long) Math.ceil(percentile / 100 * calls));
+            var count = 0L;
+            for (var bucket = 0; bucket < histogram.length; bucket++) {
+                count += histogram[bucket];
+                if (count >= countAtPercentile) {
+                    return highestEquivalentValue(bucket) / 1000.0;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Cumulative counts of calls that took at most 1, 2, 4, ... microseconds, the format of LATENCY HISTOGRAM.
+         *
+         * @return pairs of bucket upper bound in microseconds and number of calls
+         */
+        List<long[]> powerOfTwoMicrosHistogram() {
+            final var result = new ArrayList<long[]>();
+            var count = 0L;
+            var bucket = 0;
+            for (var bound = 1L; count < calls && bucket < histogram.length; bound <<= 1) {
+                while (bucket < histogram.length && lowestEquivalentValue(bucket) <= bound * 1000) {
+                    count += histogram[bucket];
+                    bucket++;
+                }
+                if (count > 0) {
+                    result.add(new long[]{bound, count});
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Recorder {
+        private final AtomicLongArray totalNanos = new AtomicLongArray(COMMANDS.size());
+        private final AtomicLongArray histograms = new AtomicLongArray(COMMANDS.size() * BUCKETS);
+
+        // only the owning thread writes, release stores are enough to publish values to readers
+        void record(int command, long nanos) {
+            totalNanos.setRelease(command, totalNanos.getPlain(command) + nanos);
+            final var bucket = command * BUCKETS + bucketIndex(min(nanos, MAX_VALUE));
+            histograms.setRelease(bucket, histograms.getPlain(bucket) + 1);
+        }
+    }
+
+    CommandStats() {
+        this.recorders = new CopyOnWriteArrayList<>();
+        this.recorder = ThreadLocal.withInitial(() -> {
+            final var threadRecorder = new Recorder();
+            recorders.add(threadRecorder);
+            return threadRecorder;
+        });
+    }
+
+    void record(Command command, long nanos) {
+        final var index = COMMAND_INDEX.get(command.commandType());
+        if (index != null) {
+            recorder.get().record(index, max(0, nanos));
+        }
+    }
+
+    /**
+     * @return merged statistics of every command called at least once
+     */
+    List<Snapshot> snapshot() {
+        final var snapshots = new ArrayList<Snapshot>();
+        for (var command = 0; command < COMMANDS.size(); command++) {
+            var calls = 0L;
+            var totalNanos = 0L;
+            final var histogram = new long[BUCKETS];
+            for (var threadRecorder : recorders) {
+                totalNanos += threadRecorder.totalNanos.getAcquire(command);
+                for (var bucket = 0; bucket < BUCKETS; bucket++) {
+                    final var count = threadRecorder.histograms.getAcquire(command * BUCKETS + bucket);
+                    histogram[bucket] += count;
+                    calls += count;
+                }
+            }
+            if (calls > 0) {
+                snapshots.add(new Snapshot(COMMANDS.get(command), calls, totalNanos, histogram));
+            }
+        }
+        return snapshots;
+    }
+
+    private static int bucketIndex(long value) {
+        final var magnitude = 63 - numberOfLeadingZeros(value | 1);
+        final var shift = max(0, magnitude - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long lowestEquivalentValue(int bucket) {
+        final var shift = max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        return (long) (bucket - (shift << SUB_BUCKET_BITS)) << shift;
+    }
+
+    private static long highestEquivalentValue(int bucket) {
+        final var shift = max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        return lowestEquivalentValue(bucket) + (1L << shift) - 1;
+    }
+}
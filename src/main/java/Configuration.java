@@ -1,3 +1,9 @@
+import db.EncodingPolicy;
+import db.LazyFreePolicy;
+import db.LfuPolicy;
+import db.TieringPolicy;
+
+import java.nio.file.Path;
 import java.util.Optional;
 
 import static java.util.Arrays.asList;
@@ -8,6 +14,20 @@ import static java.util.Optional.of;
 final class Configuration {
     private final int port;
     private final String role;
+    private final int ioThreads;
+    private final int shards;
+    private final boolean clusterEnabled;
+    private final long slowlogLogSlowerThan;
+    private final int slowlogMaxLen;
+    private final int trackingTableMaxKeys;
+    private final long pubsubHardLimit;
+    private final long pubsubSoftLimit;
+    private final long pubsubSoftSeconds;
+    private final LazyFreePolicy lazyFreePolicy;
+    private final EncodingPolicy encodingPolicy;
+    private final LfuPolicy lfuPolicy;
+    private final TieringPolicy tieringPolicy;
+    private Optional<String> clusterNodes;
     private Optional<String> masterHost;
     private Optional<Integer> masterPort;
     private Optional<String> directory;
@@ -16,6 +36,20 @@ final class Configuration {
     private Configuration(
             int port,
             String role,
+            int ioThreads,
+            int shards,
+            boolean clusterEnabled,
+            Optional<String> clusterNodes,
+            long slowlogLogSlowerThan,
+            int slowlogMaxLen,
+            int trackingTableMaxKeys,
+            long pubsubHardLimit,
+            long pubsubSoftLimit,
+            long pubsubSoftSeconds,
+            LazyFreePolicy lazyFreePolicy,
+            EncodingPolicy encodingPolicy,
+            LfuPolicy lfuPolicy,
+            TieringPolicy tieringPolicy,
             Optional<String> masterHost,
             Optional<Integer> masterPort,
             Optional<String> directory,
@@ -23,6 +57,20 @@ final class Configuration {
     ) {
         this.port = port;
         this.role = requireNonNull(role);
+        this.ioThreads = ioThreads;
+        this.shards = shards;
+        this.clusterEnabled = clusterEnabled;
+        this.clusterNodes = requireNonNull(clusterNodes);
+        this.slowlogLogSlowerThan = slowlogLogSlowerThan;
+        this.slowlogMaxLen = slowlogMaxLen;
+        this.trackingTableMaxKeys = trackingTableMaxKeys;
+        this.pubsubHardLimit = pubsubHardLimit;
+        this.pubsubSoftLimit = pubsubSoftLimit;
+        this.pubsubSoftSeconds = pubsubSoftSeconds;
+        this.lazyFreePolicy = requireNonNull(lazyFreePolicy);
+        this.encodingPolicy = requireNonNull(encodingPolicy);
+        this.lfuPolicy = requireNonNull(lfuPolicy);
+        this.tieringPolicy = requireNonNull(tieringPolicy);
         this.masterHost = requireNonNull(masterHost);
         this.masterPort = requireNonNull(masterPort);
         this.directory = requireNonNull(directory);
@@ -32,11 +80,46 @@ final class Configuration {
     public static Configuration parseCommandLineArguments(String[] args) {
         final var port = portToStartServer(args);
         final var role = roleOfServer(args);
+        final var ioThreads = ioThreads(args);
+        final var shards = shards(args);
+        final var clusterEnabled = clusterEnabled(args);
+        final var clusterNodes = clusterNodes(args);
+        final var slowlogLogSlowerThan = slowlogLogSlowerThan(args);
+        final var slowlogMaxLen = slowlogMaxLen(args);
+        final var trackingTableMaxKeys = trackingTableMaxKeys(args);
+        final var pubsubHardLimit = pubsubOutputBufferLimit(args, 1, 32L * 1024 * 1024);
+        final var pubsubSoftLimit = pubsubOutputBufferLimit(args, 2, 8L * 1024 * 1024);
+        final var pubsubSoftSeconds = pubsubOutputBufferLimit(args, 3, 60);
+        final var lazyFreePolicy = lazyFreePolicy(args);
+        final var encodingPolicy = encodingPolicy(args);
+        final var lfuPolicy = lfuPolicy(args);
+        final var tieringPolicy = tieringPolicy(args);
         final var masterHost = masterHost(args);
         final var masterPort = masterPort(args);
         final var directory = directory(args);
         final var file = file(args);
-        return new Configuration(port, role, masterHost, masterPort, directory, file);
+        return new Configuration(
+                port,
+                role,
+                ioThreads,
+                shards,
+                clusterEnabled,
+                clusterNodes,
+                slowlogLogSlowerThan,
+                slowlogMaxLen,
+                trackingTableMaxKeys,
+                pubsubHardLimit,
+                pubsubSoftLimit,
+                pubsubSoftSeconds,
+                lazyFreePolicy,
+                encodingPolicy,
+                lfuPolicy,
+                tieringPolicy,
+                masterHost,
+                masterPort,
+                directory,
+                file
+        );
     }
 
     public int port() {
@@ -47,6 +130,80 @@ final class Configuration {
         return role;
     }
 
+    public int ioThreads() {
+        return ioThreads;
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public boolean clusterEnabled() {
+        return clusterEnabled;
+    }
+
+    /**
+     * Static cluster topology as comma separated host:port@slots entries, where slots is a single slot or a range
+     * like 0-5460. A node owning several ranges is listed once per range.
+     *
+     * @return topology of the whole cluster including this node
+     */
+    public Optional<String> clusterNodes() {
+        return clusterNodes;
+    }
+
+    /**
+     * @return execution time in microseconds above which commands are logged, negative value disables the slow log
+     */
+    public long slowlogLogSlowerThan() {
+        return slowlogLogSlowerThan;
+    }
+
+    public int slowlogMaxLen() {
+        return slowlogMaxLen;
+    }
+
+    /**
+     * @return number of keys remembered for CLIENT TRACKING, beyond it keys are invalidated early to make room
+     */
+    public int trackingTableMaxKeys() {
+        return trackingTableMaxKeys;
+    }
+
+    /**
+     * @return bytes queued for a subscriber after which it is disconnected, 0 disables the limit
+     */
+    public long pubsubHardLimit() {
+        return pubsubHardLimit;
+    }
+
+    /**
+     * @return bytes queued for a subscriber which disconnect it when exceeded for {@link #pubsubSoftSeconds()}
+     */
+    public long pubsubSoftLimit() {
+        return pubsubSoftLimit;
+    }
+
+    public long pubsubSoftSeconds() {
+        return pubsubSoftSeconds;
+    }
+
+    public LazyFreePolicy lazyFreePolicy() {
+        return lazyFreePolicy;
+    }
+
+    public EncodingPolicy encodingPolicy() {
+        return encodingPolicy;
+    }
+
+    public LfuPolicy lfuPolicy() {
+        return lfuPolicy;
+    }
+
+    public TieringPolicy tieringPolicy() {
+        return tieringPolicy;
+    }
+
     public Optional<String> masterHost() {
         return masterHost;
     }
@@ -75,6 +232,128 @@ final class Configuration {
         return asList(args).contains("--replicaof") ? "slave" : "master";
     }
 
+    private static int ioThreads(String[] args) {
+        return findIndex(args, "--io-threads")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Integer::parseInt)
+                .orElse(16);
+    }
+
+    private static int shards(String[] args) {
+        return findIndex(args, "--shards")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Integer::parseInt)
+                .orElse(1);
+    }
+
+    private static boolean clusterEnabled(String[] args) {
+        return findIndex(args, "--cluster-enabled")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(it -> it.equalsIgnoreCase("yes"))
+                .orElse(false);
+    }
+
+    private static Optional<String> clusterNodes(String[] args) {
+        return findIndex(args, "--cluster-nodes")
+                .map(it -> it + 1)
+                .map(it -> args[it]);
+    }
+
+    private static long slowlogLogSlowerThan(String[] args) {
+        return findIndex(args, "--slowlog-log-slower-than")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Long::parseLong)
+                .orElse(10_000L);
+    }
+
+    private static int slowlogMaxLen(String[] args) {
+        return findIndex(args, "--slowlog-max-len")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Integer::parseInt)
+                .orElse(128);
+    }
+
+    private static int trackingTableMaxKeys(String[] args) {
+        return findIndex(args, "--tracking-table-max-keys")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Integer::parseInt)
+                .orElse(1_000_000);
+    }
+
+    /**
+     * Same order as client-output-buffer-limit pubsub of Redis, --pubsub-output-buffer-limit hard soft seconds with
+     * limits in bytes.
+     */
+    private static long pubsubOutputBufferLimit(String[] args, int position, long defaultValue) {
+        return findIndex(args, "--pubsub-output-buffer-limit")
+                .map(it -> it + position)
+                .map(it -> args[it])
+                .map(Long::parseLong)
+                .orElse(defaultValue);
+    }
+
+    private static LazyFreePolicy lazyFreePolicy(String[] args) {
+        return new LazyFreePolicy(
+                enabled(args, "--lazyfree-lazy-server-del"),
+                enabled(args, "--lazyfree-lazy-user-del"),
+                enabled(args, "--lazyfree-lazy-user-flush")
+        );
+    }
+
+    private static boolean enabled(String[] args, String option) {
+        return findIndex(args, option)
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(it -> it.equalsIgnoreCase("yes"))
+                .orElse(false);
+    }
+
+    private static EncodingPolicy encodingPolicy(String[] args) {
+        return new EncodingPolicy(
+                intOption(args, "--compression-threshold", EncodingPolicy.DEFAULT.compressionThreshold()),
+                intOption(args, "--hash-max-listpack-entries", EncodingPolicy.DEFAULT.hashMaxListpackEntries()),
+                intOption(args, "--hash-max-listpack-value", EncodingPolicy.DEFAULT.hashMaxListpackValue()),
+                intOption(args, "--zset-max-listpack-entries", EncodingPolicy.DEFAULT.zsetMaxListpackEntries()),
+                intOption(args, "--zset-max-listpack-value", EncodingPolicy.DEFAULT.zsetMaxListpackValue()),
+                intOption(args, "--hll-sparse-max-bytes", EncodingPolicy.DEFAULT.hllSparseMaxBytes()),
+                intOption(args, "--offheap-threshold", EncodingPolicy.DEFAULT.offHeapThreshold())
+        );
+    }
+
+    private static LfuPolicy lfuPolicy(String[] args) {
+        return new LfuPolicy(
+                intOption(args, "--lfu-log-factor", LfuPolicy.DEFAULT.logFactor()),
+                intOption(args, "--lfu-decay-time", LfuPolicy.DEFAULT.decayTime())
+        );
+    }
+
+    /**
+     * Spill files go to --tiered-dir, else to --dir, else to the temporary directory.
+     */
+    private static TieringPolicy tieringPolicy(String[] args) {
+        final var directory = findIndex(args, "--tiered-dir")
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .or(() -> directory(args))
+                .map(Path::of)
+                .orElse(TieringPolicy.DISABLED.directory());
+        return new TieringPolicy(directory, intOption(args, "--tiered-cold-minutes", TieringPolicy.DISABLED.coldMinutes()));
+    }
+
+    private static int intOption(String[] args, String option, int defaultValue) {
+        return findIndex(args, option)
+                .map(it -> it + 1)
+                .map(it -> args[it])
+                .map(Integer::parseInt)
+                .orElse(defaultValue);
+    }
+
     private static Optional<String> masterHost(String[] args) {
         return findIndex(args, "--replicaof")
                 .map(it -> it + 1)
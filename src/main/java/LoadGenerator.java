@@ -0,0 +1,271 @@
+import db.Keyspace;
+import resp.Decoder;
+import resp.Encoder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Integer.parseInt;
+import static java.util.Locale.ROOT;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * End-to-end load generator modeled on redis-benchmark. Opens N connections, each sending batches of P pipelined
+ * requests, and prints throughput and latency percentiles per workload.
+ * <pre>
+ * java -cp java_redis.jar LoadGenerator --port 6379 -c 50 -P 16 -n 100000 -t set,get -r 100000 -d 16-512
+ * java -cp java_redis.jar LoadGenerator --embedded --replicas 2 -t set,wait
+ * java -cp java_redis.jar LoadGenerator --embedded --compression-threshold 1024 -t set,get -d 65536
+ * </pre>
+ * The latency of a request is the time from sending its batch until its reply arrives, like redis-benchmark does.
+ */
+final class LoadGenerator {
+    private static final Encoder ENCODER = new Encoder();
+    private static final Decoder DECODER = new Decoder();
+    private static final List<String> TESTS = List.of("set", "get", "xadd", "xrange", "xread-block", "wait");
+    private final Options options;
+    private final String values;
+
+    record Options(
+            String host,
+            int port,
+            int clients,
+            int pipeline,
+            int requests,
+            List<String> tests,
+            int keyspace,
+            boolean zipf,
+            int minValueSize,
+            int maxValueSize,
+            boolean embedded,
+            int replicas,
+            int compressionThreshold
+    ) {
+        Options {
+            requireNonNull(host);
+            requireNonNull(tests);
+        }
+    }
+
+    private record Result(long requests, long errors, long elapsedNanos, long[] latencies) {
+    }
+
+    private LoadGenerator(Options options) {
+        this.options = requireNonNull(options);
+        this.values = "x".repeat(options.maxValueSize());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final var options = parseCommandLineArguments(args);
+        if (options.embedded()) {
+            startMaster(options);
+        }
+        for (var i = 0; i < options.replicas(); i++) {
+            startReplica(options, options.port() + 1 + i);
+        }
+        final var loadGenerator = new LoadGenerator(options);
+        for (var test : options.tests()) {
+            loadGenerator.report(test, loadGenerator.run(test));
+        }
+        System.exit(0);
+    }
+
+    private Result run(String test) throws Exception {
+        final var requestsPerClient = options.requests() / options.clients();
+        final var pool = newFixedThreadPool(options.clients());
+        final var errors = new AtomicLong();
+        final var start = System.nanoTime();
+        final var futures = new ArrayList<Future<long[]>>();
+        for (var i = 0; i < options.clients(); i++) {
+            futures.add(pool.submit(() -> runClient(test, requestsPerClient, errors)));
+        }
+        final var latencies = new long[requestsPerClient * options.clients()];
+        var index = 0;
+        for (var future : futures) {
+            final var clientLatencies = future.get();
+            System.arraycopy(clientLatencies, 0, latencies, index, clientLatencies.length);
+            index += clientLatencies.length;
+        }
+        final var elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        Arrays.sort(latencies);
+        return new Result(latencies.length, errors.get(), elapsed, latencies);
+    }
+
+    private long[] runClient(String test, int requests, AtomicLong errors) throws IOException {
+        final var latencies = new long[requests];
+        try (final var socket = new Socket(options.host(), options.port())) {
+            socket.setTcpNoDelay(true);
+            final var reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            final var writer = socket.getOutputStream();
+            var sent = 0;
+            while (sent < requests) {
+                final var batch = Math.min(options.pipeline(), requests - sent);
+                final var frames = new StringBuilder();
+                for (var i = 0; i < batch; i++) {
+                    request(test).forEach(frames::append);
+                }
+                final var batchStart = System.nanoTime();
+                writer.write(frames.toString().getBytes());
+                writer.flush();
+                for (var i = 0; i < batch; i++) {
+                    for (var reply = 0; reply < repliesPerRequest(test); reply++) {
+                        final var decoded = DECODER.decodeReply(reader);
+                        if (decoded.map(it -> it.startsWith("-")).orElse(false)) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    latencies[sent + i] = System.nanoTime() - batchStart;
+                }
+                sent += batch;
+            }
+        }
+        return latencies;
+    }
+
+    private List<String> request(String test) {
+        final var key = key();
+        return switch (test) {
+            case "set" -> List.of(ENCODER.encodeAsArray(List.of("SET", "key:" + key, value())));
+            case "get" -> List.of(ENCODER.encodeAsArray(List.of("GET", "key:" + key)));
+            case "xadd" -> List.of(ENCODER.encodeAsArray(List.of("XADD", "stream:" + key, "*", "field", value())));
+            case "xrange" -> List.of(ENCODER.encodeAsArray(List.of("XRANGE", "stream:" + key, "-", "+")));
+            case "xread-block" -> List.of(ENCODER.encodeAsArray(
+                    List.of("XREAD", "BLOCK", "10", "STREAMS", "stream:" + key, "0-0")));
+            case "wait" -> List.of(
+                    ENCODER.encodeAsArray(List.of("SET", "key:" + key, value())),
+                    ENCODER.encodeAsArray(List.of("WAIT", String.valueOf(options.replicas()), "100"))
+            );
+            default -> throw new IllegalArgumentException("Unknown test: " + test + ", available: " + TESTS);
+        };
+    }
+
+    private int repliesPerRequest(String test) {
+        return test.equals("wait") ? 2 : 1;
+    }
+
+    /**
+     * Zipf distribution with exponent 1 is approximated by drawing the key uniformly on a logarithmic scale, which
+     * follows its cumulative distribution ln(k) / ln(n).
+     */
+    private int key() {
+        final var random = ThreadLocalRandom.current();
+        if (options.zipf()) {
+            return (int) Math.pow(options.keyspace(), random.nextDouble()) - 1;
+        }
+        return random.nextInt(options.keyspace());
+    }
+
+    private String value() {
+        final var size = ThreadLocalRandom.current().nextInt(options.minValueSize(), options.maxValueSize() + 1);
+        return values.substring(0, size);
+    }
+
+    private void report(String test, Result result) {
+        final var latencies = result.latencies();
+        final var seconds = result.elapsedNanos() / 1e9;
+        System.out.printf(ROOT, "====== %s ======%n", test.toUpperCase());
+        System.out.printf(ROOT, "  %d requests completed in %.2f seconds, %d errors%n",
+                result.requests(), seconds, result.errors());
+        System.out.printf(ROOT, "  %d parallel clients, pipeline %d, %d-%d bytes payload, %d keys (%s)%n",
+                options.clients(), options.pipeline(), options.minValueSize(), options.maxValueSize(),
+                options.keyspace(), options.zipf() ? "zipf" : "uniform");
+        System.out.printf(ROOT, "  throughput: %.2f requests per second%n", result.requests() / seconds);
+        if (latencies.length == 0) {
+            return;
+        }
+        System.out.printf(ROOT, "  latency (msec): avg=%.3f min=%.3f p50=%.3f p95=%.3f p99=%.3f p99.9=%.3f max=%.3f%n%n",
+                Arrays.stream(latencies).average().orElse(0) / 1e6,
+                latencies[0] / 1e6,
+                percentile(latencies, 50) / 1e6,
+                percentile(latencies, 95) / 1e6,
+                percentile(latencies, 99) / 1e6,
+                percentile(latencies, 99.9) / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        final var index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)];
+    }
+
+    private static void startMaster(Options options) throws InterruptedException {
+        final var config = Configuration.parseCommandLineArguments(new String[]{
+                "--port", String.valueOf(options.port()),
+                "--compression-threshold", String.valueOf(options.compressionThreshold())
+        });
+        final var keyspace = Keyspace.keyspace(config.shards(), config.lazyFreePolicy(), config.encodingPolicy());
+        final var master = new Master(config, keyspace, DECODER, ENCODER);
+        startDaemon(master::runServer, "embedded-master");
+        awaitPort(options.host(), options.port());
+    }
+
+    private static void startReplica(Options options, int port) throws InterruptedException {
+        final var config = Configuration.parseCommandLineArguments(new String[]{
+                "--port", String.valueOf(port), "--replicaof", options.host(), String.valueOf(options.port())
+        });
+        final var slave = new Slave(config, Keyspace.keyspace(config.shards()), DECODER, ENCODER);
+        slave.connectToMaster();
+        startDaemon(slave::runServer, "embedded-replica-" + port);
+        awaitPort(options.host(), port);
+    }
+
+    private static void startDaemon(Runnable runnable, String name) {
+        final var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void awaitPort(String host, int port) throws InterruptedException {
+        while (true) {
+            try {
+                new Socket(host, port).close();
+                return;
+            } catch (IOException notYetListening) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static Options parseCommandLineArguments(String[] args) {
+        final var valueSize = option(args, "-d").orElse("3").split("-");
+        final var minValueSize = parseInt(valueSize[0]);
+        final var maxValueSize = valueSize.length == 2 ? parseInt(valueSize[1]) : minValueSize;
+        return new Options(
+                option(args, "-h").orElse("127.0.0.1"),
+                option(args, "--port").map(Integer::parseInt).orElse(6379),
+                option(args, "-c").map(Integer::parseInt).orElse(50),
+                option(args, "-P").map(Integer::parseInt).orElse(1),
+                option(args, "-n").map(Integer::parseInt).orElse(100_000),
+                option(args, "-t").map(it -> List.of(it.toLowerCase().split(","))).orElse(List.of("set", "get")),
+                option(args, "-r").map(Integer::parseInt).orElse(100_000),
+                option(args, "--key-distribution").map(it -> it.equalsIgnoreCase("zipf")).orElse(false),
+                minValueSize,
+                maxValueSize,
+                Arrays.asList(args).contains("--embedded"),
+                option(args, "--replicas").map(Integer::parseInt).orElse(0),
+                option(args, "--compression-threshold").map(Integer::parseInt).orElse(0)
+        );
+    }
+
+    private static Optional<String> option(String[] args, String name) {
+        for (var i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return of(args[i + 1]);
+            }
+        }
+        return empty();
+    }
+}
@@ -1,11 +1,10 @@
-import db.Database;
+import db.Keyspace;
 import resp.Decoder;
 import resp.Encoder;
 
 public class Main {
     private static final Encoder ENCODER = new Encoder();
     private static final Decoder DECODER = new Decoder();
-    private static final Database DATABASE = new Database();
 
     public static void main(String[] args) {
         final var config = Configuration.parseCommandLineArguments(args);
@@ -15,11 +14,14 @@ public class Main {
     }
 
     private static Server runServer(Configuration config) {
+        final var keyspace = Keyspace.keyspace(
+                config.shards(), config.lazyFreePolicy(), config.encodingPolicy(), config.lfuPolicy(),
+                config.tieringPolicy());
         if (config.role().equals("slave")) {
-            final var slave = new Slave(config, DATABASE, DECODER, ENCODER);
+            final var slave = new Slave(config, keyspace, DECODER, ENCODER);
             slave.connectToMaster();
             return slave;
         }
-        return new Master(config, DATABASE, DECODER, ENCODER);
+        return new Master(config, keyspace, DECODER, ENCODER);
     }
 }
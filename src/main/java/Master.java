@@ -1,10 +1,96 @@
+import db.CompressionStats;
+import db.ConsumerGroup;
+import db.BitRange;
 import db.Database;
+import db.Entries;
+import db.HashSlot;
+import db.Keyspace;
+import db.KeyspaceStats;
+import db.Pair;
+import db.RankedKey;
+import db.ScoreRange;
+import db.ScoredMember;
+import db.SlabStats;
+import db.SpillStats;
+import db.SortedSetAdd;
+import db.StreamId;
+import db.StreamTrim;
+import db.TopKeys;
 import resp.Command;
+import resp.Command.Asking;
+import resp.Command.Bitcount;
+import resp.Command.Bitop;
+import resp.Command.Bigkeys;
+import resp.Command.Bitpos;
+import resp.Command.Xack;
+import resp.Command.Xautoclaim;
+import resp.Command.Xclaim;
+import resp.Command.Xgroup;
+import resp.Command.Xpending;
+import resp.Command.Xreadgroup;
+import resp.Command.Client;
+import resp.Command.Cluster;
 import resp.Command.Config;
+import resp.Command.Del;
+import resp.Command.Discard;
+import resp.Command.Exec;
+import resp.Command.Exists;
+import resp.Command.Expire;
+import resp.Command.Flushall;
+import resp.Command.Getbit;
+import resp.Command.Decr;
+import resp.Command.Decrby;
+import resp.Command.Hdel;
+import resp.Command.Hello;
+import resp.Command.Hget;
+import resp.Command.Hgetall;
+import resp.Command.Hincrby;
+import resp.Command.Hmget;
+import resp.Command.Hotkeys;
+import resp.Command.Hscan;
+import resp.Command.Hset;
+import resp.Command.Incr;
+import resp.Command.Incrby;
+import resp.Command.Incrbyfloat;
+import resp.Command.Latency;
+import resp.Command.Memory;
+import resp.Command.Mget;
+import resp.Command.Migrate;
+import resp.Command.Mset;
+import resp.Command.Msetnx;
+import resp.Command.Multi;
+import resp.Command.ObjectInfo;
+import resp.Command.Pfadd;
+import resp.Command.Pfcount;
+import resp.Command.Pfmerge;
+import resp.Command.Psubscribe;
+import resp.Command.Scan;
+import resp.Command.Setbit;
 import resp.Command.Psync;
+import resp.Command.Publish;
+import resp.Command.Punsubscribe;
+import resp.Command.Restore;
+import resp.Command.Slowlog;
+import resp.Command.Subscribe;
+import resp.Command.Ttl;
+import resp.Command.Unlink;
+import resp.Command.Unsubscribe;
+import resp.Command.Unwatch;
+import resp.Command.Watch;
+import resp.Command.Xinfo;
 import resp.Command.Xadd;
 import resp.Command.Xrange;
 import resp.Command.Xread;
+import resp.Command.Xtrim;
+import resp.Command.Zadd;
+import resp.Command.Zcard;
+import resp.Command.Zincrby;
+import resp.Command.Zrange;
+import resp.Command.Zrangebyscore;
+import resp.Command.Zrank;
+import resp.Command.Zrem;
+import resp.Command.Zremrangebyscore;
+import resp.Command.Zscore;
 import resp.Decoder;
 import resp.Encoder;
 
@@ -13,30 +99,39 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Stack;
 import java.util.Vector;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.MAX_VALUE;
 import static java.lang.Long.parseLong;
 import static java.time.Duration.ofMillis;
+import static java.util.Locale.ROOT;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
 import static java.util.concurrent.CompletableFuture.runAsync;
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Predicate.not;
+import static java.util.stream.Collectors.joining;
 import static resp.Command.Echo;
 import static resp.Command.Get;
 import static resp.Command.Info;
@@ -47,26 +142,61 @@ import static resp.Command.Type;
 import static resp.Command.Wait;
 
 final class Master implements Server {
-    private static final ExecutorService POOL = newFixedThreadPool(16);
+    private static final int DEFAULT_TOP_KEYS = 10;
+    // fields, members or entries MEMORY USAGE sizes by default, like Redis
+    private static final int DEFAULT_SAMPLES = 5;
+    private final ExecutorService pool;
     private final Configuration config;
-    private final Database database;
+    private final Keyspace keyspace;
     private final Decoder decoder;
     private final Encoder encoder;
     private final Map<Socket, Long> replicasWithOffset;
     private final AtomicLong offset;
+    private final ClusterState clusterState;
+    private final Collection<Socket> askingClients;
+    private final CommandStats commandStats;
+    private final SlowLog slowLog;
+    private final Map<Socket, Transaction> transactions;
+    private final AtomicLong nextClientId;
+    private final Map<Socket, Long> clientIds;
+    private final Collection<Socket> resp3Clients;
+    private final ClientTracking clientTracking;
+    private final PubSub pubSub;
+    private final Map<Socket, PubSub.Subscriber> subscribers;
+    private final BlockedClients blockedClients;
+    // created once, a lambda capturing this would be allocated for every command
+    private final Predicate<String> keyExists;
 
     public Master(
             Configuration configuration,
-            Database database,
+            Keyspace keyspace,
             Decoder decoder,
             Encoder encoder
     ) {
         this.config = requireNonNull(configuration);
-        this.database = requireNonNull(database);
+        this.pool = newFixedThreadPool(config.ioThreads());
+        this.keyspace = requireNonNull(keyspace);
         this.decoder = requireNonNull(decoder);
         this.encoder = requireNonNull(encoder);
         this.replicasWithOffset = new ConcurrentHashMap<>();
         this.offset = new AtomicLong();
+        this.clusterState = ClusterState.clusterState(config);
+        this.askingClients = ConcurrentHashMap.newKeySet();
+        this.commandStats = new CommandStats();
+        this.slowLog = new SlowLog(config.slowlogLogSlowerThan(), config.slowlogMaxLen());
+        this.transactions = new ConcurrentHashMap<>();
+        this.nextClientId = new AtomicLong();
+        this.clientIds = new ConcurrentHashMap<>();
+        this.resp3Clients = ConcurrentHashMap.newKeySet();
+        this.clientTracking = new ClientTracking(config.trackingTableMaxKeys(), encoder, this::writeAndFlush);
+        this.pubSub = new PubSub(config, encoder, this::writeAndFlush);
+        this.subscribers = new ConcurrentHashMap<>();
+        this.blockedClients = new BlockedClients();
+        this.keyExists = key -> keyspace.execute(key, db -> db.exists(key));
+        keyspace.onKeyChanged(key -> {
+            clientTracking.invalidate(key);
+            blockedClients.signal(key);
+        });
     }
 
     @Override
@@ -75,20 +205,30 @@ final class Master implements Server {
             serverSocket.setReuseAddress(true);
             while (true) {
                 final var clientSocket = serverSocket.accept();
-                POOL.execute(() -> handle(clientSocket));
+                pool.execute(() -> handle(clientSocket));
             }
         } catch (IOException e) {
             System.out.println("IOException: " + e.getMessage());
-            POOL.close();
+            pool.close();
             throw new RuntimeException(e);
         }
     }
 
     private void handle(Socket socket) {
+        final var clientId = nextClientId.incrementAndGet();
+        clientIds.put(socket, clientId);
         try {
             final var reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            final var arguments = new ArrayList<String>();
             while (!socket.isClosed()) {
-                decoder.parseCommand(reader).ifPresent(it -> respondToCommand(socket, it));
+                final var command = decoder.parseCommand(reader, arguments);
+                if (command.isPresent()) {
+                    final var start = System.nanoTime();
+                    respondToCommand(socket, command.get());
+                    final var elapsed = System.nanoTime() - start;
+                    commandStats.record(command.get(), elapsed);
+                    slowLog.record(socket, command.get(), elapsed);
+                }
             }
             System.out.println("Socket was closed");
         } catch (Exception exception) {
@@ -102,27 +242,113 @@ final class Master implements Server {
             }
         } finally {
             replicasWithOffset.remove(socket);
+            askingClients.remove(socket);
+            endTransaction(socket);
+            clientTracking.disable(clientId);
+            clientIds.remove(socket);
+            resp3Clients.remove(socket);
+            Optional.ofNullable(subscribers.remove(socket)).ifPresent(pubSub::remove);
         }
     }
 
     private void respondToCommand(Socket socket, Command command) {
+        final var asking = askingClients.remove(socket);
+        final var redirect = clusterState.redirect(
+                command.keys(),
+                asking,
+                keyExists
+        );
+        final var subscriber = Optional.ofNullable(subscribers.get(socket))
+                .filter(it -> it.subscriptions() > 0 && !resp3Clients.contains(socket));
+        if (subscriber.isPresent() && !allowedInSubscribedMode(command)) {
+            writeAndFlush(socket, encoder.encodeAsError(("ERR Can't execute '%s': only (P)SUBSCRIBE / (P)UNSUBSCRIBE "
+                    + "/ PING / QUIT / RESET are allowed in this context").formatted(command.elements().get(0).toLowerCase())));
+            return;
+        }
+        if (subscriber.isPresent() && command instanceof Ping) {
+            writeAndFlush(socket, encoder.encodeAsArray(List.of("pong", "")));
+            return;
+        }
+        final var transaction = Optional.ofNullable(transactions.get(socket));
+        if (redirect.isPresent()) {
+            transaction.ifPresent(Transaction::abort);
+            writeAndFlush(socket, encoder.encodeAsError(redirect.get()));
+            return;
+        }
+        if (transaction.filter(Transaction::inMulti).isPresent() && !controlsTransaction(command)) {
+            if (isQueueable(command)) {
+                transaction.get().queue(command);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("QUEUED"));
+            } else {
+                transaction.get().abort();
+                writeAndFlush(socket, encoder.encodeAsError("ERR Command not allowed inside a transaction"));
+            }
+            return;
+        }
+        // only reads that run are tracked, a redirected or queued one is not
+        if (isRead(command)) {
+            clientTracking.rememberReads(clientIds.get(socket), command.keys());
+        }
         switch (command) {
             // codecrafers.io assumes that PING does not have arguments
             case Ping ignored -> writePingResponse(socket);
             case Echo echo -> writeEchoResponse(socket, echo.argument());
             case Set set -> {
-                set.expiryTime().ifPresentOrElse(
-                        it -> database.set(set.key(), set.value(), ofMillis(parseInt(it))),
-                        () -> database.set(set.key(), set.value())
-                );
+                final Optional<Duration> expiry;
+                try {
+                    // parsed before the shard runs it, a failure there would only surface wrapped by join
+                    expiry = set.expiryTime().map(it -> ofMillis(parseInt(it)));
+                } catch (NumberFormatException e) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR value is not an integer or out of range"));
+                    return;
+                }
+                keyspace.run(set.key(), db -> expiry.ifPresentOrElse(
+                        it -> db.set(set.key(), set.value(), it),
+                        () -> db.set(set.key(), set.value())
+                ));
                 writeSetResponse(socket);
                 propagateCommand(set);
             }
             case Get get -> {
-                final var storedValue = database.get(get.value());
-                writeGetResponse(socket, storedValue);
+                final var encodedValue = keyspace.execute(get.value(), db -> encodeGet(get.value(), db));
+                writeAndFlush(socket, encodedValue);
+            }
+            case Incr incr -> writeIncrementResponse(socket, incr);
+            case Decr decr -> writeIncrementResponse(socket, decr);
+            case Incrby incrby -> writeIncrementResponse(socket, incrby);
+            case Decrby decrby -> writeIncrementResponse(socket, decrby);
+            case Incrbyfloat incrbyfloat -> writeIncrementResponse(socket, incrbyfloat);
+            case ObjectInfo objectInfo -> {
+                final var response = keyspace.execute(objectInfo.key(), db -> objectInfo(objectInfo, db));
+                writeAndFlush(socket, response);
             }
-            case Info ignored -> writeInfoReplicaResponse(socket);
+            case Hset hset -> writeKeyResponse(socket, hset, this::hash);
+            case Hget hget -> writeKeyResponse(socket, hget, this::hash);
+            case Hmget hmget -> writeKeyResponse(socket, hmget, this::hash);
+            case Hgetall hgetall -> writeKeyResponse(socket, hgetall, this::hash);
+            case Hdel hdel -> writeKeyResponse(socket, hdel, this::hash);
+            case Hincrby hincrby -> writeKeyResponse(socket, hincrby, this::hash);
+            case Hscan hscan -> writeKeyResponse(socket, hscan, this::hash);
+            case Zadd zadd -> writeKeyResponse(socket, zadd, this::sortedSet);
+            case Zincrby zincrby -> writeKeyResponse(socket, zincrby, this::sortedSet);
+            case Zscore zscore -> writeKeyResponse(socket, zscore, this::sortedSet);
+            case Zcard zcard -> writeKeyResponse(socket, zcard, this::sortedSet);
+            case Zrank zrank -> writeKeyResponse(socket, zrank, this::sortedSet);
+            case Zrange zrange -> writeKeyResponse(socket, zrange, this::sortedSet);
+            case Zrangebyscore zrangebyscore -> writeKeyResponse(socket, zrangebyscore, this::sortedSet);
+            case Zrem zrem -> writeKeyResponse(socket, zrem, this::sortedSet);
+            case Zremrangebyscore zremrangebyscore -> writeKeyResponse(socket, zremrangebyscore, this::sortedSet);
+            case Expire expire -> writeKeyResponse(socket, expire, this::expiry);
+            case Pfadd pfadd -> writeAtomicResponse(socket, pfadd, this::hyperLogLog);
+            case Pfcount pfcount -> writeAtomicResponse(socket, pfcount, this::hyperLogLog);
+            case Pfmerge pfmerge -> writeAtomicResponse(socket, pfmerge, this::hyperLogLog);
+            case Setbit setbit -> writeAtomicResponse(socket, setbit, this::bitmap);
+            case Getbit getbit -> writeAtomicResponse(socket, getbit, this::bitmap);
+            case Bitcount bitcount -> writeAtomicResponse(socket, bitcount, this::bitmap);
+            case Bitpos bitpos -> writeAtomicResponse(socket, bitpos, this::bitmap);
+            case Bitop bitop -> writeAtomicResponse(socket, bitop, this::bitmap);
+            case Ttl ttl -> writeKeyResponse(socket, ttl, this::expiry);
+            case Info info -> writeInfoResponse(socket, info.section());
             case Replconf replconf -> {
                 if (replconf.key().equalsIgnoreCase("ack")) {
                     replicasWithOffset.computeIfPresent(socket, (con, cur) -> cur + parseLong(replconf.value()));
@@ -157,53 +383,1357 @@ final class Master implements Server {
                 writeWaitResponse(socket, replicasInSync);
             }
             case Config configCommand -> writeConfigResponse(socket, configCommand, config);
-            case Type type -> writeTypeResponse(socket, database.type(type.key()));
+            case Type type -> writeTypeResponse(socket, keyspace.execute(type.key(), db -> db.type(type.key())));
             case Xadd xadd -> {
-                final var response = database.saveStream(xadd.streamKey(), xadd.streamKeyValue(), xadd.values())
-                        .map(encoder::encodeAsBulkString, encoder::encodeAsError)
-                        .actualValue();
+                final var response = keyspace.execute(xadd.streamKey(), db -> xadd(xadd, db));
+                writeAndFlush(socket, response);
+            }
+            case Xtrim xtrim -> {
+                final var response = keyspace.execute(xtrim.streamKey(), db -> xtrim(xtrim, db));
+                writeAndFlush(socket, response);
+            }
+            case Xgroup xgroup -> {
+                if (xgroup.arguments().size() < 2) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR wrong number of arguments for 'xgroup' command"));
+                    return;
+                }
+                final var response = keyspace.execute(xgroup.arguments().get(0), db -> xgroup(xgroup, db));
+                writeAndFlush(socket, response);
+            }
+            case Xreadgroup xreadgroup -> writeAndFlush(socket, xreadgroup(xreadgroup));
+            case Xack xack -> {
+                final var response = keyspace.execute(xack.streamKey(), db -> xack(xack, db));
+                writeAndFlush(socket, response);
+            }
+            case Xpending xpending -> {
+                final var response = keyspace.execute(xpending.streamKey(), db -> xpending(xpending, db));
+                writeAndFlush(socket, response);
+            }
+            case Xclaim xclaim -> {
+                final var response = keyspace.execute(xclaim.streamKey(), db -> xclaim(xclaim, db));
+                writeAndFlush(socket, response);
+            }
+            case Xautoclaim xautoclaim -> {
+                final var response = keyspace.execute(xautoclaim.streamKey(), db -> xautoclaim(xautoclaim, db));
                 writeAndFlush(socket, response);
             }
             case Xrange xrange -> {
-                final var response = database.range(xrange.streamKey(), xrange.start(), xrange.end());
-                final var encodedEntries = response.stream()
-                        .map(it -> {
-                            final var encodedId = encoder.encodeAsBulkString(it.id());
-                            final var mapValues = it.pairs().entrySet()
+                final var response = keyspace
+                        .execute(xrange.streamKey(), db -> db.range(xrange.streamKey(), xrange.start(), xrange.end()));
+                writeAndFlush(socket, encodeEntries(response));
+            }
+            case Xread xread -> writeAndFlush(socket, xread.blockTime().isPresent()
+                    ? blockingXread(xread, xread.blockTime().get())
+                    : xreadFromDatabase(xread));
+            case Asking ignored -> {
+                askingClients.add(socket);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case Cluster cluster -> writeClusterResponse(socket, cluster);
+            case Migrate migrate -> writeAndFlush(socket, migrate(migrate));
+            case Restore restore -> writeKeyResponse(socket, restore, this::restore);
+            case Latency latency -> writeLatencyResponse(socket, latency);
+            case Memory memory -> writeMemoryResponse(socket, memory);
+            case Hotkeys hotkeys -> writeHotkeysResponse(socket, hotkeys);
+            case Bigkeys bigkeys -> writeBigkeysResponse(socket, bigkeys);
+            case Slowlog slowlog -> writeSlowlogResponse(socket, slowlog);
+            case Multi ignored -> {
+                final var started = transactions.computeIfAbsent(socket, it -> new Transaction());
+                if (started.inMulti()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR MULTI calls can not be nested"));
+                    return;
+                }
+                started.begin();
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case Exec ignored -> writeAndFlush(socket, exec(socket));
+            case Discard ignored -> {
+                if (transaction.filter(Transaction::inMulti).isEmpty()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR DISCARD without MULTI"));
+                    return;
+                }
+                endTransaction(socket);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case Watch watch -> {
+                if (transaction.filter(Transaction::inMulti).isPresent()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR WATCH inside MULTI is not allowed"));
+                    return;
+                }
+                final var watching = transactions.computeIfAbsent(socket, it -> new Transaction());
+                watch.watchedKeys()
+                        .stream()
+                        .filter(key -> !watching.watches(key))
+                        .forEach(key -> watching.watch(key, keyspace.execute(key, db -> db.watch(key))));
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case Unwatch ignored -> {
+                endTransaction(socket);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case Mget mget -> {
+                final var keys = new LinkedHashMap<String, String>();
+                mget.requestedKeys().forEach(key -> keys.put(key, key));
+                final var values = keyspace.executeMultiKey(keys, (db, owned) -> db.getAll(owned.keySet(),
+                        encoder::encodeAsBulkStringBytes,
+                        encoder::encodeAsBulkStringBytes,
+                        encoder::encodeAsBulkStringBytes,
+                        encoder.encodeAsNullBulkStringBytes()));
+                writeAndFlush(socket, encodeMget(mget, values::get));
+            }
+            case Mset mset -> {
+                keyspace.runAtomically(mset.keys(), databaseOfKey -> Database.setAll(mset.keysWithValues(), databaseOfKey));
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+                propagateCommand(mset);
+            }
+            case Subscribe subscribe -> subscribe.channels().forEach(it -> pubSub.subscribe(subscriberOf(socket), it));
+            case Psubscribe psubscribe -> psubscribe.patterns().forEach(it -> pubSub.psubscribe(subscriberOf(socket), it));
+            case Unsubscribe unsubscribe -> {
+                final var unsubscribing = subscriberOf(socket);
+                final var channels = unsubscribe.channels().isEmpty() ? unsubscribing.channels() : unsubscribe.channels();
+                if (channels.isEmpty()) {
+                    unsubscribing.reply("unsubscribe", empty(), unsubscribing.subscriptions());
+                }
+                channels.forEach(it -> pubSub.unsubscribe(unsubscribing, it));
+            }
+            case Punsubscribe punsubscribe -> {
+                final var unsubscribing = subscriberOf(socket);
+                final var patterns = punsubscribe.patterns().isEmpty() ? unsubscribing.patterns() : punsubscribe.patterns();
+                if (patterns.isEmpty()) {
+                    unsubscribing.reply("punsubscribe", empty(), unsubscribing.subscriptions());
+                }
+                patterns.forEach(it -> pubSub.punsubscribe(unsubscribing, it));
+            }
+            case Publish publish -> writeAndFlush(socket,
+                    encoder.encodeAsInteger(pubSub.publish(publish.channel(), publish.message())));
+            case Scan scan -> writeAndFlush(socket, scan(scan));
+            case Xinfo xinfo -> writeAndFlush(socket, xinfo(xinfo));
+            case Hello hello -> writeHelloResponse(socket, hello);
+            case Client client -> writeClientResponse(socket, client);
+            case Msetnx msetnx -> {
+                final var written = keyspace.executeAtomically(msetnx.keys(),
+                        databaseOfKey -> Database.setAllIfNoneExists(msetnx.keysWithValues(), databaseOfKey));
+                writeAndFlush(socket, encoder.encodeAsInteger(written ? 1 : 0));
+                if (written) {
+                    propagateCommand(msetnx);
+                }
+            }
+            case Exists exists -> {
+                if (exists.existingKeys().isEmpty()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR wrong number of arguments for 'exists' command"));
+                    return;
+                }
+                writeAndFlush(socket, encoder.encodeAsInteger(exists(exists.existingKeys())));
+            }
+            case Del del -> {
+                final var deleted = delete(del.deletedKeys(), Database::delete);
+                writeAndFlush(socket, encoder.encodeAsInteger(deleted));
+                if (deleted > 0) {
+                    propagateCommand(del);
+                }
+            }
+            case Unlink unlink -> {
+                final var deleted = delete(unlink.unlinkedKeys(), Database::unlink);
+                writeAndFlush(socket, encoder.encodeAsInteger(deleted));
+                if (deleted > 0) {
+                    propagateCommand(unlink);
+                }
+            }
+            case Flushall flushall -> {
+                final var mode = flushall.mode().map(it -> it.toLowerCase(ROOT));
+                if (mode.filter(it -> !it.equals("async") && !it.equals("sync")).isPresent()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR syntax error"));
+                    return;
+                }
+                keyspace.flushAll(mode.map(it -> it.equals("async")).orElse(config.lazyFreePolicy().lazyUserFlush()));
+                clientTracking.invalidateAll();
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+                propagateCommand(flushall);
+            }
+        }
+    }
+
+    /**
+     * EXISTS, the lookups leave the LFU counters alone.
+     *
+     * @return number of the given keys that exist, counting a key given twice twice
+     */
+    private long exists(List<String> keys) {
+        final var owned = new LinkedHashMap<String, String>();
+        keys.forEach(key -> owned.put(key, key));
+        final var existing = keyspace.executeMultiKey(owned, (db, keysOfShard) -> {
+            final var found = new LinkedHashMap<String, Boolean>();
+            keysOfShard.keySet().forEach(key -> found.put(key, db.exists(key)));
+            return found;
+        });
+        return keys.stream()
+                .filter(existing::get)
+                .count();
+    }
+
+    /**
+     * @return number of keys that existed
+     */
+    private long delete(List<String> keys, BiPredicate<Database, String> deletion) {
+        final var owned = new LinkedHashMap<String, String>();
+        keys.forEach(key -> owned.put(key, key));
+        return keyspace.executeMultiKey(owned, (db, keysOfShard) -> {
+                    final var deleted = new LinkedHashMap<String, Boolean>();
+                    keysOfShard.keySet().forEach(key -> deleted.put(key, deletion.test(db, key)));
+                    return deleted;
+                })
+                .values()
+                .stream()
+                .filter(it -> it)
+                .count();
+    }
+
+    /**
+     * GET encoded straight into the reply bytes, a bitmap is written as its raw bytes.
+     */
+    private byte[] encodeGet(String key, Database db) {
+        return db.get(key,
+                encoder::encodeAsBulkStringBytes,
+                encoder::encodeAsBulkStringBytes,
+                encoder::encodeAsBulkStringBytes,
+                encoder.encodeAsNullBulkStringBytes());
+    }
+
+    /**
+     * @param encodedValueOfKey value of a key encoded as a bulk string, see {@link #encodeGet}
+     */
+    private byte[] encodeMget(Mget mget, Function<String, byte[]> encodedValueOfKey) {
+        return encoder.wrapContentAsArrayBytes(mget.requestedKeys()
+                .stream()
+                .map(encodedValueOfKey)
+                .toList());
+    }
+
+    private void writeHelloResponse(Socket socket, Hello hello) {
+        final var protocol = hello.arguments().isEmpty()
+                ? (resp3Clients.contains(socket) ? "3" : "2")
+                : hello.arguments().get(0);
+        if (!protocol.equals("2") && !protocol.equals("3")) {
+            writeAndFlush(socket, encoder.encodeAsError("NOPROTO unsupported protocol version"));
+            return;
+        }
+        if (protocol.equals("3")) {
+            resp3Clients.add(socket);
+        } else {
+            resp3Clients.remove(socket);
+            clientTracking.disable(clientIds.get(socket));
+        }
+        final var properties = List.of(
+                encoder.encodeAsBulkString("server"),
+                encoder.encodeAsBulkString("redis"),
+                encoder.encodeAsBulkString("version"),
+                encoder.encodeAsBulkString("7.2.0"),
+                encoder.encodeAsBulkString("proto"),
+                encoder.encodeAsInteger(parseLong(protocol)),
+                encoder.encodeAsBulkString("id"),
+                encoder.encodeAsInteger(clientIds.get(socket)),
+                encoder.encodeAsBulkString("mode"),
+                encoder.encodeAsBulkString(clusterState.enabled() ? "cluster" : "standalone"),
+                encoder.encodeAsBulkString("role"),
+                encoder.encodeAsBulkString("master"),
+                encoder.encodeAsBulkString("modules"),
+                encoder.wrapContentAsArray(List.of())
+        );
+        writeAndFlush(socket, protocol.equals("3")
+                ? encoder.wrapContentAsMap(properties)
+                : encoder.wrapContentAsArray(properties));
+    }
+
+    private void writeClientResponse(Socket socket, Client client) {
+        final var clientId = clientIds.get(socket);
+        switch (client.subcommand().toLowerCase()) {
+            case "id" -> writeAndFlush(socket, encoder.encodeAsInteger(clientId));
+            case "tracking" -> {
+                final var arguments = client.arguments();
+                if (arguments.isEmpty()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR wrong number of arguments for 'client|tracking'"));
+                    return;
+                }
+                if (arguments.get(0).equalsIgnoreCase("off")) {
+                    clientTracking.disable(clientId);
+                    writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+                    return;
+                }
+                if (!arguments.get(0).equalsIgnoreCase("on")) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR syntax error"));
+                    return;
+                }
+                if (!resp3Clients.contains(socket)) {
+                    writeAndFlush(socket, encoder.encodeAsError(
+                            "ERR CLIENT TRACKING needs RESP3 without REDIRECT, switch the connection with HELLO 3"));
+                    return;
+                }
+                var broadcast = false;
+                final var prefixes = new ArrayList<String>();
+                for (var i = 1; i < arguments.size(); i++) {
+                    switch (arguments.get(i).toLowerCase()) {
+                        case "bcast" -> broadcast = true;
+                        case "prefix" -> prefixes.add(arguments.get(++i));
+                        default -> {
+                            writeAndFlush(socket, encoder.encodeAsError(
+                                    "ERR unsupported CLIENT TRACKING option '%s'".formatted(arguments.get(i))));
+                            return;
+                        }
+                    }
+                }
+                if (!broadcast && !prefixes.isEmpty()) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR PREFIX option requires BCAST mode to be enabled"));
+                    return;
+                }
+                clientTracking.enable(clientId, socket, broadcast, prefixes);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case "getredir" -> writeAndFlush(socket, encoder.encodeAsInteger(clientTracking.enabled(clientId) ? 0 : -1));
+            default -> writeAndFlush(socket, encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try CLIENT HELP.".formatted(client.subcommand())));
+        }
+    }
+
+    /**
+     * MATCH and TYPE filter the keys of the page after the scan step, like Redis a page may therefore come back empty
+     * while the cursor is not 0 yet.
+     */
+    private String scan(Scan scan) {
+        final long cursor;
+        final int count;
+        try {
+            cursor = parseLong(scan.cursor());
+            count = scan.count().map(Integer::parseInt).orElse(10);
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR value is not an integer or out of range");
+        }
+        if (cursor < 0) {
+            return encoder.encodeAsError("ERR invalid cursor");
+        }
+        if (count < 1) {
+            return encoder.encodeAsError("ERR syntax error");
+        }
+        final var pattern = scan.pattern().map(PatternIndex::compile);
+        final var page = keyspace.scan(cursor, count);
+        final var keys = page.keysWithType()
+                .entrySet()
+                .stream()
+                .filter(it -> pattern.map(glob -> glob.matcher(it.getKey()).matches()).orElse(true))
+                .filter(it -> scan.type().map(type -> type.equalsIgnoreCase(it.getValue())).orElse(true))
+                .map(Map.Entry::getKey)
+                .toList();
+        return encoder.wrapContentAsArray(List.of(
+                encoder.encodeAsBulkString(String.valueOf(page.cursor())),
+                encoder.encodeAsArray(keys)
+        ));
+    }
+
+    /**
+     * Runs on the shard of the stream, trimming happens right after the new entry was appended.
+     */
+    private String xadd(Xadd xadd, Database db) {
+        final Optional<StreamTrim> trim;
+        try {
+            trim = StreamTrim.parse(xadd.trimArguments());
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+        return db.saveStream(xadd.streamKey(), xadd.streamKeyValue(), xadd.values(), trim)
+                .map(encoder::encodeAsBulkString, encoder::encodeAsError)
+                .actualValue();
+    }
+
+    private String xtrim(Xtrim xtrim, Database db) {
+        final Optional<StreamTrim> trim;
+        try {
+            trim = StreamTrim.parse(xtrim.trimArguments());
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+        if (trim.isEmpty()) {
+            return encoder.encodeAsError("ERR wrong number of arguments for 'xtrim' command");
+        }
+        return encoder.encodeAsInteger(db.trimStream(xtrim.streamKey(), trim.get()));
+    }
+
+    private String xgroup(Xgroup xgroup, Database db) {
+        final var arguments = xgroup.arguments();
+        final var key = arguments.get(0);
+        final var group = arguments.get(1);
+        final var required = switch (xgroup.subcommand().toLowerCase()) {
+            case "create", "setid", "createconsumer", "delconsumer" -> 3;
+            case "destroy" -> 2;
+            default -> -1;
+        };
+        if (required < 0) {
+            return encoder.encodeAsError("ERR unknown subcommand '%s'. Try XGROUP HELP.".formatted(xgroup.subcommand()));
+        }
+        if (arguments.size() < required) {
+            return encoder.encodeAsError("ERR wrong number of arguments for 'xgroup|%s' command"
+                    .formatted(xgroup.subcommand().toLowerCase()));
+        }
+        if (xgroup.subcommand().equalsIgnoreCase("create")) {
+            final var makeStream = arguments.size() > 3 && arguments.get(3).equalsIgnoreCase("mkstream");
+            try {
+                return db.createGroup(key, group, arguments.get(2), makeStream)
+                        .map(encoder::encodeAsSimpleString, encoder::encodeAsError)
+                        .actualValue();
+            } catch (IllegalArgumentException e) {
+                return encoder.encodeAsError(e.getMessage());
+            }
+        }
+        if (xgroup.subcommand().equalsIgnoreCase("destroy")) {
+            return encoder.encodeAsInteger(db.destroyGroup(key, group) ? 1 : 0);
+        }
+        final var consumerGroup = db.group(key, group);
+        if (consumerGroup.isEmpty()) {
+            return encoder.encodeAsError(noGroup(key, group));
+        }
+        return switch (xgroup.subcommand().toLowerCase()) {
+            case "createconsumer" -> encoder.encodeAsInteger(consumerGroup.get().createConsumer(arguments.get(2)) ? 1 : 0);
+            case "delconsumer" -> encoder.encodeAsInteger(consumerGroup.get().deleteConsumer(arguments.get(2)));
+            default -> {
+                try {
+                    consumerGroup.get().setLastDelivered(arguments.get(2));
+                    yield encoder.encodeAsSimpleString("OK");
+                } catch (IllegalArgumentException e) {
+                    yield encoder.encodeAsError(e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Blocks only when every stream is read with >, the history of a consumer is answered right away.
+     */
+    private String xreadgroup(Xreadgroup xreadgroup) {
+        final long timeout;
+        try {
+            timeout = xreadgroup.blockTime().map(Long::parseLong).orElse(-1L);
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR timeout is not an integer or out of range");
+        }
+        final Supplier<Optional<String>> attempt = () -> keyspace.executeAtomically(
+                xreadgroup.keys(),
+                databaseOfKey -> readGroups(xreadgroup, databaseOfKey)
+        );
+        final var blocking = timeout >= 0 && xreadgroup.streamKeyWithId().values().stream().allMatch(">"::equals);
+        final var reply = blocking ? blockedClients.await(xreadgroup.keys(), timeout, attempt) : attempt.get();
+        return reply.orElseGet(encoder::encodeAsNullArray);
+    }
+
+    /**
+     * @return reply, empty when no new entries were delivered
+     */
+    private Optional<String> readGroups(Xreadgroup xreadgroup, Function<String, Database> databaseOfKey) {
+        final long count;
+        try {
+            count = xreadgroup.count().map(Long::parseLong).filter(it -> it > 0).orElse(MAX_VALUE);
+            xreadgroup.streamKeyWithId().values().stream().filter(not(">"::equals)).forEach(StreamId::parse);
+        } catch (NumberFormatException e) {
+            return Optional.of(encoder.encodeAsError("ERR value is not an integer or out of range"));
+        } catch (IllegalArgumentException e) {
+            return Optional.of(encoder.encodeAsError(e.getMessage()));
+        }
+        final var groups = new LinkedHashMap<String, ConsumerGroup>();
+        for (var key : xreadgroup.keys()) {
+            final var group = databaseOfKey.apply(key).group(key, xreadgroup.group());
+            if (group.isEmpty()) {
+                return Optional.of(encoder.encodeAsError(
+                        noGroup(key, xreadgroup.group()) + " in XREADGROUP with GROUP option"));
+            }
+            groups.put(key, group.get());
+        }
+        final var streams = new ArrayList<String>();
+        groups.forEach((key, group) -> {
+            final var id = xreadgroup.streamKeyWithId().get(key);
+            final var delivered = group.read(xreadgroup.consumer(), id, count, xreadgroup.noAck());
+            if (!delivered.isEmpty() || !id.equals(">")) {
+                streams.add(encoder.wrapContentAsArray(List.of(
+                        encoder.encodeAsBulkString(key),
+                        encodeDelivered(delivered)
+                )));
+            }
+        });
+        return streams.isEmpty() ? empty() : Optional.of(encoder.wrapContentAsArray(streams));
+    }
+
+    private String encodeDelivered(Map<String, Optional<Entries>> delivered) {
+        return encoder.wrapContentAsArray(delivered.entrySet()
+                .stream()
+                .map(it -> it.getValue()
+                        .map(this::encodeEntry)
+                        .orElseGet(() -> encoder.wrapContentAsArray(List.of(
+                                encoder.encodeAsBulkString(it.getKey()),
+                                encoder.encodeAsNullArray()
+                        ))))
+                .toList());
+    }
+
+    private String xack(Xack xack, Database db) {
+        try {
+            return encoder.encodeAsInteger(db.group(xack.streamKey(), xack.group())
+                    .map(group -> group.acknowledge(xack.ids()))
+                    .orElse(0L));
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+    }
+
+    private String xpending(Xpending xpending, Database db) {
+        final var consumerGroup = db.group(xpending.streamKey(), xpending.group());
+        if (consumerGroup.isEmpty()) {
+            return encoder.encodeAsError(noGroup(xpending.streamKey(), xpending.group()));
+        }
+        final var group = consumerGroup.get();
+        final var arguments = xpending.arguments();
+        if (arguments.isEmpty()) {
+            final var consumers = group.pendingByConsumer()
+                    .entrySet()
+                    .stream()
+                    .map(it -> encoder.encodeAsArray(List.of(it.getKey(), String.valueOf(it.getValue()))))
+                    .toList();
+            return encoder.wrapContentAsArray(List.of(
+                    encoder.encodeAsInteger(group.pendingCount()),
+                    encoder.encodeAsBulkString(group.firstPending()),
+                    encoder.encodeAsBulkString(group.lastPending()),
+                    consumers.isEmpty() ? encoder.encodeAsNullArray() : encoder.wrapContentAsArray(consumers)
+            ));
+        }
+        final var idle = arguments.get(0).equalsIgnoreCase("idle");
+        final var position = idle ? 2 : 0;
+        if (arguments.size() < position + 3 || arguments.size() > position + 4) {
+            return encoder.encodeAsError("ERR syntax error");
+        }
+        try {
+            final var pending = group.pending(
+                    arguments.get(position),
+                    arguments.get(position + 1),
+                    parseLong(arguments.get(position + 2)),
+                    idle ? parseLong(arguments.get(1)) : 0,
+                    arguments.size() > position + 3 ? Optional.of(arguments.get(position + 3)) : empty()
+            );
+            return encoder.wrapContentAsArray(pending.stream()
+                    .map(it -> encoder.wrapContentAsArray(List.of(
+                            encoder.encodeAsBulkString(it.id()),
+                            encoder.encodeAsBulkString(it.consumer()),
+                            encoder.encodeAsInteger(it.idleMillis()),
+                            encoder.encodeAsInteger(it.deliveryCount())
+                    )))
+                    .toList());
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR value is not an integer or out of range");
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+    }
+
+    private String xclaim(Xclaim xclaim, Database db) {
+        final var consumerGroup = db.group(xclaim.streamKey(), xclaim.group());
+        if (consumerGroup.isEmpty()) {
+            return encoder.encodeAsError(noGroup(xclaim.streamKey(), xclaim.group()));
+        }
+        final var justId = xclaim.arguments().stream().anyMatch("justid"::equalsIgnoreCase);
+        final var ids = xclaim.arguments().stream().filter(not("justid"::equalsIgnoreCase)).toList();
+        try {
+            final var claimed = consumerGroup.get()
+                    .claim(xclaim.consumer(), parseLong(xclaim.minIdleTime()), ids, justId);
+            return encodeClaimed(claimed, justId);
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR Invalid min-idle-time argument for XCLAIM");
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+    }
+
+    private String xautoclaim(Xautoclaim xautoclaim, Database db) {
+        final var consumerGroup = db.group(xautoclaim.streamKey(), xautoclaim.group());
+        if (consumerGroup.isEmpty()) {
+            return encoder.encodeAsError(noGroup(xautoclaim.streamKey(), xautoclaim.group()));
+        }
+        final var arguments = xautoclaim.arguments();
+        var count = 100L;
+        var justId = false;
+        try {
+            for (var i = 0; i < arguments.size(); i++) {
+                if (arguments.get(i).equalsIgnoreCase("count") && i + 1 < arguments.size()) {
+                    count = parseLong(arguments.get(++i));
+                } else if (arguments.get(i).equalsIgnoreCase("justid")) {
+                    justId = true;
+                } else {
+                    return encoder.encodeAsError("ERR syntax error");
+                }
+            }
+            if (count < 1) {
+                return encoder.encodeAsError("ERR COUNT must be > 0");
+            }
+            final var result = consumerGroup.get().autoClaim(
+                    xautoclaim.consumer(),
+                    parseLong(xautoclaim.minIdleTime()),
+                    xautoclaim.start(),
+                    count,
+                    justId
+            );
+            return encoder.wrapContentAsArray(List.of(
+                    encoder.encodeAsBulkString(result.nextId()),
+                    encodeClaimed(result.claimed(), justId),
+                    encoder.encodeAsArray(result.deleted())
+            ));
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR value is not an integer or out of range");
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage());
+        }
+    }
+
+    private String encodeClaimed(List<Entries> claimed, boolean justId) {
+        if (justId) {
+            return encoder.encodeAsArray(claimed.stream().map(Entries::id).toList());
+        }
+        return encoder.wrapContentAsArray(claimed.stream().map(this::encodeEntry).toList());
+    }
+
+    private static String noGroup(String key, String group) {
+        return "NOGROUP No such key '%s' or consumer group '%s'".formatted(key, group);
+    }
+
+    private String objectInfo(ObjectInfo objectInfo, Database db) {
+        return switch (objectInfo.subcommand().toLowerCase()) {
+            case "encoding" -> encoder.encodeAsBulkString(db.encoding(objectInfo.key()));
+            case "freq" -> db.frequency(objectInfo.key())
+                    .map(encoder::encodeAsInteger)
+                    .orElseGet(encoder::encodeAsNull);
+            default -> encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try OBJECT HELP.".formatted(objectInfo.subcommand()));
+        };
+    }
+
+    private String xinfo(Xinfo xinfo) {
+        if (xinfo.subcommand().equalsIgnoreCase("groups")) {
+            return keyspace.execute(xinfo.streamKey(), db -> {
+                if (!db.type(xinfo.streamKey()).equals("stream")) {
+                    return encoder.encodeAsError("ERR no such key");
+                }
+                return encoder.wrapContentAsArray(db.groups(xinfo.streamKey())
+                        .entrySet()
+                        .stream()
+                        .map(it -> encoder.wrapContentAsArray(List.of(
+                                encoder.encodeAsBulkString("name"),
+                                encoder.encodeAsBulkString(it.getKey()),
+                                encoder.encodeAsBulkString("consumers"),
+                                encoder.encodeAsInteger(it.getValue().consumers()),
+                                encoder.encodeAsBulkString("pending"),
+                                encoder.encodeAsInteger(it.getValue().pendingCount()),
+                                encoder.encodeAsBulkString("last-delivered-id"),
+                                encoder.encodeAsBulkString(it.getValue().lastDelivered())
+                        )))
+                        .toList());
+            });
+        }
+        if (!xinfo.subcommand().equalsIgnoreCase("stream")) {
+            return encoder.encodeAsError("ERR unknown subcommand '%s'. Try XINFO HELP.".formatted(xinfo.subcommand()));
+        }
+        return keyspace.execute(xinfo.streamKey(), db -> db.streamInfo(xinfo.streamKey()))
+                .map(info -> encoder.wrapContentAsArray(List.of(
+                        encoder.encodeAsBulkString("length"),
+                        encoder.encodeAsInteger(info.length()),
+                        encoder.encodeAsBulkString("last-generated-id"),
+                        encoder.encodeAsBulkString(info.lastEntry().id()),
+                        encoder.encodeAsBulkString("first-entry"),
+                        encodeEntry(info.firstEntry()),
+                        encoder.encodeAsBulkString("last-entry"),
+                        encodeEntry(info.lastEntry()),
+                        encoder.encodeAsBulkString("groups"),
+                        encoder.encodeAsInteger(info.groups())
+                )))
+                .orElseGet(() -> encoder.encodeAsError("ERR no such key"));
+    }
+
+    /**
+     * Replies of the subscription commands go through the queue of the subscriber, behind its pending messages.
+     */
+    private PubSub.Subscriber subscriberOf(Socket socket) {
+        return subscribers.computeIfAbsent(socket, it -> pubSub.subscriber(it, resp3Clients.contains(it)));
+    }
+
+    private static boolean allowedInSubscribedMode(Command command) {
+        return command instanceof Subscribe
+                || command instanceof Unsubscribe
+                || command instanceof Psubscribe
+                || command instanceof Punsubscribe
+                || command instanceof Ping;
+    }
+
+    private static boolean isRead(Command command) {
+        return command instanceof Get
+                || command instanceof Mget
+                || command instanceof Type
+                || command instanceof Exists
+                || command instanceof Hget
+                || command instanceof Hmget
+                || command instanceof Hgetall
+                || command instanceof Zscore
+                || command instanceof Zcard
+                || command instanceof Zrank
+                || command instanceof Zrange
+                || command instanceof Zrangebyscore
+                || command instanceof Ttl
+                || command instanceof Pfcount
+                || command instanceof Getbit
+                || command instanceof Bitcount
+                || command instanceof Bitpos
+                || command instanceof Xrange
+                || command instanceof Xread
+                || command instanceof Xinfo;
+    }
+
+    private static boolean controlsTransaction(Command command) {
+        return command instanceof Multi
+                || command instanceof Exec
+                || command instanceof Discard
+                || command instanceof Watch;
+    }
+
+    private static boolean isQueueable(Command command) {
+        return command instanceof Ping
+                || command instanceof Echo
+                || command instanceof Set
+                || command instanceof Get
+                || command instanceof Type
+                || command instanceof Exists
+                || command instanceof ObjectInfo
+                || command instanceof Xadd
+                || command instanceof Xtrim
+                || command instanceof Xgroup
+                || command instanceof Xreadgroup
+                || command instanceof Xack
+                || command instanceof Xpending
+                || command instanceof Xclaim
+                || command instanceof Xautoclaim
+                || command instanceof Xrange
+                || command instanceof Xread
+                || command instanceof Unwatch
+                || command instanceof Mget
+                || command instanceof Mset
+                || command instanceof Msetnx
+                || command instanceof Del
+                || command instanceof Unlink
+                || isIncrement(command)
+                || isHash(command)
+                || isSortedSet(command)
+                || command instanceof Expire
+                || command instanceof Ttl
+                || command instanceof Pfadd
+                || command instanceof Pfcount
+                || command instanceof Pfmerge
+                || command instanceof Setbit
+                || command instanceof Getbit
+                || command instanceof Bitcount
+                || command instanceof Bitpos
+                || command instanceof Bitop;
+    }
+
+    private static boolean isHash(Command command) {
+        return command instanceof Hset
+                || command instanceof Hget
+                || command instanceof Hmget
+                || command instanceof Hgetall
+                || command instanceof Hdel
+                || command instanceof Hincrby
+                || command instanceof Hscan;
+    }
+
+    private static boolean isSortedSet(Command command) {
+        return command instanceof Zadd
+                || command instanceof Zincrby
+                || command instanceof Zscore
+                || command instanceof Zcard
+                || command instanceof Zrank
+                || command instanceof Zrange
+                || command instanceof Zrangebyscore
+                || command instanceof Zrem
+                || command instanceof Zremrangebyscore;
+    }
+
+    private static boolean isIncrement(Command command) {
+        return command instanceof Incr
+                || command instanceof Decr
+                || command instanceof Incrby
+                || command instanceof Decrby
+                || command instanceof Incrbyfloat;
+    }
+
+    /**
+     * Writes replicas apply, they are replayed as sent by the client.
+     */
+    private static boolean isPropagated(Command command) {
+        return command instanceof Set
+                || command instanceof Restore
+                || command instanceof Mset
+                || command instanceof Msetnx
+                || command instanceof Del
+                || command instanceof Unlink
+                || command instanceof Hset
+                || command instanceof Hdel
+                || command instanceof Hincrby
+                || command instanceof Zadd
+                || command instanceof Zincrby
+                || command instanceof Zrem
+                || command instanceof Zremrangebyscore
+                || command instanceof Expire
+                || command instanceof Pfadd
+                || command instanceof Pfmerge
+                || command instanceof Setbit
+                || command instanceof Bitop
+                || isIncrement(command);
+    }
+
+    /**
+     * Runs the queued commands in one atomic section of the keyspace, unless a watched key got a new version since
+     * WATCH. Writes reach the replicas as a single MULTI ... EXEC frame, sent once the section is over like the writes
+     * of single commands, so a slow replica socket never holds up a shard thread. Queued reads are tracked for
+     * client-side caching only once the transaction commits.
+     */
+    private byte[] exec(Socket socket) {
+        final var transaction = transactions.remove(socket);
+        if (transaction == null) {
+            return encoder.encodeAsError("ERR EXEC without MULTI").getBytes();
+        }
+        try {
+            return exec(socket, transaction);
+        } finally {
+            unwatch(transaction);
+        }
+    }
+
+    private byte[] exec(Socket socket, Transaction transaction) {
+        if (!transaction.inMulti()) {
+            return encoder.encodeAsError("ERR EXEC without MULTI").getBytes();
+        }
+        if (transaction.aborted()) {
+            return encoder.encodeAsError("EXECABORT Transaction discarded because of previous errors.").getBytes();
+        }
+        final var replies = keyspace.executeAtomically(transaction.keys(), databaseOfKey -> {
+            if (transaction.watchedKeysChanged(databaseOfKey)) {
+                return Optional.<List<byte[]>>empty();
+            }
+            // no write can slip in between while the section holds the keys
+            final var clientId = clientIds.get(socket);
+            transaction.queued()
+                    .stream()
+                    .filter(Master::isRead)
+                    .forEach(command -> clientTracking.rememberReads(clientId, command.keys()));
+            final var results = transaction.queued()
+                    .stream()
+                    .map(command -> applyQueued(command, databaseOfKey))
+                    .toList();
+            return Optional.of(results);
+        });
+        if (replies.isPresent()) {
+            propagateTransaction(transaction.queued());
+        }
+        return replies
+                .map(encoder::wrapContentAsArrayBytes)
+                .orElseGet(() -> encoder.encodeAsNullArray().getBytes());
+    }
+
+    /**
+     * Drops the MULTI/WATCH state of the connection.
+     */
+    private void endTransaction(Socket socket) {
+        Optional.ofNullable(transactions.remove(socket)).ifPresent(this::unwatch);
+    }
+
+    /**
+     * Releases the watched keys of an ended transaction, see {@link Database#unwatch}.
+     */
+    private void unwatch(Transaction transaction) {
+        transaction.watchedKeys().forEach(key -> keyspace.run(key, db -> db.unwatch(key)));
+    }
+
+    /**
+     * Counterpart of {@link #respondToCommand} for commands queued by MULTI, the reply is encoded inside the atomic
+     * section. GET and MGET are encoded as bytes like outside of a transaction, the others as text.
+     */
+    private byte[] applyQueued(Command command, Function<String, Database> databaseOfKey) {
+        // like Redis a failing command replies with its error inside the EXEC array and the others still run
+        try {
+            return switch (command) {
+                case Get get -> encodeGet(get.value(), databaseOfKey.apply(get.value()));
+                case Mget mget -> encodeMget(mget, key -> encodeGet(key, databaseOfKey.apply(key)));
+                default -> applyQueuedAsText(command, databaseOfKey).getBytes();
+            };
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR value is not an integer or out of range").getBytes();
+        } catch (IllegalArgumentException e) {
+            return encoder.encodeAsError(e.getMessage()).getBytes();
+        }
+    }
+
+    /**
+     * XREAD never blocks here.
+     */
+    private String applyQueuedAsText(Command command, Function<String, Database> databaseOfKey) {
+        return switch (command) {
+            case Ping ignored -> encoder.encodeAsSimpleString("PONG");
+            case Echo echo -> encoder.encodeAsBulkString(echo.argument());
+            case Set set -> {
+                final var db = databaseOfKey.apply(set.key());
+                set.expiryTime().ifPresentOrElse(
+                        it -> db.set(set.key(), set.value(), ofMillis(parseInt(it))),
+                        () -> db.set(set.key(), set.value())
+                );
+                yield encoder.encodeAsSimpleString("OK");
+            }
+            case Type type -> encoder.encodeAsSimpleString(databaseOfKey.apply(type.key()).type(type.key()));
+            case Xadd xadd -> xadd(xadd, databaseOfKey.apply(xadd.streamKey()));
+            case Xtrim xtrim -> xtrim(xtrim, databaseOfKey.apply(xtrim.streamKey()));
+            case Xgroup xgroup -> xgroup.arguments().size() < 2
+                    ? encoder.encodeAsError("ERR wrong number of arguments for 'xgroup' command")
+                    : xgroup(xgroup, databaseOfKey.apply(xgroup.arguments().get(0)));
+            case Xreadgroup xreadgroup -> readGroups(xreadgroup, databaseOfKey).orElseGet(encoder::encodeAsNullArray);
+            case Xack xack -> xack(xack, databaseOfKey.apply(xack.streamKey()));
+            case Xpending xpending -> xpending(xpending, databaseOfKey.apply(xpending.streamKey()));
+            case Xclaim xclaim -> xclaim(xclaim, databaseOfKey.apply(xclaim.streamKey()));
+            case Xautoclaim xautoclaim -> xautoclaim(xautoclaim, databaseOfKey.apply(xautoclaim.streamKey()));
+            case Xrange xrange -> encodeEntries(databaseOfKey.apply(xrange.streamKey())
+                    .range(xrange.streamKey(), xrange.start(), xrange.end()));
+            case Xread xread -> {
+                final var response = new LinkedHashMap<String, Stack<Entries>>();
+                xread.streamKeyWithId().forEach((key, id) -> response.putAll(
+                        databaseOfKey.apply(key).xread(Map.of(key, id))));
+                yield encodeXread(response);
+            }
+            case Unwatch ignored -> encoder.encodeAsSimpleString("OK");
+            case Mset mset -> {
+                Database.setAll(mset.keysWithValues(), databaseOfKey);
+                yield encoder.encodeAsSimpleString("OK");
+            }
+            case Msetnx msetnx -> encoder.encodeAsInteger(
+                    Database.setAllIfNoneExists(msetnx.keysWithValues(), databaseOfKey) ? 1 : 0);
+            case Incr incr -> increment(incr, databaseOfKey.apply(incr.key())).actualValue();
+            case Decr decr -> increment(decr, databaseOfKey.apply(decr.key())).actualValue();
+            case Incrby incrby -> increment(incrby, databaseOfKey.apply(incrby.key())).actualValue();
+            case Decrby decrby -> increment(decrby, databaseOfKey.apply(decrby.key())).actualValue();
+            case Incrbyfloat incrbyfloat -> increment(incrbyfloat, databaseOfKey.apply(incrbyfloat.key())).actualValue();
+            case ObjectInfo objectInfo -> objectInfo(objectInfo, databaseOfKey.apply(objectInfo.key()));
+            case Hset hset -> hash(hset, databaseOfKey.apply(hset.key())).actualValue();
+            case Hget hget -> hash(hget, databaseOfKey.apply(hget.key())).actualValue();
+            case Hmget hmget -> hash(hmget, databaseOfKey.apply(hmget.key())).actualValue();
+            case Hgetall hgetall -> hash(hgetall, databaseOfKey.apply(hgetall.key())).actualValue();
+            case Hdel hdel -> hash(hdel, databaseOfKey.apply(hdel.key())).actualValue();
+            case Hincrby hincrby -> hash(hincrby, databaseOfKey.apply(hincrby.key())).actualValue();
+            case Hscan hscan -> hash(hscan, databaseOfKey.apply(hscan.key())).actualValue();
+            case Zadd zadd -> sortedSet(zadd, databaseOfKey.apply(zadd.key())).actualValue();
+            case Zincrby zincrby -> sortedSet(zincrby, databaseOfKey.apply(zincrby.key())).actualValue();
+            case Zscore zscore -> sortedSet(zscore, databaseOfKey.apply(zscore.key())).actualValue();
+            case Zcard zcard -> sortedSet(zcard, databaseOfKey.apply(zcard.key())).actualValue();
+            case Zrank zrank -> sortedSet(zrank, databaseOfKey.apply(zrank.key())).actualValue();
+            case Zrange zrange -> sortedSet(zrange, databaseOfKey.apply(zrange.key())).actualValue();
+            case Zrangebyscore zrangebyscore -> sortedSet(zrangebyscore, databaseOfKey.apply(zrangebyscore.key()))
+                    .actualValue();
+            case Zrem zrem -> sortedSet(zrem, databaseOfKey.apply(zrem.key())).actualValue();
+            case Zremrangebyscore zremrangebyscore -> sortedSet(zremrangebyscore,
+                    databaseOfKey.apply(zremrangebyscore.key())).actualValue();
+            case Expire expire -> expiry(expire, databaseOfKey.apply(expire.key())).actualValue();
+            case Ttl ttl -> expiry(ttl, databaseOfKey.apply(ttl.key())).actualValue();
+            case Pfadd pfadd -> hyperLogLog(pfadd, databaseOfKey).actualValue();
+            case Pfcount pfcount -> hyperLogLog(pfcount, databaseOfKey).actualValue();
+            case Pfmerge pfmerge -> hyperLogLog(pfmerge, databaseOfKey).actualValue();
+            case Setbit setbit -> bitmap(setbit, databaseOfKey).actualValue();
+            case Getbit getbit -> bitmap(getbit, databaseOfKey).actualValue();
+            case Bitcount bitcount -> bitmap(bitcount, databaseOfKey).actualValue();
+            case Bitpos bitpos -> bitmap(bitpos, databaseOfKey).actualValue();
+            case Bitop bitop -> bitmap(bitop, databaseOfKey).actualValue();
+            case Exists exists -> exists.existingKeys().isEmpty()
+                    ? encoder.encodeAsError("ERR wrong number of arguments for 'exists' command")
+                    : encoder.encodeAsInteger(exists.existingKeys()
+                            .stream()
+                            .filter(key -> databaseOfKey.apply(key).exists(key))
+                            .count());
+            case Del del -> encoder.encodeAsInteger(del.deletedKeys()
+                    .stream()
+                    .distinct()
+                    .filter(key -> databaseOfKey.apply(key).delete(key))
+                    .count());
+            case Unlink unlink -> encoder.encodeAsInteger(unlink.unlinkedKeys()
+                    .stream()
+                    .distinct()
+                    .filter(key -> databaseOfKey.apply(key).unlink(key))
+                    .count());
+            default -> throw new IllegalStateException("Command can not be queued: " + command);
+        };
+    }
+
+    private void propagateTransaction(List<Command> commands) {
+        final var writes = commands.stream()
+                .filter(Master::isPropagated)
+                .toList();
+        if (writes.isEmpty()) {
+            return;
+        }
+        final var frame = Stream.of(Stream.<Command>of(new Multi("MULTI")), writes.stream(), Stream.of(new Exec("EXEC")))
+                .flatMap(it -> it)
+                .peek(this::updateOffset)
+                .map(it -> encoder.encodeAsArray(it.elements()))
+                .collect(joining());
+        replicasWithOffset.keySet().forEach(replica -> writeAndFlush(replica, frame));
+    }
+
+    private void writeSlowlogResponse(Socket socket, Slowlog slowlog) {
+        switch (slowlog.subcommand().toLowerCase()) {
+            case "get" -> {
+                final var count = slowlog.arguments().isEmpty() ? 10 : parseLong(slowlog.arguments().get(0));
+                final var entries = slowLog.get(count)
+                        .stream()
+                        .map(it -> encoder.wrapContentAsArray(List.of(
+                                encoder.encodeAsInteger(it.id()),
+                                encoder.encodeAsInteger(it.timestampSeconds()),
+                                encoder.encodeAsInteger(it.durationMicros()),
+                                encoder.encodeAsArray(it.arguments()),
+                                encoder.encodeAsBulkString(it.client()),
+                                encoder.encodeAsBulkString("")
+                        )))
+                        .toList();
+                writeAndFlush(socket, encoder.wrapContentAsArray(entries));
+            }
+            case "len" -> writeAndFlush(socket, encoder.encodeAsInteger(slowLog.length()));
+            case "reset" -> {
+                slowLog.reset();
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            default -> writeAndFlush(socket, encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try SLOWLOG HELP.".formatted(slowlog.subcommand())));
+        }
+    }
+
+    private void writeLatencyResponse(Socket socket, Latency latency) {
+        if (!latency.subcommand().equalsIgnoreCase("histogram")) {
+            writeAndFlush(socket, encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try LATENCY HELP.".formatted(latency.subcommand())));
+            return;
+        }
+        final var requested = latency.arguments()
+                .stream()
+                .map(String::toLowerCase)
+                .toList();
+        final var histograms = commandStats.snapshot()
+                .stream()
+                .filter(it -> requested.isEmpty() || requested.contains(it.command()))
+                .flatMap(it -> {
+                    final var buckets = it.powerOfTwoMicrosHistogram()
+                            .stream()
+                            .flatMap(bucket -> Stream.of(bucket[0], bucket[1]))
+                            .map(encoder::encodeAsInteger)
+                            .toList();
+                    final var details = encoder.wrapContentAsArray(List.of(
+                            encoder.encodeAsBulkString("calls"),
+                            encoder.encodeAsInteger(it.calls()),
+                            encoder.encodeAsBulkString("histogram_usec"),
+                            encoder.wrapContentAsArray(buckets)
+                    ));
+                    return Stream.of(encoder.encodeAsBulkString(it.command()), details);
+                })
+                .toList();
+        writeAndFlush(socket, encoder.wrapContentAsArray(histograms));
+    }
+
+    /**
+     * MEMORY PURGE compacts the off-heap slab of every shard, the direct memory of released pages returns to the
+     * system with the next collection of their buffers. MEMORY USAGE key [SAMPLES count] estimates the memory of a
+     * key, sizing only the first five fields, members or entries of large values unless told otherwise.
+     */
+    private void writeMemoryResponse(Socket socket, Memory memory) {
+        switch (memory.subcommand().toLowerCase()) {
+            case "purge" -> {
+                keyspace.executeOnEveryShard(Database::compactSlab);
+                writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+            }
+            case "usage" -> {
+                final var arguments = memory.arguments();
+                if (arguments.size() != 1 && (arguments.size() != 3 || !arguments.get(1).equalsIgnoreCase("samples"))) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR syntax error"));
+                    return;
+                }
+                try {
+                    final var samples = arguments.size() == 3 ? count(arguments.get(2)) : DEFAULT_SAMPLES;
+                    final var key = arguments.get(0);
+                    final var usage = keyspace.execute(key, db -> db.memoryUsage(key, samples));
+                    writeAndFlush(socket, usage.map(encoder::encodeAsInteger).orElseGet(encoder::encodeAsNull));
+                } catch (NumberFormatException e) {
+                    writeAndFlush(socket, encoder.encodeAsError("ERR value is out of range, must be positive"));
+                }
+            }
+            default -> writeAndFlush(socket, encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try MEMORY HELP.".formatted(memory.subcommand())));
+        }
+    }
+
+    /**
+     * HOTKEYS [count] like redis-cli --hotkeys, the keys with the highest LFU counters. Every shard walks its keys
+     * keeping its top keys in a bounded heap, so the shards rank in parallel and only count keys each are merged.
+     */
+    private void writeHotkeysResponse(Socket socket, Hotkeys hotkeys) {
+        final var arguments = hotkeys.arguments();
+        if (arguments.size() > 1) {
+            writeAndFlush(socket, encoder.encodeAsError("ERR syntax error"));
+            return;
+        }
+        try {
+            final var count = arguments.isEmpty() ? DEFAULT_TOP_KEYS : count(arguments.get(0));
+            final var top = TopKeys.merge(keyspace.executeOnEveryShard(db -> db.hotKeys(count)), count);
+            writeAndFlush(socket, rankedKeys(top));
+        } catch (NumberFormatException e) {
+            writeAndFlush(socket, encoder.encodeAsError("ERR value is out of range, must be positive"));
+        }
+    }
+
+    /**
+     * BIGKEYS [count [SAMPLES samples]] like redis-cli --bigkeys, the keys taking the most memory as estimated by
+     * MEMORY USAGE.
+     */
+    private void writeBigkeysResponse(Socket socket, Bigkeys bigkeys) {
+        final var arguments = bigkeys.arguments();
+        if (arguments.size() > 3 || arguments.size() == 2
+                || (arguments.size() == 3 && !arguments.get(1).equalsIgnoreCase("samples"))) {
+            writeAndFlush(socket, encoder.encodeAsError("ERR syntax error"));
+            return;
+        }
+        try {
+            final var count = arguments.isEmpty() ? DEFAULT_TOP_KEYS : count(arguments.get(0));
+            final var samples = arguments.size() == 3 ? count(arguments.get(2)) : DEFAULT_SAMPLES;
+            final var top = TopKeys.merge(keyspace.executeOnEveryShard(db -> db.bigKeys(count, samples)), count);
+            writeAndFlush(socket, rankedKeys(top));
+        } catch (NumberFormatException e) {
+            writeAndFlush(socket, encoder.encodeAsError("ERR value is out of range, must be positive"));
+        }
+    }
+
+    /**
+     * @return keys and their scores alternating, like ZRANGE WITHSCORES
+     */
+    private String rankedKeys(List<RankedKey> keys) {
+        return encoder.wrapContentAsArray(keys.stream()
+                .flatMap(it -> Stream.of(encoder.encodeAsBulkString(it.key()), encoder.encodeAsInteger(it.score())))
+                .toList());
+    }
+
+    /**
+     * @throws NumberFormatException for negative numbers too
+     */
+    private static int count(String argument) {
+        final var count = parseInt(argument);
+        if (count < 0) {
+            throw new NumberFormatException(argument);
+        }
+        return count;
+    }
+
+    private void writeClusterResponse(Socket socket, Cluster cluster) {
+        if (!clusterState.enabled()) {
+            writeAndFlush(socket, encoder.encodeAsError("ERR This instance has cluster support disabled"));
+            return;
+        }
+        final var arguments = cluster.arguments();
+        switch (cluster.subcommand().toLowerCase()) {
+            case "keyslot" -> writeAndFlush(socket, encoder.encodeAsInteger(HashSlot.slot(arguments.get(0))));
+            case "myid" -> writeAndFlush(socket, encoder.encodeAsBulkString(clusterState.myself().id()));
+            case "countkeysinslot" -> {
+                final var slot = parseInt(arguments.get(0));
+                final var keys = keyspace.executeInSlot(slot, db -> db.keysInSlot(slot));
+                writeAndFlush(socket, encoder.encodeAsInteger(keys.size()));
+            }
+            case "getkeysinslot" -> {
+                final var slot = parseInt(arguments.get(0));
+                final var keys = keyspace.executeInSlot(slot, db -> db.keysInSlot(slot));
+                writeAndFlush(socket, encoder.encodeAsArray(keys.stream().limit(parseLong(arguments.get(1))).toList()));
+            }
+            case "setslot" -> writeAndFlush(socket, clusterState.setSlot(arguments)
+                    .map(encoder::encodeAsError)
+                    .orElseGet(() -> encoder.encodeAsSimpleString("OK")));
+            case "slots" -> {
+                final var slots = clusterState.slotRanges()
+                        .stream()
+                        .map(range -> encoder.wrapContentAsArray(List.of(
+                                encoder.encodeAsInteger(range.start()),
+                                encoder.encodeAsInteger(range.end()),
+                                encodeClusterNode(range.owner())
+                        )))
+                        .toList();
+                writeAndFlush(socket, encoder.wrapContentAsArray(slots));
+            }
+            case "shards" -> {
+                final var shards = clusterState.slotRangesByNode()
+                        .entrySet()
+                        .stream()
+                        .map(nodeWithRanges -> {
+                            final var slots = nodeWithRanges.getValue()
                                     .stream()
-                                    .flatMap(pair -> Stream.of(pair.getKey(), pair.getValue()))
+                                    .flatMap(range -> Stream.of(range.start(), range.end()))
+                                    .map(encoder::encodeAsInteger)
                                     .toList();
-                            final var encodedMap = encoder.encodeAsArray(mapValues);
-                            return encoder.wrapContentAsArray(List.of(encodedId, encodedMap));
+                            final var node = nodeWithRanges.getKey();
+                            final var nodeDescription = encoder.wrapContentAsArray(List.of(
+                                    encoder.encodeAsBulkString("id"),
+                                    encoder.encodeAsBulkString(node.id()),
+                                    encoder.encodeAsBulkString("port"),
+                                    encoder.encodeAsInteger(node.port()),
+                                    encoder.encodeAsBulkString("ip"),
+                                    encoder.encodeAsBulkString(node.host()),
+                                    encoder.encodeAsBulkString("endpoint"),
+                                    encoder.encodeAsBulkString(node.host()),
+                                    encoder.encodeAsBulkString("role"),
+                                    encoder.encodeAsBulkString("master"),
+                                    encoder.encodeAsBulkString("replication-offset"),
+                                    encoder.encodeAsInteger(node.equals(clusterState.myself()) ? offset.get() : 0),
+                                    encoder.encodeAsBulkString("health"),
+                                    encoder.encodeAsBulkString("online")
+                            ));
+                            return encoder.wrapContentAsArray(List.of(
+                                    encoder.encodeAsBulkString("slots"),
+                                    encoder.wrapContentAsArray(slots),
+                                    encoder.encodeAsBulkString("nodes"),
+                                    encoder.wrapContentAsArray(List.of(nodeDescription))
+                            ));
                         })
                         .toList();
-                writeAndFlush(socket, encoder.wrapContentAsArray(encodedEntries));
-            }
-            case Xread xread -> xread
-                    .blockTime()
-                    .ifPresentOrElse(block -> {
-                        final var nullResponse = encoder.encodeAsBulkString(empty());
-                        try {
-                            final var timeout = parseLong(block);
-                            final var response = supplyAsync(() -> {
-                                var readFromDb = nullResponse;
-                                do {
-                                    readFromDb = xreadFromDatabase(xread);
-                                } while (readFromDb.equals(nullResponse));
-                                return readFromDb;
-                            })
-                                    .orTimeout(timeout != 0 ? timeout : MAX_VALUE, MILLISECONDS)
-                                    .join();
-                            writeAndFlush(socket, response);
-                        } catch (CompletionException | CancellationException e) {
-                            writeAndFlush(socket, nullResponse);
-                        }
-                    }, () -> writeAndFlush(socket, xreadFromDatabase(xread)));
+                writeAndFlush(socket, encoder.wrapContentAsArray(shards));
+            }
+            case "nodes" -> {
+                final var nodes = clusterState.slotRangesByNode()
+                        .entrySet()
+                        .stream()
+                        .map(nodeWithRanges -> {
+                            final var node = nodeWithRanges.getKey();
+                            final var flags = node.equals(clusterState.myself()) ? "myself,master" : "master";
+                            final var slots = nodeWithRanges.getValue()
+                                    .stream()
+                                    .map(range -> range.start() == range.end()
+                                            ? String.valueOf(range.start())
+                                            : range.start() + "-" + range.end())
+                                    .toList();
+                            return "%s %s:%d@%d %s - 0 0 0 connected %s".formatted(
+                                    node.id(), node.host(), node.port(), node.port() + 10000, flags, String.join(" ", slots)
+                            ).trim() + "\n";
+                        })
+                        .toList();
+                writeAndFlush(socket, encoder.encodeAsBulkString(String.join("", nodes)));
+            }
+            case "info" -> {
+                final var assignedSlots = clusterState.assignedSlots();
+                final var clusterInfo = List.of(
+                        "cluster_enabled:1",
+                        "cluster_state:" + (assignedSlots == HashSlot.SLOTS ? "ok" : "fail"),
+                        "cluster_slots_assigned:" + assignedSlots,
+                        "cluster_slots_ok:" + assignedSlots,
+                        "cluster_known_nodes:" + clusterState.slotRangesByNode().size(),
+                        "cluster_size:" + clusterState.slotRangesByNode().values().stream().filter(not(List::isEmpty)).count()
+                );
+                writeAndFlush(socket, encoder.encodeAsBulkString(clusterInfo));
+            }
+            default -> writeAndFlush(socket, encoder.encodeAsError(
+                    "ERR unknown subcommand '%s'. Try CLUSTER HELP.".formatted(cluster.subcommand())));
         }
     }
 
+    private String encodeClusterNode(ClusterState.Node node) {
+        return encoder.wrapContentAsArray(List.of(
+                encoder.encodeAsBulkString(node.host()),
+                encoder.encodeAsInteger(node.port()),
+                encoder.encodeAsBulkString(node.id())
+        ));
+    }
+
+    /**
+     * Moves keys to another node by replaying the commands that recreate them, every command is preceded by ASKING
+     * so the target accepts keys of a slot it is still importing.
+     */
+    private String migrate(Migrate migrate) {
+        final var keysWithDump = new LinkedHashMap<String, List<List<String>>>();
+        migrate.migrateKeys().forEach(key -> {
+            final var dump = keyspace.execute(key, db -> db.dump(key));
+            if (!dump.isEmpty()) {
+                keysWithDump.put(key, dump);
+            }
+        });
+        if (keysWithDump.isEmpty()) {
+            return encoder.encodeAsSimpleString("NOKEY");
+        }
+        try (final var target = new Socket(migrate.host(), parseInt(migrate.port()))) {
+            target.setSoTimeout(parseInt(migrate.timeout()));
+            final var reader = new BufferedReader(new InputStreamReader(target.getInputStream()));
+            final var writer = target.getOutputStream();
+            final var dumpCommands = keysWithDump.values()
+                    .stream()
+                    .flatMap(Collection::stream)
+                    .toList();
+            for (var dumpCommand : dumpCommands) {
+                writer.write(encoder.encodeAsArray(List.of("ASKING")).getBytes());
+                writer.write(encoder.encodeAsArray(dumpCommand).getBytes());
+            }
+            writer.flush();
+            for (var i = 0; i < dumpCommands.size() * 2; i++) {
+                final var reply = decoder.decodeReply(reader)
+                        .orElseThrow(() -> new IOException("Target instance closed the connection"));
+                if (reply.startsWith("-")) {
+                    return encoder.encodeAsError("ERR Target instance replied with error: " + reply.substring(1));
+                }
+            }
+        } catch (IOException e) {
+            return encoder.encodeAsError("IOERR error or timeout writing to target instance");
+        }
+        if (!migrate.copy()) {
+            // the replicas drop the migrated keys too
+            final var migrated = List.copyOf(keysWithDump.keySet());
+            if (delete(migrated, Database::delete) > 0) {
+                propagateCommand(new Del("DEL", migrated));
+            }
+        }
+        return encoder.encodeAsSimpleString("OK");
+    }
+
+    /**
+     * RESTORE as sent by {@link #migrate}, for bitmaps whose bytes a SET could not carry.
+     */
+    private Pair restore(Command command, Database db) {
+        try {
+            final var response = switch (command) {
+                case Restore restore -> {
+                    db.restore(restore.key(), parseLong(restore.ttl()), restore.serializedValue(), restore.replace());
+                    yield encoder.encodeAsSimpleString("OK");
+                }
+                default -> throw new IllegalStateException("Not a RESTORE command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (NumberFormatException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR Invalid TTL value, must be >= 0")));
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    /**
+     * Parks the connection thread on {@link BlockedClients} like XREADGROUP, XADD to one of the streams wakes it up
+     * for another read. A blocked client takes no shard time while nothing is added.
+     */
+    private String blockingXread(Xread xread, String block) {
+        final long timeout;
+        try {
+            timeout = parseLong(block);
+        } catch (NumberFormatException e) {
+            return encoder.encodeAsError("ERR timeout is not an integer or out of range");
+        }
+        final var nullResponse = encoder.encodeAsBulkString(empty());
+        final Supplier<Optional<String>> attempt = () -> Optional.of(xreadFromDatabase(xread))
+                .filter(not(nullResponse::equals));
+        return blockedClients.await(xread.keys(), timeout, attempt).orElse(nullResponse);
+    }
+
     private String xreadFromDatabase(Xread xread) {
-        final var response = database.xread(xread.streamKeyWithId());
+        return encodeXread(keyspace.executeMultiKey(xread.streamKeyWithId(), Database::xread));
+    }
+
+    private String encodeXread(Map<String, Stack<Entries>> response) {
         if (response.values().stream().noneMatch(not(Vector::isEmpty))) {
             return encoder.encodeAsBulkString(empty());
         }
@@ -212,19 +1742,7 @@ final class Master implements Server {
                 .stream()
                 .map(streamKeyWithId -> {
                     final var encodedStreamKey = encoder.encodeAsBulkString(streamKeyWithId.getKey());
-                    final var encodedEntries = streamKeyWithId.getValue()
-                            .stream()
-                            .map(it -> {
-                                final var encodedId = encoder.encodeAsBulkString(it.id());
-                                final var mapValues = it.pairs().entrySet()
-                                        .stream()
-                                        .flatMap(pair -> Stream.of(pair.getKey(), pair.getValue()))
-                                        .toList();
-                                final var encodedMap = encoder.encodeAsArray(mapValues);
-                                return encoder.wrapContentAsArray(List.of(encodedId, encodedMap));
-                            })
-                            .toList();
-                    final var wrappedEntries = encoder.wrapContentAsArray(encodedEntries);
+                    final var wrappedEntries = encodeEntries(streamKeyWithId.getValue());
                     return List.of(encoder.wrapContentAsArray(List.of(encodedStreamKey, wrappedEntries)));
                 })
                 .flatMap(Collection::stream)
@@ -232,6 +1750,23 @@ final class Master implements Server {
         return encoder.wrapContentAsArray(idWithEntries);
     }
 
+    private String encodeEntries(Stack<Entries> entries) {
+        final var encodedEntries = entries.stream()
+                .map(this::encodeEntry)
+                .toList();
+        return encoder.wrapContentAsArray(encodedEntries);
+    }
+
+    private String encodeEntry(Entries entry) {
+        final var encodedId = encoder.encodeAsBulkString(entry.id());
+        final var mapValues = entry.pairs().entrySet()
+                .stream()
+                .flatMap(pair -> Stream.of(pair.getKey(), pair.getValue()))
+                .toList();
+        final var encodedMap = encoder.encodeAsArray(mapValues);
+        return encoder.wrapContentAsArray(List.of(encodedId, encodedMap));
+    }
+
     private void sendGetAck(Socket socket) {
         runAsync(() -> writeAndFlush(socket, encoder.encodeAsArray(List.of("REPLCONF", "GETACK", "*"))));
     }
@@ -285,20 +1820,422 @@ final class Master implements Server {
     }
 
     private void writeSetResponse(Socket socket) {
-        writeAndFlush(socket, encoder.encodeAsSimpleString("OK"));
+        writeAndFlush(socket, encoder.encodeAsOkBytes());
     }
 
-    private void writeGetResponse(Socket socket, Optional<String> value) {
-        writeAndFlush(socket, encoder.encodeAsBulkString(value));
+    private void writeIncrementResponse(Socket socket, Command command) {
+        final var response = keyspace.execute(command.keys().get(0), db -> increment(command, db));
+        writeAndFlush(socket, response.actualValue());
+        if (!response.isError()) {
+            propagateCommand(command);
+        }
+    }
+
+    /**
+     * INCR, DECR, INCRBY, DECRBY and INCRBYFLOAT as one read-modify-write on the thread owning the key.
+     */
+    private Pair increment(Command command, Database db) {
+        final var key = command.keys().get(0);
+        try {
+            if (command instanceof Incrbyfloat incrbyfloat) {
+                final double increment;
+                try {
+                    increment = Database.parseFloat(incrbyfloat.increment());
+                } catch (NumberFormatException e) {
+                    return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR value is not a valid float")));
+                }
+                return Pair.pair(Optional.of(encoder.encodeAsBulkString(db.incrementByFloat(key, increment))), empty());
+            }
+            final var increment = switch (command) {
+                case Incr ignored -> 1L;
+                case Decr ignored -> -1L;
+                case Incrby incrby -> parseLong(incrby.increment());
+                case Decrby decrby -> Math.negateExact(parseLong(decrby.decrement()));
+                default -> throw new IllegalStateException("Not an increment: " + command);
+            };
+            return Pair.pair(Optional.of(encoder.encodeAsInteger(db.incrementBy(key, increment))), empty());
+        } catch (NumberFormatException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR value is not an integer or out of range")));
+        } catch (ArithmeticException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR decrement would overflow")));
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    /**
+     * Runs a single key command on the thread owning the key, successful writes are propagated.
+     */
+    private void writeKeyResponse(Socket socket, Command command, BiFunction<Command, Database, Pair> operation) {
+        final var response = keyspace.execute(command.keys().get(0), db -> operation.apply(command, db));
+        writeAndFlush(socket, response.actualValue());
+        if (!response.isError() && isPropagated(command)) {
+            propagateCommand(command);
+        }
     }
 
-    private void writeInfoReplicaResponse(Socket socket) {
-        final var infoReplication = List.of(
+    /**
+     * Hash commands run on the thread owning the key, the reply is encoded there too.
+     */
+    private Pair hash(Command command, Database db) {
+        try {
+            final var response = switch (command) {
+                case Hset hset -> encoder.encodeAsInteger(db.hashSet(hset.key(), hset.fieldsWithValues()));
+                case Hget hget -> encoder.encodeAsBulkString(db.hashGet(hget.key(), hget.field()));
+                case Hmget hmget -> encoder.wrapContentAsArray(db.hashGetAll(hmget.key(), hmget.fields())
+                        .stream()
+                        .map(encoder::encodeAsBulkString)
+                        .toList());
+                case Hgetall hgetall -> encoder.encodeAsArray(db.hashEntries(hgetall.key())
+                        .entrySet()
+                        .stream()
+                        .flatMap(it -> Stream.of(it.getKey(), it.getValue()))
+                        .toList());
+                case Hdel hdel -> encoder.encodeAsInteger(db.hashDelete(hdel.key(), hdel.fields()));
+                case Hincrby hincrby -> encoder.encodeAsInteger(
+                        db.hashIncrementBy(hincrby.key(), hincrby.field(), parseLong(hincrby.increment())));
+                case Hscan hscan -> hscan(hscan, db);
+                default -> throw new IllegalStateException("Not a hash command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (NumberFormatException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR value is not an integer or out of range")));
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    /**
+     * MATCH filters the fields of the page, like {@link #scan}.
+     */
+    private String hscan(Hscan hscan, Database db) {
+        final var cursor = parseLong(hscan.cursor());
+        final var count = hscan.count().map(Integer::parseInt).orElse(10);
+        if (cursor < 0) {
+            throw new IllegalArgumentException("ERR invalid cursor");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        final var pattern = hscan.pattern().map(PatternIndex::compile);
+        final var page = db.hashScan(hscan.key(), cursor, count);
+        final var fieldsWithValues = page.fieldsWithValues()
+                .entrySet()
+                .stream()
+                .filter(it -> pattern.map(glob -> glob.matcher(it.getKey()).matches()).orElse(true))
+                .flatMap(it -> Stream.of(it.getKey(), it.getValue()))
+                .toList();
+        return encoder.wrapContentAsArray(List.of(
+                encoder.encodeAsBulkString(String.valueOf(page.cursor())),
+                encoder.encodeAsArray(fieldsWithValues)
+        ));
+    }
+
+    /**
+     * Sorted set commands run on the thread owning the key, the reply is encoded there too.
+     */
+    private Pair sortedSet(Command command, Database db) {
+        try {
+            final var response = switch (command) {
+                case Zadd zadd -> {
+                    final var add = SortedSetAdd.parse(zadd.arguments());
+                    if (add.increment()) {
+                        yield encoder.encodeAsBulkString(db.sortedSetIncrement(zadd.key(), add).map(ScoredMember::format));
+                    }
+                    yield encoder.encodeAsInteger(db.sortedSetAdd(zadd.key(), add));
+                }
+                case Zincrby zincrby -> {
+                    final var add = SortedSetAdd.increment(zincrby.member(), zincrby.increment());
+                    yield encoder.encodeAsBulkString(db.sortedSetIncrement(zincrby.key(), add).map(ScoredMember::format));
+                }
+                case Zscore zscore -> encoder.encodeAsBulkString(
+                        db.sortedSetScore(zscore.key(), zscore.member()).map(ScoredMember::format));
+                case Zcard zcard -> encoder.encodeAsInteger(db.sortedSetSize(zcard.key()));
+                case Zrank zrank -> db.sortedSetRank(zrank.key(), zrank.member(),
+                                zrank.commandType().equalsIgnoreCase("zrevrank"))
+                        .map(encoder::encodeAsInteger)
+                        .orElseGet(encoder::encodeAsNull);
+                case Zrange zrange -> zrange(zrange.key(), zrange.start(), zrange.stop(), zrange.options(), db);
+                case Zrangebyscore zrangebyscore -> {
+                    final var options = new ArrayList<>(zrangebyscore.options());
+                    options.add("BYSCORE");
+                    yield zrange(zrangebyscore.key(), zrangebyscore.min(), zrangebyscore.max(), options, db);
+                }
+                case Zrem zrem -> encoder.encodeAsInteger(db.sortedSetRemove(zrem.key(), zrem.members()));
+                case Zremrangebyscore zremrangebyscore -> encoder.encodeAsInteger(db.sortedSetRemoveRangeByScore(
+                        zremrangebyscore.key(), ScoreRange.parse(zremrangebyscore.min(), zremrangebyscore.max())));
+                default -> throw new IllegalStateException("Not a sorted set command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (NumberFormatException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR value is not an integer or out of range")));
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    /**
+     * ZRANGE by rank or with BYSCORE by score, REV swaps the meaning of start and stop like in Redis. LIMIT with a
+     * negative count returns all members after the offset.
+     */
+    private String zrange(String key, String start, String stop, List<String> options, Database db) {
+        var byScore = false;
+        var reverse = false;
+        var withScores = false;
+        var limited = false;
+        var offset = 0L;
+        var count = -1L;
+        for (var i = 0; i < options.size(); i++) {
+            switch (options.get(i).toLowerCase()) {
+                case "byscore" -> byScore = true;
+                case "rev" -> reverse = true;
+                case "withscores" -> withScores = true;
+                case "limit" -> {
+                    if (i + 2 >= options.size()) {
+                        throw new IllegalArgumentException("ERR syntax error");
+                    }
+                    offset = parseLong(options.get(++i));
+                    count = parseLong(options.get(++i));
+                    limited = true;
+                }
+                default -> throw new IllegalArgumentException("ERR syntax error");
+            }
+        }
+        if (limited && !byScore) {
+            throw new IllegalArgumentException(
+                    "ERR syntax error, LIMIT is only supported in combination with either BYSCORE or BYLEX");
+        }
+        final List<ScoredMember> members;
+        if (!byScore) {
+            members = db.sortedSetRange(key, parseLong(start), parseLong(stop), reverse);
+        } else if (offset < 0) {
+            members = List.of();
+        } else {
+            final var range = reverse ? ScoreRange.parse(stop, start) : ScoreRange.parse(start, stop);
+            members = db.sortedSetRangeByScore(key, range, offset, count, reverse);
+        }
+        final var reply = new ArrayList<String>();
+        for (var member : members) {
+            reply.add(member.member());
+            if (withScores) {
+                reply.add(ScoredMember.format(member.score()));
+            }
+        }
+        return encoder.encodeAsArray(reply);
+    }
+
+    /**
+     * For command families where some commands span shards, like PFMERGE and BITOP, all of them run atomically over
+     * their keys. Single key commands still run as one task on their shard.
+     */
+    private void writeAtomicResponse(Socket socket, Command command,
+                                     BiFunction<Command, Function<String, Database>, Pair> operation) {
+        final var response = keyspace.executeAtomically(command.keys(),
+                databaseOfKey -> operation.apply(command, databaseOfKey));
+        writeAndFlush(socket, response.actualValue());
+        if (!response.isError() && isPropagated(command)) {
+            propagateCommand(command);
+        }
+    }
+
+    private Pair hyperLogLog(Command command, Function<String, Database> databaseOfKey) {
+        try {
+            final var response = switch (command) {
+                case Pfadd pfadd -> encoder.encodeAsInteger(
+                        databaseOfKey.apply(pfadd.key()).hyperLogLogAdd(pfadd.key(), pfadd.values()) ? 1 : 0);
+                case Pfcount pfcount -> {
+                    if (pfcount.countedKeys().isEmpty()) {
+                        throw new IllegalArgumentException("ERR wrong number of arguments for 'pfcount' command");
+                    }
+                    yield encoder.encodeAsInteger(Database.hyperLogLogCount(pfcount.countedKeys(), databaseOfKey));
+                }
+                case Pfmerge pfmerge -> {
+                    Database.hyperLogLogMerge(pfmerge.destination(), pfmerge.sources(), databaseOfKey);
+                    yield encoder.encodeAsSimpleString("OK");
+                }
+                default -> throw new IllegalStateException("Not a HyperLogLog command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    private Pair bitmap(Command command, Function<String, Database> databaseOfKey) {
+        try {
+            final var response = switch (command) {
+                case Setbit setbit -> {
+                    final var value = switch (setbit.value()) {
+                        case "0" -> false;
+                        case "1" -> true;
+                        default -> throw new IllegalArgumentException("ERR bit is not an integer or out of range");
+                    };
+                    final var previous = databaseOfKey.apply(setbit.key())
+                            .setBit(setbit.key(), bitOffset(setbit.offset()), value);
+                    yield encoder.encodeAsInteger(previous ? 1 : 0);
+                }
+                case Getbit getbit -> encoder.encodeAsInteger(
+                        databaseOfKey.apply(getbit.key()).getBit(getbit.key(), bitOffset(getbit.offset())) ? 1 : 0);
+                case Bitcount bitcount -> {
+                    if (bitcount.range().size() == 1) {
+                        throw new IllegalArgumentException("ERR syntax error");
+                    }
+                    final var range = bitcount.range().isEmpty()
+                            ? Optional.<BitRange>empty()
+                            : Optional.of(BitRange.parse(bitcount.range()));
+                    yield encoder.encodeAsInteger(databaseOfKey.apply(bitcount.key()).bitCount(bitcount.key(), range));
+                }
+                case Bitpos bitpos -> {
+                    final var value = switch (bitpos.bit()) {
+                        case "0" -> false;
+                        case "1" -> true;
+                        default -> throw new IllegalArgumentException("ERR The bit argument must be 1 or 0.");
+                    };
+                    final var range = bitpos.range().isEmpty()
+                            ? Optional.<BitRange>empty()
+                            : Optional.of(BitRange.parse(bitpos.range()));
+                    yield encoder.encodeAsInteger(
+                            databaseOfKey.apply(bitpos.key()).bitPosition(bitpos.key(), value, range));
+                }
+                case Bitop bitop -> encoder.encodeAsInteger(
+                        Database.bitOperation(bitop.operation(), bitop.destination(), bitop.sources(), databaseOfKey));
+                default -> throw new IllegalStateException("Not a bitmap command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (IllegalArgumentException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(e.getMessage())));
+        }
+    }
+
+    private static long bitOffset(String offset) {
+        try {
+            return parseLong(offset);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR bit offset is not an integer or out of range");
+        }
+    }
+
+    /**
+     * EXPIRE and PEXPIRE, TTL and PTTL for keys of every type.
+     */
+    private Pair expiry(Command command, Database db) {
+        try {
+            final var response = switch (command) {
+                case Expire expire -> {
+                    final var time = parseLong(expire.time());
+                    final var milliseconds = expire.commandType().equalsIgnoreCase("pexpire");
+                    final var timeToLive = milliseconds ? ofMillis(time) : Duration.ofSeconds(time);
+                    yield encoder.encodeAsInteger(db.expire(expire.key(), timeToLive) ? 1 : 0);
+                }
+                case Ttl ttl -> {
+                    final var timeToLive = db.ttl(ttl.key());
+                    final var milliseconds = ttl.commandType().equalsIgnoreCase("pttl");
+                    yield encoder.encodeAsInteger(timeToLive < 0 || milliseconds ? timeToLive : (timeToLive + 500) / 1000);
+                }
+                default -> throw new IllegalStateException("Not an expiry command: " + command);
+            };
+            return Pair.pair(Optional.of(response), empty());
+        } catch (NumberFormatException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError("ERR value is not an integer or out of range")));
+        } catch (ArithmeticException | DateTimeException e) {
+            return Pair.pair(empty(), Optional.of(encoder.encodeAsError(
+                    "ERR invalid expire time in '%s' command".formatted(command.elements().get(0).toLowerCase()))));
+        }
+    }
+
+    private void writeInfoResponse(Socket socket, String section) {
+        final var info = switch (section.toLowerCase()) {
+            case "clients" -> infoClients();
+            case "replication" -> infoReplication();
+            case "commandstats" -> infoCommandStats();
+            case "latencystats" -> infoLatencyStats();
+            case "memory" -> infoMemory();
+            case "keyspace" -> infoKeyspace();
+            case "default", "all", "everything" -> Stream.of(infoClients(), infoMemory(), infoReplication(), infoCommandStats(),
+                            infoLatencyStats(), infoKeyspace())
+                    .flatMap(it -> Stream.concat(it.stream(), Stream.of("")))
+                    .toList();
+            default -> List.<String>of();
+        };
+        writeAndFlush(socket, encoder.encodeAsBulkString(info));
+    }
+
+    private List<String> infoClients() {
+        return List.of(
+                "# Clients",
+                "connected_clients:" + clientIds.size(),
+                "tracking_clients:" + clientTracking.trackingClients(),
+                "tracking_total_keys:" + clientTracking.trackedKeys(),
+                "pubsub_clients:" + subscribers.values().stream().filter(it -> it.subscriptions() > 0).count(),
+                "pubsub_channels:" + pubSub.channels(),
+                "pubsub_patterns:" + pubSub.patterns());
+    }
+
+    private List<String> infoMemory() {
+        final var runtime = Runtime.getRuntime();
+        final var compression = keyspace.executeOnEveryShard(Database::compressionStats)
+                .stream()
+                .reduce(CompressionStats.NONE, CompressionStats::plus);
+        final var slab = keyspace.executeOnEveryShard(Database::slabStats)
+                .stream()
+                .reduce(SlabStats.NONE, SlabStats::plus);
+        final var spill = keyspace.executeOnEveryShard(Database::spillStats)
+                .stream()
+                .reduce(SpillStats.NONE, SpillStats::plus);
+        return List.of(
+                "# Memory",
+                "used_memory:" + (runtime.totalMemory() - runtime.freeMemory()),
+                "lazyfree_pending_objects:" + keyspace.lazyFree().pendingObjects(),
+                "lazyfreed_objects:" + keyspace.lazyFree().freedObjects(),
+                "compressed_values:" + compression.values(),
+                "compressed_values_original_bytes:" + compression.originalBytes(),
+                "compressed_values_stored_bytes:" + compression.storedBytes(),
+                "offheap_values:" + slab.values(),
+                "offheap_used_bytes:" + slab.usedBytes(),
+                "offheap_allocated_bytes:" + slab.allocatedBytes(),
+                "spilled_values:" + spill.values(),
+                "spilled_used_bytes:" + spill.usedBytes(),
+                "spilled_file_bytes:" + spill.fileBytes());
+    }
+
+    /**
+     * One database, like Redis it is left out while empty. avg_ttl is exact, every shard sums the times to live of
+     * its keys.
+     */
+    private List<String> infoKeyspace() {
+        final var stats = keyspace.executeOnEveryShard(Database::keyspaceStats)
+                .stream()
+                .reduce(KeyspaceStats.NONE, KeyspaceStats::plus);
+        if (stats.keys() == 0) {
+            return List.of("# Keyspace");
+        }
+        return List.of(
+                "# Keyspace",
+                "db0:keys=%d,expires=%d,avg_ttl=%d".formatted(stats.keys(), stats.expires(), stats.averageTtlMillis()));
+    }
+
+    private List<String> infoReplication() {
+        return List.of(
                 "# Replication",
                 "role:master",
                 "master_replid:8371b4fb1155b71f4a04d3e1bc3e18c4a990aeeb",
                 "master_repl_offset:" + offset);
-        writeAndFlush(socket, encoder.encodeAsBulkString(infoReplication));
+    }
+
+    private List<String> infoCommandStats() {
+        final var stats = commandStats.snapshot()
+                .stream()
+                .map(it -> String.format(ROOT, "cmdstat_%s:calls=%d,usec=%d,usec_per_call=%.2f",
+                        it.command(), it.calls(), it.totalNanos() / 1000, it.averageMicros()));
+        return Stream.concat(Stream.of("# Commandstats"), stats).toList();
+    }
+
+    private List<String> infoLatencyStats() {
+        final var stats = commandStats.snapshot()
+                .stream()
+                .map(it -> String.format(ROOT, "latency_percentiles_usec_%s:p50=%.3f,p99=%.3f,p99.9=%.3f",
+                        it.command(), it.percentileMicros(50), it.percentileMicros(99), it.percentileMicros(99.9)));
+        return Stream.concat(Stream.of("# Latencystats"), stats).toList();
     }
 
     private void writeReplConfResponse(Socket socket) {
@@ -341,11 +2278,16 @@ final class Master implements Server {
         writeAndFlush(socket, toSend.getBytes());
     }
 
+    /**
+     * Invalidation messages are written from another thread, a reply and a push must not interleave.
+     */
     private void writeAndFlush(Socket socket, byte[] toSend) {
         try {
             final var writer = socket.getOutputStream();
-            writer.write(toSend);
-            writer.flush();
+            synchronized (socket) {
+                writer.write(toSend);
+                writer.flush();
+            }
         } catch (IOException ioException) {
             throw new RuntimeException(ioException);
         }
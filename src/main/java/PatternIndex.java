@@ -0,0 +1,144 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Glob patterns of PSUBSCRIBE stored in a trie by their literal prefix, the part before the first wildcard. Matching a
+ * channel walks the trie along the channel name and only tests patterns whose prefix the channel starts with, each of
+ * them compiled once when the first client subscribes.
+ */
+final class PatternIndex<T> {
+    private final Node<T> root;
+
+    private static final class Node<T> {
+        private final Map<Character, Node<T>> children = new ConcurrentHashMap<>();
+        private final Map<String, Subscription<T>> patterns = new ConcurrentHashMap<>();
+    }
+
+    private record Subscription<T>(Pattern compiled, Collection<T> subscribers) {
+        Subscription {
+            requireNonNull(compiled);
+            requireNonNull(subscribers);
+        }
+    }
+
+    PatternIndex() {
+        this.root = new Node<>();
+    }
+
+    synchronized void add(String pattern, T subscriber) {
+        requireNonNull(subscriber);
+        nodeOf(pattern).patterns
+                .computeIfAbsent(pattern, it -> new Subscription<>(compile(it), ConcurrentHashMap.newKeySet()))
+                .subscribers()
+                .add(subscriber);
+    }
+
+    synchronized void remove(String pattern, T subscriber) {
+        final var patterns = nodeOf(pattern).patterns;
+        final var subscription = patterns.get(pattern);
+        if (subscription == null) {
+            return;
+        }
+        subscription.subscribers().remove(subscriber);
+        if (subscription.subscribers().isEmpty()) {
+            patterns.remove(pattern);
+        }
+    }
+
+    /**
+     * @param channel  to match
+     * @param consumer receives every matching pattern with its subscribers
+     */
+    void forEachMatch(String channel, BiConsumer<String, Collection<T>> consumer) {
+        var node = root;
+        for (var i = 0; node != null; i++) {
+            node.patterns.forEach((pattern, subscription) -> {
+                if (subscription.compiled().matcher(channel).matches()) {
+                    consumer.accept(pattern, subscription.subscribers());
+                }
+            });
+            node = i < channel.length() ? node.children.get(channel.charAt(i)) : null;
+        }
+    }
+
+    int size() {
+        return count(root);
+    }
+
+    private Node<T> nodeOf(String pattern) {
+        var node = root;
+        for (var i = 0; i < pattern.length() && !isWildcard(pattern.charAt(i)); i++) {
+            node = node.children.computeIfAbsent(pattern.charAt(i), it -> new Node<>());
+        }
+        return node;
+    }
+
+    private int count(Node<T> node) {
+        return node.patterns.size() + node.children.values().stream().mapToInt(this::count).sum();
+    }
+
+    private static boolean isWildcard(char character) {
+        return character == '*' || character == '?' || character == '[' || character == '\\';
+    }
+
+    /**
+     * Translates the glob syntax of Redis: *, ?, [abc], [^abc], [a-z] and \ escaping the next character.
+     */
+    static Pattern compile(String glob) {
+        final var regex = new StringBuilder();
+        for (var i = 0; i < glob.length(); i++) {
+            final var character = glob.charAt(i);
+            switch (character) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                case '\\' -> {
+                    if (i + 1 < glob.length()) {
+                        appendLiteral(regex, glob.charAt(++i));
+                    }
+                }
+                case '[' -> {
+                    final var end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        appendLiteral(regex, character);
+                        continue;
+                    }
+                    regex.append('[');
+                    var j = i + 1;
+                    if (glob.charAt(j) == '^') {
+                        regex.append('^');
+                        j++;
+                    }
+                    for (; j < end; j++) {
+                        final var inBrackets = glob.charAt(j);
+                        if (inBrackets == '-') {
+                            regex.append('-');
+                        } else {
+                            appendLiteral(regex, inBrackets);
+                        }
+                    }
+                    regex.append(']');
+                    i = end;
+                }
+                default -> appendLiteral(regex, character);
+            }
+        }
+        try {
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        } catch (PatternSyntaxException emptyBrackets) {
+            return Pattern.compile(Pattern.quote(glob));
+        }
+    }
+
+    private static void appendLiteral(StringBuilder regex, char character) {
+        if (!Character.isLetterOrDigit(character)) {
+            regex.append('\\');
+        }
+        regex.append(character);
+    }
+}
@@ -0,0 +1,310 @@
+import resp.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Channel registry of SUBSCRIBE and PSUBSCRIBE. A published message is encoded once per channel or matching pattern
+ * and the same buffer is queued for every subscriber, so the publisher never writes to a socket. Every subscriber is
+ * drained by at most one writer thread at a time, a slow subscriber only holds its own writer thread and is
+ * disconnected once it exceeds its output buffer limits.
+ */
+final class PubSub {
+    private static final int MAX_WRITE_BATCH = 64 * 1024;
+    private final Map<String, Collection<Subscriber>> channels;
+    private final PatternIndex<Subscriber> patterns;
+    private final Encoder encoder;
+    private final BiConsumer<Socket, byte[]> writer;
+    private final ExecutorService writers;
+    private final long hardLimit;
+    private final long softLimit;
+    private final long softLimitNanos;
+
+    PubSub(Configuration config, Encoder encoder, BiConsumer<Socket, byte[]> writer) {
+        this.channels = new ConcurrentHashMap<>();
+        this.patterns = new PatternIndex<>();
+        this.encoder = requireNonNull(encoder);
+        this.writer = requireNonNull(writer);
+        this.writers = newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "pubsub-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hardLimit = config.pubsubHardLimit();
+        this.softLimit = config.pubsubSoftLimit();
+        this.softLimitNanos = config.pubsubSoftSeconds() * 1_000_000_000L;
+    }
+
+    /**
+     * Connection in subscribed mode. Subscriptions are only changed by the connection thread, the output queue is
+     * shared with publishers.
+     */
+    final class Subscriber {
+        private final Socket socket;
+        private final boolean resp3;
+        private final Set<String> subscribedChannels;
+        private final Set<String> subscribedPatterns;
+        private final Queue<byte[]> output;
+        private final AtomicLong pendingBytes;
+        private final AtomicBoolean draining;
+        private volatile long softLimitExceededSince;
+        private volatile boolean closed;
+
+        private Subscriber(Socket socket, boolean resp3) {
+            this.socket = requireNonNull(socket);
+            this.resp3 = resp3;
+            this.subscribedChannels = new LinkedHashSet<>();
+            this.subscribedPatterns = new LinkedHashSet<>();
+            this.output = new ConcurrentLinkedQueue<>();
+            this.pendingBytes = new AtomicLong();
+            this.draining = new AtomicBoolean();
+            this.softLimitExceededSince = 0;
+            this.closed = false;
+        }
+
+        int subscriptions() {
+            return subscribedChannels.size() + subscribedPatterns.size();
+        }
+
+        List<String> channels() {
+            return List.copyOf(subscribedChannels);
+        }
+
+        List<String> patterns() {
+            return List.copyOf(subscribedPatterns);
+        }
+
+        /**
+         * Replies of the subscription commands take the same queue as messages, so a client always sees the
+         * confirmation before the first message of a channel.
+         */
+        void reply(String kind, Optional<String> channel, long count) {
+            enqueue(frame(List.of(
+                    encoder.encodeAsBulkString(kind),
+                    encoder.encodeAsBulkString(channel),
+                    encoder.encodeAsInteger(count)
+            ), resp3));
+        }
+
+        private boolean enqueue(byte[] frame) {
+            if (closed) {
+                return false;
+            }
+            final var pending = pendingBytes.addAndGet(frame.length);
+            if (exceedsLimits(pending)) {
+                close();
+                return false;
+            }
+            output.offer(frame);
+            if (draining.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+            return true;
+        }
+
+        private boolean exceedsLimits(long pending) {
+            if (hardLimit > 0 && pending > hardLimit) {
+                return true;
+            }
+            if (softLimit <= 0 || pending <= softLimit) {
+                softLimitExceededSince = 0;
+                return false;
+            }
+            final var now = System.nanoTime();
+            if (softLimitExceededSince == 0) {
+                softLimitExceededSince = now;
+                return false;
+            }
+            return now - softLimitExceededSince > softLimitNanos;
+        }
+
+        private void drain() {
+            do {
+                final var batch = new ByteArrayOutputStream();
+                byte[] frame;
+                while ((frame = output.poll()) != null) {
+                    batch.writeBytes(frame);
+                    if (batch.size() >= MAX_WRITE_BATCH) {
+                        write(batch);
+                    }
+                }
+                write(batch);
+                draining.set(false);
+            } while (!output.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private void write(ByteArrayOutputStream batch) {
+            if (batch.size() == 0 || closed) {
+                batch.reset();
+                return;
+            }
+            final var bytes = batch.toByteArray();
+            batch.reset();
+            try {
+                writer.accept(socket, bytes);
+            } catch (RuntimeException e) {
+                close();
+            }
+            pendingBytes.addAndGet(-bytes.length);
+        }
+
+        /**
+         * The connection thread notices the closed socket and calls {@link #remove}.
+         */
+        private void close() {
+            closed = true;
+            output.clear();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println("Closing subscriber failed: " + e.getMessage());
+            }
+        }
+    }
+
+    Subscriber subscriber(Socket socket, boolean resp3) {
+        return new Subscriber(socket, resp3);
+    }
+
+    void subscribe(Subscriber subscriber, String channel) {
+        final var added = subscriber.subscribedChannels.add(channel);
+        subscriber.reply("subscribe", Optional.of(channel), subscriber.subscriptions());
+        if (added) {
+            // inside compute, a concurrent unsubscribe must not drop the set this subscriber is added to
+            channels.compute(channel, (it, subscribers) -> {
+                final var updated = subscribers == null ? ConcurrentHashMap.<Subscriber>newKeySet() : subscribers;
+                updated.add(subscriber);
+                return updated;
+            });
+        }
+    }
+
+    void unsubscribe(Subscriber subscriber, String channel) {
+        if (subscriber.subscribedChannels.remove(channel)) {
+            channels.computeIfPresent(channel, (it, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+        subscriber.reply("unsubscribe", Optional.of(channel), subscriber.subscriptions());
+    }
+
+    void psubscribe(Subscriber subscriber, String pattern) {
+        final var added = subscriber.subscribedPatterns.add(pattern);
+        subscriber.reply("psubscribe", Optional.of(pattern), subscriber.subscriptions());
+        if (added) {
+            patterns.add(pattern, subscriber);
+        }
+    }
+
+    void punsubscribe(Subscriber subscriber, String pattern) {
+        if (subscriber.subscribedPatterns.remove(pattern)) {
+            patterns.remove(pattern, subscriber);
+        }
+        subscriber.reply("punsubscribe", Optional.of(pattern), subscriber.subscriptions());
+    }
+
+    /**
+     * Drops all subscriptions of a closed connection without replying.
+     */
+    void remove(Subscriber subscriber) {
+        subscriber.subscribedChannels.forEach(channel -> channels.computeIfPresent(channel, (it, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        }));
+        subscriber.subscribedPatterns.forEach(pattern -> patterns.remove(pattern, subscriber));
+        subscriber.subscribedChannels.clear();
+        subscriber.subscribedPatterns.clear();
+        subscriber.closed = true;
+    }
+
+    /**
+     * @return number of subscribers the message was queued for
+     */
+    long publish(String channel, String message) {
+        final var receivers = new AtomicLong();
+        final var subscribers = channels.get(channel);
+        if (subscribers != null && !subscribers.isEmpty()) {
+            final var encoded = new Frames(List.of(
+                    encoder.encodeAsBulkString("message"),
+                    encoder.encodeAsBulkString(channel),
+                    encoder.encodeAsBulkString(message)
+            ));
+            subscribers.forEach(it -> {
+                if (it.enqueue(encoded.of(it.resp3))) {
+                    receivers.incrementAndGet();
+                }
+            });
+        }
+        patterns.forEachMatch(channel, (pattern, patternSubscribers) -> {
+            final var encoded = new Frames(List.of(
+                    encoder.encodeAsBulkString("pmessage"),
+                    encoder.encodeAsBulkString(pattern),
+                    encoder.encodeAsBulkString(channel),
+                    encoder.encodeAsBulkString(message)
+            ));
+            patternSubscribers.forEach(it -> {
+                if (it.enqueue(encoded.of(it.resp3))) {
+                    receivers.incrementAndGet();
+                }
+            });
+        });
+        return receivers.get();
+    }
+
+    int channels() {
+        return channels.size();
+    }
+
+    int patterns() {
+        return patterns.size();
+    }
+
+    private byte[] frame(List<String> encodedElements, boolean resp3) {
+        final var frame = resp3 ? encoder.wrapContentAsPush(encodedElements) : encoder.wrapContentAsArray(encodedElements);
+        return frame.getBytes();
+    }
+
+    /**
+     * A message as RESP2 array and RESP3 push, each encoded at most once and shared by all subscribers using it.
+     */
+    private final class Frames {
+        private final List<String> encodedElements;
+        private byte[] array;
+        private byte[] push;
+
+        private Frames(List<String> encodedElements) {
+            this.encodedElements = encodedElements;
+        }
+
+        private byte[] of(boolean resp3) {
+            if (resp3) {
+                if (push == null) {
+                    push = frame(encodedElements, true);
+                }
+                return push;
+            }
+            if (array == null) {
+                array = frame(encodedElements, false);
+            }
+            return array;
+        }
+    }
+}
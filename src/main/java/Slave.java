@@ -1,4 +1,7 @@
 import db.Database;
+import db.Keyspace;
+import db.ScoreRange;
+import db.SortedSetAdd;
 import resp.Command;
 import resp.Decoder;
 import resp.Encoder;
@@ -10,32 +13,39 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 import static java.net.InetAddress.getByName;
 import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 
 final class Slave implements Server {
     private static final ExecutorService POOL = newFixedThreadPool(8);
     private final Configuration config;
-    private final Database database;
+    private final Keyspace keyspace;
     private final Decoder decoder;
     private final Encoder encoder;
     private int numberOfProcessedBytes;
+    /**
+     * Writes received since MULTI, null outside of a transaction.
+     */
+    private List<Command> transaction;
 
     public Slave(
             Configuration configuration,
-            Database database,
+            Keyspace keyspace,
             Decoder decoder,
             Encoder encoder
     ) {
         this.config = requireNonNull(configuration);
-        this.database = requireNonNull(database);
+        this.keyspace = requireNonNull(keyspace);
         this.decoder = requireNonNull(decoder);
         this.encoder = requireNonNull(encoder);
         this.numberOfProcessedBytes = 0;
@@ -70,12 +80,11 @@ final class Slave implements Server {
                     decoder.parseCommand(reader)
                             .ifPresent(command -> {
                                 switch (command) {
-                                    case Command.Set set -> {
-                                        set.expiryTime().ifPresentOrElse(
-                                                it -> database.set(set.key(), set.value(), ofMillis(parseInt(it))),
-                                                () -> database.set(set.key(), set.value())
-                                        );
-                                        updateReplicatedBytes(set);
+                                    case Command.Flushall flushall -> {
+                                        keyspace.flushAll(flushall.mode()
+                                                .map(it -> it.equalsIgnoreCase("async"))
+                                                .orElse(config.lazyFreePolicy().lazyUserFlush()));
+                                        updateReplicatedBytes(flushall);
                                     }
                                     case Command.Replconf replconf -> {
                                         if (replconf.elements().get(1).equalsIgnoreCase("getack")) {
@@ -85,7 +94,22 @@ final class Slave implements Server {
                                         }
                                     }
                                     case Command.Ping ping -> updateReplicatedBytes(ping);
-                                    default -> throw new IllegalStateException("Unexpected value: " + command);
+                                    case Command.Multi multi -> {
+                                        transaction = new ArrayList<>();
+                                        updateReplicatedBytes(multi);
+                                    }
+                                    case Command.Exec exec -> {
+                                        applyTransaction();
+                                        updateReplicatedBytes(exec);
+                                    }
+                                    default -> {
+                                        if (transaction != null) {
+                                            transaction.add(command);
+                                        } else {
+                                            applyCommand(command);
+                                        }
+                                        updateReplicatedBytes(command);
+                                    }
                                 }
                             });
                 }
@@ -95,6 +119,101 @@ final class Slave implements Server {
         });
     }
 
+    private void applyCommand(Command command) {
+        keyspace.runAtomically(command.keys(), databaseOfKey -> {
+            try {
+                apply(command, databaseOfKey);
+            } catch (IllegalArgumentException e) {
+                // the master replied with the error, the replica skips the write instead of dropping the link
+            }
+        });
+    }
+
+    /**
+     * The writes between MULTI and EXEC are applied in one atomic section like on the master, so clients reading
+     * from the replica never see a transaction half applied.
+     */
+    private void applyTransaction() {
+        final var queued = transaction;
+        transaction = null;
+        final var keys = queued.stream()
+                .flatMap(it -> it.keys().stream())
+                .distinct()
+                .toList();
+        keyspace.runAtomically(keys, databaseOfKey -> {
+            for (var command : queued) {
+                try {
+                    apply(command, databaseOfKey);
+                } catch (IllegalArgumentException e) {
+                    // the master replied with the error and went on with the next command, so does the replica
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a replicated write, the caller runs it in {@link Keyspace#runAtomically} covering its keys.
+     */
+    private static void apply(Command command, Function<String, Database> databaseOfKey) {
+        switch (command) {
+            case Command.Set set -> {
+                final var db = databaseOfKey.apply(set.key());
+                set.expiryTime().ifPresentOrElse(
+                        it -> db.set(set.key(), set.value(), ofMillis(parseInt(it))),
+                        () -> db.set(set.key(), set.value())
+                );
+            }
+            case Command.Restore restore -> databaseOfKey.apply(restore.key()).restore(
+                    restore.key(), parseLong(restore.ttl()), restore.serializedValue(), restore.replace());
+            case Command.Mset mset -> Database.setAll(mset.keysWithValues(), databaseOfKey);
+            case Command.Msetnx msetnx -> Database.setAllIfNoneExists(msetnx.keysWithValues(), databaseOfKey);
+            case Command.Del del -> del.deletedKeys().forEach(key -> databaseOfKey.apply(key).delete(key));
+            case Command.Unlink unlink -> unlink.unlinkedKeys().forEach(key -> databaseOfKey.apply(key).unlink(key));
+            case Command.Incr incr -> databaseOfKey.apply(incr.key()).incrementBy(incr.key(), 1);
+            case Command.Decr decr -> databaseOfKey.apply(decr.key()).incrementBy(decr.key(), -1);
+            case Command.Incrby incrby -> databaseOfKey.apply(incrby.key())
+                    .incrementBy(incrby.key(), parseLong(incrby.increment()));
+            case Command.Decrby decrby -> databaseOfKey.apply(decrby.key())
+                    .incrementBy(decrby.key(), -parseLong(decrby.decrement()));
+            case Command.Incrbyfloat incrbyfloat -> databaseOfKey.apply(incrbyfloat.key())
+                    .incrementByFloat(incrbyfloat.key(), Database.parseFloat(incrbyfloat.increment()));
+            case Command.Hset hset -> databaseOfKey.apply(hset.key()).hashSet(hset.key(), hset.fieldsWithValues());
+            case Command.Hdel hdel -> databaseOfKey.apply(hdel.key()).hashDelete(hdel.key(), hdel.fields());
+            case Command.Hincrby hincrby -> databaseOfKey.apply(hincrby.key())
+                    .hashIncrementBy(hincrby.key(), hincrby.field(), parseLong(hincrby.increment()));
+            case Command.Zadd zadd -> {
+                final var add = SortedSetAdd.parse(zadd.arguments());
+                final var db = databaseOfKey.apply(zadd.key());
+                if (add.increment()) {
+                    db.sortedSetIncrement(zadd.key(), add);
+                } else {
+                    db.sortedSetAdd(zadd.key(), add);
+                }
+            }
+            case Command.Zincrby zincrby -> databaseOfKey.apply(zincrby.key()).sortedSetIncrement(
+                    zincrby.key(), SortedSetAdd.increment(zincrby.member(), zincrby.increment()));
+            case Command.Zrem zrem -> databaseOfKey.apply(zrem.key()).sortedSetRemove(zrem.key(), zrem.members());
+            case Command.Zremrangebyscore zremrangebyscore -> databaseOfKey.apply(zremrangebyscore.key())
+                    .sortedSetRemoveRangeByScore(zremrangebyscore.key(),
+                            ScoreRange.parse(zremrangebyscore.min(), zremrangebyscore.max()));
+            case Command.Expire expire -> {
+                final var time = parseLong(expire.time());
+                final var timeToLive = expire.commandType().equalsIgnoreCase("pexpire")
+                        ? ofMillis(time)
+                        : ofSeconds(time);
+                databaseOfKey.apply(expire.key()).expire(expire.key(), timeToLive);
+            }
+            case Command.Pfadd pfadd -> databaseOfKey.apply(pfadd.key()).hyperLogLogAdd(pfadd.key(), pfadd.values());
+            case Command.Pfmerge pfmerge -> Database.hyperLogLogMerge(pfmerge.destination(), pfmerge.sources(),
+                    databaseOfKey);
+            case Command.Setbit setbit -> databaseOfKey.apply(setbit.key())
+                    .setBit(setbit.key(), parseLong(setbit.offset()), setbit.value().equals("1"));
+            case Command.Bitop bitop -> Database.bitOperation(bitop.operation(), bitop.destination(), bitop.sources(),
+                    databaseOfKey);
+            default -> throw new IllegalStateException("Unexpected value: " + command);
+        }
+    }
+
     @Override
     public void runServer() {
         try (final var serverSocket = new ServerSocket(config.port())) {
@@ -136,8 +255,12 @@ final class Slave implements Server {
                     switch (command) {
                         case Command.Info ignored -> writeInfoResponse(writer);
                         case Command.Get get -> {
-                            final var storedValue = database.get(get.value());
-                            writeGetResponse(writer, storedValue);
+                            final var encodedValue = keyspace.execute(get.value(), db -> db.get(get.value(),
+                                    encoder::encodeAsBulkStringBytes,
+                                    encoder::encodeAsBulkStringBytes,
+                                    encoder::encodeAsBulkStringBytes,
+                                    encoder.encodeAsNullBulkStringBytes()));
+                            writeAndFlush(writer, encodedValue);
                         }
                         default -> throw new UnsupportedOperationException(
                                 "Command on replica [%s] not implemented".formatted(command));
@@ -203,10 +326,6 @@ final class Slave implements Server {
         writeAndFlush(writer, encoder.encodeAsSimpleString("OK"));
     }
 
-    private void writeGetResponse(OutputStream writer, Optional<String> value) {
-        writeAndFlush(writer, encoder.encodeAsBulkString(value));
-    }
-
     private void writeReplconfAckResponse(OutputStream writer, List<String> values) {
         writeAndFlush(writer, encoder.encodeAsArray(values));
     }
@@ -0,0 +1,99 @@
+import resp.Command;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Commands slower than the configured threshold, kept in a bounded ring buffer. Writers claim a slot with a single
+ * atomic increment and overwrite the oldest entry, readers never block writers.
+ */
+final class SlowLog {
+    private static final int MAX_ARGUMENTS = 32;
+    private static final int MAX_ARGUMENT_LENGTH = 128;
+    private final long slowerThanMicros;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong nextId;
+    private volatile long firstVisibleId;
+
+    record Entry(long id, long timestampSeconds, long durationMicros, List<String> arguments, String client) {
+        Entry {
+            requireNonNull(arguments);
+            requireNonNull(client);
+        }
+    }
+
+    /**
+     * @param slowerThanMicros commands taking longer are logged, negative value disables the log
+     * @param maxLength        number of newest entries to keep
+     */
+    SlowLog(long slowerThanMicros, int maxLength) {
+        this.slowerThanMicros = slowerThanMicros;
+        this.entries = new AtomicReferenceArray<>(Math.max(1, maxLength));
+        this.nextId = new AtomicLong();
+        this.firstVisibleId = 0;
+    }
+
+    void record(Socket socket, Command command, long nanos) {
+        final var micros = nanos / 1000;
+        if (slowerThanMicros < 0 || micros < slowerThanMicros) {
+            return;
+        }
+        final var id = nextId.getAndIncrement();
+        final var entry = new Entry(id, currentTimeMillis() / 1000, micros, truncate(command.elements()), client(socket));
+        entries.set((int) (id % entries.length()), entry);
+    }
+
+    /**
+     * @param count number of entries to return, negative returns all of them
+     * @return newest entries first
+     */
+    List<Entry> get(long count) {
+        final var result = new ArrayList<Entry>();
+        final var limit = count < 0 ? entries.length() : Math.min(count, entries.length());
+        final var newestId = nextId.get() - 1;
+        for (var id = newestId; id >= firstVisibleId && newestId - id < entries.length() && result.size() < limit; id--) {
+            final var entry = entries.get((int) (id % entries.length()));
+            // null when the writer claimed the id but has not stored the entry yet, or it was already overwritten
+            if (entry != null && entry.id() == id) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    int length() {
+        return get(-1).size();
+    }
+
+    void reset() {
+        firstVisibleId = nextId.get();
+    }
+
+    private static List<String> truncate(List<String> arguments) {
+        final var truncated = new ArrayList<String>();
+        for (var i = 0; i < arguments.size(); i++) {
+            if (i == MAX_ARGUMENTS - 1 && arguments.size() > MAX_ARGUMENTS) {
+                truncated.add("... (%d more arguments)".formatted(arguments.size() - i));
+                break;
+            }
+            final var argument = arguments.get(i);
+            if (argument.length() > MAX_ARGUMENT_LENGTH) {
+                truncated.add(argument.substring(0, MAX_ARGUMENT_LENGTH)
+                        + "... (%d more bytes)".formatted(argument.length() - MAX_ARGUMENT_LENGTH));
+            } else {
+                truncated.add(argument);
+            }
+        }
+        return truncated;
+    }
+
+    private static String client(Socket socket) {
+        return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+    }
+}
@@ -0,0 +1,86 @@
+import db.Database;
+import resp.Command;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * MULTI/EXEC state of one connection. Only the thread serving the connection touches it.
+ */
+final class Transaction {
+    private final Map<String, Long> watchedVersions;
+    private final List<Command> queued;
+    private boolean multi;
+    private boolean aborted;
+
+    Transaction() {
+        this.watchedVersions = new LinkedHashMap<>();
+        this.queued = new ArrayList<>();
+        this.multi = false;
+        this.aborted = false;
+    }
+
+    boolean inMulti() {
+        return multi;
+    }
+
+    void begin() {
+        multi = true;
+    }
+
+    void queue(Command command) {
+        queued.add(command);
+    }
+
+    /**
+     * Flags a command rejected while queueing, EXEC then discards the whole transaction.
+     */
+    void abort() {
+        if (multi) {
+            aborted = true;
+        }
+    }
+
+    boolean aborted() {
+        return aborted;
+    }
+
+    List<Command> queued() {
+        return queued;
+    }
+
+    boolean watches(String key) {
+        return watchedVersions.containsKey(key);
+    }
+
+    void watch(String key, long version) {
+        watchedVersions.putIfAbsent(key, version);
+    }
+
+    /**
+     * @return keys the connection registered with {@link Database#watch}, to be released when the transaction ends
+     */
+    Collection<String> watchedKeys() {
+        return watchedVersions.keySet();
+    }
+
+    /**
+     * @return keys of queued commands and watched keys, which the atomic section has to cover
+     */
+    List<String> keys() {
+        return Stream.concat(watchedVersions.keySet().stream(), queued.stream().flatMap(it -> it.keys().stream()))
+                .distinct()
+                .toList();
+    }
+
+    boolean watchedKeysChanged(Function<String, Database> databaseOfKey) {
+        return watchedVersions.entrySet()
+                .stream()
+                .anyMatch(it -> databaseOfKey.apply(it.getKey()).version(it.getKey()) != it.getValue());
+    }
+}
@@ -0,0 +1,56 @@
+package db;
+
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Optional.empty;
+
+/**
+ * Range of BITCOUNT and BITPOS: start [end [BYTE|BIT]], negative offsets count from the end of the value.
+ *
+ * @param start first byte or bit
+ * @param end   last byte or bit, included, empty when BITPOS got none
+ * @param bits  whether the offsets are bits instead of bytes
+ */
+public record BitRange(long start, Optional<Long> end, boolean bits) {
+    static final BitRange ALL = new BitRange(0, empty(), false);
+
+    /**
+     * @param arguments start, optional end and unit
+     * @throws IllegalArgumentException with the error reply for invalid arguments
+     */
+    public static BitRange parse(List<String> arguments) {
+        if (arguments.isEmpty() || arguments.size() > 3) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        final var bits = arguments.size() == 3 && switch (arguments.get(2).toLowerCase()) {
+            case "bit" -> true;
+            case "byte" -> false;
+            default -> throw new IllegalArgumentException("ERR syntax error");
+        };
+        try {
+            final var end = arguments.size() > 1 ? Optional.of(Long.parseLong(arguments.get(1))) : Optional.<Long>empty();
+            return new BitRange(Long.parseLong(arguments.get(0)), end, bits);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not an integer or out of range");
+        }
+    }
+
+    /**
+     * @param length of the value in bytes
+     * @return first and last bit of the range clamped to the value, empty when nothing is left
+     */
+    Optional<BitRange> within(int length) {
+        final var total = bits ? (long) length << 3 : length;
+        var first = start < 0 ? start + total : start;
+        var last = end.orElse(-1L) < 0 ? end.orElse(-1L) + total : end.get();
+        first = Math.max(0, first);
+        last = Math.min(total - 1, Math.max(0, last));
+        if (total == 0 || first > last) {
+            return empty();
+        }
+        return bits
+                ? Optional.of(new BitRange(first, Optional.of(last), true))
+                : Optional.of(new BitRange(first << 3, Optional.of((last << 3) + 7), true));
+    }
+}
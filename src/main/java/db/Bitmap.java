@@ -0,0 +1,230 @@
+package db;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * String value used as an array of bits by SETBIT and friends. Bit 0 is the most significant bit of the first byte
+ * like in Redis, so the bytes are packed into longs most significant first and bit i is bit 63 - i % 64 of word i / 64.
+ * Counting, searching and combining then work on whole words with {@link Long#bitCount} and
+ * {@link Long#numberOfLeadingZeros}, which the JIT compiles to single instructions. Bits past {@link #length} are
+ * always 0.
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class Bitmap {
+    // SETBIT accepts offsets below 2^32 like Redis, 512 MB
+    static final long MAX_BITS = 1L << 32;
+    private static final long[] EMPTY = new long[0];
+    private static final String MAGIC = "BITS";
+    private long[] words;
+    private int length;
+
+    Bitmap() {
+        this(EMPTY, 0);
+    }
+
+    private Bitmap(long[] words, int length) {
+        this.words = words;
+        this.length = length;
+    }
+
+    /**
+     * Bits of a string value, its UTF-8 bytes as the client sent them.
+     */
+    static Bitmap of(byte[] value) {
+        final var words = new long[wordsFor(value.length)];
+        for (var i = 0; i < value.length; i++) {
+            words[i >>> 3] |= (value[i] & 0xFFL) << (56 - ((i & 7) << 3));
+        }
+        return new Bitmap(words, value.length);
+    }
+
+    /**
+     * Reads the form written by {@link #serialize}.
+     *
+     * @return bitmap, empty when the string is not a serialized one
+     */
+    static Optional<Bitmap> parse(String value) {
+        if (!value.startsWith(MAGIC)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(of(Base64.getDecoder().decode(value.substring(MAGIC.length()))));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The bytes in Base64, the protocol is read as text so raw bytes that are not valid UTF-8 would not survive it.
+     */
+    String serialize() {
+        return MAGIC + Base64.getEncoder().encodeToString(bytes());
+    }
+
+    /**
+     * @return length in bytes, as reported by STRLEN
+     */
+    int length() {
+        return length;
+    }
+
+    boolean get(long offset) {
+        final var word = (int) (offset >>> 6);
+        return word < words.length && (words[word] & bit(offset)) != 0;
+    }
+
+    /**
+     * Grows the bitmap with zero bytes when the offset lies past its end.
+     *
+     * @return previous value of the bit
+     */
+    boolean set(long offset, boolean value) {
+        final var previous = get(offset);
+        if (offset >= (long) length << 3) {
+            grow((int) ((offset >>> 3) + 1));
+        }
+        final var word = (int) (offset >>> 6);
+        words[word] = value ? words[word] | bit(offset) : words[word] & ~bit(offset);
+        return previous;
+    }
+
+    /**
+     * @param start first bit, at least 0
+     * @param end   last bit, included, less than the length in bits and at least start
+     * @return number of set bits in the range
+     */
+    long count(long start, long end) {
+        final var first = (int) (start >>> 6);
+        final var last = (int) (end >>> 6);
+        if (first == last) {
+            return Long.bitCount(words[first] & mask(start, end));
+        }
+        var count = (long) Long.bitCount(words[first] & (-1L >>> (start & 63)));
+        for (var word = first + 1; word < last; word++) {
+            count += Long.bitCount(words[word]);
+        }
+        return count + Long.bitCount(words[last] & (-1L << (63 - (end & 63))));
+    }
+
+    /**
+     * @param start first bit, at least 0
+     * @param end   last bit, included, less than the length in bits and at least start
+     * @return offset of the first bit with the given value in the range, -1 when there is none
+     */
+    long position(boolean value, long start, long end) {
+        final var first = (int) (start >>> 6);
+        final var last = (int) (end >>> 6);
+        for (var word = first; word <= last; word++) {
+            var bits = value ? words[word] : ~words[word];
+            if (word == first) {
+                bits &= -1L >>> (start & 63);
+            }
+            if (word == last) {
+                bits &= -1L << (63 - (end & 63));
+            }
+            if (bits != 0) {
+                return ((long) word << 6) + Long.numberOfLeadingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * BITOP, shorter sources count as padded with zero bytes to the longest one.
+     *
+     * @param operation AND, OR, XOR or NOT, which takes a single source
+     * @param sources   bitmaps to combine, empty ones for missing keys
+     */
+    static Bitmap combine(String operation, List<Bitmap> sources) {
+        final var length = sources.stream().mapToInt(Bitmap::length).max().orElse(0);
+        final var words = new long[wordsFor(length)];
+        final var first = sources.get(0);
+        System.arraycopy(first.words, 0, words, 0, Math.min(first.words.length, words.length));
+        switch (operation) {
+            case "and" -> sources.stream().skip(1).forEach(source -> {
+                for (var word = 0; word < words.length; word++) {
+                    words[word] &= word < source.words.length ? source.words[word] : 0;
+                }
+            });
+            case "or" -> sources.stream().skip(1).forEach(source -> {
+                for (var word = 0; word < Math.min(words.length, source.words.length); word++) {
+                    words[word] |= source.words[word];
+                }
+            });
+            case "xor" -> sources.stream().skip(1).forEach(source -> {
+                for (var word = 0; word < Math.min(words.length, source.words.length); word++) {
+                    words[word] ^= source.words[word];
+                }
+            });
+            case "not" -> {
+                for (var word = 0; word < words.length; word++) {
+                    words[word] = ~words[word];
+                }
+            }
+            default -> throw new IllegalArgumentException("ERR syntax error");
+        }
+        final var combined = new Bitmap(words, length);
+        combined.clearTail();
+        return combined;
+    }
+
+    /**
+     * @return heap size of the bitmap and its words
+     */
+    long memoryUsage() {
+        return MemoryUsage.object(8) + MemoryUsage.array(words.length, 8);
+    }
+
+    /**
+     * @return the bytes written back to clients, they need not be valid UTF-8 once bits are set
+     */
+    byte[] bytes() {
+        final var bytes = new byte[length];
+        for (var i = 0; i < length; i++) {
+            bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the bytes as a string of one character per byte, their ISO-8859-1 decoding
+     */
+    @Override
+    public String toString() {
+        return new String(bytes(), ISO_8859_1);
+    }
+
+    private void grow(int newLength) {
+        final var needed = wordsFor(newLength);
+        if (needed > words.length) {
+            // doubling keeps a run of SETBITs with rising offsets linear
+            words = Arrays.copyOf(words, (int) Math.min(Math.max(needed, words.length * 2L), wordsFor(MAX_BITS >>> 3)));
+        }
+        length = newLength;
+    }
+
+    private void clearTail() {
+        final var bits = (long) length << 3;
+        if ((bits & 63) != 0) {
+            words[wordsFor(length) - 1] &= -1L << (64 - (bits & 63));
+        }
+    }
+
+    private static long bit(long offset) {
+        return 1L << (63 - (offset & 63));
+    }
+
+    private static long mask(long start, long end) {
+        return (-1L >>> (start & 63)) & (-1L << (63 - (end & 63)));
+    }
+
+    private static int wordsFor(long bytes) {
+        return (int) ((bytes + 7) >>> 3);
+    }
+}
@@ -0,0 +1,278 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import static java.util.Optional.empty;
+
+/**
+ * Entries of one stream in insertion order, stored in fixed size chunks like the listpacks of Redis. Appending fills
+ * the last chunk and opens a new one when it is full, so adding never copies entries. Trimming drops whole chunks from
+ * the head, exact trimming additionally clears single entries of the first chunk. Ids grow with every entry, so
+ * {@link #after} and {@link #get} find their position by binary search over the chunks and then within a chunk. Every
+ * chunk keeps the ids of its entries parsed next to them, so the search never parses an id string.
+ * <p>
+ * The consumer groups of the stream live here too, they are dropped together with the stream.
+ */
+final class ChunkedStream implements Iterable<Entries> {
+    static final int CHUNK_SIZE = 100;
+    // the record and the map of its pairs with their table
+    private static final int ENTRY_BYTES = 16 + 56 + 32;
+    private static final int MAP_NODE_BYTES = 40;
+    private final List<Chunk> chunks;
+    private final Map<String, ConsumerGroup> groups;
+    private long length;
+    private StreamId lastId;
+
+    private static final class Chunk {
+        private final Entries[] entries = new Entries[CHUNK_SIZE];
+        private final long[] millis = new long[CHUNK_SIZE];
+        private final long[] sequenceNumbers = new long[CHUNK_SIZE];
+        private int start;
+        private int end;
+
+        private int size() {
+            return end - start;
+        }
+
+        private Entries first() {
+            return entries[start];
+        }
+
+        private Entries last() {
+            return entries[end - 1];
+        }
+
+        private void add(Entries entry, StreamId id) {
+            millis[end] = id.millis();
+            sequenceNumbers[end] = id.sequenceNumber();
+            entries[end++] = entry;
+        }
+
+        /**
+         * Like {@link StreamId#compareTo}, for the id of the entry at the given position.
+         */
+        private int compare(int index, StreamId id) {
+            final var byMillis = Long.compare(millis[index], id.millis());
+            return byMillis != 0 ? byMillis : Long.compare(sequenceNumbers[index], id.sequenceNumber());
+        }
+
+        /**
+         * @return position of the first entry with an id greater than the given one, end when there is none
+         */
+        private int indexAfter(StreamId id) {
+            var low = start;
+            var high = end;
+            while (low < high) {
+                final var middle = (low + high) >>> 1;
+                if (compare(middle, id) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    ChunkedStream() {
+        this.chunks = new ArrayList<>();
+        this.groups = new LinkedHashMap<>();
+        this.length = 0;
+        this.lastId = StreamId.MIN;
+    }
+
+    void add(Entries entry) {
+        var chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.end == CHUNK_SIZE) {
+            chunk = new Chunk();
+            chunks.add(chunk);
+        }
+        lastId = StreamId.of(entry);
+        chunk.add(entry, lastId);
+        length++;
+    }
+
+    /**
+     * @return number of removed entries
+     */
+    long trim(StreamTrim trim) {
+        final var limit = trim.limit() == 0 ? Long.MAX_VALUE : trim.limit();
+        var removed = 0L;
+        var dropped = 0;
+        while (dropped < chunks.size()) {
+            final var chunk = chunks.get(dropped);
+            if (removed + chunk.size() <= limit && trim.removes(chunk.last(), length - chunk.size())) {
+                dropped++;
+                length -= chunk.size();
+                removed += chunk.size();
+                continue;
+            }
+            if (trim.approximate()) {
+                break;
+            }
+            while (chunk.size() > 0 && removed < limit && trim.removes(chunk.first(), length - 1)) {
+                chunk.entries[chunk.start++] = null;
+                length--;
+                removed++;
+            }
+            if (chunk.size() == 0) {
+                dropped++;
+                continue;
+            }
+            break;
+        }
+        chunks.subList(0, dropped).clear();
+        return removed;
+    }
+
+    /**
+     * @param id    entries with a greater id are returned
+     * @param count maximum number of entries
+     */
+    List<Entries> after(StreamId id, long count) {
+        final var result = new ArrayList<Entries>();
+        final var first = chunkAfter(id);
+        for (var index = first; index < chunks.size() && result.size() < count; index++) {
+            final var chunk = chunks.get(index);
+            final var from = index == first ? chunk.indexAfter(id) : chunk.start;
+            for (var i = from; i < chunk.end && result.size() < count; i++) {
+                result.add(chunk.entries[i]);
+            }
+        }
+        return result;
+    }
+
+    Optional<Entries> get(StreamId id) {
+        final var index = chunkAfter(id);
+        if (index == chunks.size()) {
+            return empty();
+        }
+        final var chunk = chunks.get(index);
+        // the entry with the id itself sits right before the first greater one
+        final var position = chunk.indexAfter(id) - 1;
+        if (position < chunk.start) {
+            return empty();
+        }
+        return chunk.compare(position, id) == 0 ? Optional.of(chunk.entries[position]) : empty();
+    }
+
+    /**
+     * @return index of the first chunk whose last entry has an id greater than or equal to the given one
+     */
+    private int chunkAfter(StreamId id) {
+        var low = 0;
+        var high = chunks.size();
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            final var chunk = chunks.get(middle);
+            if (chunk.compare(chunk.end - 1, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    Map<String, ConsumerGroup> groups() {
+        return groups;
+    }
+
+    long size() {
+        return length;
+    }
+
+    boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @return id of the last entry ever added, it stays when the entry is trimmed
+     */
+    StreamId lastId() {
+        return lastId;
+    }
+
+    Entries first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return chunks.get(0).first();
+    }
+
+    Entries last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return chunks.get(chunks.size() - 1).last();
+    }
+
+    List<Entries> toList() {
+        final var entries = new ArrayList<Entries>((int) Math.min(length, Integer.MAX_VALUE));
+        forEach(entries::add);
+        return entries;
+    }
+
+    /**
+     * Estimated heap size, like MEMORY USAGE of Redis only the first entries are sized and the others are assumed to be
+     * alike. Consumer groups are left out.
+     *
+     * @param samples number of entries to size, 0 for all
+     */
+    long memoryUsage(int samples) {
+        var sampled = 0L;
+        var sampledBytes = 0L;
+        for (var entry : this) {
+            if (samples != 0 && sampled == samples) {
+                break;
+            }
+            sampledBytes += ENTRY_BYTES + MemoryUsage.string(entry.id());
+            for (var pair : entry.pairs().entrySet()) {
+                sampledBytes += MAP_NODE_BYTES + MemoryUsage.string(pair.getKey()) + MemoryUsage.string(pair.getValue());
+            }
+            sampled++;
+        }
+        final var entries = sampled == 0 ? 0 : sampledBytes * length / sampled;
+        final var chunkBytes = MemoryUsage.object(20) + MemoryUsage.array(CHUNK_SIZE, 4)
+                + 2 * MemoryUsage.array(CHUNK_SIZE, 8);
+        return MemoryUsage.object(20) + chunks.size() * chunkBytes + entries;
+    }
+
+    void clear() {
+        chunks.clear();
+        groups.clear();
+        length = 0;
+    }
+
+    @Override
+    public Iterator<Entries> iterator() {
+        final var chunkIterator = chunks.iterator();
+        return new Iterator<>() {
+            private Chunk chunk;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                while ((chunk == null || index == chunk.end) && chunkIterator.hasNext()) {
+                    chunk = chunkIterator.next();
+                    index = chunk.start;
+                }
+                return chunk != null && index < chunk.end;
+            }
+
+            @Override
+            public Entries next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.entries[index++];
+            }
+        };
+    }
+}
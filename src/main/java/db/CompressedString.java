@@ -0,0 +1,53 @@
+package db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * String value stored as LZF compressed UTF-8, see {@link Lzf}. Reads decompress the whole value, so only values
+ * above the compression threshold of the {@link Database} are stored this way.
+ */
+final class CompressedString {
+    private final byte[] compressed;
+    private final int length;
+
+    private CompressedString(byte[] compressed, int length) {
+        this.compressed = compressed;
+        this.length = length;
+    }
+
+    /**
+     * Values that do not shrink by at least an eighth stay uncompressed, decompressing them would cost time for
+     * little memory.
+     *
+     * @return the value to store, compressed or the given string
+     */
+    static Object compress(String value) {
+        final var bytes = value.getBytes(UTF_8);
+        final var output = new byte[bytes.length - bytes.length / 8];
+        final var compressedLength = Lzf.compress(bytes, output);
+        if (compressedLength == 0) {
+            return value;
+        }
+        final var compressed = new byte[compressedLength];
+        System.arraycopy(output, 0, compressed, 0, compressedLength);
+        return new CompressedString(compressed, bytes.length);
+    }
+
+    String decompress() {
+        final var bytes = new byte[length];
+        Lzf.decompress(compressed, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    int originalBytes() {
+        return length;
+    }
+
+    int storedBytes() {
+        return compressed.length;
+    }
+
+    long memoryUsage() {
+        return MemoryUsage.object(8) + MemoryUsage.array(compressed.length, 1);
+    }
+}
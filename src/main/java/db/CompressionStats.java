@@ -0,0 +1,19 @@
+package db;
+
+/**
+ * Compressed string values of a database, see {@link Database#compressionStats}.
+ *
+ * @param values        number of values stored compressed
+ * @param originalBytes their size as UTF-8
+ * @param storedBytes   their compressed size
+ */
+public record CompressionStats(long values, long originalBytes, long storedBytes) {
+    public static final CompressionStats NONE = new CompressionStats(0, 0, 0);
+
+    public CompressionStats plus(CompressionStats other) {
+        return new CompressionStats(
+                values + other.values,
+                originalBytes + other.originalBytes,
+                storedBytes + other.storedBytes);
+    }
+}
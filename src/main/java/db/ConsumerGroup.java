@@ -0,0 +1,304 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Consumer group of one stream. The group remembers the last id delivered to any of its consumers and the pending
+ * entries list, entries delivered but not acknowledged yet. The list is kept twice, ordered by id for the whole group
+ * and for every consumer, so acknowledging, claiming and reading the history of a consumer are O(log n) lookups.
+ * <p>
+ * Like the stream it belongs to, a group is only touched by the thread of its shard.
+ */
+public final class ConsumerGroup {
+    private final ChunkedStream stream;
+    private final NavigableMap<StreamId, Pending> pending;
+    private final Map<String, Consumer> consumers;
+    private StreamId lastDelivered;
+
+    private static final class Pending {
+        private Consumer consumer;
+        private long deliveryTime;
+        private long deliveryCount;
+
+        private Pending(Consumer consumer, long deliveryTime) {
+            this.consumer = consumer;
+            this.deliveryTime = deliveryTime;
+            this.deliveryCount = 1;
+        }
+    }
+
+    private static final class Consumer {
+        private final String name;
+        private final NavigableMap<StreamId, Pending> pending;
+
+        private Consumer(String name) {
+            this.name = name;
+            this.pending = new TreeMap<>();
+        }
+    }
+
+    /**
+     * Entry of XPENDING, idle time is the time since the last delivery.
+     */
+    public record PendingEntry(String id, String consumer, long idleMillis, long deliveryCount) {
+        public PendingEntry {
+            requireNonNull(id);
+            requireNonNull(consumer);
+        }
+    }
+
+    /**
+     * Result of XAUTOCLAIM.
+     *
+     * @param nextId  start of the next call, 0-0 when the whole list was scanned
+     * @param claimed claimed entries still present in the stream
+     * @param deleted ids of pending entries no longer in the stream, removed from the list
+     */
+    public record AutoClaim(String nextId, List<Entries> claimed, List<String> deleted) {
+        public AutoClaim {
+            requireNonNull(nextId);
+            requireNonNull(claimed);
+            requireNonNull(deleted);
+        }
+    }
+
+    ConsumerGroup(ChunkedStream stream, StreamId lastDelivered) {
+        this.stream = requireNonNull(stream);
+        this.pending = new TreeMap<>();
+        this.consumers = new LinkedHashMap<>();
+        this.lastDelivered = requireNonNull(lastDelivered);
+    }
+
+    /**
+     * @return whether the consumer was created
+     */
+    public boolean createConsumer(String name) {
+        if (consumers.containsKey(name)) {
+            return false;
+        }
+        consumers.put(name, new Consumer(name));
+        return true;
+    }
+
+    /**
+     * @return number of pending entries the consumer had, they are dropped
+     */
+    public long deleteConsumer(String name) {
+        final var consumer = consumers.remove(name);
+        if (consumer == null) {
+            return 0;
+        }
+        consumer.pending.keySet().forEach(pending::remove);
+        return consumer.pending.size();
+    }
+
+    /**
+     * @param id last delivered id, $ for the last id of the stream
+     */
+    public void setLastDelivered(String id) {
+        lastDelivered = id.equals("$") ? stream.lastId() : StreamId.parse(id);
+    }
+
+    /**
+     * With > delivers entries never delivered to the group and moves the group cursor past them, they become pending
+     * for the consumer unless noAck. Any other id returns the pending entries of the consumer after that id, entries
+     * trimmed from the stream in the meantime come back without their fields.
+     *
+     * @return entries by id
+     */
+    public Map<String, Optional<Entries>> read(String consumerName, String id, long count, boolean noAck) {
+        final var consumer = consumers.computeIfAbsent(consumerName, Consumer::new);
+        final var now = currentTimeMillis();
+        final var result = new LinkedHashMap<String, Optional<Entries>>();
+        if (id.equals(">")) {
+            for (var entry : stream.after(lastDelivered, count)) {
+                final var entryId = StreamId.of(entry);
+                lastDelivered = entryId;
+                if (!noAck) {
+                    assign(entryId, consumer, now).deliveryCount = 1;
+                }
+                result.put(entry.id(), Optional.of(entry));
+            }
+            return result;
+        }
+        for (var delivered : consumer.pending.tailMap(StreamId.parse(id), false).entrySet()) {
+            if (result.size() >= count) {
+                break;
+            }
+            delivered.getValue().deliveryTime = now;
+            delivered.getValue().deliveryCount++;
+            result.put(delivered.getKey().toString(), stream.get(delivered.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * @return number of acknowledged entries that were pending
+     */
+    public long acknowledge(List<String> ids) {
+        final var parsed = ids.stream().map(StreamId::parse).toList();
+        var acknowledged = 0L;
+        for (var id : parsed) {
+            final var removed = pending.remove(id);
+            if (removed != null) {
+                removed.consumer.pending.remove(id);
+                acknowledged++;
+            }
+        }
+        return acknowledged;
+    }
+
+    public long pendingCount() {
+        return pending.size();
+    }
+
+    public Optional<String> firstPending() {
+        return pending.isEmpty() ? Optional.empty() : Optional.of(pending.firstKey().toString());
+    }
+
+    public Optional<String> lastPending() {
+        return pending.isEmpty() ? Optional.empty() : Optional.of(pending.lastKey().toString());
+    }
+
+    /**
+     * @return consumers with at least one pending entry and their number of pending entries
+     */
+    public Map<String, Long> pendingByConsumer() {
+        final var result = new LinkedHashMap<String, Long>();
+        consumers.values()
+                .stream()
+                .filter(it -> !it.pending.isEmpty())
+                .forEach(it -> result.put(it.name, (long) it.pending.size()));
+        return result;
+    }
+
+    /**
+     * @param start    smallest id, - for the first pending entry
+     * @param end      greatest id, + for the last pending entry
+     * @param consumer only entries of this consumer when present
+     */
+    public List<PendingEntry> pending(String start, String end, long count, long minIdleMillis, Optional<String> consumer) {
+        final var from = StreamId.parseBound(start);
+        final var to = StreamId.parseBound(end);
+        final var result = new ArrayList<PendingEntry>();
+        if (from.compareTo(to) > 0) {
+            return result;
+        }
+        final var source = consumer
+                .map(consumers::get)
+                .map(it -> it.pending)
+                .orElse(consumer.isPresent() ? new TreeMap<>() : pending);
+        final var now = currentTimeMillis();
+        for (var entry : source.subMap(from, true, to, true).entrySet()) {
+            if (result.size() >= count) {
+                break;
+            }
+            final var idle = now - entry.getValue().deliveryTime;
+            if (idle >= minIdleMillis) {
+                result.add(new PendingEntry(entry.getKey().toString(), entry.getValue().consumer.name, idle,
+                        entry.getValue().deliveryCount));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transfers pending entries idle for at least the given time to the consumer. Entries no longer in the stream are
+     * dropped from the list instead.
+     *
+     * @param justId whether to leave the delivery count unchanged
+     * @return claimed entries
+     */
+    public List<Entries> claim(String consumerName, long minIdleMillis, List<String> ids, boolean justId) {
+        final var parsed = ids.stream().map(StreamId::parse).toList();
+        final var consumer = consumers.computeIfAbsent(consumerName, Consumer::new);
+        final var now = currentTimeMillis();
+        final var claimed = new ArrayList<Entries>();
+        for (var id : parsed) {
+            final var delivered = pending.get(id);
+            if (delivered == null || now - delivered.deliveryTime < minIdleMillis) {
+                continue;
+            }
+            final var entry = stream.get(id);
+            if (entry.isEmpty()) {
+                drop(id);
+                continue;
+            }
+            claim(id, consumer, now, justId);
+            claimed.add(entry.get());
+        }
+        return claimed;
+    }
+
+    /**
+     * Like {@link #claim} for the pending entries from start on, looking at no more than ten times count entries.
+     */
+    public AutoClaim autoClaim(String consumerName, long minIdleMillis, String start, long count, boolean justId) {
+        final var from = StreamId.parseBound(start);
+        final var consumer = consumers.computeIfAbsent(consumerName, Consumer::new);
+        final var now = currentTimeMillis();
+        final var claimed = new ArrayList<Entries>();
+        final var deleted = new ArrayList<String>();
+        var attempts = count * 10;
+        var next = pending.ceilingKey(from);
+        while (next != null && attempts-- > 0 && claimed.size() < count) {
+            final var id = next;
+            next = pending.higherKey(id);
+            if (now - pending.get(id).deliveryTime < minIdleMillis) {
+                continue;
+            }
+            final var entry = stream.get(id);
+            if (entry.isEmpty()) {
+                drop(id);
+                deleted.add(id.toString());
+                continue;
+            }
+            claim(id, consumer, now, justId);
+            claimed.add(entry.get());
+        }
+        return new AutoClaim(next == null ? StreamId.MIN.toString() : next.toString(), claimed, deleted);
+    }
+
+    public int consumers() {
+        return consumers.size();
+    }
+
+    public String lastDelivered() {
+        return lastDelivered.toString();
+    }
+
+    private void claim(StreamId id, Consumer consumer, long now, boolean justId) {
+        final var claimed = assign(id, consumer, now);
+        if (!justId) {
+            claimed.deliveryCount++;
+        }
+    }
+
+    /**
+     * Makes the entry pending for the consumer, taking it away from its previous consumer.
+     */
+    private Pending assign(StreamId id, Consumer consumer, long now) {
+        final var assigned = pending.computeIfAbsent(id, it -> new Pending(consumer, now));
+        assigned.consumer.pending.remove(id);
+        assigned.consumer = consumer;
+        assigned.deliveryTime = now;
+        consumer.pending.put(id, assigned);
+        return assigned;
+    }
+
+    private void drop(StreamId id) {
+        final var removed = pending.remove(id);
+        if (removed != null) {
+            removed.consumer.pending.remove(id);
+        }
+    }
+}
@@ -1,60 +1,1165 @@
 package db;
 
+import java.math.BigDecimal;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Stack;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ObjIntConsumer;
 
-import static java.time.Duration.ofMinutes;
-import static java.time.Instant.now;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.HashMap.newHashMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
-import static java.util.Optional.ofNullable;
 
+/**
+ * Not thread-safe, every access goes through the {@link Keyspace} thread.
+ */
 public final class Database {
-    private final Map<String, String> simpleKeyValue;
-    private final Map<String, Instant> expiryKey;
-    private final StreamStore streamStore;
+    private final LazyFree lazyFree;
+    private final LazyFreePolicy lazyFreePolicy;
+    private final EncodingPolicy encodingPolicy;
+    /**
+     * Reads and writes of a key count in the LFU counter of its node, see {@link Dict#access}. Commands that only
+     * look at a key, like TYPE, EXISTS, TTL and OBJECT, leave it alone like the NOTOUCH commands of Redis.
+     */
+    private final LfuPolicy lfuPolicy;
+    private final TieringPolicy tieringPolicy;
+    /**
+     * String values, integers are stored as Long, see {@link SharedIntegers}, values of at least
+     * {@link EncodingPolicy#compressionThreshold} characters as {@link CompressedString} when compression pays off.
+     * HyperLogLogs and strings changed with SETBIT are kept as {@link HyperLogLog} and {@link Bitmap}. Values of at
+     * least {@link EncodingPolicy#offHeapThreshold} characters live in the {@link #slab}, see {@link OffHeapString}.
+     * Cold values are moved to the {@link #spillFile}, see {@link SpilledString}.
+     */
+    private Dict<Object> simpleKeyValue;
+    private Slab slab;
+    private SpillFile spillFile;
+    private long spillCursor;
+    private CompressionStats compressionStats;
+    /**
+     * Deadlines in {@link System#nanoTime} units, monotonic and compared as primitives so checking the expiry of a
+     * key on every read allocates nothing.
+     */
+    private Map<String, Long> expiryKey;
+    private Dict<Hash> hashes;
+    private Dict<SortedSet> sortedSets;
+    private StreamStore streamStore;
+    /**
+     * Versions of WATCHed keys only, like the watched_keys dict of Redis, so writes of keys nobody watches store
+     * nothing. A watched key keeps its entry when deleted, so a key created and deleted again after WATCH does not
+     * look untouched.
+     */
+    private final Map<String, Version> versions;
+    private long lastVersion;
+    private Consumer<String> keyChangedListener;
+    // longest string Redis embeds in its object header
+    private static final int EMBEDDED_STRING_LENGTH = 44;
+    private static final Duration MAX_TIME_TO_LIVE = Duration.ofDays(36_500);
+    // work of one cron step, about a millisecond
+    private static final int SPILL_BUCKETS_PER_CRON = 1024;
+    private static final int REHASH_BUCKETS_PER_CRON = 1024;
+    private static final int COMPACT_BYTES_PER_CRON = 1 << 20;
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
     public static final String EMPTY_DATABASE = "UkVESVMwMDEx+glyZWRpcy12ZXIFNy4yLjD6CnJlZGlzLWJpdHPAQPoFY3RpbWXCbQi8ZfoIdXNlZC1tZW3CsMQQAPoIYW9mLWJhc2XAAP/wbjv+wP9aog==";
 
     public Database() {
-        this.simpleKeyValue = newHashMap(16);
+        this(LazyFree.lazyFree(), LazyFreePolicy.SYNC, EncodingPolicy.DEFAULT);
+    }
+
+    public Database(LazyFree lazyFree, LazyFreePolicy lazyFreePolicy, EncodingPolicy encodingPolicy) {
+        this(lazyFree, lazyFreePolicy, encodingPolicy, LfuPolicy.DEFAULT);
+    }
+
+    public Database(LazyFree lazyFree, LazyFreePolicy lazyFreePolicy, EncodingPolicy encodingPolicy, LfuPolicy lfuPolicy) {
+        this(lazyFree, lazyFreePolicy, encodingPolicy, lfuPolicy, TieringPolicy.DISABLED);
+    }
+
+    public Database(
+            LazyFree lazyFree,
+            LazyFreePolicy lazyFreePolicy,
+            EncodingPolicy encodingPolicy,
+            LfuPolicy lfuPolicy,
+            TieringPolicy tieringPolicy
+    ) {
+        this.lazyFree = requireNonNull(lazyFree);
+        this.lazyFreePolicy = requireNonNull(lazyFreePolicy);
+        this.encodingPolicy = requireNonNull(encodingPolicy);
+        this.lfuPolicy = requireNonNull(lfuPolicy);
+        this.tieringPolicy = requireNonNull(tieringPolicy);
+        this.simpleKeyValue = new Dict<>();
+        this.slab = new Slab();
+        this.spillFile = new SpillFile(tieringPolicy.directory());
+        this.spillCursor = 0;
+        this.compressionStats = CompressionStats.NONE;
         this.expiryKey = newHashMap(16);
-        this.streamStore = StreamStore.streamStore();
+        this.hashes = new Dict<>();
+        this.sortedSets = new Dict<>();
+        this.streamStore = StreamStore.streamStore(lfuPolicy);
+        this.versions = newHashMap(16);
+        this.lastVersion = 0;
+        this.keyChangedListener = key -> {
+        };
     }
 
-    public synchronized void set(String key, String value) {
+    public void set(String key, String value) {
         requireNonNull(key);
         requireNonNull(value);
-        simpleKeyValue.put(key, value);
+        store(key, encode(value));
+        removeOtherTypes(key);
+        touch(key);
     }
 
-    public synchronized void set(String key, String value, Duration duration) {
+    public void set(String key, String value, Duration duration) {
         requireNonNull(key);
         requireNonNull(value);
         requireNonNull(duration);
-        simpleKeyValue.put(key, value);
-        expiryKey.put(key, now().plus(duration));
+        store(key, encode(value));
+        expiryKey.put(key, deadline(duration));
+        removeOtherTypes(key);
+        touch(key);
+    }
+
+    /**
+     * The string replaces a value of another type.
+     */
+    private void removeOtherTypes(String key) {
+        removeHash(key, lazyFreePolicy.lazyServerDel());
+        removeSortedSet(key, lazyFreePolicy.lazyServerDel());
+        removeStream(key, lazyFreePolicy.lazyServerDel());
+    }
+
+    public Optional<String> get(String key) {
+        return get(key, Function.identity(), SharedIntegers::toString);
+    }
+
+    /**
+     * Value of a string key in its stored form, so integers can be encoded without a String in between.
+     *
+     * @param ifString  applied to values stored as strings
+     * @param ifInteger applied to integer encoded values
+     * @return mapped value, empty for missing or expired keys
+     */
+    public <T> Optional<T> get(String key, Function<String, T> ifString, LongFunction<T> ifInteger) {
+        final var value = accessedValue(key);
+        if (value == null) {
+            return empty();
+        }
+        return Optional.of(value instanceof Long integer ? ifInteger.apply(integer) : ifString.apply(string(value)));
+    }
+
+    /**
+     * Like {@link #get(String, Function, LongFunction)} without wrapping the result in an Optional, for GET.
+     *
+     * @param ifBytes   applied to bitmaps, whose bytes need not be valid UTF-8 and must be written as they are
+     * @param ifMissing returned for missing or expired keys
+     */
+    public <T> T get(String key, Function<String, T> ifString, LongFunction<T> ifInteger, Function<byte[], T> ifBytes,
+                     T ifMissing) {
+        final var value = accessedValue(key);
+        return switch (value) {
+            case null -> ifMissing;
+            case Long integer -> ifInteger.apply(integer);
+            case Bitmap bitmap -> ifBytes.apply(bitmap.bytes());
+            default -> ifString.apply(string(value));
+        };
+    }
+
+    /**
+     * @return encoding as reported by OBJECT ENCODING: int, embstr, raw, lzf, offheap, spilled, listpack, hashtable,
+     * skiplist or stream, empty for missing keys
+     */
+    public Optional<String> encoding(String key) {
+        final var value = liveValue(key);
+        if (value == null) {
+            final var hash = hashes.get(key);
+            if (hash != null) {
+                return Optional.of(hash.encoding());
+            }
+            final var sortedSet = sortedSets.get(key);
+            if (sortedSet != null) {
+                return Optional.of(sortedSet.encoding());
+            }
+            return searchStreamStore(key) ? Optional.of("stream") : empty();
+        }
+        return Optional.of(switch (value) {
+            case Long integer -> "int";
+            case CompressedString compressed -> "lzf";
+            case OffHeapString offHeap -> "offheap";
+            case SpilledString spilled -> "spilled";
+            case HyperLogLog hyperLogLog -> "raw";
+            case Bitmap bitmap -> "raw";
+            default -> ((String) value).length() <= EMBEDDED_STRING_LENGTH ? "embstr" : "raw";
+        });
+    }
+
+    public CompressionStats compressionStats() {
+        return compressionStats;
+    }
+
+    public SlabStats slabStats() {
+        return slab.stats();
+    }
+
+    public SpillStats spillStats() {
+        return spillFile.stats();
+    }
+
+    /**
+     * Background work of the shard, called between commands about ten times a second like serverCron of Redis. A step
+     * moves the next buckets of the keyspace tables that are being rehashed, see {@link Dict}. With tiered storage it
+     * also spills the cold values of the next buckets of the string table and copies a megabyte of live values out of
+     * the emptiest segment of the spill file, so the commands queued behind it wait a millisecond at most.
+     */
+    public void cron() {
+        simpleKeyValue.rehash(REHASH_BUCKETS_PER_CRON);
+        hashes.rehash(REHASH_BUCKETS_PER_CRON);
+        sortedSets.rehash(REHASH_BUCKETS_PER_CRON);
+        streamStore.rehash(REHASH_BUCKETS_PER_CRON);
+        if (!tieringPolicy.enabled()) {
+            return;
+        }
+        spillCursor = simpleKeyValue.scan(spillCursor, SPILL_BUCKETS_PER_CRON, this::spillIfCold);
+        spillFile.compact(COMPACT_BYTES_PER_CRON);
+    }
+
+    /**
+     * Integers, HyperLogLogs and bitmaps stay in memory, they are small or updated in place.
+     *
+     * @return the value to keep in the table
+     */
+    private Object spillIfCold(String key, Object value, int frequency) {
+        if (!(value instanceof String || value instanceof CompressedString || value instanceof OffHeapString)
+                || LfuPolicy.idleMinutes(frequency) < tieringPolicy.coldMinutes()
+                || isDue(key)) {
+            return value;
+        }
+        final var bytes = string(value).getBytes(UTF_8);
+        if (!SpillFile.fits(bytes.length)) {
+            return value;
+        }
+        released(value);
+        return new SpilledString(spillFile.append(bytes));
+    }
+
+    /**
+     * Moves off-heap values together so that mostly empty slab pages can be released, for MEMORY PURGE.
+     *
+     * @return number of bytes of direct memory released
+     */
+    public long compactSlab() {
+        return slab.compact();
+    }
+
+    /**
+     * @return LFU counter of the key as reported by OBJECT FREQ, empty for missing keys
+     */
+    public Optional<Integer> frequency(String key) {
+        requireNonNull(key);
+        if (expireIfDue(key)) {
+            return empty();
+        }
+        var frequency = simpleKeyValue.frequency(key, lfuPolicy);
+        if (frequency < 0) {
+            frequency = hashes.frequency(key, lfuPolicy);
+        }
+        if (frequency < 0) {
+            frequency = sortedSets.frequency(key, lfuPolicy);
+        }
+        if (frequency < 0) {
+            frequency = streamStore.frequency(key);
+        }
+        return frequency < 0 ? empty() : Optional.of(frequency);
+    }
+
+    /**
+     * Estimated memory of a key and its value as reported by MEMORY USAGE, off-heap values count with their slot.
+     *
+     * @param samples number of fields, members or entries to size in large values, 0 for all
+     * @return size in bytes, empty for missing keys
+     */
+    public Optional<Long> memoryUsage(String key, int samples) {
+        requireNonNull(key);
+        if (expireIfDue(key)) {
+            return empty();
+        }
+        final var value = simpleKeyValue.get(key);
+        if (value != null) {
+            return Optional.of(keyUsage(key) + valueUsage(value));
+        }
+        final var hash = hashes.get(key);
+        if (hash != null) {
+            return Optional.of(keyUsage(key) + hash.memoryUsage(samples));
+        }
+        final var sortedSet = sortedSets.get(key);
+        if (sortedSet != null) {
+            return Optional.of(keyUsage(key) + sortedSet.memoryUsage(samples));
+        }
+        final var stream = streamStore.memoryUsage(key, samples);
+        return stream < 0 ? empty() : Optional.of(keyUsage(key) + stream);
+    }
+
+    /**
+     * Keys with the highest LFU counters, for HOTKEYS. Walks every key of the database.
+     */
+    public List<RankedKey> hotKeys(int count) {
+        final var top = new TopKeys(count);
+        final ObjIntConsumer<String> offer = (key, frequency) -> {
+            if (!isDue(key)) {
+                top.offer(key, frequency);
+            }
+        };
+        simpleKeyValue.forEachFrequency(lfuPolicy, offer);
+        hashes.forEachFrequency(lfuPolicy, offer);
+        sortedSets.forEachFrequency(lfuPolicy, offer);
+        streamStore.forEachFrequency(offer);
+        return top.toList();
+    }
+
+    /**
+     * Keys taking the most memory as estimated by {@link #memoryUsage}, for BIGKEYS. Walks every key of the database.
+     */
+    public List<RankedKey> bigKeys(int count, int samples) {
+        final var top = new TopKeys(count);
+        simpleKeyValue.forEach((key, value) -> {
+            if (!isDue(key)) {
+                top.offer(key, keyUsage(key) + valueUsage(value));
+            }
+        });
+        hashes.forEach((key, hash) -> {
+            if (!isDue(key)) {
+                top.offer(key, keyUsage(key) + hash.memoryUsage(samples));
+            }
+        });
+        sortedSets.forEach((key, sortedSet) -> {
+            if (!isDue(key)) {
+                top.offer(key, keyUsage(key) + sortedSet.memoryUsage(samples));
+            }
+        });
+        for (var key : streamStore.keys()) {
+            if (!isDue(key)) {
+                top.offer(key, keyUsage(key) + streamStore.memoryUsage(key, samples));
+            }
+        }
+        return top.toList();
+    }
+
+    public KeyspaceStats keyspaceStats() {
+        final var now = System.nanoTime();
+        var ttlMillis = 0L;
+        for (long deadline : expiryKey.values()) {
+            ttlMillis += Math.max(0, deadline - now) / 1_000_000;
+        }
+        final var keys = simpleKeyValue.size() + hashes.size() + sortedSets.size() + streamStore.size();
+        return new KeyspaceStats(keys, expiryKey.size(), ttlMillis);
+    }
+
+    /**
+     * @return size of the key and its node in the table
+     */
+    private static long keyUsage(String key) {
+        return MemoryUsage.string(key) + Dict.NODE_BYTES;
+    }
+
+    private long valueUsage(Object value) {
+        return switch (value) {
+            case Long integer -> MemoryUsage.boxed();
+            case CompressedString compressed -> compressed.memoryUsage();
+            case OffHeapString offHeap -> MemoryUsage.object(4) + slab.allocatedSize(offHeap.handle());
+            // the handle and its address, the value is on disk
+            case SpilledString spilled -> MemoryUsage.object(4) + 8;
+            case HyperLogLog hyperLogLog -> hyperLogLog.memoryUsage();
+            case Bitmap bitmap -> bitmap.memoryUsage();
+            default -> MemoryUsage.string((String) value);
+        };
+    }
+
+    /**
+     * Adds to an integer value, a missing key counts as 0. The expiry of the key stays.
+     *
+     * @return new value
+     * @throws IllegalArgumentException with the error reply when the value is no integer or the result overflows
+     */
+    public long incrementBy(String key, long increment) {
+        final var value = accessedValue(key);
+        if (value == null && exists(key)) {
+            throw new IllegalArgumentException(WRONG_TYPE);
+        }
+        final long current;
+        if (value == null) {
+            current = 0;
+        } else if (value instanceof Long integer) {
+            current = integer;
+        } else if (SharedIntegers.isInteger(string(value))) {
+            current = Long.parseLong(string(value));
+        } else {
+            throw new IllegalArgumentException("ERR value is not an integer or out of range");
+        }
+        final long updated;
+        try {
+            updated = Math.addExact(current, increment);
+        } catch (ArithmeticException overflow) {
+            throw new IllegalArgumentException("ERR increment or decrement would overflow");
+        }
+        store(key, SharedIntegers.valueOf(updated));
+        touch(key);
+        return updated;
+    }
+
+    /**
+     * Floating point counterpart of {@link #incrementBy}, the result is stored in its shortest decimal form.
+     *
+     * @return new value
+     * @throws IllegalArgumentException with the error reply for values that are no number or a non-finite result
+     */
+    public String incrementByFloat(String key, double increment) {
+        final var value = accessedValue(key);
+        if (value == null && exists(key)) {
+            throw new IllegalArgumentException(WRONG_TYPE);
+        }
+        final double current;
+        try {
+            current = value == null ? 0 : value instanceof Long integer ? integer : parseFloat(string(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not a valid float");
+        }
+        final var updated = current + increment;
+        if (Double.isNaN(updated) || Double.isInfinite(updated)) {
+            throw new IllegalArgumentException("ERR increment would produce NaN or Infinity");
+        }
+        final var formatted = BigDecimal.valueOf(updated).stripTrailingZeros().toPlainString();
+        store(key, SharedIntegers.encode(formatted));
+        touch(key);
+        return formatted;
+    }
+
+    /**
+     * Parses like Redis: no surrounding whitespace and no hexadecimal, infinity or NaN.
+     */
+    public static double parseFloat(String value) {
+        if (value.isEmpty() || Character.isWhitespace(value.charAt(0))
+                || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            throw new NumberFormatException(value);
+        }
+        final var parsed = Double.parseDouble(value);
+        if (Double.isNaN(parsed) || Double.isInfinite(parsed) || value.endsWith("d") || value.endsWith("D")
+                || value.endsWith("f") || value.endsWith("F") || value.contains("x") || value.contains("X")) {
+            throw new NumberFormatException(value);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return stored value, null for missing keys and for expired keys, which are removed
+     */
+    private Object liveValue(String key) {
+        requireNonNull(key);
+        return expireIfDue(key) ? null : simpleKeyValue.get(key);
     }
 
-    public synchronized Optional<String> get(String key) {
+    /**
+     * Like {@link #liveValue} and counts an access of the key.
+     */
+    private Object accessedValue(String key) {
         requireNonNull(key);
-        final var expiryTime = expiryKey.getOrDefault(key, now().plus(ofMinutes(2)));
-        if (now().isAfter(expiryTime)) {
-            simpleKeyValue.remove(key);
+        if (expireIfDue(key)) {
+            return null;
+        }
+        final var value = simpleKeyValue.access(key, lfuPolicy);
+        return value instanceof SpilledString spilled ? faultIn(key, spilled) : value;
+    }
+
+    /**
+     * Reads a spilled value back into memory, it is spilled again once it turns cold.
+     *
+     * @return the value as stored now
+     */
+    private Object faultIn(String key, SpilledString spilled) {
+        final var value = encode(new String(spillFile.read(spilled.handle()), UTF_8));
+        // frees the spilled value
+        stored(simpleKeyValue.put(key, value), value);
+        return value;
+    }
+
+    /**
+     * Lazy expiry, every lookup removes the key first when its time is up, whatever its type.
+     *
+     * @return whether the key expired
+     */
+    private boolean expireIfDue(String key) {
+        if (!isDue(key)) {
+            return false;
+        }
+        delete(key, lazyFreePolicy.lazyServerDel());
+        return true;
+    }
+
+    /**
+     * Like {@link #expireIfDue} without removing the key, for walks over a table that must not change.
+     */
+    private boolean isDue(String key) {
+        final var deadline = expiryKey.get(key);
+        return deadline != null && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * An off-heap value is not compressed as well, reads would have to copy it on the heap twice.
+     */
+    private Object encode(String value) {
+        final var encoded = SharedIntegers.encode(value);
+        if (encoded instanceof Long) {
+            return encoded;
+        }
+        final var offHeapThreshold = encodingPolicy.offHeapThreshold();
+        if (offHeapThreshold != 0 && value.length() >= offHeapThreshold) {
+            return new OffHeapString(slab.allocate(value.getBytes(UTF_8)));
+        }
+        final var threshold = encodingPolicy.compressionThreshold();
+        if (threshold == 0 || value.length() < threshold) {
+            return encoded;
+        }
+        return CompressedString.compress(value);
+    }
+
+    private String string(Object value) {
+        return switch (value) {
+            case CompressedString compressed -> compressed.decompress();
+            case OffHeapString offHeap -> new String(slab.read(offHeap.handle()), UTF_8);
+            case SpilledString spilled -> new String(spillFile.read(spilled.handle()), UTF_8);
+            case HyperLogLog hyperLogLog -> hyperLogLog.serialize();
+            case Bitmap bitmap -> new String(bitmap.bytes(), UTF_8);
+            case Long integer -> SharedIntegers.toString(integer);
+            default -> (String) value;
+        };
+    }
+
+    private void store(String key, Object value) {
+        stored(simpleKeyValue.put(key, value, lfuPolicy), value);
+    }
+
+    private void stored(Object previous, Object value) {
+        released(previous);
+        if (value instanceof CompressedString compressed) {
+            compressionStats = compressionStats.plus(
+                    new CompressionStats(1, compressed.originalBytes(), compressed.storedBytes()));
+        }
+    }
+
+    private boolean unstore(String key) {
+        final var removed = simpleKeyValue.remove(key);
+        released(removed);
+        return removed != null;
+    }
+
+    private void released(Object value) {
+        if (value instanceof OffHeapString offHeap) {
+            slab.free(offHeap.handle());
+        } else if (value instanceof SpilledString spilled) {
+            spillFile.free(spilled.handle());
+        } else if (value instanceof CompressedString compressed) {
+            compressionStats = compressionStats.plus(
+                    new CompressionStats(-1, -compressed.originalBytes(), -compressed.storedBytes()));
+        }
+    }
+
+    /**
+     * Like {@link #get} without decoding the value.
+     */
+    private boolean containsString(String key) {
+        return liveValue(key) != null;
+    }
+
+    /**
+     * MGET, every value mapped like {@link #get(String, Function, LongFunction, Function, Object)} so bitmaps keep
+     * their bytes.
+     *
+     * @param keys to look up, all owned by this database
+     * @return mapped value of every key, ifMissing for missing or expired keys
+     */
+    public <T> Map<String, T> getAll(Collection<String> keys, Function<String, T> ifString, LongFunction<T> ifInteger,
+                                     Function<byte[], T> ifBytes, T ifMissing) {
+        final var values = new LinkedHashMap<String, T>();
+        keys.forEach(key -> values.put(key, get(key, ifString, ifInteger, ifBytes, ifMissing)));
+        return values;
+    }
+
+    /**
+     * MSET, the caller runs it in {@link Keyspace#runAtomically} covering every key so no reader sees some of the
+     * keys set and others not.
+     *
+     * @param keysWithValues to store
+     * @param databaseOfKey  database owning a given key
+     */
+    public static void setAll(Map<String, String> keysWithValues, Function<String, Database> databaseOfKey) {
+        keysWithValues.forEach((key, value) -> databaseOfKey.apply(key).set(key, value));
+    }
+
+    /**
+     * All or nothing across databases, the caller runs it in {@link Keyspace#executeAtomically} covering every key.
+     *
+     * @param keysWithValues to store
+     * @param databaseOfKey  database owning a given key
+     * @return true when no key existed and all were stored
+     */
+    public static boolean setAllIfNoneExists(Map<String, String> keysWithValues, Function<String, Database> databaseOfKey) {
+        if (keysWithValues.keySet().stream().anyMatch(key -> databaseOfKey.apply(key).exists(key))) {
+            return false;
+        }
+        setAll(keysWithValues, databaseOfKey);
+        return true;
+    }
+
+    /**
+     * @return number of new fields, fields that only got a new value do not count
+     * @throws IllegalArgumentException with the error reply when the key holds another type
+     */
+    public long hashSet(String key, Map<String, String> fieldsWithValues) {
+        final var hash = hash(key).orElseGet(() -> {
+            final var created = new Hash(encodingPolicy);
+            hashes.put(key, created, lfuPolicy);
+            return created;
+        });
+        var added = 0L;
+        for (var entry : fieldsWithValues.entrySet()) {
+            if (hash.put(entry.getKey(), entry.getValue())) {
+                added++;
+            }
+        }
+        touch(key);
+        return added;
+    }
+
+    public Optional<String> hashGet(String key, String field) {
+        return hash(key).flatMap(it -> it.get(field));
+    }
+
+    /**
+     * @return value of every field, empty for missing fields
+     */
+    public List<Optional<String>> hashGetAll(String key, List<String> fields) {
+        final var hash = hash(key);
+        return fields.stream()
+                .map(field -> hash.flatMap(it -> it.get(field)))
+                .toList();
+    }
+
+    public Map<String, String> hashEntries(String key) {
+        return hash(key).map(Hash::toMap).orElseGet(Map::of);
+    }
+
+    /**
+     * The key is removed together with the last field.
+     *
+     * @return number of removed fields
+     */
+    public long hashDelete(String key, List<String> fields) {
+        final var hash = hash(key);
+        if (hash.isEmpty()) {
+            return 0;
+        }
+        var removed = 0L;
+        for (var field : fields) {
+            if (hash.get().remove(field)) {
+                removed++;
+            }
+        }
+        if (hash.get().isEmpty()) {
+            hashes.remove(key);
+            expiryKey.remove(key);
+            removed(key);
+        } else if (removed > 0) {
+            touch(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Adds to an integer field, a missing field counts as 0.
+     *
+     * @return new value
+     * @throws IllegalArgumentException with the error reply when the field is no integer or the result overflows
+     */
+    public long hashIncrementBy(String key, String field, long increment) {
+        final var value = hashGet(key, field).orElse("0");
+        if (!SharedIntegers.isInteger(value)) {
+            throw new IllegalArgumentException("ERR hash value is not an integer");
+        }
+        final long updated;
+        try {
+            updated = Math.addExact(Long.parseLong(value), increment);
+        } catch (ArithmeticException overflow) {
+            throw new IllegalArgumentException("ERR increment or decrement would overflow");
+        }
+        hashSet(key, Map.of(field, SharedIntegers.toString(updated)));
+        return updated;
+    }
+
+    /**
+     * @param cursor 0 to start, then the cursor of the previous page
+     * @param count  hint for the number of fields to return
+     */
+    public HashPage hashScan(String key, long cursor, int count) {
+        return hash(key).map(it -> it.scan(cursor, count)).orElseGet(() -> new HashPage(0, Map.of()));
+    }
+
+    /**
+     * @return hash of the key, empty when the key does not exist
+     * @throws IllegalArgumentException with the error reply when the key holds another type
+     */
+    private Optional<Hash> hash(String key) {
+        requireNonNull(key);
+        expireIfDue(key);
+        final var hash = hashes.access(key, lfuPolicy);
+        if (hash != null) {
+            return Optional.of(hash);
+        }
+        if (exists(key)) {
+            throw new IllegalArgumentException(WRONG_TYPE);
+        }
+        return empty();
+    }
+
+    /**
+     * ZADD without INCR.
+     *
+     * @return number of new members, with CH also the members that got a new score
+     * @throws IllegalArgumentException with the error reply when the key holds another type
+     */
+    public long sortedSetAdd(String key, SortedSetAdd add) {
+        var sortedSet = sortedSet(key).orElse(null);
+        var added = 0L;
+        var changed = 0L;
+        for (var entry : add.membersWithScores().entrySet()) {
+            final var current = sortedSet == null ? Optional.<Double>empty() : sortedSet.score(entry.getKey());
+            final double score = entry.getValue();
+            if (!add.allows(current, score) || (current.isPresent() && current.get() == score)) {
+                continue;
+            }
+            if (sortedSet == null) {
+                sortedSet = createSortedSet(key);
+            }
+            sortedSet.put(entry.getKey(), score);
+            if (current.isEmpty()) {
+                added++;
+            } else {
+                changed++;
+            }
+        }
+        if (added + changed > 0) {
+            touch(key);
+        }
+        return add.countChanged() ? added + changed : added;
+    }
+
+    /**
+     * ZINCRBY and ZADD with INCR, a missing member counts as 0.
+     *
+     * @return new score, empty when the options of ZADD prevented the update
+     * @throws IllegalArgumentException with the error reply when the key holds another type or the result is NaN
+     */
+    public Optional<Double> sortedSetIncrement(String key, SortedSetAdd add) {
+        final var sortedSet = sortedSet(key);
+        final var entry = add.membersWithScores().entrySet().iterator().next();
+        final var current = sortedSet.flatMap(it -> it.score(entry.getKey()));
+        final var updated = current.orElse(0.0) + entry.getValue();
+        if (Double.isNaN(updated)) {
+            throw new IllegalArgumentException("ERR resulting score is not a number (NaN)");
+        }
+        if (!add.allows(current, updated)) {
+            return empty();
+        }
+        sortedSet.orElseGet(() -> createSortedSet(key)).put(entry.getKey(), updated);
+        touch(key);
+        return Optional.of(updated);
+    }
+
+    public Optional<Double> sortedSetScore(String key, String member) {
+        return sortedSet(key).flatMap(it -> it.score(member));
+    }
+
+    public long sortedSetSize(String key) {
+        return sortedSet(key).map(SortedSet::size).orElse(0L);
+    }
+
+    /**
+     * @param reverse whether ranks count from the highest score
+     * @return rank starting with 0, empty when the member is missing
+     */
+    public Optional<Long> sortedSetRank(String key, String member, boolean reverse) {
+        return sortedSet(key).flatMap(it -> it.rank(member).map(rank -> reverse ? it.size() - 1 - rank : rank));
+    }
+
+    /**
+     * @param start   first rank, negative counts from the end
+     * @param stop    last rank, included, negative counts from the end
+     * @param reverse whether ranks count from the highest score
+     */
+    public List<ScoredMember> sortedSetRange(String key, long start, long stop, boolean reverse) {
+        final var sortedSet = sortedSet(key);
+        if (sortedSet.isEmpty()) {
+            return List.of();
+        }
+        final var size = sortedSet.get().size();
+        final var first = Math.max(0, start < 0 ? start + size : start);
+        final var last = Math.min(size - 1, stop < 0 ? stop + size : stop);
+        if (first > last || first >= size) {
+            return List.of();
+        }
+        return sortedSet.get().range(first, last, reverse);
+    }
+
+    /**
+     * @param offset  members in the range to skip
+     * @param count   maximum number of members, negative for all
+     * @param reverse whether to start with the highest score
+     */
+    public List<ScoredMember> sortedSetRangeByScore(String key, ScoreRange range, long offset, long count, boolean reverse) {
+        return sortedSet(key).map(it -> it.rangeByScore(range, offset, count, reverse)).orElseGet(List::of);
+    }
+
+    /**
+     * The key is removed together with the last member.
+     *
+     * @return number of removed members
+     */
+    public long sortedSetRemove(String key, List<String> members) {
+        final var sortedSet = sortedSet(key);
+        if (sortedSet.isEmpty()) {
+            return 0;
+        }
+        var removed = 0L;
+        for (var member : members) {
+            if (sortedSet.get().remove(member)) {
+                removed++;
+            }
+        }
+        return removedMembers(key, sortedSet.get(), removed);
+    }
+
+    /**
+     * The key is removed together with the last member.
+     *
+     * @return number of removed members
+     */
+    public long sortedSetRemoveRangeByScore(String key, ScoreRange range) {
+        final var sortedSet = sortedSet(key);
+        return sortedSet.map(it -> removedMembers(key, it, it.removeRangeByScore(range))).orElse(0L);
+    }
+
+    private long removedMembers(String key, SortedSet sortedSet, long removed) {
+        if (sortedSet.isEmpty()) {
+            sortedSets.remove(key);
             expiryKey.remove(key);
+            removed(key);
+        } else if (removed > 0) {
+            touch(key);
+        }
+        return removed;
+    }
+
+    private SortedSet createSortedSet(String key) {
+        final var created = new SortedSet(encodingPolicy);
+        sortedSets.put(key, created, lfuPolicy);
+        return created;
+    }
+
+    /**
+     * @return sorted set of the key, empty when the key does not exist
+     * @throws IllegalArgumentException with the error reply when the key holds another type
+     */
+    private Optional<SortedSet> sortedSet(String key) {
+        requireNonNull(key);
+        expireIfDue(key);
+        final var sortedSet = sortedSets.access(key, lfuPolicy);
+        if (sortedSet != null) {
+            return Optional.of(sortedSet);
+        }
+        if (exists(key)) {
+            throw new IllegalArgumentException(WRONG_TYPE);
+        }
+        return empty();
+    }
+
+    /**
+     * Sets the time to live of a key of any type, a time that is not positive deletes the key right away.
+     *
+     * @return whether the key exists
+     */
+    public boolean expire(String key, Duration timeToLive) {
+        requireNonNull(timeToLive);
+        if (!exists(key)) {
+            return false;
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            delete(key, lazyFreePolicy.lazyServerDel());
+            return true;
+        }
+        expiryKey.put(key, deadline(timeToLive));
+        touch(key);
+        return true;
+    }
+
+    /**
+     * @return remaining time to live in milliseconds, -1 for keys without expiry and -2 for missing keys
+     */
+    public long ttl(String key) {
+        if (!exists(key)) {
+            return -2;
+        }
+        final var deadline = expiryKey.get(key);
+        return deadline == null ? -1 : Math.max(0, (deadline - System.nanoTime()) / 1_000_000);
+    }
+
+    /**
+     * Times to live beyond a century are cut to one, the difference of two nano times only holds 292 years.
+     */
+    private static long deadline(Duration timeToLive) {
+        final var capped = timeToLive.compareTo(MAX_TIME_TO_LIVE) < 0 ? timeToLive : MAX_TIME_TO_LIVE;
+        return System.nanoTime() + capped.toNanos();
+    }
+
+    /**
+     * PFADD, the key is created even without elements.
+     *
+     * @return whether the key was created or the estimate may have changed
+     * @throws IllegalArgumentException with the error reply when the key holds no HyperLogLog
+     */
+    public boolean hyperLogLogAdd(String key, List<String> elements) {
+        final var existing = hyperLogLog(key);
+        final var hyperLogLog = existing.orElseGet(() -> new HyperLogLog(encodingPolicy));
+        var changed = existing.isEmpty();
+        for (var element : elements) {
+            changed |= hyperLogLog.add(element);
+        }
+        if (existing.isEmpty()) {
+            store(key, hyperLogLog);
+        }
+        if (changed) {
+            touch(key);
+        }
+        return changed;
+    }
+
+    /**
+     * PFCOUNT, a single key answers from the cached estimate, several keys from the union of their registers. The
+     * caller runs it in {@link Keyspace#executeAtomically} covering every key.
+     *
+     * @param keys          at least one key
+     * @param databaseOfKey database owning a given key
+     * @return estimated number of distinct elements, 0 for missing keys
+     */
+    public static long hyperLogLogCount(List<String> keys, Function<String, Database> databaseOfKey) {
+        if (keys.size() == 1) {
+            final var key = keys.get(0);
+            return databaseOfKey.apply(key).hyperLogLog(key).map(HyperLogLog::count).orElse(0L);
+        }
+        final var registers = new byte[HyperLogLog.REGISTERS];
+        keys.forEach(key -> databaseOfKey.apply(key).hyperLogLog(key).ifPresent(it -> it.mergeInto(registers)));
+        return HyperLogLog.count(registers);
+    }
+
+    /**
+     * PFMERGE, the destination becomes the union of itself and the sources. The caller runs it in
+     * {@link Keyspace#executeAtomically} covering every key.
+     */
+    public static void hyperLogLogMerge(String destination, List<String> sources, Function<String, Database> databaseOfKey) {
+        final var registers = new byte[HyperLogLog.REGISTERS];
+        final var target = databaseOfKey.apply(destination);
+        target.hyperLogLog(destination).ifPresent(it -> it.mergeInto(registers));
+        sources.forEach(key -> databaseOfKey.apply(key).hyperLogLog(key).ifPresent(it -> it.mergeInto(registers)));
+        target.store(destination, HyperLogLog.of(registers, target.encodingPolicy));
+        target.touch(destination);
+    }
+
+    /**
+     * A serialized HyperLogLog written with SET, as MIGRATE does, is taken over on first use.
+     *
+     * @return HyperLogLog of the key, empty when the key does not exist
+     * @throws IllegalArgumentException with the error reply when the key holds anything else
+     */
+    private Optional<HyperLogLog> hyperLogLog(String key) {
+        final var value = accessedValue(key);
+        if (value == null) {
+            if (exists(key)) {
+                throw new IllegalArgumentException(WRONG_TYPE);
+            }
+            return empty();
+        }
+        if (value instanceof HyperLogLog hyperLogLog) {
+            return Optional.of(hyperLogLog);
+        }
+        final var parsed = HyperLogLog.parse(string(value), encodingPolicy);
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("WRONGTYPE Key is not a valid HyperLogLog string value.");
+        }
+        store(key, parsed.get());
+        return parsed;
+    }
+
+    /**
+     * SETBIT, a string value is taken over as a {@link Bitmap} and grows with zero bytes as needed.
+     *
+     * @return previous value of the bit
+     * @throws IllegalArgumentException with the error reply for offsets out of range or keys of another type
+     */
+    public boolean setBit(String key, long offset, boolean value) {
+        checkBitOffset(offset);
+        final var bitmap = bitmap(key).orElseGet(Bitmap::new);
+        final var previous = bitmap.set(offset, value);
+        if (simpleKeyValue.get(key) != bitmap) {
+            store(key, bitmap);
+        }
+        touch(key);
+        return previous;
+    }
+
+    public boolean getBit(String key, long offset) {
+        checkBitOffset(offset);
+        return bitmap(key).map(it -> it.get(offset)).orElse(false);
+    }
+
+    /**
+     * @param range bytes or bits to count, empty for the whole value
+     * @return number of set bits
+     */
+    public long bitCount(String key, Optional<BitRange> range) {
+        return bitmap(key)
+                .flatMap(bitmap -> range.orElse(BitRange.ALL)
+                        .within(bitmap.length())
+                        .map(bits -> bitmap.count(bits.start(), bits.end().orElseThrow())))
+                .orElse(0L);
+    }
+
+    /**
+     * BITPOS, like Redis a missing key holds only clear bits, and looking for a clear bit without an end finds the
+     * first bit past the value when the range has none.
+     *
+     * @param range bytes or bits to search, empty for the whole value
+     * @return offset of the first bit with the given value, -1 when there is none
+     */
+    public long bitPosition(String key, boolean value, Optional<BitRange> range) {
+        final var bitmap = bitmap(key);
+        if (bitmap.isEmpty()) {
+            return value ? -1 : 0;
+        }
+        final var bits = range.orElse(BitRange.ALL).within(bitmap.get().length());
+        if (bits.isEmpty()) {
+            return -1;
+        }
+        final var end = bits.get().end().orElseThrow();
+        final var position = bitmap.get().position(value, bits.get().start(), end);
+        final var endGiven = range.flatMap(BitRange::end).isPresent();
+        return position < 0 && !value && !endGiven ? end + 1 : position;
+    }
+
+    /**
+     * BITOP, the destination is replaced by the result, or deleted when all sources are missing or empty. The caller
+     * runs it in {@link Keyspace#executeAtomically} covering every key.
+     *
+     * @param operation AND, OR, XOR or NOT
+     * @return length of the result in bytes
+     */
+    public static long bitOperation(String operation, String destination, List<String> sources,
+                                    Function<String, Database> databaseOfKey) {
+        final var lowerCase = operation.toLowerCase();
+        if (!List.of("and", "or", "xor", "not").contains(lowerCase)) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        if (lowerCase.equals("not") && sources.size() != 1) {
+            throw new IllegalArgumentException("ERR BITOP NOT must be called with a single source key.");
+        }
+        final var bitmaps = sources.stream()
+                .map(key -> databaseOfKey.apply(key).bitmap(key).orElseGet(Bitmap::new))
+                .toList();
+        final var result = Bitmap.combine(lowerCase, bitmaps);
+        final var target = databaseOfKey.apply(destination);
+        if (result.length() == 0) {
+            target.delete(destination);
+            return 0;
+        }
+        target.store(destination, result);
+        target.expiryKey.remove(destination);
+        target.removeOtherTypes(destination);
+        target.touch(destination);
+        return result.length();
+    }
+
+    private static void checkBitOffset(long offset) {
+        if (offset < 0 || offset >= Bitmap.MAX_BITS) {
+            throw new IllegalArgumentException("ERR bit offset is not an integer or out of range");
+        }
+    }
+
+    /**
+     * @return bits of a string key, a copy unless it is stored as a bitmap already, empty when the key does not exist
+     * @throws IllegalArgumentException with the error reply when the key holds another type
+     */
+    private Optional<Bitmap> bitmap(String key) {
+        final var value = accessedValue(key);
+        if (value == null) {
+            if (exists(key)) {
+                throw new IllegalArgumentException(WRONG_TYPE);
+            }
             return empty();
         }
-        return ofNullable(simpleKeyValue.get(key));
+        return Optional.of(value instanceof Bitmap bitmap ? bitmap : Bitmap.of(string(value).getBytes(UTF_8)));
+    }
+
+    public Pair saveStream(String key, String value, Map<String, String> values) {
+        return saveStream(key, value, values, empty());
+    }
+
+    public Pair saveStream(String key, String value, Map<String, String> values, Optional<StreamTrim> trim) {
+        final var result = streamStore.put(key, value, values, trim);
+        if (!result.isError()) {
+            touch(key);
+        }
+        return result;
+    }
+
+    public Pair createGroup(String key, String group, String id, boolean makeStream) {
+        final var existed = searchStreamStore(key);
+        final var result = streamStore.createGroup(key, group, id, makeStream);
+        if (!existed && !result.isError()) {
+            touch(key);
+        }
+        return result;
+    }
+
+    public boolean destroyGroup(String key, String group) {
+        return streamStore.destroyGroup(key, group);
+    }
+
+    /**
+     * The group may only be used on the thread of this database.
+     */
+    public Optional<ConsumerGroup> group(String key, String group) {
+        return streamStore.group(key, group);
+    }
+
+    public Map<String, ConsumerGroup> groups(String key) {
+        return streamStore.groups(key);
     }
 
-    public synchronized Pair saveStream(String key, String value, Map<String, String> values) {
-        return streamStore.put(key, value, values);
+    /**
+     * @return number of removed entries
+     */
+    public long trimStream(String key, StreamTrim trim) {
+        final var removed = streamStore.trim(key, trim);
+        if (removed > 0) {
+            touch(key);
+        }
+        return removed;
     }
 
-    public synchronized Stack<Entries> range(String streamKey, String start, String end) {
+    public Stack<Entries> range(String streamKey, String start, String end) {
         return streamStore.range(streamKey, start, end);
     }
 
@@ -62,14 +1167,335 @@ public final class Database {
         return streamStore.xread(streamsWithIds);
     }
 
-    public synchronized String type(String key) {
-        return get(key)
-                .map(it -> "string")
-                .or(() -> Optional.of(searchStreamStore(key) ? "stream" : "none"))
-                .get();
+    public Optional<StreamInfo> streamInfo(String key) {
+        return streamStore.info(key);
+    }
+
+    public String type(String key) {
+        if (containsString(key)) {
+            return "string";
+        }
+        if (hashes.containsKey(key)) {
+            return "hash";
+        }
+        if (sortedSets.containsKey(key)) {
+            return "zset";
+        }
+        return searchStreamStore(key) ? "stream" : "none";
+    }
+
+    public boolean exists(String key) {
+        return !type(key).equals("none");
+    }
+
+    public boolean delete(String key) {
+        return delete(key, lazyFreePolicy.lazyUserDel());
+    }
+
+    /**
+     * Removes the key right away and releases a large value in the background.
+     */
+    public boolean unlink(String key) {
+        return delete(key, true);
+    }
+
+    /**
+     * Swaps in empty tables, the old ones are released in the background when async. Watched keys that existed get a
+     * new version, so WATCH notices keys the flush removed.
+     */
+    public void flush(boolean async) {
+        versions.forEach((key, version) -> {
+            if (exists(key)) {
+                version.value = ++lastVersion;
+            }
+        });
+        final var strings = simpleKeyValue;
+        final var oldSlab = slab;
+        final var oldSpillFile = spillFile;
+        final var expiries = expiryKey;
+        final var oldHashes = hashes;
+        final var oldSortedSets = sortedSets;
+        final var streams = streamStore;
+        simpleKeyValue = new Dict<>();
+        slab = new Slab();
+        spillFile = new SpillFile(tieringPolicy.directory());
+        spillCursor = 0;
+        expiryKey = newHashMap(16);
+        hashes = new Dict<>();
+        sortedSets = new Dict<>();
+        streamStore = StreamStore.streamStore(lfuPolicy);
+        compressionStats = CompressionStats.NONE;
+        lazyFree.free(() -> {
+            strings.clear();
+            oldSlab.clear();
+            oldSpillFile.clear();
+            expiries.clear();
+            oldHashes.clear();
+            oldSortedSets.clear();
+            streams.clear();
+        }, strings.size() + oldHashes.size() + oldSortedSets.size() + streams.size(), async);
+    }
+
+    private boolean delete(String key, boolean async) {
+        requireNonNull(key);
+        expiryKey.remove(key);
+        final var removedString = unstore(key);
+        final var removedHash = removeHash(key, async);
+        final var removedSortedSet = removeSortedSet(key, async);
+        final var removedStream = removeStream(key, async);
+        final var removedAny = removedString || removedHash || removedSortedSet || removedStream;
+        if (removedAny) {
+            removed(key);
+        }
+        return removedAny;
+    }
+
+    private boolean removeHash(String key, boolean async) {
+        final var removed = hashes.remove(key);
+        if (removed != null) {
+            lazyFree.free(removed::clear, removed.size(), async);
+        }
+        return removed != null;
+    }
+
+    private boolean removeSortedSet(String key, boolean async) {
+        final var removed = sortedSets.remove(key);
+        if (removed != null) {
+            lazyFree.free(removed::clear, removed.size(), async);
+        }
+        return removed != null;
+    }
+
+    private boolean removeStream(String key, boolean async) {
+        final var removed = streamStore.remove(key);
+        removed.ifPresent(stream -> lazyFree.free(stream::clear, stream.size(), async));
+        return removed.isPresent();
+    }
+
+    /**
+     * WATCH, the version of the key is kept until every watcher called {@link #unwatch}.
+     *
+     * @return version of the key, compared with {@link #version} at EXEC
+     */
+    public long watch(String key) {
+        requireNonNull(key);
+        expireIfDue(key);
+        final var version = versions.computeIfAbsent(key, it -> new Version(++lastVersion));
+        version.watchers++;
+        return version.value;
+    }
+
+    /**
+     * Drops the version of the key once no watcher remains.
+     */
+    public void unwatch(String key) {
+        requireNonNull(key);
+        final var version = versions.get(key);
+        if (version != null && --version.watchers == 0) {
+            versions.remove(key);
+        }
+    }
+
+    /**
+     * Version of a watched key for optimistic locking, it changes on every write, expiry and deletion of the key.
+     * Versions are unique within the database, so a key deleted and written again never gets its old version back.
+     *
+     * @param key to look up
+     * @return version, 0 for keys nobody watches
+     */
+    public long version(String key) {
+        requireNonNull(key);
+        // a key that expired since WATCH gets a new version once the lazy expiry removed it
+        expireIfDue(key);
+        final var version = versions.get(key);
+        return version == null ? 0 : version.value;
+    }
+
+    public List<String> keysInSlot(int slot) {
+        final var keys = new ArrayList<String>();
+        for (var key : simpleKeyValue.keys()) {
+            if (HashSlot.slot(key) == slot && containsString(key)) {
+                keys.add(key);
+            }
+        }
+        for (var key : hashes.keys()) {
+            if (HashSlot.slot(key) == slot && !expireIfDue(key)) {
+                keys.add(key);
+            }
+        }
+        for (var key : sortedSets.keys()) {
+            if (HashSlot.slot(key) == slot && !expireIfDue(key)) {
+                keys.add(key);
+            }
+        }
+        for (var key : streamStore.keys()) {
+            if (HashSlot.slot(key) == slot && !expireIfDue(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * One step of SCAN over the string table followed by the hash, the sorted set and the stream table. Stops after visiting count keys or ten
+     * times as many buckets, so a sparse table does not make a single call walk the whole table.
+     *
+     * @param cursor 0 to start, then the cursor of the previous page, the upper half selects the table
+     * @param count  hint for the number of keys to return
+     * @return keys with their type and the cursor of the next call, 0 when all keys were visited
+     */
+    public ScanPage scan(long cursor, int count) {
+        var table = (int) (cursor >>> 32);
+        var tableCursor = cursor & 0xFFFF_FFFFL;
+        final var keysWithType = new LinkedHashMap<String, String>();
+        final var maxBuckets = Math.max(1, count) * 10L;
+        for (var buckets = 0; keysWithType.size() < count && buckets < maxBuckets; buckets++) {
+            tableCursor = switch (table) {
+                case 0 -> simpleKeyValue.scan(tableCursor, (key, value) -> keysWithType.put(key, "string"));
+                case 1 -> hashes.scan(tableCursor, (key, value) -> keysWithType.put(key, "hash"));
+                case 2 -> sortedSets.scan(tableCursor, (key, value) -> keysWithType.put(key, "zset"));
+                default -> streamStore.scan(tableCursor, (key, value) -> keysWithType.put(key, "stream"));
+            };
+            if (tableCursor == 0) {
+                if (table == 3) {
+                    return new ScanPage(0, withoutExpired(keysWithType));
+                }
+                table++;
+            }
+        }
+        return new ScanPage(((long) table << 32) | tableCursor, withoutExpired(keysWithType));
+    }
+
+    /**
+     * Expired keys are removed after the scan step, the table must not change while a bucket is visited.
+     */
+    private Map<String, String> withoutExpired(Map<String, String> keysWithType) {
+        keysWithType.keySet().removeIf(this::expireIfDue);
+        return keysWithType;
+    }
+
+    /**
+     * Commands that recreate the key on another node, the expiry is sent as the remaining time to live. Bitmaps are
+     * sent as a RESTORE of their serialized bytes, a SET would have to carry them as text.
+     *
+     * @param key to dump
+     * @return commands, empty when the key does not exist
+     */
+    public List<List<String>> dump(String key) {
+        requireNonNull(key);
+        final var timeToLive = ttl(key);
+        if (liveValue(key) instanceof Bitmap bitmap) {
+            final var restoreTimeToLive = timeToLive < 0 ? 0 : Math.max(1, timeToLive);
+            return List.of(List.of("RESTORE", key, String.valueOf(restoreTimeToLive), bitmap.serialize(), "REPLACE"));
+        }
+        final var value = get(key);
+        if (value.isPresent()) {
+            if (timeToLive < 0) {
+                return List.of(List.of("SET", key, value.get()));
+            }
+            return List.of(List.of("SET", key, value.get(), "PX", String.valueOf(Math.max(1, timeToLive))));
+        }
+        final var commands = new ArrayList<List<String>>();
+        final var hash = hashes.get(key);
+        final var sortedSet = sortedSets.get(key);
+        if (hash != null) {
+            final var hset = new ArrayList<>(List.of("HSET", key));
+            hash.forEach((field, fieldValue) -> {
+                hset.add(field);
+                hset.add(fieldValue);
+            });
+            commands.add(List.copyOf(hset));
+        } else if (sortedSet != null) {
+            final var zadd = new ArrayList<>(List.of("ZADD", key));
+            for (var member : sortedSet.range(0, sortedSet.size() - 1, false)) {
+                zadd.add(ScoredMember.format(member.score()));
+                zadd.add(member.member());
+            }
+            commands.add(List.copyOf(zadd));
+        } else {
+            for (var entry : streamStore.entries(key)) {
+                final var xadd = new ArrayList<>(List.of("XADD", key, entry.id()));
+                entry.pairs().forEach((field, fieldValue) -> {
+                    xadd.add(field);
+                    xadd.add(fieldValue);
+                });
+                commands.add(List.copyOf(xadd));
+            }
+        }
+        if (!commands.isEmpty() && timeToLive >= 0) {
+            commands.add(List.of("PEXPIRE", key, String.valueOf(Math.max(1, timeToLive))));
+        }
+        return commands;
+    }
+
+    /**
+     * RESTORE of a bitmap written by {@link #dump}, the only value dumped in serialized form.
+     *
+     * @param timeToLive in milliseconds, 0 for none
+     * @param replace    whether an existing key is replaced
+     * @throws IllegalArgumentException with the error reply for an invalid payload or time to live, or an existing
+     *                                  key without replace
+     */
+    public void restore(String key, long timeToLive, String serializedValue, boolean replace) {
+        requireNonNull(key);
+        requireNonNull(serializedValue);
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("ERR Invalid TTL value, must be >= 0");
+        }
+        final var bitmap = Bitmap.parse(serializedValue)
+                .orElseThrow(() -> new IllegalArgumentException("ERR DUMP payload version or checksum are wrong"));
+        if (!replace && exists(key)) {
+            throw new IllegalArgumentException("BUSYKEY Target key name already exists.");
+        }
+        store(key, bitmap);
+        removeOtherTypes(key);
+        if (timeToLive == 0) {
+            expiryKey.remove(key);
+        } else {
+            expiryKey.put(key, deadline(Duration.ofMillis(timeToLive)));
+        }
+        touch(key);
+    }
+
+    /**
+     * Called on every change of a key, including expiry and deletion. Runs on the thread owning the database, so it
+     * must not block.
+     */
+    public void onKeyChanged(Consumer<String> listener) {
+        this.keyChangedListener = requireNonNull(listener);
+    }
+
+    /**
+     * Only watched keys have a version to change, like touchWatchedKey of Redis.
+     */
+    private void touch(String key) {
+        final var version = versions.get(key);
+        if (version != null) {
+            version.value = ++lastVersion;
+        }
+        keyChangedListener.accept(key);
+    }
+
+    /**
+     * Like {@link #touch}, a watched key keeps its entry with the new version.
+     */
+    private void removed(String key) {
+        touch(key);
     }
 
     private boolean searchStreamStore(String streamKey) {
         return streamStore.containsStream(streamKey);
     }
+
+    /**
+     * Updated in place, so writing a watched key does not box a new Long.
+     */
+    private static final class Version {
+        private long value;
+        private int watchers;
+
+        private Version(long value) {
+            this.value = value;
+        }
+    }
 }
@@ -0,0 +1,404 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToLongBiFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Chained hash table with a power of two number of buckets, modeled on dict.c of Redis so the keyspace can be
+ * iterated with a cursor. The table doubles when it holds as many keys as buckets and shrinks when less than an eighth
+ * of the buckets are used.
+ * <p>
+ * Like Redis the keys move to the resized table incrementally, so a million keys do not stall the shard thread for
+ * the whole rehash: while both tables exist, every {@link #put} and {@link #remove} moves one bucket of the old table
+ * and {@link #rehash} moves more from the cron of the shard. Lookups search both tables, new keys go to the new one.
+ * No other resize starts before the rehash is complete.
+ * <p>
+ * {@link #scan} visits one bucket per call and increments the cursor on its reversed bits. Growing or shrinking the
+ * table between two calls only splits or merges buckets along the high bits, which the cursor visits last, so every
+ * key present during the whole iteration is returned at least once. Keys may be returned twice after a shrink. During
+ * a rehash a call visits the bucket of the smaller table and all buckets of the larger one it expands into.
+ * <p>
+ * Every node carries the LFU counter of its key, see {@link LfuPolicy}. It fits into the padding of the node, so
+ * counting accesses costs no memory, and only the lookups of the {@link Database} that pass a policy update it.
+ */
+final class Dict<V> {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    // object header and the six fields of a node, with compressed references
+    static final int NODE_BYTES = 32;
+    // empty buckets a rehash step may skip per bucket to move, bounding the step on a sparse table
+    private static final int EMPTY_VISITS = 10;
+    private Node<V>[] table;
+    /**
+     * Table the keys move to while rehashing, null otherwise.
+     */
+    private Node<V>[] rehashTable;
+    /**
+     * Buckets of {@link #table} below the index have moved to the {@link #rehashTable}.
+     */
+    private int rehashIndex;
+    private int size;
+
+    private static final class Node<V> {
+        private final String key;
+        private final int hash;
+        private V value;
+        private Node<V> next;
+        private int frequency;
+
+        private Node(String key, int hash, V value, Node<V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    Dict() {
+        this.table = newTable(MIN_CAPACITY);
+        this.rehashTable = null;
+        this.rehashIndex = 0;
+        this.size = 0;
+    }
+
+    V get(String key) {
+        final var node = node(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Like {@link #get} and counts an access in the LFU counter of the key.
+     */
+    V access(String key, LfuPolicy policy) {
+        final var node = node(key);
+        if (node == null) {
+            return null;
+        }
+        node.frequency = policy.access(node.frequency);
+        return node.value;
+    }
+
+    /**
+     * @return LFU counter of the key without counting an access, -1 when the key is absent
+     */
+    int frequency(String key, LfuPolicy policy) {
+        final var node = node(key);
+        return node == null ? -1 : policy.counter(node.frequency);
+    }
+
+    boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return previous value, null when the key was absent
+     */
+    V put(String key, V value) {
+        return put(key, value, null);
+    }
+
+    /**
+     * Like {@link #put(String, Object)} and counts the write as an access of an existing key, a new key starts with
+     * the initial LFU counter.
+     *
+     * @param policy null to leave the counter alone
+     * @return previous value, null when the key was absent
+     */
+    V put(String key, V value, LfuPolicy policy) {
+        requireNonNull(key);
+        requireNonNull(value);
+        rehashStep();
+        final var hash = hash(key);
+        final var existing = node(key, hash);
+        if (existing != null) {
+            final var previous = existing.value;
+            existing.value = value;
+            if (policy != null) {
+                existing.frequency = policy.access(existing.frequency);
+            }
+            return previous;
+        }
+        final var target = rehashTable == null ? table : rehashTable;
+        final var index = hash & (target.length - 1);
+        final var node = new Node<>(key, hash, value, target[index]);
+        if (policy != null) {
+            node.frequency = LfuPolicy.initial();
+        }
+        target[index] = node;
+        size++;
+        if (rehashTable == null && size > table.length && table.length < MAX_CAPACITY) {
+            startRehash(table.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return removed value, null when the key was absent
+     */
+    V remove(String key) {
+        rehashStep();
+        final var hash = hash(key);
+        var removed = remove(table, key, hash);
+        if (removed == null && rehashTable != null) {
+            removed = remove(rehashTable, key, hash);
+        }
+        if (removed == null) {
+            return null;
+        }
+        size--;
+        if (rehashTable == null && table.length > MIN_CAPACITY && size < table.length / 8) {
+            startRehash(table.length / 2);
+        }
+        return removed.value;
+    }
+
+    private Node<V> remove(Node<V>[] buckets, String key, int hash) {
+        final var index = hash & (buckets.length - 1);
+        Node<V> previous = null;
+        for (var node = buckets[index]; node != null; previous = node, node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                if (previous == null) {
+                    buckets[index] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+                return node;
+            }
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(table, null);
+        rehashTable = null;
+        rehashIndex = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    List<String> keys() {
+        final var keys = new ArrayList<String>(size);
+        forEachNode(node -> keys.add(node.key));
+        return keys;
+    }
+
+    void forEach(BiConsumer<String, V> visitor) {
+        forEachNode(node -> visitor.accept(node.key, node.value));
+    }
+
+    /**
+     * Visits every key with its LFU counter, without counting an access.
+     */
+    void forEachFrequency(LfuPolicy policy, ObjIntConsumer<String> visitor) {
+        forEachNode(node -> visitor.accept(node.key, policy.counter(node.frequency)));
+    }
+
+    private void forEachNode(Consumer<Node<V>> visitor) {
+        for (var bucket : table) {
+            for (var node = bucket; node != null; node = node.next) {
+                visitor.accept(node);
+            }
+        }
+        if (rehashTable != null) {
+            for (var bucket : rehashTable) {
+                for (var node = bucket; node != null; node = node.next) {
+                    visitor.accept(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimated heap size of the table with its nodes, keys and values, like MEMORY USAGE of Redis it sizes the first
+     * entries only and assumes the others are alike.
+     *
+     * @param samples   number of entries to size, 0 for all
+     * @param entrySize heap size of a key and its value
+     * @return size in bytes
+     */
+    long memoryUsage(int samples, ToLongBiFunction<String, V> entrySize) {
+        var sampled = 0L;
+        var sampledBytes = 0L;
+        for (var i = 0; i < table.length && (samples == 0 || sampled < samples); i++) {
+            for (var node = table[i]; node != null && (samples == 0 || sampled < samples); node = node.next) {
+                sampledBytes += entrySize.applyAsLong(node.key, node.value);
+                sampled++;
+            }
+        }
+        if (rehashTable != null) {
+            for (var i = 0; i < rehashTable.length && (samples == 0 || sampled < samples); i++) {
+                for (var node = rehashTable[i]; node != null && (samples == 0 || sampled < samples); node = node.next) {
+                    sampledBytes += entrySize.applyAsLong(node.key, node.value);
+                    sampled++;
+                }
+            }
+        }
+        final var entries = sampled == 0 ? 0 : sampledBytes * size / sampled;
+        final var buckets = table.length + (rehashTable == null ? 0 : rehashTable.length);
+        return MemoryUsage.object(8) + MemoryUsage.array(buckets, 4) + (long) size * NODE_BYTES + entries;
+    }
+
+    /**
+     * Visits the value of every key in the given number of buckets and replaces it with the one returned.
+     *
+     * @param cursor   0 to start the iteration, then the value returned by the previous call, see {@link #scan}
+     * @param replacer gets keys, values and the packed LFU counter, must not modify the table
+     * @return cursor of the next call, 0 when the iteration is complete
+     */
+    long scan(long cursor, int buckets, Replacer<V> replacer) {
+        var next = cursor;
+        for (var i = 0; i < buckets; i++) {
+            next = scanNodes(next, node -> node.value = requireNonNull(
+                    replacer.replace(node.key, node.value, node.frequency)));
+            if (next == 0) {
+                break;
+            }
+        }
+        return next;
+    }
+
+    interface Replacer<V> {
+        V replace(String key, V value, int frequency);
+    }
+
+    /**
+     * Visits every key of one bucket.
+     *
+     * @param cursor  0 to start the iteration, then the value returned by the previous call
+     * @param visitor receives keys and values of the bucket, must not modify the table
+     * @return cursor of the next call, 0 when the iteration is complete
+     */
+    long scan(long cursor, BiConsumer<String, V> visitor) {
+        return scanNodes(cursor, node -> visitor.accept(node.key, node.value));
+    }
+
+    /**
+     * The scan step of dictScan in Redis.
+     */
+    private long scanNodes(long cursor, Consumer<Node<V>> visitor) {
+        var next = (int) cursor;
+        if (rehashTable == null) {
+            visitBucket(table, next, visitor);
+            return nextCursor(next, table.length - 1);
+        }
+        final var small = table.length <= rehashTable.length ? table : rehashTable;
+        final var large = small == table ? rehashTable : table;
+        final var smallMask = small.length - 1;
+        final var largeMask = large.length - 1;
+        visitBucket(small, next, visitor);
+        // the buckets of the larger table that share the low bits of the cursor
+        do {
+            visitBucket(large, next, visitor);
+            next = (int) nextCursor(next, largeMask);
+        } while ((next & (smallMask ^ largeMask)) != 0);
+        return Integer.toUnsignedLong(next);
+    }
+
+    private void visitBucket(Node<V>[] buckets, int cursor, Consumer<Node<V>> visitor) {
+        for (var node = buckets[cursor & (buckets.length - 1)]; node != null; node = node.next) {
+            visitor.accept(node);
+        }
+    }
+
+    private static long nextCursor(int cursor, int mask) {
+        // set the bits above the mask so the increment of the reversed cursor carries over them
+        var reversed = Integer.reverse(cursor | ~mask);
+        reversed++;
+        return Integer.toUnsignedLong(Integer.reverse(reversed));
+    }
+
+    /**
+     * Moves buckets of a rehash in progress, from the cron of the shard so the rehash completes while the table is
+     * idle.
+     *
+     * @return whether the rehash is still in progress
+     */
+    boolean rehash(int buckets) {
+        for (var i = 0; i < buckets && rehashTable != null; i++) {
+            rehashStep();
+        }
+        return rehashTable != null;
+    }
+
+    private void startRehash(int capacity) {
+        rehashTable = newTable(capacity);
+        rehashIndex = 0;
+    }
+
+    /**
+     * Moves the keys of the next non-empty bucket of the old table, skipping {@link #EMPTY_VISITS} empty buckets at
+     * most.
+     */
+    private void rehashStep() {
+        if (rehashTable == null) {
+            return;
+        }
+        final var mask = rehashTable.length - 1;
+        for (var visits = 0; rehashIndex < table.length && table[rehashIndex] == null; visits++) {
+            if (visits == EMPTY_VISITS) {
+                return;
+            }
+            rehashIndex++;
+        }
+        if (rehashIndex < table.length) {
+            var node = table[rehashIndex];
+            table[rehashIndex] = null;
+            while (node != null) {
+                final var next = node.next;
+                final var index = node.hash & mask;
+                node.next = rehashTable[index];
+                rehashTable[index] = node;
+                node = next;
+            }
+            rehashIndex++;
+        }
+        if (rehashIndex == table.length) {
+            table = rehashTable;
+            rehashTable = null;
+            rehashIndex = 0;
+        }
+    }
+
+    private Node<V> node(String key) {
+        return node(key, hash(key));
+    }
+
+    private Node<V> node(String key, int hash) {
+        for (var node = table[hash & (table.length - 1)]; node != null; node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                return node;
+            }
+        }
+        if (rehashTable != null) {
+            for (var node = rehashTable[hash & (rehashTable.length - 1)]; node != null; node = node.next) {
+                if (node.hash == hash && node.key.equals(key)) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Seeded like Redis, see {@link SipHash}, so a client cannot flood a bucket with colliding keys.
+     */
+    static int hash(String key) {
+        final var hash = SipHash.hash(key);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newTable(int capacity) {
+        return (Node<V>[]) new Node<?>[capacity];
+    }
+}
@@ -0,0 +1,34 @@
+package db;
+
+/**
+ * Thresholds deciding how values are stored, named after the options of Redis where there is one.
+ *
+ * @param compressionThreshold    string values of at least this many characters are stored compressed, 0 disables
+ *                                compression
+ * @param hashMaxListpackEntries  hashes with more fields are converted from the packed encoding to a hash table
+ * @param hashMaxListpackValue    so are hashes with a longer field or value, in bytes
+ * @param zsetMaxListpackEntries  sorted sets with more members are converted to a skiplist
+ * @param zsetMaxListpackValue    so are sorted sets with a longer member, in bytes
+ * @param hllSparseMaxBytes       HyperLogLogs whose sparse form grows beyond this many bytes are converted to the
+ *                                dense 12 KB form
+ * @param offHeapThreshold        string values of at least this many characters are stored off the heap in a
+ *                                {@link Slab}, 0 keeps every value on the heap
+ */
+public record EncodingPolicy(
+        int compressionThreshold,
+        int hashMaxListpackEntries,
+        int hashMaxListpackValue,
+        int zsetMaxListpackEntries,
+        int zsetMaxListpackValue,
+        int hllSparseMaxBytes,
+        int offHeapThreshold
+) {
+    public static final EncodingPolicy DEFAULT = new EncodingPolicy(0, 128, 64, 128, 64, 3000, 0);
+
+    public EncodingPolicy {
+        if (compressionThreshold < 0 || hashMaxListpackEntries < 0 || hashMaxListpackValue < 0
+                || zsetMaxListpackEntries < 0 || zsetMaxListpackValue < 0 || hllSparseMaxBytes < 0 || offHeapThreshold < 0) {
+            throw new IllegalArgumentException("Encoding thresholds must not be negative");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.empty;
+
+/**
+ * Value of a hash key. Small hashes are a {@link Listpack} of alternating fields and values, a lookup scans it, which
+ * for a few dozen fields is as fast as hashing and costs a single array instead of a node and two strings per field.
+ * The hash converts to a {@link Dict} for good once it has more fields than
+ * {@link EncodingPolicy#hashMaxListpackEntries} or a field or value longer than
+ * {@link EncodingPolicy#hashMaxListpackValue}.
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class Hash {
+    private final EncodingPolicy encodingPolicy;
+    private Listpack packed;
+    private Dict<String> table;
+
+    Hash(EncodingPolicy encodingPolicy) {
+        this.encodingPolicy = encodingPolicy;
+        this.packed = new Listpack();
+    }
+
+    Optional<String> get(String field) {
+        if (table != null) {
+            return Optional.ofNullable(table.get(field));
+        }
+        final var position = packed.findPair(field.getBytes(UTF_8));
+        return position < 0 ? empty() : Optional.of(packed.get(packed.next(position)));
+    }
+
+    /**
+     * @return whether the field is new
+     */
+    boolean put(String field, String value) {
+        if (table != null) {
+            return table.put(field, value) == null;
+        }
+        final var fieldBytes = field.getBytes(UTF_8);
+        final var valueBytes = value.getBytes(UTF_8);
+        final var maxValue = encodingPolicy.hashMaxListpackValue();
+        if (fieldBytes.length > maxValue || valueBytes.length > maxValue) {
+            convert();
+            return table.put(field, value) == null;
+        }
+        final var position = packed.findPair(fieldBytes);
+        if (position >= 0) {
+            packed.replace(packed.next(position), valueBytes);
+            return false;
+        }
+        if (size() + 1 > encodingPolicy.hashMaxListpackEntries()) {
+            convert();
+            return table.put(field, value) == null;
+        }
+        packed.insert(packed.end(), fieldBytes, valueBytes);
+        return true;
+    }
+
+    /**
+     * @return whether the field existed
+     */
+    boolean remove(String field) {
+        if (table != null) {
+            return table.remove(field) != null;
+        }
+        final var position = packed.findPair(field.getBytes(UTF_8));
+        if (position < 0) {
+            return false;
+        }
+        packed.remove(position, 2);
+        return true;
+    }
+
+    int size() {
+        return table != null ? table.size() : packed.elements() / 2;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return listpack or hashtable, as reported by OBJECT ENCODING
+     */
+    String encoding() {
+        return table != null ? "hashtable" : "listpack";
+    }
+
+    void forEach(BiConsumer<String, String> visitor) {
+        if (table != null) {
+            table.forEach(visitor);
+            return;
+        }
+        for (var position = 0; position < packed.end(); ) {
+            final var valuePosition = packed.next(position);
+            visitor.accept(packed.get(position), packed.get(valuePosition));
+            position = packed.next(valuePosition);
+        }
+    }
+
+    /**
+     * Like Redis a packed hash is returned in one call, a hash table one bucket at a time, see {@link Dict#scan}.
+     *
+     * @param cursor 0 to start, then the cursor of the previous call
+     * @param count  hint for the number of fields to return
+     * @return fields with values and the cursor of the next call, 0 when all fields were visited
+     */
+    HashPage scan(long cursor, int count) {
+        final var fieldsWithValues = new LinkedHashMap<String, String>();
+        if (table == null) {
+            forEach(fieldsWithValues::put);
+            return new HashPage(0, fieldsWithValues);
+        }
+        var next = cursor;
+        final var maxBuckets = Math.max(1, count) * 10L;
+        for (var buckets = 0; fieldsWithValues.size() < count && buckets < maxBuckets; buckets++) {
+            next = table.scan(next, fieldsWithValues::put);
+            if (next == 0) {
+                break;
+            }
+        }
+        return new HashPage(next, fieldsWithValues);
+    }
+
+    /**
+     * @return estimated heap size, a hash table only sizes its first fields, see {@link Dict#memoryUsage}
+     */
+    long memoryUsage(int samples) {
+        if (table == null) {
+            return MemoryUsage.object(12) + packed.memoryUsage();
+        }
+        return MemoryUsage.object(12)
+                + table.memoryUsage(samples, (field, value) -> MemoryUsage.string(field) + MemoryUsage.string(value));
+    }
+
+    Map<String, String> toMap() {
+        final var fieldsWithValues = new LinkedHashMap<String, String>();
+        forEach(fieldsWithValues::put);
+        return fieldsWithValues;
+    }
+
+    void clear() {
+        if (table != null) {
+            table.clear();
+        } else {
+            packed.clear();
+        }
+    }
+
+    private void convert() {
+        final var converted = new Dict<String>();
+        forEach(converted::put);
+        table = converted;
+        packed = null;
+    }
+}
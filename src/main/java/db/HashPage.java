@@ -0,0 +1,17 @@
+package db;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fields returned by one HSCAN call.
+ *
+ * @param cursor           to pass to the next call, 0 when the iteration is complete
+ * @param fieldsWithValues fields of the page with their values
+ */
+public record HashPage(long cursor, Map<String, String> fieldsWithValues) {
+    public HashPage {
+        requireNonNull(fieldsWithValues);
+    }
+}
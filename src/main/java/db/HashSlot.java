@@ -0,0 +1,77 @@
+package db;
+
+/**
+ * Redis Cluster key to hash slot mapping, CRC16 (XMODEM) of the key modulo 16384.
+ * https://redis.io/docs/reference/cluster-spec/#key-distribution-model
+ */
+public final class HashSlot {
+    public static final int SLOTS = 16384;
+    private static final int[] CRC16_TABLE = crc16Table();
+
+    private HashSlot() {
+    }
+
+    /**
+     * When the key contains a non-empty hash tag, only the content between the first '{' and the following '}' is
+     * hashed, so that related keys can be forced into the same slot.
+     *
+     * @param key to hash
+     * @return slot in range 0..16383
+     */
+    public static int slot(String key) {
+        final var start = key.indexOf('{');
+        if (start != -1) {
+            final var end = key.indexOf('}', start + 1);
+            if (end != -1 && end != start + 1) {
+                return crc16(key, start + 1, end) & (SLOTS - 1);
+            }
+        }
+        return crc16(key, 0, key.length()) & (SLOTS - 1);
+    }
+
+    /**
+     * CRC16 of the UTF-8 encoding of the chars from start until end, encoded on the fly so hashing a key allocates
+     * nothing. An unpaired surrogate is hashed as '?' like {@link String#getBytes} replaces it.
+     */
+    private static int crc16(String key, int start, int end) {
+        var crc = 0;
+        for (var i = start; i < end; i++) {
+            final var c = key.charAt(i);
+            if (c < 0x80) {
+                crc = crc16(crc, c);
+            } else if (c < 0x800) {
+                crc = crc16(crc, 0xc0 | c >> 6);
+                crc = crc16(crc, 0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(key.charAt(i + 1))) {
+                final var codePoint = Character.toCodePoint(c, key.charAt(++i));
+                crc = crc16(crc, 0xf0 | codePoint >> 18);
+                crc = crc16(crc, 0x80 | codePoint >> 12 & 0x3f);
+                crc = crc16(crc, 0x80 | codePoint >> 6 & 0x3f);
+                crc = crc16(crc, 0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                crc = crc16(crc, '?');
+            } else {
+                crc = crc16(crc, 0xe0 | c >> 12);
+                crc = crc16(crc, 0x80 | c >> 6 & 0x3f);
+                crc = crc16(crc, 0x80 | c & 0x3f);
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(int crc, int b) {
+        return ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ b) & 0xff]) & 0xffff;
+    }
+
+    private static int[] crc16Table() {
+        final var table = new int[256];
+        for (var i = 0; i < 256; i++) {
+            var crc = i << 8;
+            for (var bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            table[i] = crc & 0xffff;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,412 @@
+package db;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.empty;
+
+/**
+ * HyperLogLog of Redis: 2^14 registers holding the longest run of trailing zeros seen in the hashes of their elements,
+ * which estimates the number of distinct elements with a standard error of 0.81% in constant memory.
+ * <p>
+ * A new HyperLogLog is sparse, a run length encoding of the registers where a run of zeros takes one or two bytes and
+ * up to four registers of the same small value one byte. It converts for good to the dense form of 6 bits per
+ * register, 12 KB, once it outgrows {@link EncodingPolicy#hllSparseMaxBytes} or a register exceeds 32. The estimate is
+ * cached until a register changes.
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class HyperLogLog {
+    static final int REGISTERS = 1 << 14;
+    private static final int P = 14;
+    private static final int Q = 64 - P;
+    private static final int REGISTER_BITS = 6;
+    private static final int REGISTER_MAX = (1 << REGISTER_BITS) - 1;
+    // one spare byte so the last register can be read with two byte loads
+    private static final int DENSE_BYTES = REGISTERS * REGISTER_BITS / 8 + 1;
+    private static final int SPARSE_VALUE_MAX = 32;
+    private static final int SPARSE_VALUE_RUN_MAX = 4;
+    private static final int SPARSE_ZERO_RUN_MAX = 64;
+    private static final double ALPHA_INF = 0.721347520444481703680;
+    private static final long HASH_SEED = 0xadc83b19L;
+    private static final String MAGIC = "HYLL";
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 0;
+    private final int sparseMaxBytes;
+    private byte[] sparse;
+    private byte[] dense;
+    private long cachedCardinality;
+
+    HyperLogLog(EncodingPolicy encodingPolicy) {
+        this(encodingPolicy.hllSparseMaxBytes(), zeroRun(REGISTERS), null);
+    }
+
+    private HyperLogLog(int sparseMaxBytes, byte[] sparse, byte[] dense) {
+        this.sparseMaxBytes = sparseMaxBytes;
+        this.sparse = sparse;
+        this.dense = dense;
+        this.cachedCardinality = -1;
+    }
+
+    /**
+     * Dense HyperLogLog with the given registers, as produced by {@link #mergeInto}.
+     */
+    static HyperLogLog of(byte[] registers, EncodingPolicy encodingPolicy) {
+        final var merged = new HyperLogLog(encodingPolicy.hllSparseMaxBytes(), null, new byte[DENSE_BYTES]);
+        for (var index = 0; index < REGISTERS; index++) {
+            merged.setDense(index, registers[index]);
+        }
+        return merged;
+    }
+
+    /**
+     * Reads the form written by {@link #serialize}, so a HyperLogLog copied with GET and SET stays one.
+     *
+     * @return HyperLogLog, empty when the string is not a valid serialized one
+     */
+    static Optional<HyperLogLog> parse(String value, EncodingPolicy encodingPolicy) {
+        if (!value.startsWith(MAGIC)) {
+            return empty();
+        }
+        final byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(value.substring(MAGIC.length()));
+        } catch (IllegalArgumentException e) {
+            return empty();
+        }
+        if (bytes.length == 0) {
+            return empty();
+        }
+        final var data = Arrays.copyOfRange(bytes, 1, bytes.length);
+        if (bytes[0] == DENSE && data.length == DENSE_BYTES) {
+            return Optional.of(new HyperLogLog(encodingPolicy.hllSparseMaxBytes(), null, data));
+        }
+        if (bytes[0] == SPARSE && coversAllRegisters(data)) {
+            return Optional.of(new HyperLogLog(encodingPolicy.hllSparseMaxBytes(), data, null));
+        }
+        return empty();
+    }
+
+    String serialize() {
+        final var data = sparse != null ? sparse : dense;
+        final var bytes = new byte[data.length + 1];
+        bytes[0] = sparse != null ? SPARSE : DENSE;
+        System.arraycopy(data, 0, bytes, 1, data.length);
+        return MAGIC + Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return whether a register changed, so the estimate may have changed
+     */
+    boolean add(String element) {
+        final var bytes = element.getBytes(UTF_8);
+        var hash = murmurHash64A(bytes, HASH_SEED);
+        final var index = (int) (hash & (REGISTERS - 1));
+        hash >>>= P;
+        // stops the count at Q + 1 when the remaining bits are all zero
+        hash |= 1L << Q;
+        final var count = Long.numberOfTrailingZeros(hash) + 1;
+        final var changed = sparse != null ? setSparse(index, count) : setDense(index, count);
+        if (changed) {
+            cachedCardinality = -1;
+        }
+        return changed;
+    }
+
+    /**
+     * @return estimated number of distinct elements added
+     */
+    long count() {
+        if (cachedCardinality < 0) {
+            final var histogram = new int[Q + 2];
+            if (sparse != null) {
+                forEachSparseRun((value, run) -> histogram[value] += run);
+            } else {
+                for (var index = 0; index < REGISTERS; index++) {
+                    histogram[getDense(index)]++;
+                }
+            }
+            cachedCardinality = estimate(histogram);
+        }
+        return cachedCardinality;
+    }
+
+    /**
+     * Raises every register of the given array to the value of the same register here, if that is larger.
+     */
+    void mergeInto(byte[] registers) {
+        if (sparse == null) {
+            for (var index = 0; index < REGISTERS; index++) {
+                registers[index] = (byte) Math.max(registers[index], getDense(index));
+            }
+            return;
+        }
+        final var index = new int[1];
+        forEachSparseRun((value, run) -> {
+            for (var i = 0; i < run; i++, index[0]++) {
+                registers[index[0]] = (byte) Math.max(registers[index[0]], value);
+            }
+        });
+    }
+
+    /**
+     * Estimate of the registers taken over by {@link #of} without the cache, for PFCOUNT of several keys.
+     */
+    static long count(byte[] registers) {
+        final var histogram = new int[Q + 2];
+        for (var register : registers) {
+            histogram[register]++;
+        }
+        return estimate(histogram);
+    }
+
+    /**
+     * @return sparse or dense
+     */
+    String encoding() {
+        return sparse != null ? "sparse" : "dense";
+    }
+
+    /**
+     * @return heap size of the HyperLogLog and its registers
+     */
+    long memoryUsage() {
+        final var registers = sparse != null ? sparse.length : dense.length;
+        return MemoryUsage.object(20) + MemoryUsage.array(registers, 1);
+    }
+
+    private interface RunVisitor {
+        void visit(int value, int run);
+    }
+
+    private void forEachSparseRun(RunVisitor visitor) {
+        for (var position = 0; position < sparse.length; ) {
+            final var opcode = sparse[position] & 0xFF;
+            if ((opcode & 0x80) != 0) {
+                visitor.visit(((opcode >>> 2) & 0x1F) + 1, (opcode & 0x03) + 1);
+                position++;
+            } else if ((opcode & 0x40) != 0) {
+                visitor.visit(0, (((opcode & 0x3F) << 8) | (sparse[position + 1] & 0xFF)) + 1);
+                position += 2;
+            } else {
+                visitor.visit(0, (opcode & 0x3F) + 1);
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Splits the run covering the register into the registers before it, the register itself and the ones after it,
+     * which replaces one opcode by up to five bytes.
+     */
+    private boolean setSparse(int index, int count) {
+        if (count > SPARSE_VALUE_MAX) {
+            convert();
+            return setDense(index, count);
+        }
+        var position = 0;
+        var first = 0;
+        int length;
+        int value;
+        int run;
+        while (true) {
+            final var opcode = sparse[position] & 0xFF;
+            if ((opcode & 0x80) != 0) {
+                length = 1;
+                value = ((opcode >>> 2) & 0x1F) + 1;
+                run = (opcode & 0x03) + 1;
+            } else if ((opcode & 0x40) != 0) {
+                length = 2;
+                value = 0;
+                run = (((opcode & 0x3F) << 8) | (sparse[position + 1] & 0xFF)) + 1;
+            } else {
+                length = 1;
+                value = 0;
+                run = (opcode & 0x3F) + 1;
+            }
+            if (index < first + run) {
+                break;
+            }
+            first += run;
+            position += length;
+        }
+        if (value >= count) {
+            return false;
+        }
+        final var replacement = new byte[5];
+        var size = 0;
+        size = run(replacement, size, value, index - first);
+        replacement[size++] = valueRun(count, 1);
+        size = run(replacement, size, value, first + run - index - 1);
+        final var updated = new byte[sparse.length - length + size];
+        System.arraycopy(sparse, 0, updated, 0, position);
+        System.arraycopy(replacement, 0, updated, position, size);
+        System.arraycopy(sparse, position + length, updated, position + size, sparse.length - position - length);
+        sparse = updated;
+        if (sparse.length > sparseMaxBytes) {
+            convert();
+        }
+        return true;
+    }
+
+    /**
+     * @return position after the opcodes written for a run of registers with the given value
+     */
+    private static int run(byte[] target, int position, int value, int run) {
+        if (run == 0) {
+            return position;
+        }
+        if (value > 0) {
+            // split from a value run, which is at most four registers long
+            target[position] = valueRun(value, run);
+            return position + 1;
+        }
+        final var zeros = zeroRun(run);
+        System.arraycopy(zeros, 0, target, position, zeros.length);
+        return position + zeros.length;
+    }
+
+    private static byte valueRun(int value, int run) {
+        return (byte) (0x80 | ((value - 1) << 2) | (run - 1));
+    }
+
+    private static byte[] zeroRun(int run) {
+        if (run <= SPARSE_ZERO_RUN_MAX) {
+            return new byte[]{(byte) (run - 1)};
+        }
+        return new byte[]{(byte) (0x40 | ((run - 1) >>> 8)), (byte) (run - 1)};
+    }
+
+    private static boolean coversAllRegisters(byte[] data) {
+        var registers = 0;
+        for (var position = 0; position < data.length; ) {
+            final var opcode = data[position] & 0xFF;
+            if ((opcode & 0x80) != 0) {
+                registers += (opcode & 0x03) + 1;
+                position++;
+            } else if ((opcode & 0x40) != 0) {
+                if (position + 1 >= data.length) {
+                    return false;
+                }
+                registers += (((opcode & 0x3F) << 8) | (data[position + 1] & 0xFF)) + 1;
+                position += 2;
+            } else {
+                registers += (opcode & 0x3F) + 1;
+                position++;
+            }
+        }
+        return registers == REGISTERS;
+    }
+
+    private void convert() {
+        final var registers = new byte[REGISTERS];
+        mergeInto(registers);
+        dense = new byte[DENSE_BYTES];
+        sparse = null;
+        for (var index = 0; index < REGISTERS; index++) {
+            setDense(index, registers[index]);
+        }
+    }
+
+    private int getDense(int index) {
+        final var bit = index * REGISTER_BITS;
+        final var position = bit >>> 3;
+        final var shift = bit & 7;
+        return (((dense[position] & 0xFF) >>> shift) | ((dense[position + 1] & 0xFF) << (8 - shift))) & REGISTER_MAX;
+    }
+
+    private boolean setDense(int index, int count) {
+        if (getDense(index) >= count) {
+            return false;
+        }
+        final var bit = index * REGISTER_BITS;
+        final var position = bit >>> 3;
+        final var shift = bit & 7;
+        dense[position] = (byte) ((dense[position] & ~(REGISTER_MAX << shift)) | (count << shift));
+        dense[position + 1] = (byte) ((dense[position + 1] & ~(REGISTER_MAX >>> (8 - shift))) | (count >>> (8 - shift)));
+        return true;
+    }
+
+    /**
+     * Estimator of Otmar Ertl as used by Redis, which needs no bias correction tables for small cardinalities.
+     *
+     * @param histogram number of registers holding each value
+     */
+    private static long estimate(int[] histogram) {
+        final double m = REGISTERS;
+        var z = m * tau((m - histogram[Q + 1]) / m);
+        for (var j = Q; j >= 1; j--) {
+            z += histogram[j];
+            z *= 0.5;
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(ALPHA_INF * m * m / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        var y = 1.0;
+        var z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (previous != z);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        var y = 1.0;
+        var z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (previous != z);
+        return z / 3;
+    }
+
+    /**
+     * MurmurHash64A, the hash Redis uses, so registers match those of Redis for the same elements.
+     */
+    private static long murmurHash64A(byte[] data, long seed) {
+        final var m = 0xc6a4a7935bd1e995L;
+        final var r = 47;
+        var h = seed ^ (data.length * m);
+        final var blocks = data.length / 8;
+        for (var i = 0; i < blocks; i++) {
+            var k = 0L;
+            for (var b = 7; b >= 0; b--) {
+                k = (k << 8) | (data[i * 8 + b] & 0xFF);
+            }
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+        final var tail = blocks * 8;
+        final var remaining = data.length & 7;
+        if (remaining > 0) {
+            for (var b = remaining - 1; b >= 0; b--) {
+                h ^= (long) (data[tail + b] & 0xFF) << (8 * b);
+            }
+            h *= m;
+        }
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+}
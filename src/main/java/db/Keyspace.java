@@ -0,0 +1,285 @@
+package db;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Partitions keys into shards by their hash slot, so all keys of one slot live in the same shard. Each shard owns its
+ * {@link Database} and the only thread that is allowed to touch it. I/O threads parse commands and encode replies,
+ * every data operation is forwarded to the shard owning the key so the {@link Database} needs no locking.
+ */
+public final class Keyspace {
+    private static final int SHARD_SHIFT = 34;
+    private final Shard[] shards;
+    private final Lock atomicSection;
+    private final LazyFree lazyFree;
+
+    private Keyspace(Shard[] shards, LazyFree lazyFree) {
+        this.shards = requireNonNull(shards);
+        this.atomicSection = new ReentrantLock();
+        this.lazyFree = requireNonNull(lazyFree);
+    }
+
+    public static Keyspace keyspace(int numberOfShards) {
+        return keyspace(numberOfShards, LazyFreePolicy.SYNC);
+    }
+
+    public static Keyspace keyspace(int numberOfShards, LazyFreePolicy lazyFreePolicy) {
+        return keyspace(numberOfShards, lazyFreePolicy, EncodingPolicy.DEFAULT);
+    }
+
+    public static Keyspace keyspace(int numberOfShards, LazyFreePolicy lazyFreePolicy, EncodingPolicy encodingPolicy) {
+        return keyspace(numberOfShards, lazyFreePolicy, encodingPolicy, LfuPolicy.DEFAULT);
+    }
+
+    public static Keyspace keyspace(
+            int numberOfShards,
+            LazyFreePolicy lazyFreePolicy,
+            EncodingPolicy encodingPolicy,
+            LfuPolicy lfuPolicy
+    ) {
+        return keyspace(numberOfShards, lazyFreePolicy, encodingPolicy, lfuPolicy, TieringPolicy.DISABLED);
+    }
+
+    public static Keyspace keyspace(
+            int numberOfShards,
+            LazyFreePolicy lazyFreePolicy,
+            EncodingPolicy encodingPolicy,
+            LfuPolicy lfuPolicy,
+            TieringPolicy tieringPolicy
+    ) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("Keyspace needs at least one shard, got: " + numberOfShards);
+        }
+        final var lazyFree = LazyFree.lazyFree();
+        final var shards = new Shard[numberOfShards];
+        for (var i = 0; i < numberOfShards; i++) {
+            shards[i] = Shard.shard(i, new Database(lazyFree, lazyFreePolicy, encodingPolicy, lfuPolicy, tieringPolicy));
+        }
+        return new Keyspace(shards, lazyFree);
+    }
+
+    /**
+     * @return background reclamation shared by all shards
+     */
+    public LazyFree lazyFree() {
+        return lazyFree;
+    }
+
+    /**
+     * Empties every shard, each one swaps its tables in constant time.
+     *
+     * @param async whether the old tables are released in the background
+     */
+    public void flushAll(boolean async) {
+        Arrays.stream(shards)
+                .map(shard -> shard.submit(db -> {
+                    db.flush(async);
+                    return null;
+                }))
+                .toList()
+                .forEach(CompletableFuture::join);
+    }
+
+    /**
+     * Runs the operation on every shard concurrently and waits for all results.
+     *
+     * @return results in shard order
+     */
+    public <T> List<T> executeOnEveryShard(Function<Database, T> operation) {
+        requireNonNull(operation);
+        return Arrays.stream(shards)
+                .map(shard -> shard.submit(operation))
+                .toList()
+                .stream()
+                .map(CompletableFuture::join)
+                .toList();
+    }
+
+    /**
+     * Runs the operation on the thread of the shard owning the key and waits for its result. Must not be called from
+     * a shard thread.
+     *
+     * @param key       decides which shard runs the operation
+     * @param operation to apply to the database
+     * @return result of the operation
+     */
+    public <T> T execute(String key, Function<Database, T> operation) {
+        requireNonNull(operation);
+        return shardOf(key).submit(operation).join();
+    }
+
+    public void run(String key, Consumer<Database> operation) {
+        requireNonNull(operation);
+        shardOf(key).submit(db -> {
+            operation.accept(db);
+            return null;
+        }).join();
+    }
+
+    public <T> T executeInSlot(int slot, Function<Database, T> operation) {
+        requireNonNull(operation);
+        return shards[slot % shards.length].submit(operation).join();
+    }
+
+    /**
+     * Splits keys by owning shard, runs the operation on every involved shard concurrently and merges the results.
+     *
+     * @param keysWithValues keys and their arguments, every shard receives only the keys it owns
+     * @param operation      to apply to the database of each involved shard
+     * @return merged results in the order of given keys
+     */
+    public <V, T> Map<String, T> executeMultiKey(
+            Map<String, V> keysWithValues,
+            BiFunction<Database, Map<String, V>, Map<String, T>> operation
+    ) {
+        requireNonNull(keysWithValues);
+        requireNonNull(operation);
+        final var keysPerShard = new HashMap<Shard, Map<String, V>>();
+        keysWithValues.forEach((key, value) -> keysPerShard
+                .computeIfAbsent(shardOf(key), it -> new LinkedHashMap<>())
+                .put(key, value));
+
+        final var futures = keysPerShard.entrySet()
+                .stream()
+                .map(it -> it.getKey().submit(db -> operation.apply(db, it.getValue())))
+                .toList();
+        final var merged = new HashMap<String, T>();
+        futures.stream()
+                .map(CompletableFuture::join)
+                .forEach(merged::putAll);
+
+        final var result = new LinkedHashMap<String, T>();
+        keysWithValues.keySet().forEach(key -> result.put(key, merged.get(key)));
+        return result;
+    }
+
+    /**
+     * Scans the shards one after another. The cursor keeps the shard index above bit 34 and the cursor of
+     * {@link Database#scan} below, a call never touches more than one shard.
+     *
+     * @param cursor 0 to start, then the cursor of the previous page
+     * @param count  hint for the number of keys to return
+     * @return next page, its cursor is 0 when all shards were scanned
+     */
+    public ScanPage scan(long cursor, int count) {
+        final var shardIndex = (int) (cursor >>> SHARD_SHIFT);
+        if (cursor < 0 || shardIndex >= shards.length) {
+            return new ScanPage(0, Map.of());
+        }
+        final var databaseCursor = cursor & ((1L << SHARD_SHIFT) - 1);
+        final var page = shards[shardIndex].submit(db -> db.scan(databaseCursor, count)).join();
+        if (page.cursor() != 0) {
+            return new ScanPage(((long) shardIndex << SHARD_SHIFT) | page.cursor(), page.keysWithType());
+        }
+        final var next = shardIndex + 1 < shards.length ? (long) (shardIndex + 1) << SHARD_SHIFT : 0;
+        return new ScanPage(next, page.keysWithType());
+    }
+
+    /**
+     * Registers the listener on the database of every shard, see {@link Database#onKeyChanged}.
+     */
+    public void onKeyChanged(Consumer<String> listener) {
+        requireNonNull(listener);
+        for (var shard : shards) {
+            shard.submit(db -> {
+                db.onKeyChanged(listener);
+                return null;
+            }).join();
+        }
+    }
+
+    /**
+     * Runs the operation while no other operation touches the given keys. Keys of a single shard are handled by one
+     * task on that shard. Otherwise every involved shard is parked on a latch and the calling thread works on their
+     * databases directly, one atomic section at a time so two callers never park shards in opposite order. The
+     * operation must not call back into the keyspace.
+     *
+     * @param keys      every key the operation is going to touch
+     * @param operation receives the database owning a given key, which must be one of the declared keys
+     * @return result of the operation
+     */
+    public <T> T executeAtomically(Collection<String> keys, Function<Function<String, Database>, T> operation) {
+        requireNonNull(keys);
+        requireNonNull(operation);
+        final var involved = keys.stream()
+                .map(this::shardOf)
+                .distinct()
+                .toList();
+        if (involved.size() <= 1) {
+            final var shard = involved.isEmpty() ? shards[0] : involved.get(0);
+            return shard.submit(db -> operation.apply(key -> databaseOf(key, involved))).join();
+        }
+        atomicSection.lock();
+        try {
+            final var parked = new CountDownLatch(involved.size());
+            final var released = new CountDownLatch(1);
+            involved.forEach(shard -> shard.submit(db -> {
+                parked.countDown();
+                awaitUninterruptibly(released);
+                return null;
+            }));
+            awaitUninterruptibly(parked);
+            try {
+                return operation.apply(key -> databaseOf(key, involved));
+            } finally {
+                released.countDown();
+            }
+        } finally {
+            atomicSection.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #executeAtomically} for operations without a result.
+     */
+    public void runAtomically(Collection<String> keys, Consumer<Function<String, Database>> operation) {
+        requireNonNull(operation);
+        executeAtomically(keys, databaseOfKey -> {
+            operation.accept(databaseOfKey);
+            return null;
+        });
+    }
+
+    private Database databaseOf(String key, List<Shard> involved) {
+        final var shard = shardOf(key);
+        if (!involved.contains(shard)) {
+            throw new IllegalArgumentException("Key was not declared for the atomic operation: " + key);
+        }
+        return shard.database();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        var interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Shard shardOf(String key) {
+        requireNonNull(key);
+        // a single shard holds every slot, no need to hash the key
+        return shards.length == 1 ? shards[0] : shards[HashSlot.slot(key) % shards.length];
+    }
+}
@@ -0,0 +1,26 @@
+package db;
+
+/**
+ * Keys of a database as reported by INFO keyspace, see {@link Database#keyspaceStats}.
+ *
+ * @param keys      number of keys, including expired keys not removed yet
+ * @param expires   number of keys with a time to live
+ * @param ttlMillis sum of the remaining times to live, in milliseconds
+ */
+public record KeyspaceStats(long keys, long expires, long ttlMillis) {
+    public static final KeyspaceStats NONE = new KeyspaceStats(0, 0, 0);
+
+    public KeyspaceStats plus(KeyspaceStats other) {
+        return new KeyspaceStats(
+                keys + other.keys,
+                expires + other.expires,
+                ttlMillis + other.ttlMillis);
+    }
+
+    /**
+     * @return average remaining time to live of the keys with expiry, 0 when there are none
+     */
+    public long averageTtlMillis() {
+        return expires == 0 ? 0 : ttlMillis / expires;
+    }
+}
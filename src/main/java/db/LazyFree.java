@@ -0,0 +1,62 @@
+package db;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Background reclamation of unlinked values. The key is removed from its table right away, values holding more than
+ * {@link #THRESHOLD} elements are then torn down here instead of on the shard thread. Smaller values are simply
+ * dropped, queueing them would cost more than releasing them.
+ */
+public final class LazyFree {
+    static final int THRESHOLD = 64;
+    private final ExecutorService reclaimer;
+    private final AtomicLong pending;
+    private final AtomicLong freed;
+
+    private LazyFree(ExecutorService reclaimer) {
+        this.reclaimer = requireNonNull(reclaimer);
+        this.pending = new AtomicLong();
+        this.freed = new AtomicLong();
+    }
+
+    public static LazyFree lazyFree() {
+        // the worker thread only starts with the first queued value
+        return new LazyFree(newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "lazy-free");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param release releases the value, must only touch the unlinked value
+     * @param effort  number of elements of the value
+     * @param async   whether the value may be released in the background
+     */
+    void free(Runnable release, long effort, boolean async) {
+        if (!async || effort <= THRESHOLD) {
+            return;
+        }
+        pending.incrementAndGet();
+        reclaimer.execute(() -> {
+            try {
+                release.run();
+            } finally {
+                pending.decrementAndGet();
+                freed.incrementAndGet();
+            }
+        });
+    }
+
+    public long pendingObjects() {
+        return pending.get();
+    }
+
+    public long freedObjects() {
+        return freed.get();
+    }
+}
@@ -0,0 +1,13 @@
+package db;
+
+/**
+ * Which deletions release values in the background, named after the lazyfree-lazy-* options of Redis. UNLINK and
+ * FLUSHALL ASYNC are always lazy.
+ *
+ * @param lazyServerDel values deleted as a side effect of a write, like SET replacing a stream
+ * @param lazyUserDel   DEL behaves like UNLINK
+ * @param lazyUserFlush FLUSHALL without option behaves like FLUSHALL ASYNC
+ */
+public record LazyFreePolicy(boolean lazyServerDel, boolean lazyUserDel, boolean lazyUserFlush) {
+    public static final LazyFreePolicy SYNC = new LazyFreePolicy(false, false, false);
+}
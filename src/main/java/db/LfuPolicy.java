@@ -0,0 +1,74 @@
+package db;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Access frequency counters of keys, the LFU counters of Redis. A counter is 8 bits and grows logarithmically: an
+ * access increments it with probability 1 / ((counter - 5) * logFactor + 1), so with the default factor of 10 it
+ * reaches 255 after about a million accesses. Counters lose one point per {@code decayTime} minutes without access,
+ * so a key that was hot an hour ago does not stay on top. A new key starts at 5 so it is not the coldest right away.
+ * <p>
+ * A counter is packed into an int next to the minute it was last decreased, minutes &lt;&lt; 8 | counter, the minutes
+ * wrap around after 45 days like the 16 bits Redis keeps in the object header.
+ *
+ * @param logFactor the higher, the more accesses it takes to increase the counter, 0 counts every access until 255
+ * @param decayTime minutes without access that decrease the counter by one, 0 never decreases it
+ */
+public record LfuPolicy(int logFactor, int decayTime) {
+    public static final LfuPolicy DEFAULT = new LfuPolicy(10, 1);
+    static final int INITIAL_COUNTER = 5;
+    private static final int MAX_COUNTER = 255;
+    private static final int MINUTES_MASK = 0xFFFF;
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    public LfuPolicy {
+        if (logFactor < 0 || decayTime < 0) {
+            throw new IllegalArgumentException("LFU log factor and decay time must not be negative");
+        }
+    }
+
+    /**
+     * @return packed counter of a new key
+     */
+    static int initial() {
+        return minutes() << 8 | INITIAL_COUNTER;
+    }
+
+    /**
+     * Decays the counter and counts one access.
+     *
+     * @return packed counter after the access
+     */
+    int access(int frequency) {
+        var counter = counter(frequency);
+        if (counter < MAX_COUNTER) {
+            final var base = Math.max(0, counter - INITIAL_COUNTER);
+            if (ThreadLocalRandom.current().nextDouble() < 1.0 / (base * logFactor + 1)) {
+                counter++;
+            }
+        }
+        return minutes() << 8 | counter;
+    }
+
+    /**
+     * @return counter decreased by the minutes passed since the last access
+     */
+    int counter(int frequency) {
+        final var counter = frequency & MAX_COUNTER;
+        if (decayTime == 0) {
+            return counter;
+        }
+        return Math.max(0, counter - idleMinutes(frequency) / decayTime);
+    }
+
+    /**
+     * @return minutes since the last access
+     */
+    static int idleMinutes(int frequency) {
+        return (minutes() - (frequency >>> 8)) & MINUTES_MASK;
+    }
+
+    private static int minutes() {
+        return (int) Math.floorDiv(System.nanoTime(), NANOS_PER_MINUTE) & MINUTES_MASK;
+    }
+}
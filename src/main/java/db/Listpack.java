@@ -0,0 +1,155 @@
+package db;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Strings packed into one byte array like the listpacks of Redis, each one a varint length followed by its UTF-8
+ * bytes. Positions are byte offsets, the list is walked with {@link #next}. A list costs a single array instead of an
+ * object per element, but every change copies the array, so it only backs the small encodings of {@link Hash} and
+ * {@link SortedSet}.
+ */
+final class Listpack {
+    private static final byte[] EMPTY = new byte[0];
+    private byte[] bytes;
+    private int elements;
+
+    Listpack() {
+        this.bytes = EMPTY;
+        this.elements = 0;
+    }
+
+    int elements() {
+        return elements;
+    }
+
+    /**
+     * @return position after the last element
+     */
+    int end() {
+        return bytes.length;
+    }
+
+    /**
+     * @return position of the element after the one at the given position
+     */
+    int next(int position) {
+        return position + size(length(position));
+    }
+
+    String get(int position) {
+        final var length = length(position);
+        return new String(bytes, start(position, length), length, UTF_8);
+    }
+
+    /**
+     * For lists of pairs, like fields and values.
+     *
+     * @return position of the first element of the pair whose first element equals the given one, -1 when missing
+     */
+    int findPair(byte[] element) {
+        for (var position = 0; position < bytes.length; position = next(next(position))) {
+            final var length = length(position);
+            final var start = start(position, length);
+            if (Arrays.equals(bytes, start, start + length, element, 0, element.length)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts the elements in front of the element at the given position, {@link #end} appends them.
+     */
+    void insert(int position, byte[]... inserted) {
+        var insertedSize = 0;
+        for (var element : inserted) {
+            insertedSize += size(element.length);
+        }
+        final var spliced = new byte[bytes.length + insertedSize];
+        System.arraycopy(bytes, 0, spliced, 0, position);
+        var target = position;
+        for (var element : inserted) {
+            target = write(element, spliced, target);
+        }
+        System.arraycopy(bytes, position, spliced, target, bytes.length - position);
+        bytes = spliced;
+        elements += inserted.length;
+    }
+
+    void replace(int position, byte[] element) {
+        remove(position, 1);
+        insert(position, element);
+    }
+
+    /**
+     * Removes count elements starting with the one at the given position.
+     */
+    void remove(int position, int count) {
+        var end = position;
+        for (var i = 0; i < count; i++) {
+            end = next(end);
+        }
+        final var spliced = new byte[bytes.length - (end - position)];
+        System.arraycopy(bytes, 0, spliced, 0, position);
+        System.arraycopy(bytes, end, spliced, position, bytes.length - end);
+        bytes = spliced;
+        elements -= count;
+    }
+
+    /**
+     * @return heap size of the listpack and its array
+     */
+    long memoryUsage() {
+        return MemoryUsage.object(8) + MemoryUsage.array(bytes.length, 1);
+    }
+
+    void clear() {
+        bytes = EMPTY;
+        elements = 0;
+    }
+
+    /**
+     * @return length of the element at the given position, without its varint
+     */
+    private int length(int position) {
+        var length = 0;
+        for (var shift = 0; ; shift += 7) {
+            final var current = bytes[position++];
+            length |= (current & 0x7F) << shift;
+            if (current >= 0) {
+                return length;
+            }
+        }
+    }
+
+    private static int start(int position, int length) {
+        return position + size(length) - length;
+    }
+
+    /**
+     * @return position after the written element
+     */
+    private static int write(byte[] element, byte[] target, int position) {
+        var length = element.length;
+        while (length >= 0x80) {
+            target[position++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        target[position++] = (byte) length;
+        System.arraycopy(element, 0, target, position, element.length);
+        return position + element.length;
+    }
+
+    /**
+     * @return bytes taken by an element of the given length including its varint
+     */
+    private static int size(int length) {
+        var varint = 1;
+        for (var remaining = length >>> 7; remaining > 0; remaining >>>= 7) {
+            varint++;
+        }
+        return varint + length;
+    }
+}
@@ -0,0 +1,132 @@
+package db;
+
+/**
+ * LZF, the byte oriented LZ77 variant Redis uses for compressed strings in RDB files. A control byte below 32 starts
+ * a run of up to 32 literal bytes, any other one a back reference of 3 to 264 bytes at most 8 KB back. There is no
+ * entropy coding, so both directions are a single pass of byte comparisons and copies.
+ */
+final class Lzf {
+    private static final int HASH_LOG = 13;
+    private static final int MAX_LITERAL = 32;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+
+    private Lzf() {
+    }
+
+    /**
+     * @param input  bytes to compress
+     * @param output receives the compressed bytes, its length is the largest acceptable result
+     * @return length of the compressed data, 0 when it does not fit into the output
+     */
+    static int compress(byte[] input, byte[] output) {
+        final var table = new int[1 << HASH_LOG];
+        var in = 0;
+        // the control byte of the current literal run is reserved in front of its bytes
+        var out = 1;
+        var literals = 0;
+        while (in < input.length - 2) {
+            final var hash = hash(input, in);
+            final var reference = table[hash] - 1;
+            table[hash] = in + 1;
+            final var offset = in - reference - 1;
+            if (reference >= 0 && offset < MAX_OFFSET
+                    && input[reference] == input[in]
+                    && input[reference + 1] == input[in + 1]
+                    && input[reference + 2] == input[in + 2]) {
+                final var maxLength = Math.min(MAX_REFERENCE, input.length - in);
+                var length = 3;
+                while (length < maxLength && input[reference + length] == input[in + length]) {
+                    length++;
+                }
+                if (literals > 0) {
+                    output[out - literals - 1] = (byte) (literals - 1);
+                } else {
+                    out--;
+                }
+                if (out + 3 > output.length) {
+                    return 0;
+                }
+                final var encodedLength = length - 2;
+                if (encodedLength < 7) {
+                    output[out++] = (byte) ((encodedLength << 5) + (offset >>> 8));
+                } else {
+                    output[out++] = (byte) ((7 << 5) + (offset >>> 8));
+                    output[out++] = (byte) (encodedLength - 7);
+                }
+                output[out++] = (byte) offset;
+                in += length;
+                literals = 0;
+                out++;
+                continue;
+            }
+            if (out >= output.length) {
+                return 0;
+            }
+            output[out++] = input[in++];
+            if (++literals == MAX_LITERAL) {
+                output[out - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                out++;
+            }
+        }
+        while (in < input.length) {
+            if (out >= output.length) {
+                return 0;
+            }
+            output[out++] = input[in++];
+            if (++literals == MAX_LITERAL) {
+                output[out - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                out++;
+            }
+        }
+        if (literals > 0) {
+            output[out - literals - 1] = (byte) (literals - 1);
+        } else {
+            out--;
+        }
+        return out;
+    }
+
+    /**
+     * @param input  compressed bytes
+     * @param output receives the original bytes, must have their exact length
+     */
+    static void decompress(byte[] input, byte[] output) {
+        var in = 0;
+        var out = 0;
+        while (in < input.length) {
+            final var control = input[in++] & 0xFF;
+            if (control < MAX_LITERAL) {
+                System.arraycopy(input, in, output, out, control + 1);
+                in += control + 1;
+                out += control + 1;
+                continue;
+            }
+            var length = control >>> 5;
+            if (length == 7) {
+                length += input[in++] & 0xFF;
+            }
+            length += 2;
+            var reference = out - ((control & 0x1F) << 8) - (input[in++] & 0xFF) - 1;
+            if (out - reference >= length) {
+                System.arraycopy(output, reference, output, out, length);
+                out += length;
+                continue;
+            }
+            // source and target overlap, a short offset repeats the same bytes
+            for (var i = 0; i < length; i++) {
+                output[out++] = output[reference++];
+            }
+        }
+        if (out != output.length) {
+            throw new IllegalStateException("Corrupt LZF data, expected %d bytes, got %d".formatted(output.length, out));
+        }
+    }
+
+    private static int hash(byte[] input, int position) {
+        final var value = (input[position] & 0xFF) << 16 | (input[position + 1] & 0xFF) << 8 | input[position + 2] & 0xFF;
+        return (value * 0x9E3779B1) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,45 @@
+package db;
+
+/**
+ * Heap sizes of the objects values are made of, for MEMORY USAGE and BIGKEYS. They assume a 64 bit JVM with
+ * compressed references, 12 byte object headers and 8 byte alignment, and compact strings of one byte per character.
+ */
+final class MemoryUsage {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    // header, value, coder, hash and two flags
+    private static final int STRING = 24;
+    private static final int BOXED = 16;
+
+    private MemoryUsage() {
+    }
+
+    /**
+     * @return size of a string and its byte array
+     */
+    static long string(String value) {
+        return STRING + array(value.length(), 1);
+    }
+
+    /**
+     * @return size of an array of the given length and element size
+     */
+    static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * @return size of an object with the given bytes of fields
+     */
+    static long object(int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    static long boxed() {
+        return BOXED;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
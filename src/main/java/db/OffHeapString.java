@@ -0,0 +1,7 @@
+package db;
+
+/**
+ * String value stored in the {@link Slab} of its database, the keyspace only holds the handle.
+ */
+record OffHeapString(int handle) {
+}
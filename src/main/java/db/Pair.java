@@ -25,6 +25,10 @@ public final class Pair {
         return pair(response.map(mapValue), error.map(mapError));
     }
 
+    public boolean isError() {
+        return response.isEmpty();
+    }
+
     public String actualValue() {
         return response.orElseGet(error::get);
     }
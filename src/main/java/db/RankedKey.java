@@ -0,0 +1,14 @@
+package db;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Key found by HOTKEYS or BIGKEYS.
+ *
+ * @param score LFU counter or estimated size in bytes
+ */
+public record RankedKey(String key, long score) {
+    public RankedKey {
+        requireNonNull(key);
+    }
+}
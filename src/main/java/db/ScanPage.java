@@ -0,0 +1,17 @@
+package db;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keys returned by one SCAN call.
+ *
+ * @param cursor       to pass to the next call, 0 when the iteration is complete
+ * @param keysWithType keys with the name of their type as reported by TYPE
+ */
+public record ScanPage(long cursor, Map<String, String> keysWithType) {
+    public ScanPage {
+        requireNonNull(keysWithType);
+    }
+}
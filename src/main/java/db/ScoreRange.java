@@ -0,0 +1,34 @@
+package db;
+
+/**
+ * Score interval of ZRANGEBYSCORE and friends, bounds are inclusive unless prefixed with (.
+ */
+public record ScoreRange(double min, boolean minExclusive, double max, boolean maxExclusive) {
+
+    /**
+     * @throws IllegalArgumentException with the error reply when a bound is no number
+     */
+    public static ScoreRange parse(String min, String max) {
+        try {
+            return new ScoreRange(bound(min), min.startsWith("("), bound(max), max.startsWith("("));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR min or max is not a float");
+        }
+    }
+
+    private static double bound(String bound) {
+        return SortedSet.parseScore(bound.startsWith("(") ? bound.substring(1) : bound);
+    }
+
+    boolean aboveMin(double score) {
+        return minExclusive ? score > min : score >= min;
+    }
+
+    boolean belowMax(double score) {
+        return maxExclusive ? score < max : score <= max;
+    }
+
+    boolean contains(double score) {
+        return aboveMin(score) && belowMax(score);
+    }
+}
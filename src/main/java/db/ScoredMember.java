@@ -0,0 +1,27 @@
+package db;
+
+import java.math.BigDecimal;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Member of a sorted set with its score.
+ */
+public record ScoredMember(String member, double score) {
+    public ScoredMember {
+        requireNonNull(member);
+    }
+
+    /**
+     * Shortest decimal form like Redis replies with, inf and -inf for the infinities.
+     */
+    public static String format(double score) {
+        if (Double.isInfinite(score)) {
+            return score > 0 ? "inf" : "-inf";
+        }
+        if (score == (long) score) {
+            return SharedIntegers.toString((long) score);
+        }
+        return BigDecimal.valueOf(score).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,74 @@
+package db;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One partition of the keyspace. The shard thread is the only one touching its {@link Database}, other threads hand
+ * over work through a lock-free queue and get woken up through the returned future. Between tasks the thread runs
+ * {@link Database#cron} every {@link #CRON_INTERVAL_NANOS}, also when the queue never runs empty.
+ */
+final class Shard implements Runnable {
+    private static final long CRON_INTERVAL_NANOS = 100_000_000;
+    private final Database database;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+
+    private Shard(Database database, String name) {
+        this.database = requireNonNull(database);
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.thread = new Thread(this, requireNonNull(name));
+        // shards are idle without connection threads feeding them, they must not keep the JVM alive
+        this.thread.setDaemon(true);
+    }
+
+    static Shard shard(int index, Database database) {
+        final var shard = new Shard(database, "shard-" + index);
+        shard.thread.start();
+        return shard;
+    }
+
+    /**
+     * Only safe to use while the shard thread is parked inside a task of the caller, see
+     * {@link Keyspace#executeAtomically}.
+     */
+    Database database() {
+        return database;
+    }
+
+    <T> CompletableFuture<T> submit(Function<Database, T> operation) {
+        final var future = new CompletableFuture<T>();
+        tasks.offer(() -> {
+            try {
+                future.complete(operation.apply(database));
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        LockSupport.unpark(thread);
+        return future;
+    }
+
+    @Override
+    public void run() {
+        var nextCron = System.nanoTime() + CRON_INTERVAL_NANOS;
+        while (true) {
+            if (System.nanoTime() - nextCron >= 0) {
+                database.cron();
+                nextCron = System.nanoTime() + CRON_INTERVAL_NANOS;
+            }
+            final var task = tasks.poll();
+            if (task == null) {
+                // an unpark issued between poll and park is not lost, park returns immediately
+                LockSupport.parkNanos(this, CRON_INTERVAL_NANOS);
+                continue;
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package db;
+
+/**
+ * Integer encoding of string values. A value that is the canonical decimal form of a 64-bit integer is stored as a
+ * Long, 0 to 9999 share one instance each like the shared integers of Redis, so a counter costs a reference instead of
+ * a String with its byte array.
+ */
+final class SharedIntegers {
+    static final int COUNT = 10_000;
+    private static final Long[] INTEGERS = new Long[COUNT];
+    private static final String[] STRINGS = new String[COUNT];
+    private static final int MAX_DIGITS = 20;
+
+    static {
+        for (var i = 0; i < COUNT; i++) {
+            INTEGERS[i] = (long) i;
+            STRINGS[i] = String.valueOf(i);
+        }
+    }
+
+    private SharedIntegers() {
+    }
+
+    static Long valueOf(long value) {
+        return value >= 0 && value < COUNT ? INTEGERS[(int) value] : Long.valueOf(value);
+    }
+
+    static String toString(long value) {
+        return value >= 0 && value < COUNT ? STRINGS[(int) value] : String.valueOf(value);
+    }
+
+    /**
+     * @return the value to store, a Long when the string round trips through a long, the string otherwise
+     */
+    static Object encode(String value) {
+        return isInteger(value) ? valueOf(Long.parseLong(value)) : value;
+    }
+
+    /**
+     * Canonical form only: no sign but a leading minus, no leading zeros and no whitespace, so GET returns exactly
+     * what SET stored.
+     */
+    static boolean isInteger(String value) {
+        final var length = value.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return false;
+        }
+        final var negative = value.charAt(0) == '-';
+        final var firstDigit = negative ? 1 : 0;
+        if (firstDigit == length || (value.charAt(firstDigit) == '0' && (length > firstDigit + 1 || negative))) {
+            return false;
+        }
+        for (var i = firstDigit; i < length; i++) {
+            final var character = value.charAt(i);
+            if (character < '0' || character > '9') {
+                return false;
+            }
+        }
+        if (length - firstDigit < 19) {
+            return true;
+        }
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException outOfRange) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package db;
+
+import java.security.SecureRandom;
+
+/**
+ * SipHash-1-2 keyed with a random seed per process, the hash function of dict.c in Redis. Unlike
+ * {@link String#hashCode} a client cannot compute keys that collide, such as "Aa" and "BB", and turn every lookup of
+ * a {@link Dict} into a walk over one long chain.
+ * <p>
+ * The chars of the key are hashed four to a word, so the key is never encoded to bytes.
+ */
+final class SipHash {
+    private static final long K0;
+    private static final long K1;
+
+    static {
+        final var random = new SecureRandom();
+        K0 = random.nextLong();
+        K1 = random.nextLong();
+    }
+
+    private SipHash() {
+    }
+
+    static long hash(String key) {
+        var v0 = K0 ^ 0x736f6d6570736575L;
+        var v1 = K1 ^ 0x646f72616e646f6dL;
+        var v2 = K0 ^ 0x6c7967656e657261L;
+        var v3 = K1 ^ 0x7465646279746573L;
+        final var length = key.length();
+        final var end = length & ~3;
+        // the last word holds the remaining chars and the length in bytes in its top byte
+        for (var i = 0; i <= end; i += 4) {
+            final var word = i < end ? word(key, i) : lastWord(key, end, length);
+            v3 ^= word;
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+            v0 ^= word;
+        }
+        v2 ^= 0xff;
+        for (var round = 0; round < 2; round++) {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private static long word(String key, int index) {
+        return key.charAt(index)
+                | (long) key.charAt(index + 1) << 16
+                | (long) key.charAt(index + 2) << 32
+                | (long) key.charAt(index + 3) << 48;
+    }
+
+    private static long lastWord(String key, int end, int length) {
+        var word = (long) (length * 2) << 56;
+        for (var i = end; i < length; i++) {
+            word |= (long) key.charAt(i) << (16 * (i - end));
+        }
+        return word;
+    }
+}
@@ -0,0 +1,311 @@
+package db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Slab allocator keeping string values outside the Java heap, so millions of long-lived values do not add to what the
+ * garbage collector marks and copies. Memory comes in pages of {@link #PAGE_SIZE} bytes from
+ * {@link ByteBuffer#allocateDirect}, every page is cut into slots of one size. Like in jemalloc there are four slot
+ * sizes between two powers of two, so a slot wastes at most a fifth of its size. A value takes the smallest slot
+ * holding its bytes and an 8 byte header with its handle and length, values too large for a page get a page of their
+ * own.
+ * <p>
+ * Values are addressed by an int handle, an index into a table of slot addresses. The keyspace only keeps the handle,
+ * so {@link #compact} can move values between pages without telling anyone. Slots are freed explicitly with
+ * {@link #free}, pages are only given back by {@link #compact} and {@link #clear}, the memory of a direct buffer
+ * returns to the system once the buffer is collected.
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class Slab {
+    static final int PAGE_SIZE = 1 << 20;
+    private static final int HEADER = 8;
+    private static final int MIN_SLOT_SHIFT = 5;
+    private static final int CLASSES = 1 + (Integer.numberOfTrailingZeros(PAGE_SIZE) - MIN_SLOT_SHIFT) * 4;
+    private static final int FREE = -1;
+    private final List<Page> pages;
+    private final List<Integer> releasedPages;
+    private final SizeClass[] classes;
+    private long[] addresses;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+    private long values;
+    private long usedBytes;
+    private long allocatedBytes;
+
+    Slab() {
+        this.pages = new ArrayList<>();
+        this.releasedPages = new ArrayList<>();
+        this.classes = new SizeClass[CLASSES];
+        for (var i = 0; i < CLASSES; i++) {
+            classes[i] = new SizeClass(i);
+        }
+        this.addresses = new long[16];
+        this.freeHandles = new int[16];
+    }
+
+    /**
+     * @param bytes value to copy off the heap
+     * @return handle of the value, valid until it is freed
+     */
+    int allocate(byte[] bytes) {
+        final var slot = bytes.length + HEADER;
+        final long address;
+        if (slot > PAGE_SIZE) {
+            address = address(addPage(slot, -1), 0);
+        } else {
+            address = classes[sizeClass(slot)].allocate();
+        }
+        final var handle = nextHandle();
+        addresses[handle] = address;
+        final var buffer = pages.get(page(address)).buffer;
+        buffer.putInt(offset(address), handle);
+        buffer.putInt(offset(address) + 4, bytes.length);
+        buffer.put(offset(address) + HEADER, bytes);
+        values++;
+        usedBytes += bytes.length;
+        return handle;
+    }
+
+    byte[] read(int handle) {
+        final var address = addresses[handle];
+        final var buffer = pages.get(page(address)).buffer;
+        final var bytes = new byte[buffer.getInt(offset(address) + 4)];
+        buffer.get(offset(address) + HEADER, bytes);
+        return bytes;
+    }
+
+    /**
+     * @return size of the slot holding the value, including its header
+     */
+    int allocatedSize(int handle) {
+        final var address = addresses[handle];
+        final var page = pages.get(page(address));
+        return page.sizeClass < 0 ? page.buffer.capacity() : slotSize(page.sizeClass);
+    }
+
+    /**
+     * Returns the slot of the value to its size class, a value with a page of its own releases the page.
+     */
+    void free(int handle) {
+        final var address = addresses[handle];
+        final var page = pages.get(page(address));
+        usedBytes -= page.buffer.getInt(offset(address) + 4);
+        values--;
+        page.buffer.putInt(offset(address), FREE);
+        addresses[handle] = FREE;
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        }
+        freeHandles[freeHandleCount++] = handle;
+        if (page.sizeClass < 0) {
+            releasePage(page(address));
+        } else {
+            page.used--;
+            classes[page.sizeClass].release(address);
+        }
+    }
+
+    /**
+     * Moves values out of the emptiest pages of every size class into free slots of the fullest ones, until each
+     * class keeps no more pages than its values need, and releases the emptied pages.
+     *
+     * @return number of bytes released
+     */
+    long compact() {
+        final var before = allocatedBytes;
+        for (var sizeClass : classes) {
+            sizeClass.compact();
+        }
+        return before - allocatedBytes;
+    }
+
+    /**
+     * Drops every page at once, for FLUSHALL. Handles must not be used afterwards.
+     */
+    void clear() {
+        pages.clear();
+        releasedPages.clear();
+        for (var i = 0; i < CLASSES; i++) {
+            classes[i] = new SizeClass(i);
+        }
+        addresses = new long[16];
+        freeHandles = new int[16];
+        freeHandleCount = 0;
+        handleCount = 0;
+        values = 0;
+        usedBytes = 0;
+        allocatedBytes = 0;
+    }
+
+    SlabStats stats() {
+        return new SlabStats(values, usedBytes, allocatedBytes);
+    }
+
+    private int nextHandle() {
+        if (freeHandleCount > 0) {
+            return freeHandles[--freeHandleCount];
+        }
+        if (handleCount == addresses.length) {
+            addresses = Arrays.copyOf(addresses, handleCount * 2);
+        }
+        return handleCount++;
+    }
+
+    private int addPage(int capacity, int sizeClass) {
+        final var page = new Page(ByteBuffer.allocateDirect(capacity), sizeClass);
+        allocatedBytes += page.buffer.capacity();
+        if (releasedPages.isEmpty()) {
+            pages.add(page);
+            return pages.size() - 1;
+        }
+        final var id = releasedPages.remove(releasedPages.size() - 1);
+        pages.set(id, page);
+        return id;
+    }
+
+    private void releasePage(int id) {
+        allocatedBytes -= pages.get(id).buffer.capacity();
+        pages.set(id, null);
+        releasedPages.add(id);
+    }
+
+    /**
+     * @return smallest size class with slots of at least the given size
+     */
+    private static int sizeClass(int slot) {
+        if (slot <= 1 << MIN_SLOT_SHIFT) {
+            return 0;
+        }
+        final var shift = 31 - Integer.numberOfLeadingZeros(slot - 1);
+        final var step = 1 << (shift - 2);
+        return 1 + (shift - MIN_SLOT_SHIFT) * 4 + (slot - (1 << shift) - 1) / step;
+    }
+
+    /**
+     * @return 32, then four sizes up to every next power of two: 40, 48, 56, 64, 80 and so on
+     */
+    private static int slotSize(int sizeClass) {
+        if (sizeClass == 0) {
+            return 1 << MIN_SLOT_SHIFT;
+        }
+        final var shift = MIN_SLOT_SHIFT + (sizeClass - 1) / 4;
+        return (1 << shift) + ((sizeClass - 1) % 4 + 1) * (1 << (shift - 2));
+    }
+
+    private static long address(int page, int offset) {
+        return (long) page << 32 | offset;
+    }
+
+    private static int page(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * @param sizeClass -1 for a page holding a single large value
+     */
+    private static final class Page {
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+        private int used;
+
+        private Page(ByteBuffer buffer, int sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    /**
+     * Pages of one slot size with a stack of their free slots.
+     */
+    private final class SizeClass {
+        private final int sizeClass;
+        private final int slotSize;
+        private final List<Integer> pageIds;
+        private long[] freeSlots;
+        private int freeSlotCount;
+
+        private SizeClass(int sizeClass) {
+            this.sizeClass = sizeClass;
+            this.slotSize = slotSize(sizeClass);
+            this.pageIds = new ArrayList<>();
+            this.freeSlots = new long[0];
+        }
+
+        private long allocate() {
+            if (freeSlotCount == 0) {
+                final var id = addPage(PAGE_SIZE, sizeClass);
+                pageIds.add(id);
+                pushFreeSlots(id);
+            }
+            final var address = freeSlots[--freeSlotCount];
+            pages.get(page(address)).used++;
+            return address;
+        }
+
+        private void release(long address) {
+            push(address);
+        }
+
+        private void compact() {
+            final var slotsPerPage = PAGE_SIZE / slotSize;
+            final var live = pageIds.stream().mapToInt(id -> pages.get(id).used).sum();
+            final var needed = (live + slotsPerPage - 1) / slotsPerPage;
+            if (pageIds.size() <= needed) {
+                return;
+            }
+            pageIds.sort(Comparator.comparingInt((Integer id) -> pages.get(id).used).reversed());
+            final var kept = List.copyOf(pageIds.subList(0, needed));
+            final var evacuated = List.copyOf(pageIds.subList(needed, pageIds.size()));
+            freeSlotCount = 0;
+            kept.forEach(this::pushFreeSlots);
+            for (var id : evacuated) {
+                final var from = pages.get(id).buffer;
+                for (var offset = 0; offset + slotSize <= PAGE_SIZE; offset += slotSize) {
+                    final var handle = from.getInt(offset);
+                    if (handle != FREE) {
+                        final var target = freeSlots[--freeSlotCount];
+                        final var to = pages.get(page(target));
+                        to.buffer.put(offset(target), from, offset, HEADER + from.getInt(offset + 4));
+                        to.used++;
+                        addresses[handle] = target;
+                    }
+                }
+                releasePage(id);
+            }
+            pageIds.clear();
+            pageIds.addAll(kept);
+        }
+
+        /**
+         * Pushes the free slots of a page, the lowest offset ends up on top.
+         */
+        private void pushFreeSlots(int id) {
+            final var buffer = pages.get(id).buffer;
+            for (var offset = (PAGE_SIZE / slotSize - 1) * slotSize; offset >= 0; offset -= slotSize) {
+                if (pages.get(id).used == 0) {
+                    buffer.putInt(offset, FREE);
+                }
+                if (buffer.getInt(offset) == FREE) {
+                    push(address(id, offset));
+                }
+            }
+        }
+
+        private void push(long address) {
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, Math.max(64, freeSlotCount * 2));
+            }
+            freeSlots[freeSlotCount++] = address;
+        }
+    }
+}
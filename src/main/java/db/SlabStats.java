@@ -0,0 +1,19 @@
+package db;
+
+/**
+ * String values kept off the heap by a database, see {@link Database#slabStats}.
+ *
+ * @param values         number of values in the slab
+ * @param usedBytes      their size as UTF-8
+ * @param allocatedBytes direct memory held by the slab pages, including free slots and headers
+ */
+public record SlabStats(long values, long usedBytes, long allocatedBytes) {
+    public static final SlabStats NONE = new SlabStats(0, 0, 0);
+
+    public SlabStats plus(SlabStats other) {
+        return new SlabStats(
+                values + other.values,
+                usedBytes + other.usedBytes,
+                allocatedBytes + other.allocatedBytes);
+    }
+}
@@ -0,0 +1,486 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.empty;
+
+/**
+ * Value of a sorted set key, members ordered by score and then by member. Small sets are a {@link Listpack} of
+ * alternating members and scores in that order, every operation scans it. Once the set has more members than
+ * {@link EncodingPolicy#zsetMaxListpackEntries} or a member longer than {@link EncodingPolicy#zsetMaxListpackValue} it
+ * converts for good to the zset of Redis: a {@link Dict} from member to score for O(1) score lookups and a skiplist
+ * whose links know how many nodes they skip, so rank lookups and range starts are O(log n).
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class SortedSet {
+    private static final int MAX_LEVEL = 32;
+    // node with its forward and span arrays, three in four nodes have a single level
+    private static final int SKIPLIST_NODE_BYTES = 96;
+    private final EncodingPolicy encodingPolicy;
+    private Listpack packed;
+    private Dict<Double> scores;
+    private SkipList skipList;
+
+    private static final class Node {
+        private final String member;
+        private final double score;
+        private final Node[] forward;
+        private final long[] span;
+        private Node backward;
+
+        private Node(int level, String member, double score) {
+            this.member = member;
+            this.score = score;
+            this.forward = new Node[level];
+            this.span = new long[level];
+        }
+
+        /**
+         * @return whether the node sorts before the given score and member
+         */
+        private boolean precedes(double score, String member) {
+            return this.score < score || (this.score == score && this.member.compareTo(member) < 0);
+        }
+    }
+
+    /**
+     * zskiplist of Redis, span[i] is the number of nodes between a node and its successor on level i.
+     */
+    private static final class SkipList {
+        private final Node header;
+        private int level;
+        private long length;
+
+        private SkipList() {
+            this.header = new Node(MAX_LEVEL, null, 0);
+            this.level = 1;
+            this.length = 0;
+        }
+
+        private void insert(String member, double score) {
+            final var update = new Node[MAX_LEVEL];
+            final var rank = new long[MAX_LEVEL];
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                rank[i] = i == level - 1 ? 0 : rank[i + 1];
+                while (node.forward[i] != null && node.forward[i].precedes(score, member)) {
+                    rank[i] += node.span[i];
+                    node = node.forward[i];
+                }
+                update[i] = node;
+            }
+            final var nodeLevel = randomLevel();
+            if (nodeLevel > level) {
+                for (var i = level; i < nodeLevel; i++) {
+                    rank[i] = 0;
+                    update[i] = header;
+                    header.span[i] = length;
+                }
+                level = nodeLevel;
+            }
+            final var inserted = new Node(nodeLevel, member, score);
+            for (var i = 0; i < nodeLevel; i++) {
+                inserted.forward[i] = update[i].forward[i];
+                update[i].forward[i] = inserted;
+                inserted.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+                update[i].span[i] = rank[0] - rank[i] + 1;
+            }
+            for (var i = nodeLevel; i < level; i++) {
+                update[i].span[i]++;
+            }
+            inserted.backward = update[0] == header ? null : update[0];
+            if (inserted.forward[0] != null) {
+                inserted.forward[0].backward = inserted;
+            }
+            length++;
+        }
+
+        private void delete(String member, double score) {
+            final var update = new Node[MAX_LEVEL];
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null && node.forward[i].precedes(score, member)) {
+                    node = node.forward[i];
+                }
+                update[i] = node;
+            }
+            node = node.forward[0];
+            if (node != null && node.score == score && node.member.equals(member)) {
+                unlink(node, update);
+            }
+        }
+
+        /**
+         * @return members removed from the set
+         */
+        private List<String> deleteRange(ScoreRange range) {
+            final var update = new Node[MAX_LEVEL];
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null && !range.aboveMin(node.forward[i].score)) {
+                    node = node.forward[i];
+                }
+                update[i] = node;
+            }
+            final var removed = new ArrayList<String>();
+            node = node.forward[0];
+            while (node != null && range.belowMax(node.score)) {
+                final var next = node.forward[0];
+                unlink(node, update);
+                removed.add(node.member);
+                node = next;
+            }
+            return removed;
+        }
+
+        private void unlink(Node node, Node[] update) {
+            for (var i = 0; i < level; i++) {
+                if (update[i].forward[i] == node) {
+                    update[i].span[i] += node.span[i] - 1;
+                    update[i].forward[i] = node.forward[i];
+                } else {
+                    update[i].span[i]--;
+                }
+            }
+            if (node.forward[0] != null) {
+                node.forward[0].backward = node.backward;
+            }
+            while (level > 1 && header.forward[level - 1] == null) {
+                level--;
+            }
+            length--;
+        }
+
+        /**
+         * @return rank starting with 1, 0 when the member is missing
+         */
+        private long rank(String member, double score) {
+            var rank = 0L;
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null
+                        && (node.forward[i].precedes(score, member) || node.forward[i].member.equals(member))) {
+                    rank += node.span[i];
+                    node = node.forward[i];
+                }
+                if (node != header && node.member.equals(member)) {
+                    return rank;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param rank starting with 1
+         */
+        private Node byRank(long rank) {
+            var traversed = 0L;
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null && traversed + node.span[i] <= rank) {
+                    traversed += node.span[i];
+                    node = node.forward[i];
+                }
+                if (traversed == rank) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return first node with a score in the range, null when there is none
+         */
+        private Node first(ScoreRange range) {
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null && !range.aboveMin(node.forward[i].score)) {
+                    node = node.forward[i];
+                }
+            }
+            node = node.forward[0];
+            return node != null && range.belowMax(node.score) ? node : null;
+        }
+
+        /**
+         * @return last node with a score in the range, null when there is none
+         */
+        private Node last(ScoreRange range) {
+            var node = header;
+            for (var i = level - 1; i >= 0; i--) {
+                while (node.forward[i] != null && range.belowMax(node.forward[i].score)) {
+                    node = node.forward[i];
+                }
+            }
+            return node != header && range.aboveMin(node.score) ? node : null;
+        }
+
+        private static int randomLevel() {
+            var level = 1;
+            while (level < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0) {
+                level++;
+            }
+            return level;
+        }
+    }
+
+    SortedSet(EncodingPolicy encodingPolicy) {
+        this.encodingPolicy = encodingPolicy;
+        this.packed = new Listpack();
+    }
+
+    /**
+     * Parses like Redis, which also accepts inf, +inf and -inf.
+     *
+     * @throws NumberFormatException for values that are no number
+     */
+    static double parseScore(String score) {
+        return switch (score.toLowerCase()) {
+            case "inf", "+inf" -> Double.POSITIVE_INFINITY;
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            default -> Database.parseFloat(score);
+        };
+    }
+
+    long size() {
+        return skipList != null ? skipList.length : packed.elements() / 2;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return listpack or skiplist, as reported by OBJECT ENCODING
+     */
+    String encoding() {
+        return skipList != null ? "skiplist" : "listpack";
+    }
+
+    Optional<Double> score(String member) {
+        if (skipList != null) {
+            return Optional.ofNullable(scores.get(member));
+        }
+        final var position = packed.findPair(member.getBytes(UTF_8));
+        return position < 0 ? empty() : Optional.of(Double.parseDouble(packed.get(packed.next(position))));
+    }
+
+    /**
+     * Adds the member or moves it to its new score.
+     */
+    void put(String member, double score) {
+        if (skipList != null) {
+            final var previous = scores.put(member, score);
+            if (previous != null) {
+                if (previous == score) {
+                    return;
+                }
+                skipList.delete(member, previous);
+            }
+            skipList.insert(member, score);
+            return;
+        }
+        final var memberBytes = member.getBytes(UTF_8);
+        final var existing = packed.findPair(memberBytes);
+        final var members = existing < 0 ? size() + 1 : size();
+        if (members > encodingPolicy.zsetMaxListpackEntries()
+                || memberBytes.length > encodingPolicy.zsetMaxListpackValue()) {
+            convert();
+            put(member, score);
+            return;
+        }
+        if (existing >= 0) {
+            packed.remove(existing, 2);
+        }
+        var position = 0;
+        while (position < packed.end()) {
+            final var scorePosition = packed.next(position);
+            final var current = Double.parseDouble(packed.get(scorePosition));
+            if (current > score || (current == score && packed.get(position).compareTo(member) > 0)) {
+                break;
+            }
+            position = packed.next(scorePosition);
+        }
+        packed.insert(position, memberBytes, Double.toString(score).getBytes(UTF_8));
+    }
+
+    /**
+     * @return whether the member existed
+     */
+    boolean remove(String member) {
+        if (skipList != null) {
+            final var score = scores.remove(member);
+            if (score == null) {
+                return false;
+            }
+            skipList.delete(member, score);
+            return true;
+        }
+        final var position = packed.findPair(member.getBytes(UTF_8));
+        if (position < 0) {
+            return false;
+        }
+        packed.remove(position, 2);
+        return true;
+    }
+
+    /**
+     * @return rank starting with 0 for the lowest score, empty when the member is missing
+     */
+    Optional<Long> rank(String member) {
+        if (skipList != null) {
+            final var score = scores.get(member);
+            return score == null ? empty() : Optional.of(skipList.rank(member, score) - 1);
+        }
+        var rank = 0L;
+        for (var position = 0; position < packed.end(); position = packed.next(packed.next(position))) {
+            if (packed.get(position).equals(member)) {
+                return Optional.of(rank);
+            }
+            rank++;
+        }
+        return empty();
+    }
+
+    /**
+     * @param start   first rank, starting with 0, at most stop
+     * @param stop    last rank, included, less than the size
+     * @param reverse whether ranks count from the highest score
+     * @return members in rank order
+     */
+    List<ScoredMember> range(long start, long stop, boolean reverse) {
+        final var result = new ArrayList<ScoredMember>();
+        if (skipList != null) {
+            var node = skipList.byRank(reverse ? skipList.length - start : start + 1);
+            for (var rank = start; node != null && rank <= stop; rank++) {
+                result.add(new ScoredMember(node.member, node.score));
+                node = reverse ? node.backward : node.forward[0];
+            }
+            return result;
+        }
+        if (reverse) {
+            final var members = range(size() - 1 - stop, size() - 1 - start, false);
+            Collections.reverse(members);
+            return members;
+        }
+        var rank = 0L;
+        for (var position = 0; position < packed.end() && rank <= stop; rank++) {
+            final var scorePosition = packed.next(position);
+            if (rank >= start) {
+                result.add(new ScoredMember(packed.get(position), Double.parseDouble(packed.get(scorePosition))));
+            }
+            position = packed.next(scorePosition);
+        }
+        return result;
+    }
+
+    /**
+     * @param offset  members in the range to skip
+     * @param count   maximum number of members, negative for all
+     * @param reverse whether to start with the highest score
+     * @return members in score order
+     */
+    List<ScoredMember> rangeByScore(ScoreRange range, long offset, long count, boolean reverse) {
+        final var result = new ArrayList<ScoredMember>();
+        var skipped = 0L;
+        if (skipList != null) {
+            var node = reverse ? skipList.last(range) : skipList.first(range);
+            while (node != null && (reverse ? range.aboveMin(node.score) : range.belowMax(node.score))) {
+                if (count >= 0 && result.size() >= count) {
+                    break;
+                }
+                if (skipped++ >= offset) {
+                    result.add(new ScoredMember(node.member, node.score));
+                }
+                node = reverse ? node.backward : node.forward[0];
+            }
+            return result;
+        }
+        if (reverse) {
+            final var descending = rangeByScore(range, 0, -1, false);
+            Collections.reverse(descending);
+            final var from = (int) Math.min(offset, descending.size());
+            final var to = count < 0 ? descending.size() : (int) Math.min(from + count, descending.size());
+            return descending.subList(from, to);
+        }
+        for (var position = 0; position < packed.end(); ) {
+            final var scorePosition = packed.next(position);
+            final var score = Double.parseDouble(packed.get(scorePosition));
+            if (!range.belowMax(score) || (count >= 0 && result.size() >= count)) {
+                break;
+            }
+            if (range.aboveMin(score) && skipped++ >= offset) {
+                result.add(new ScoredMember(packed.get(position), score));
+            }
+            position = packed.next(scorePosition);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of removed members
+     */
+    long removeRangeByScore(ScoreRange range) {
+        if (skipList != null) {
+            final var removed = skipList.deleteRange(range);
+            removed.forEach(scores::remove);
+            return removed.size();
+        }
+        var first = -1;
+        var removed = 0;
+        for (var position = 0; position < packed.end(); ) {
+            final var scorePosition = packed.next(position);
+            final var score = Double.parseDouble(packed.get(scorePosition));
+            if (!range.belowMax(score)) {
+                break;
+            }
+            if (range.aboveMin(score)) {
+                first = first < 0 ? position : first;
+                removed++;
+            }
+            position = packed.next(scorePosition);
+        }
+        if (removed > 0) {
+            packed.remove(first, removed * 2);
+        }
+        return removed;
+    }
+
+    /**
+     * @return estimated heap size, a skiplist only sizes its first members, see {@link Dict#memoryUsage}
+     */
+    long memoryUsage(int samples) {
+        if (skipList == null) {
+            return MemoryUsage.object(16) + packed.memoryUsage();
+        }
+        // the skiplist shares the member strings with the dict
+        return MemoryUsage.object(16) + MemoryUsage.object(16)
+                + scores.memoryUsage(samples, (member, score) -> MemoryUsage.string(member) + MemoryUsage.boxed())
+                + skipList.length * SKIPLIST_NODE_BYTES;
+    }
+
+    void clear() {
+        if (skipList != null) {
+            scores.clear();
+        } else {
+            packed.clear();
+        }
+    }
+
+    private void convert() {
+        final var members = range(0, size() - 1, false);
+        scores = new Dict<>();
+        skipList = new SkipList();
+        packed = null;
+        for (var member : members) {
+            scores.put(member.member(), member.score());
+            skipList.insert(member.member(), member.score());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package db;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Arguments of ZADD: [NX|XX] [GT|LT] [CH] [INCR] score member [score member ...]. NX only adds new members, XX only
+ * updates existing ones, GT and LT only move a member up or down, new members are added regardless.
+ */
+public final class SortedSetAdd {
+    private final boolean onlyNew;
+    private final boolean onlyExisting;
+    private final boolean onlyGreater;
+    private final boolean onlyLess;
+    private final boolean countChanged;
+    private final boolean increment;
+    private final Map<String, Double> membersWithScores;
+
+    private SortedSetAdd(boolean onlyNew, boolean onlyExisting, boolean onlyGreater, boolean onlyLess,
+                         boolean countChanged, boolean increment, Map<String, Double> membersWithScores) {
+        this.onlyNew = onlyNew;
+        this.onlyExisting = onlyExisting;
+        this.onlyGreater = onlyGreater;
+        this.onlyLess = onlyLess;
+        this.countChanged = countChanged;
+        this.increment = increment;
+        this.membersWithScores = membersWithScores;
+    }
+
+    /**
+     * @param arguments options followed by scores and members, everything after the key
+     * @throws IllegalArgumentException with the error reply for invalid arguments
+     */
+    public static SortedSetAdd parse(List<String> arguments) {
+        var onlyNew = false;
+        var onlyExisting = false;
+        var onlyGreater = false;
+        var onlyLess = false;
+        var countChanged = false;
+        var increment = false;
+        var position = 0;
+        for (; position < arguments.size() && isOption(arguments.get(position)); position++) {
+            switch (arguments.get(position).toLowerCase()) {
+                case "nx" -> onlyNew = true;
+                case "xx" -> onlyExisting = true;
+                case "gt" -> onlyGreater = true;
+                case "lt" -> onlyLess = true;
+                case "ch" -> countChanged = true;
+                default -> increment = true;
+            }
+        }
+        final var pairs = arguments.size() - position;
+        if (pairs == 0 || pairs % 2 != 0) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        if (onlyNew && onlyExisting) {
+            throw new IllegalArgumentException("ERR XX and NX options at the same time are not compatible");
+        }
+        if ((onlyGreater && onlyLess) || (onlyNew && (onlyGreater || onlyLess))) {
+            throw new IllegalArgumentException("ERR GT, LT, and/or NX options at the same time are not compatible");
+        }
+        if (increment && pairs != 2) {
+            throw new IllegalArgumentException("ERR INCR option supports a single increment-element pair");
+        }
+        final var membersWithScores = new LinkedHashMap<String, Double>();
+        for (; position < arguments.size(); position += 2) {
+            membersWithScores.put(arguments.get(position + 1), score(arguments.get(position)));
+        }
+        return new SortedSetAdd(onlyNew, onlyExisting, onlyGreater, onlyLess, countChanged, increment,
+                membersWithScores);
+    }
+
+    /**
+     * Options of ZINCRBY, which adds or moves the member unconditionally.
+     *
+     * @throws IllegalArgumentException with the error reply when the increment is no number
+     */
+    public static SortedSetAdd increment(String member, String increment) {
+        return new SortedSetAdd(false, false, false, false, false, true, Map.of(member, score(increment)));
+    }
+
+    private static double score(String score) {
+        try {
+            return SortedSet.parseScore(score);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not a valid float");
+        }
+    }
+
+    private static boolean isOption(String argument) {
+        return switch (argument.toLowerCase()) {
+            case "nx", "xx", "gt", "lt", "ch", "incr" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return whether ZADD replies with the increased score instead of a count
+     */
+    public boolean increment() {
+        return increment;
+    }
+
+    /**
+     * @return whether members that only got a new score count in the reply
+     */
+    boolean countChanged() {
+        return countChanged;
+    }
+
+    /**
+     * Scores, or the increment for INCR, by member in the order given.
+     */
+    Map<String, Double> membersWithScores() {
+        return membersWithScores;
+    }
+
+    /**
+     * @param current score of the member, empty for new members
+     * @param updated score the member would get
+     */
+    boolean allows(Optional<Double> current, double updated) {
+        if (current.isEmpty()) {
+            return !onlyExisting;
+        }
+        return !onlyNew && (!onlyGreater || updated > current.get()) && (!onlyLess || updated < current.get());
+    }
+}
@@ -0,0 +1,279 @@
+package db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only log on local disk for cold string values, see {@link TieringPolicy}. The log is a series of segment
+ * files of {@link #SEGMENT_SIZE} bytes, each mapped into memory once, so reads and appends are plain memory accesses
+ * and the operating system pages the data in and out. A value is appended to the last segment with an 8 byte header
+ * of its handle and length. Freeing a value only marks its header, the space is reclaimed by {@link #compact}, which
+ * copies the live values of the segment with the most dead space to the end of the log and deletes its file.
+ * <p>
+ * Like the {@link Slab} values are addressed by an int handle into a table of addresses, so compaction can move them
+ * without telling the keyspace. Segment files are created on first use and deleted when closed, the log does not
+ * survive a restart.
+ * <p>
+ * Not thread-safe, only touched by the thread of its shard.
+ */
+final class SpillFile {
+    static final int SEGMENT_SIZE = 16 << 20;
+    private static final int HEADER = 8;
+    private static final int FREE = -1;
+    private final Path directory;
+    private final List<Segment> segments;
+    private final List<Integer> releasedSegments;
+    private long[] addresses;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+    private int tail;
+    private int victim;
+    private int victimPosition;
+    private long values;
+    private long usedBytes;
+
+    SpillFile(Path directory) {
+        this.directory = directory;
+        this.segments = new ArrayList<>();
+        this.releasedSegments = new ArrayList<>();
+        this.addresses = new long[16];
+        this.freeHandles = new int[16];
+        this.tail = -1;
+        this.victim = -1;
+    }
+
+    /**
+     * @return whether a value of the given length fits into a segment
+     */
+    static boolean fits(int length) {
+        return length <= SEGMENT_SIZE - HEADER;
+    }
+
+    /**
+     * @param bytes value to write to the end of the log, must {@link #fits fit} into a segment
+     * @return handle of the value, valid until it is freed
+     */
+    int append(byte[] bytes) {
+        final var handle = nextHandle();
+        addresses[handle] = write(handle, bytes);
+        values++;
+        usedBytes += bytes.length;
+        return handle;
+    }
+
+    byte[] read(int handle) {
+        final var address = addresses[handle];
+        final var buffer = segments.get(segment(address)).buffer;
+        final var bytes = new byte[buffer.getInt(position(address) + 4)];
+        buffer.get(position(address) + HEADER, bytes);
+        return bytes;
+    }
+
+    /**
+     * Marks the value as dead, a segment without live values other than the last is deleted right away.
+     */
+    void free(int handle) {
+        final var address = addresses[handle];
+        final var id = segment(address);
+        final var segment = segments.get(id);
+        final var length = segment.buffer.getInt(position(address) + 4);
+        segment.buffer.putInt(position(address), FREE);
+        segment.live -= HEADER + length;
+        usedBytes -= length;
+        values--;
+        addresses[handle] = FREE;
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        }
+        freeHandles[freeHandleCount++] = handle;
+        if (segment.live == 0 && id != tail) {
+            releaseSegment(id);
+        }
+    }
+
+    /**
+     * One step of compaction: copies live values of the segment with the most dead space to the end of the log,
+     * once at least half of a full segment is dead. The segment is deleted when all its values have moved, so
+     * compaction needs one spare segment of disk at most.
+     *
+     * @param maxBytes bytes to copy at most, bounding the time of the step
+     * @return bytes of disk released
+     */
+    long compact(int maxBytes) {
+        if (victim < 0) {
+            victim = emptiestSegment();
+            victimPosition = 0;
+            if (victim < 0) {
+                return 0;
+            }
+        }
+        final var from = segments.get(victim);
+        var copied = 0;
+        while (from.live > 0 && copied < maxBytes) {
+            final var handle = from.buffer.getInt(victimPosition);
+            final var length = from.buffer.getInt(victimPosition + 4);
+            if (handle != FREE) {
+                final var bytes = new byte[length];
+                from.buffer.get(victimPosition + HEADER, bytes);
+                from.buffer.putInt(victimPosition, FREE);
+                from.live -= HEADER + length;
+                addresses[handle] = write(handle, bytes);
+                copied += HEADER + length;
+            }
+            victimPosition += HEADER + length;
+        }
+        if (from.live > 0) {
+            return 0;
+        }
+        final var released = victim;
+        victim = -1;
+        releaseSegment(released);
+        return SEGMENT_SIZE;
+    }
+
+    /**
+     * Deletes every segment at once, for FLUSHALL. Handles must not be used afterwards.
+     */
+    void clear() {
+        for (var id = 0; id < segments.size(); id++) {
+            if (segments.get(id) != null) {
+                releaseSegment(id);
+            }
+        }
+        segments.clear();
+        releasedSegments.clear();
+        addresses = new long[16];
+        freeHandles = new int[16];
+        freeHandleCount = 0;
+        handleCount = 0;
+        tail = -1;
+        victim = -1;
+        values = 0;
+        usedBytes = 0;
+    }
+
+    SpillStats stats() {
+        return new SpillStats(values, usedBytes, (long) (segments.size() - releasedSegments.size()) * SEGMENT_SIZE);
+    }
+
+    /**
+     * @return address of the value, written behind the last value of the log
+     */
+    private long write(int handle, byte[] bytes) {
+        if (tail < 0 || segments.get(tail).end + HEADER + bytes.length > SEGMENT_SIZE) {
+            tail = addSegment();
+        }
+        final var segment = segments.get(tail);
+        final var position = segment.end;
+        segment.buffer.putInt(position, handle);
+        segment.buffer.putInt(position + 4, bytes.length);
+        segment.buffer.put(position + HEADER, bytes);
+        segment.end += HEADER + bytes.length;
+        segment.live += HEADER + bytes.length;
+        return address(tail, position);
+    }
+
+    /**
+     * @return the segment with the most dead bytes when they are at least half a segment, -1 when there is none
+     */
+    private int emptiestSegment() {
+        var emptiest = -1;
+        var mostDead = SEGMENT_SIZE / 2 - 1;
+        for (var id = 0; id < segments.size(); id++) {
+            final var segment = segments.get(id);
+            if (segment != null && id != tail && segment.end - segment.live > mostDead) {
+                emptiest = id;
+                mostDead = segment.end - segment.live;
+            }
+        }
+        return emptiest;
+    }
+
+    private int nextHandle() {
+        if (freeHandleCount > 0) {
+            return freeHandles[--freeHandleCount];
+        }
+        if (handleCount == addresses.length) {
+            addresses = Arrays.copyOf(addresses, handleCount * 2);
+        }
+        return handleCount++;
+    }
+
+    private int addSegment() {
+        final Segment segment;
+        try {
+            final var path = Files.createTempFile(directory, "spill-", ".dat");
+            final var channel = FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+            segment = new Segment(channel, channel.map(READ_WRITE, 0, SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create a spill file in " + directory, e);
+        }
+        if (releasedSegments.isEmpty()) {
+            segments.add(segment);
+            return segments.size() - 1;
+        }
+        final var id = releasedSegments.remove(releasedSegments.size() - 1);
+        segments.set(id, segment);
+        return id;
+    }
+
+    /**
+     * Closing the channel deletes the file, its disk space returns once the mapping is collected.
+     */
+    private void releaseSegment(int id) {
+        try {
+            segments.get(id).channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.set(id, null);
+        releasedSegments.add(id);
+        if (id == tail) {
+            tail = -1;
+        }
+        if (id == victim) {
+            victim = -1;
+        }
+    }
+
+    private static long address(int segment, int position) {
+        return (long) segment << 32 | position;
+    }
+
+    private static int segment(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int position(long address) {
+        return (int) address;
+    }
+
+    /**
+     * @param end  position behind the last value written
+     * @param live bytes of the values not freed yet, with their headers
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int end;
+        private int live;
+
+        private Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
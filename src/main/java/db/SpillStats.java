@@ -0,0 +1,19 @@
+package db;
+
+/**
+ * String values spilled to disk by a database, see {@link Database#spillStats}.
+ *
+ * @param values    number of values in the spill file
+ * @param usedBytes their size as UTF-8
+ * @param fileBytes disk held by the segment files, including dead values and headers
+ */
+public record SpillStats(long values, long usedBytes, long fileBytes) {
+    public static final SpillStats NONE = new SpillStats(0, 0, 0);
+
+    public SpillStats plus(SpillStats other) {
+        return new SpillStats(
+                values + other.values,
+                usedBytes + other.usedBytes,
+                fileBytes + other.fileBytes);
+    }
+}
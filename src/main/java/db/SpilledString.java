@@ -0,0 +1,9 @@
+package db;
+
+/**
+ * String value moved to the {@link SpillFile} of its database, see {@link TieringPolicy}.
+ *
+ * @param handle of the value in the spill file
+ */
+record SpilledString(int handle) {
+}
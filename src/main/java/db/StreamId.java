@@ -0,0 +1,55 @@
+package db;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * Id of a stream entry, ordered by milliseconds and then sequence number.
+ */
+public record StreamId(long millis, long sequenceNumber) implements Comparable<StreamId> {
+    public static final StreamId MIN = new StreamId(0, 0);
+    public static final StreamId MAX = new StreamId(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * @param id milliseconds with an optional sequence number, a missing sequence number counts as 0
+     * @throws IllegalArgumentException with the error reply for a malformed id
+     */
+    public static StreamId parse(String id) {
+        final var parts = id.split("-", -1);
+        try {
+            final var millis = parseLong(parts[0]);
+            final var sequenceNumber = parts.length > 1 ? parseLong(parts[1]) : 0;
+            if (parts.length > 2 || millis < 0 || sequenceNumber < 0) {
+                throw new NumberFormatException(id);
+            }
+            return new StreamId(millis, sequenceNumber);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR Invalid stream ID specified as stream command argument");
+        }
+    }
+
+    /**
+     * Bounds of ranges, - and + stand for the smallest and the greatest id.
+     */
+    public static StreamId parseBound(String id) {
+        return switch (id) {
+            case "-" -> MIN;
+            case "+" -> MAX;
+            default -> parse(id);
+        };
+    }
+
+    static StreamId of(Entries entry) {
+        return parse(entry.id());
+    }
+
+    @Override
+    public int compareTo(StreamId other) {
+        final var byMillis = Long.compare(millis, other.millis);
+        return byMillis != 0 ? byMillis : Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+
+    @Override
+    public String toString() {
+        return millis + "-" + sequenceNumber;
+    }
+}
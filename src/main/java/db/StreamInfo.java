@@ -0,0 +1,13 @@
+package db;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Summary of a stream reported by XINFO STREAM.
+ */
+public record StreamInfo(long length, Entries firstEntry, Entries lastEntry, int groups) {
+    public StreamInfo {
+        requireNonNull(firstEntry);
+        requireNonNull(lastEntry);
+    }
+}
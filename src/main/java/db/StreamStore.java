@@ -1,9 +1,12 @@
 package db;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Stack;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
 
 import static db.Pair.pair;
 import static java.lang.Long.parseLong;
@@ -14,39 +17,43 @@ import static java.util.Optional.of;
 import static java.util.stream.Collectors.toMap;
 
 final class StreamStore {
-    private final Map<String, Stack<Entries>> streams;
+    private final Dict<ChunkedStream> streams;
+    private final LfuPolicy lfuPolicy;
 
-    private StreamStore(Map<String, Stack<Entries>> streams) {
+    private StreamStore(Dict<ChunkedStream> streams, LfuPolicy lfuPolicy) {
         this.streams = requireNonNull(streams);
+        this.lfuPolicy = requireNonNull(lfuPolicy);
     }
 
     public static StreamStore streamStore() {
-        return new StreamStore(new ConcurrentHashMap<>(16));
+        return streamStore(LfuPolicy.DEFAULT);
     }
 
-    public Pair put(String streamKey, String value, Map<String, String> map) {
-        final var entries = streams.get(streamKey);
+    /**
+     * @param lfuPolicy counts the accesses of XADD, XTRIM, XRANGE, XREAD and XREADGROUP
+     */
+    public static StreamStore streamStore(LfuPolicy lfuPolicy) {
+        return new StreamStore(new Dict<>(), lfuPolicy);
+    }
+
+    public Pair put(String streamKey, String value, Map<String, String> map, Optional<StreamTrim> trim) {
+        final var entries = streams.access(streamKey, lfuPolicy);
+        final var head = entries == null || entries.isEmpty() ? null : entries.last();
 
         if (value.equals("*")) {
-            final var stack = new Stack<Entries>();
-            final var millis = currentTimeMillis() + "-0";
-            stack.push(new Entries(millis, map));
-            streams.put(streamKey, stack);
-            return pair(of(millis), empty());
+            final var millis = currentTimeMillis();
+            // a clock going backwards keeps counting on the last millisecond
+            final var id = head != null && head.millis() >= millis
+                    ? head.millis() + "-" + (head.sequenceNumber() + 1)
+                    : millis + "-0";
+            return append(streamKey, entries, new Entries(id, map), trim);
         }
 
         final var id = value.split("-");
         final var millis = parseLong(id[0]);
 
         if (id[1].equals("*")) {
-            return generateSequenceNumber(millis, streamKey, map, entries);
-        }
-
-        if (entries == null) {
-            final var stack = new Stack<Entries>();
-            stack.push(new Entries(value, map));
-            streams.put(streamKey, stack);
-            return pair(of(value), empty());
+            return generateSequenceNumber(millis, streamKey, map, entries, head, trim);
         }
 
         final var sequenceNumber = parseLong(id[1]);
@@ -55,60 +62,55 @@ final class StreamStore {
             return pair(empty(), of("ERR The ID specified in XADD must be greater than 0-0"));
         }
 
-        final var head = entries.peek();
-        final var headMillis = head.millis();
-        final var headSequenceNumber = head.sequenceNumber();
-
-        if (millis == headMillis) {
-            if (sequenceNumber <= headSequenceNumber) {
-                return pair(empty(), of("ERR The ID specified in XADD is equal or smaller than the target stream top item"));
-            }
-            entries.push(new Entries(value, map));
-            return pair(of(value), empty());
-        }
-
-        if (millis < headMillis) {
+        if (head != null && (millis < head.millis() || (millis == head.millis() && sequenceNumber <= head.sequenceNumber()))) {
             return pair(empty(), of("ERR The ID specified in XADD is equal or smaller than the target stream top item"));
         }
 
-        if (sequenceNumber <= headSequenceNumber) {
-            return pair(empty(), of("ERR The ID specified in XADD is equal or smaller than the target stream top item"));
-        }
-
-        entries.push(new Entries(value, map));
-        return pair(of(value), empty());
+        return append(streamKey, entries, new Entries(value, map), trim);
     }
 
     private Pair generateSequenceNumber(
             long millis,
             String streamKey,
             Map<String, String> map,
-            Stack<Entries> entries
+            ChunkedStream entries,
+            Entries head,
+            Optional<StreamTrim> trim
     ) {
-        if (millis == 0) {
-            final var generatedId = "0-1";
-            final var stack = new Stack<Entries>();
-            stack.push(new Entries(generatedId, map));
-            streams.put(streamKey, stack);
-            return pair(of(generatedId), empty());
+        if (head != null && millis < head.millis()) {
+            return pair(empty(), of("ERR The ID specified in XADD is equal or smaller than the target stream top item"));
         }
-        for (var entry : entries) {
-            if (entry.millis() == millis) {
-                final var generated = entry.sequenceNumber() + 1;
-                final var generatedId = millis + "-" + generated;
-                entries.push(new Entries(generatedId, map));
-                return pair(of(generatedId), empty());
-            }
+        final long generated;
+        if (head != null && head.millis() == millis) {
+            generated = head.sequenceNumber() + 1;
+        } else {
+            generated = millis == 0 ? 1 : 0;
+        }
+        return append(streamKey, entries, new Entries(millis + "-" + generated, map), trim);
+    }
+
+    private Pair append(String streamKey, ChunkedStream entries, Entries entry, Optional<StreamTrim> trim) {
+        var stream = entries;
+        if (stream == null) {
+            stream = new ChunkedStream();
+            streams.put(streamKey, stream, lfuPolicy);
         }
-        final var generatedId = millis + "-" + "0";
-        final var stack = new Stack<Entries>();
-        stack.push(new Entries(generatedId, map));
-        streams.put(streamKey, stack);
-        return pair(of(generatedId), empty());
+        stream.add(entry);
+        final var trimmed = stream;
+        trim.ifPresent(trimmed::trim);
+        return pair(of(entry.id()), empty());
+    }
+
+    /**
+     * @return number of removed entries, 0 when the stream does not exist
+     */
+    public long trim(String streamKey, StreamTrim trim) {
+        final var entries = streams.access(streamKey, lfuPolicy);
+        return entries == null ? 0 : entries.trim(trim);
     }
 
     public Stack<Entries> range(String streamKey, String start, String end) {
-        final var entries = streams.get(streamKey);
+        final var entries = streams.access(streamKey, lfuPolicy);
         if (entries == null) {
             return new Stack<>();
         }
@@ -155,34 +157,121 @@ final class StreamStore {
         return streamsWithIds.entrySet()
                 .stream()
                 .map(entrySet -> {
-                    final var entries = this.streams.get(entrySet.getKey());
-                    if (entries == null) {
+                    final var entries = this.streams.access(entrySet.getKey(), lfuPolicy);
+                    if (entries == null || entries.isEmpty()) {
                         return Map.of(entrySet.getKey(), new Stack<Entries>());
                     }
-                    final var baseSequenceNumber = parseSequenceNumber(entrySet, entries.peek());
+                    final var id = entrySet.getValue();
                     final var result = new Stack<Entries>();
-                    for (var entry : entries) {
-                        final var split = entry.id().split("-");
-                        final var sequenceNumber = parseLong(split[1]);
-                        if (sequenceNumber > baseSequenceNumber) {
-                            result.push(entry);
-                        }
-                    }
+                    result.addAll(entries.after(id.equals("$") ? entries.lastId() : StreamId.parse(id), Long.MAX_VALUE));
                     return Map.of(entrySet.getKey(), result);
                 })
                 .flatMap(map -> map.entrySet().stream())
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (o1, o2) -> o1, LinkedHashMap::new));
     }
 
-    private long parseSequenceNumber(Map.Entry<String, String> entrySet, Entries top) {
-        final var id = entrySet.getValue();
-        if (id.equals("$")) {
-            return top.sequenceNumber();
+    /**
+     * @param id         last delivered id of the new group, $ for the last id of the stream
+     * @param makeStream whether to create an empty stream when the key does not exist
+     */
+    public Pair createGroup(String key, String group, String id, boolean makeStream) {
+        var entries = streams.get(key);
+        if (entries == null && !makeStream) {
+            return pair(empty(), of("ERR The XGROUP subcommand requires the key to exist. Note that for CREATE you may "
+                    + "want to use the MKSTREAM option to create an empty stream automatically."));
         }
-        return parseLong(id.split("-")[1]);
+        if (entries != null && entries.groups().containsKey(group)) {
+            return pair(empty(), of("BUSYGROUP Consumer Group name already exists"));
+        }
+        final var lastDelivered = id.equals("$") ? null : StreamId.parse(id);
+        if (entries == null) {
+            entries = new ChunkedStream();
+            streams.put(key, entries, lfuPolicy);
+        }
+        entries.groups().put(group, new ConsumerGroup(entries, lastDelivered == null ? entries.lastId() : lastDelivered));
+        return pair(of("OK"), empty());
+    }
+
+    public boolean destroyGroup(String key, String group) {
+        final var entries = streams.get(key);
+        return entries != null && entries.groups().remove(group) != null;
+    }
+
+    public Optional<ConsumerGroup> group(String key, String group) {
+        return Optional.ofNullable(streams.access(key, lfuPolicy)).map(it -> it.groups().get(group));
+    }
+
+    public Map<String, ConsumerGroup> groups(String key) {
+        final var entries = streams.get(key);
+        return entries == null ? Map.of() : new LinkedHashMap<>(entries.groups());
     }
 
     public boolean containsStream(String key) {
         return streams.containsKey(key);
     }
+
+    public Optional<StreamInfo> info(String key) {
+        final var entries = streams.get(key);
+        if (entries == null || entries.isEmpty()) {
+            return empty();
+        }
+        return of(new StreamInfo(entries.size(), entries.first(), entries.last(), entries.groups().size()));
+    }
+
+    public List<Entries> entries(String key) {
+        final var entries = streams.get(key);
+        if (entries == null) {
+            return List.of();
+        }
+        return entries.toList();
+    }
+
+    /**
+     * @return LFU counter of the stream, -1 when there is none
+     */
+    int frequency(String key) {
+        return streams.frequency(key, lfuPolicy);
+    }
+
+    void forEachFrequency(ObjIntConsumer<String> visitor) {
+        streams.forEachFrequency(lfuPolicy, visitor);
+    }
+
+    /**
+     * @return estimated heap size of the stream, see {@link ChunkedStream#memoryUsage}, -1 when there is none
+     */
+    long memoryUsage(String key, int samples) {
+        final var entries = streams.get(key);
+        return entries == null ? -1 : entries.memoryUsage(samples);
+    }
+
+    public List<String> keys() {
+        return streams.keys();
+    }
+
+    long scan(long cursor, BiConsumer<String, ChunkedStream> visitor) {
+        return streams.scan(cursor, visitor);
+    }
+
+    /**
+     * @see Dict#rehash
+     */
+    boolean rehash(int buckets) {
+        return streams.rehash(buckets);
+    }
+
+    /**
+     * @return removed stream, empty when there was none
+     */
+    public Optional<ChunkedStream> remove(String key) {
+        return Optional.ofNullable(streams.remove(key));
+    }
+
+    int size() {
+        return streams.size();
+    }
+
+    void clear() {
+        streams.clear();
+    }
 }
@@ -0,0 +1,100 @@
+package db;
+
+import java.util.List;
+import java.util.Optional;
+
+import static java.lang.Long.parseLong;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+/**
+ * Trimming options of XADD and XTRIM: MAXLEN|MINID [=|~] threshold [LIMIT count]. With ~ only whole chunks are
+ * dropped, so the stream may keep up to one chunk more than asked for, and at most LIMIT entries are removed per call.
+ */
+public final class StreamTrim {
+    private static final long DEFAULT_APPROXIMATE_LIMIT = 100L * ChunkedStream.CHUNK_SIZE;
+    private final boolean approximate;
+    private final long maxLength;
+    private final StreamId minId;
+    private final long limit;
+
+    private StreamTrim(boolean approximate, long maxLength, StreamId minId, long limit) {
+        this.approximate = approximate;
+        this.maxLength = maxLength;
+        this.minId = minId;
+        this.limit = limit;
+    }
+
+    /**
+     * @param arguments strategy, optional = or ~, threshold, optional LIMIT with count
+     * @return options, empty for no arguments
+     * @throws IllegalArgumentException with the error reply for invalid arguments
+     */
+    public static Optional<StreamTrim> parse(List<String> arguments) {
+        if (arguments.isEmpty()) {
+            return empty();
+        }
+        final var strategy = arguments.get(0).toLowerCase();
+        if (!strategy.equals("maxlen") && !strategy.equals("minid")) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        var position = 1;
+        final var approximate = position < arguments.size() && arguments.get(position).equals("~");
+        if (position < arguments.size() && (approximate || arguments.get(position).equals("="))) {
+            position++;
+        }
+        if (position >= arguments.size()) {
+            throw new IllegalArgumentException("ERR syntax error");
+        }
+        final var threshold = arguments.get(position++);
+        var limit = approximate ? DEFAULT_APPROXIMATE_LIMIT : 0;
+        if (position < arguments.size()) {
+            if (!arguments.get(position).equalsIgnoreCase("limit") || position + 2 != arguments.size()) {
+                throw new IllegalArgumentException("ERR syntax error");
+            }
+            if (!approximate) {
+                throw new IllegalArgumentException("ERR syntax error, LIMIT cannot be used without the special ~ option");
+            }
+            limit = nonNegative(arguments.get(position + 1), "LIMIT");
+        }
+        if (strategy.equals("maxlen")) {
+            return of(new StreamTrim(approximate, nonNegative(threshold, "MAXLEN"), null, limit));
+        }
+        return of(new StreamTrim(approximate, 0, StreamId.parse(threshold), limit));
+    }
+
+    private static long nonNegative(String argument, String name) {
+        final long value;
+        try {
+            value = parseLong(argument);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not an integer or out of range");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("ERR The %s argument must be >= 0.".formatted(name));
+        }
+        return value;
+    }
+
+    boolean approximate() {
+        return approximate;
+    }
+
+    /**
+     * @return maximum number of entries removed by one call, 0 for no limit
+     */
+    long limit() {
+        return limit;
+    }
+
+    /**
+     * @param entry       first entry that would be removed, the last one when a whole chunk is checked
+     * @param lengthAfter length of the stream after the removal
+     */
+    boolean removes(Entries entry, long lengthAfter) {
+        if (minId == null) {
+            return lengthAfter >= maxLength;
+        }
+        return StreamId.of(entry).compareTo(minId) < 0;
+    }
+}
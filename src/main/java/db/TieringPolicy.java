@@ -0,0 +1,29 @@
+package db;
+
+import java.nio.file.Path;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tiered storage of string values: values not read or written for {@code coldMinutes} are moved to a memory-mapped
+ * {@link SpillFile} in {@code directory}, so only the key and a handle stay on the heap. The next access reads the
+ * value back into memory. Idleness comes from the minute of the last access kept with the LFU counter of the key, see
+ * {@link LfuPolicy}.
+ *
+ * @param directory   where the segment files of the spill file are created
+ * @param coldMinutes minutes without access after which a value is spilled, 0 keeps every value in memory
+ */
+public record TieringPolicy(Path directory, int coldMinutes) {
+    public static final TieringPolicy DISABLED = new TieringPolicy(Path.of(System.getProperty("java.io.tmpdir")), 0);
+
+    public TieringPolicy {
+        requireNonNull(directory);
+        if (coldMinutes < 0) {
+            throw new IllegalArgumentException("Cold minutes must not be negative");
+        }
+    }
+
+    boolean enabled() {
+        return coldMinutes > 0;
+    }
+}
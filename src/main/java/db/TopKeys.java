@@ -0,0 +1,53 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keys with the highest scores seen so far, for HOTKEYS and BIGKEYS. A min-heap bounded to the number of keys asked
+ * for: a key is only kept when it scores above the lowest one on the heap, which it then replaces. Ranking n keys
+ * takes O(n log count) time and O(count) memory, and keys that do not make it allocate nothing.
+ */
+public final class TopKeys {
+    private static final Comparator<RankedKey> LOWEST_FIRST = Comparator.comparingLong(RankedKey::score);
+    private final int count;
+    private final PriorityQueue<RankedKey> heap;
+
+    public TopKeys(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative, got: " + count);
+        }
+        this.count = count;
+        this.heap = new PriorityQueue<>(Math.max(1, count), LOWEST_FIRST);
+    }
+
+    /**
+     * Top keys of several shards.
+     */
+    public static List<RankedKey> merge(Collection<List<RankedKey>> rankings, int count) {
+        final var top = new TopKeys(count);
+        rankings.forEach(ranking -> ranking.forEach(key -> top.offer(key.key(), key.score())));
+        return top.toList();
+    }
+
+    public void offer(String key, long score) {
+        if (heap.size() < count) {
+            heap.add(new RankedKey(key, score));
+        } else if (count > 0 && score > heap.peek().score()) {
+            heap.poll();
+            heap.add(new RankedKey(key, score));
+        }
+    }
+
+    /**
+     * @return keys with the highest score first
+     */
+    public List<RankedKey> toList() {
+        final var keys = new ArrayList<>(heap);
+        keys.sort(LOWEST_FIRST.reversed());
+        return keys;
+    }
+}
@@ -12,6 +12,20 @@ import static java.util.stream.Stream.concat;
 public sealed interface Command {
     List<String> elements();
 
+    /**
+     * @return command name as the client spelled it, the first of {@link #elements()}
+     */
+    String commandType();
+
+    /**
+     * Keys the command reads or writes, used to route the command to the node and shard owning them.
+     *
+     * @return keys, empty for commands not bound to any key
+     */
+    default List<String> keys() {
+        return List.of();
+    }
+
     record Ping(String commandType) implements Command {
         public Ping {
             requireNonNull(commandType);
@@ -45,11 +59,17 @@ public sealed interface Command {
 
         @Override
         public List<String> elements() {
+            // the decoder reads the expiry as milliseconds, so it is propagated as PX
             return expiryTime
-                    .map(it -> List.of(commandType, key, value, it))
+                    .map(it -> List.of(commandType, key, value, "px", it))
                     .or(() -> Optional.of(List.of(commandType, key, value)))
                     .get();
         }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
     }
 
     record Get(String commandType, String value) implements Command {
@@ -62,6 +82,11 @@ public sealed interface Command {
         public List<String> elements() {
             return List.of(commandType, value);
         }
+
+        @Override
+        public List<String> keys() {
+            return List.of(value);
+        }
     }
 
     record Info(String commandType, String section) implements Command {
@@ -138,15 +163,29 @@ public sealed interface Command {
         public List<String> elements() {
             return List.of(commandType, key);
         }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
     }
 
-    record Xadd(String commandType, String streamKey, String streamKeyValue, Map<String, String> values)
-            implements Command {
+    /**
+     * @param trimArguments MAXLEN or MINID with its threshold as sent between the key and the id, empty without trimming
+     */
+    record Xadd(
+            String commandType,
+            String streamKey,
+            String streamKeyValue,
+            Map<String, String> values,
+            List<String> trimArguments
+    ) implements Command {
         public Xadd {
             requireNonNull(commandType);
             requireNonNull(streamKey);
             requireNonNull(streamKeyValue);
             requireNonNull(values);
+            requireNonNull(trimArguments);
         }
 
         @Override
@@ -154,7 +193,14 @@ public sealed interface Command {
             final var mapValues = values.entrySet()
                     .stream()
                     .flatMap(it -> Stream.of(it.getKey(), it.getValue()));
-            return concat(Stream.of(commandType, streamKey, streamKeyValue), mapValues).toList();
+            return Stream.of(Stream.of(commandType, streamKey), trimArguments.stream(), Stream.of(streamKeyValue), mapValues)
+                    .flatMap(it -> it)
+                    .toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
         }
     }
 
@@ -170,6 +216,11 @@ public sealed interface Command {
         public List<String> elements() {
             return List.of(commandType, streamKey, start, end);
         }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
     }
 
     record Xread(String commandType, Optional<String> blockTime, Map<String, String> streamKeyWithId)
@@ -190,5 +241,1269 @@ public sealed interface Command {
                     .flatMap(it -> Stream.of(it.getKey(), it.getValue()));
             return concat(fixedValues.stream(), mapValues).toList();
         }
+
+        @Override
+        public List<String> keys() {
+            return List.copyOf(streamKeyWithId.keySet());
+        }
+    }
+
+    record Asking(String commandType) implements Command {
+        public Asking {
+            requireNonNull(commandType);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType);
+        }
+    }
+
+    record Cluster(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Cluster {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+    }
+
+    record Migrate(String commandType, String host, String port, String timeout, boolean copy, List<String> migrateKeys)
+            implements Command {
+        public Migrate {
+            requireNonNull(commandType);
+            requireNonNull(host);
+            requireNonNull(port);
+            requireNonNull(timeout);
+            requireNonNull(migrateKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var fixedValues = new ArrayList<>(List.of(commandType, host, port, "", "0", timeout));
+            if (copy) {
+                fixedValues.add("COPY");
+            }
+            fixedValues.add("KEYS");
+            return concat(fixedValues.stream(), migrateKeys.stream()).toList();
+        }
+    }
+
+    /**
+     * @param ttl in milliseconds, 0 for none
+     */
+    record Restore(String commandType, String key, String ttl, String serializedValue, boolean replace)
+            implements Command {
+        public Restore {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(ttl);
+            requireNonNull(serializedValue);
+        }
+
+        @Override
+        public List<String> elements() {
+            return replace
+                    ? List.of(commandType, key, ttl, serializedValue, "REPLACE")
+                    : List.of(commandType, key, ttl, serializedValue);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Latency(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Latency {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+    }
+
+    record Memory(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Memory {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+
+        /**
+         * MEMORY USAGE reads the key of its first argument.
+         */
+        @Override
+        public List<String> keys() {
+            return subcommand.equalsIgnoreCase("usage") && !arguments.isEmpty() ? List.of(arguments.get(0)) : List.of();
+        }
+    }
+
+    /**
+     * HOTKEYS [count], the keys with the highest LFU counters of all shards.
+     */
+    record Hotkeys(String commandType, List<String> arguments) implements Command {
+        public Hotkeys {
+            requireNonNull(commandType);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), arguments.stream()).toList();
+        }
+    }
+
+    /**
+     * BIGKEYS [count [SAMPLES samples]], the keys taking the most memory of all shards.
+     */
+    record Bigkeys(String commandType, List<String> arguments) implements Command {
+        public Bigkeys {
+            requireNonNull(commandType);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), arguments.stream()).toList();
+        }
+    }
+
+    record Slowlog(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Slowlog {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+    }
+
+    record Multi(String commandType) implements Command {
+        public Multi {
+            requireNonNull(commandType);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType);
+        }
+    }
+
+    record Exec(String commandType) implements Command {
+        public Exec {
+            requireNonNull(commandType);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType);
+        }
+    }
+
+    record Discard(String commandType) implements Command {
+        public Discard {
+            requireNonNull(commandType);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType);
+        }
+    }
+
+    record Watch(String commandType, List<String> watchedKeys) implements Command {
+        public Watch {
+            requireNonNull(commandType);
+            requireNonNull(watchedKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), watchedKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return watchedKeys;
+        }
+    }
+
+    record Unwatch(String commandType) implements Command {
+        public Unwatch {
+            requireNonNull(commandType);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType);
+        }
+    }
+
+    record Mget(String commandType, List<String> requestedKeys) implements Command {
+        public Mget {
+            requireNonNull(commandType);
+            requireNonNull(requestedKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), requestedKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return requestedKeys;
+        }
+    }
+
+    record Mset(String commandType, Map<String, String> keysWithValues) implements Command {
+        public Mset {
+            requireNonNull(commandType);
+            requireNonNull(keysWithValues);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var mapValues = keysWithValues.entrySet()
+                    .stream()
+                    .flatMap(it -> Stream.of(it.getKey(), it.getValue()));
+            return concat(Stream.of(commandType), mapValues).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.copyOf(keysWithValues.keySet());
+        }
+    }
+
+    record Msetnx(String commandType, Map<String, String> keysWithValues) implements Command {
+        public Msetnx {
+            requireNonNull(commandType);
+            requireNonNull(keysWithValues);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var mapValues = keysWithValues.entrySet()
+                    .stream()
+                    .flatMap(it -> Stream.of(it.getKey(), it.getValue()));
+            return concat(Stream.of(commandType), mapValues).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.copyOf(keysWithValues.keySet());
+        }
+    }
+
+    record Hello(String commandType, List<String> arguments) implements Command {
+        public Hello {
+            requireNonNull(commandType);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), arguments.stream()).toList();
+        }
+    }
+
+    record Client(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Client {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+    }
+
+    record Subscribe(String commandType, List<String> channels) implements Command {
+        public Subscribe {
+            requireNonNull(commandType);
+            requireNonNull(channels);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), channels.stream()).toList();
+        }
+    }
+
+    record Unsubscribe(String commandType, List<String> channels) implements Command {
+        public Unsubscribe {
+            requireNonNull(commandType);
+            requireNonNull(channels);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), channels.stream()).toList();
+        }
+    }
+
+    record Psubscribe(String commandType, List<String> patterns) implements Command {
+        public Psubscribe {
+            requireNonNull(commandType);
+            requireNonNull(patterns);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), patterns.stream()).toList();
+        }
+    }
+
+    record Punsubscribe(String commandType, List<String> patterns) implements Command {
+        public Punsubscribe {
+            requireNonNull(commandType);
+            requireNonNull(patterns);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), patterns.stream()).toList();
+        }
+    }
+
+    record Publish(String commandType, String channel, String message) implements Command {
+        public Publish {
+            requireNonNull(commandType);
+            requireNonNull(channel);
+            requireNonNull(message);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, channel, message);
+        }
+    }
+
+    record Scan(String commandType, String cursor, Optional<String> pattern, Optional<String> count, Optional<String> type)
+            implements Command {
+        public Scan {
+            requireNonNull(commandType);
+            requireNonNull(cursor);
+            requireNonNull(pattern);
+            requireNonNull(count);
+            requireNonNull(type);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var values = new ArrayList<>(List.of(commandType, cursor));
+            pattern.ifPresent(it -> values.addAll(List.of("MATCH", it)));
+            count.ifPresent(it -> values.addAll(List.of("COUNT", it)));
+            type.ifPresent(it -> values.addAll(List.of("TYPE", it)));
+            return values;
+        }
+    }
+
+    record Xinfo(String commandType, String subcommand, String streamKey) implements Command {
+        public Xinfo {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(streamKey);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, subcommand, streamKey);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    record Del(String commandType, List<String> deletedKeys) implements Command {
+        public Del {
+            requireNonNull(commandType);
+            requireNonNull(deletedKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), deletedKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return deletedKeys;
+        }
+    }
+
+    /**
+     * @param existingKeys keys to look up, a key given twice counts twice like in Redis
+     */
+    record Exists(String commandType, List<String> existingKeys) implements Command {
+        public Exists {
+            requireNonNull(commandType);
+            requireNonNull(existingKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), existingKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return existingKeys;
+        }
+    }
+
+    record Unlink(String commandType, List<String> unlinkedKeys) implements Command {
+        public Unlink {
+            requireNonNull(commandType);
+            requireNonNull(unlinkedKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), unlinkedKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return unlinkedKeys;
+        }
+    }
+
+    record Flushall(String commandType, Optional<String> mode) implements Command {
+        public Flushall {
+            requireNonNull(commandType);
+            requireNonNull(mode);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), mode.stream()).toList();
+        }
+    }
+
+    record Xtrim(String commandType, String streamKey, List<String> trimArguments) implements Command {
+        public Xtrim {
+            requireNonNull(commandType);
+            requireNonNull(streamKey);
+            requireNonNull(trimArguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, streamKey), trimArguments.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    /**
+     * @param subcommand empty when the client sent none
+     * @param arguments  key first, then the arguments of the subcommand
+     */
+    record Xgroup(String commandType, String subcommand, List<String> arguments) implements Command {
+        public Xgroup {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, subcommand), arguments.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return arguments.isEmpty() ? List.of() : List.of(arguments.get(0));
+        }
+    }
+
+    record Xreadgroup(
+            String commandType,
+            String group,
+            String consumer,
+            Optional<String> count,
+            Optional<String> blockTime,
+            boolean noAck,
+            Map<String, String> streamKeyWithId
+    ) implements Command {
+        public Xreadgroup {
+            requireNonNull(commandType);
+            requireNonNull(group);
+            requireNonNull(consumer);
+            requireNonNull(count);
+            requireNonNull(blockTime);
+            requireNonNull(streamKeyWithId);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var fixedValues = new ArrayList<>(List.of(commandType, "GROUP", group, consumer));
+            count.ifPresent(it -> fixedValues.addAll(List.of("COUNT", it)));
+            blockTime.ifPresent(it -> fixedValues.addAll(List.of("BLOCK", it)));
+            if (noAck) {
+                fixedValues.add("NOACK");
+            }
+            fixedValues.add("STREAMS");
+            return Stream.of(fixedValues.stream(), streamKeyWithId.keySet().stream(), streamKeyWithId.values().stream())
+                    .flatMap(it -> it)
+                    .toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.copyOf(streamKeyWithId.keySet());
+        }
+    }
+
+    record Xack(String commandType, String streamKey, String group, List<String> ids) implements Command {
+        public Xack {
+            requireNonNull(commandType);
+            requireNonNull(streamKey);
+            requireNonNull(group);
+            requireNonNull(ids);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, streamKey, group), ids.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    /**
+     * @param arguments empty for the summary, otherwise [IDLE min-idle-time] start end count [consumer]
+     */
+    record Xpending(String commandType, String streamKey, String group, List<String> arguments) implements Command {
+        public Xpending {
+            requireNonNull(commandType);
+            requireNonNull(streamKey);
+            requireNonNull(group);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, streamKey, group), arguments.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    /**
+     * @param arguments ids followed by options
+     */
+    record Xclaim(
+            String commandType,
+            String streamKey,
+            String group,
+            String consumer,
+            String minIdleTime,
+            List<String> arguments
+    ) implements Command {
+        public Xclaim {
+            requireNonNull(commandType);
+            requireNonNull(streamKey);
+            requireNonNull(group);
+            requireNonNull(consumer);
+            requireNonNull(minIdleTime);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, streamKey, group, consumer, minIdleTime), arguments.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    /**
+     * @param arguments options following the start id
+     */
+    record Xautoclaim(
+            String commandType,
+            String streamKey,
+            String group,
+            String consumer,
+            String minIdleTime,
+            String start,
+            List<String> arguments
+    ) implements Command {
+        public Xautoclaim {
+            requireNonNull(commandType);
+            requireNonNull(streamKey);
+            requireNonNull(group);
+            requireNonNull(consumer);
+            requireNonNull(minIdleTime);
+            requireNonNull(start);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, streamKey, group, consumer, minIdleTime, start), arguments.stream())
+                    .toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(streamKey);
+        }
+    }
+
+    record Incr(String commandType, String key) implements Command {
+        public Incr {
+            requireNonNull(commandType);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Decr(String commandType, String key) implements Command {
+        public Decr {
+            requireNonNull(commandType);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Incrby(String commandType, String key, String increment) implements Command {
+        public Incrby {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(increment);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, increment);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Decrby(String commandType, String key, String decrement) implements Command {
+        public Decrby {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(decrement);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, decrement);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Incrbyfloat(String commandType, String key, String increment) implements Command {
+        public Incrbyfloat {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(increment);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, increment);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * OBJECT subcommand key, named so it does not shadow {@link java.lang.Object}.
+     */
+    record ObjectInfo(String commandType, String subcommand, String key) implements Command {
+        public ObjectInfo {
+            requireNonNull(commandType);
+            requireNonNull(subcommand);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, subcommand, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hset(String commandType, String key, Map<String, String> fieldsWithValues) implements Command {
+        public Hset {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(fieldsWithValues);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var mapValues = fieldsWithValues.entrySet()
+                    .stream()
+                    .flatMap(it -> Stream.of(it.getKey(), it.getValue()));
+            return concat(Stream.of(commandType, key), mapValues).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hget(String commandType, String key, String field) implements Command {
+        public Hget {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(field);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, field);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hmget(String commandType, String key, List<String> fields) implements Command {
+        public Hmget {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(fields);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), fields.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hgetall(String commandType, String key) implements Command {
+        public Hgetall {
+            requireNonNull(commandType);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hdel(String commandType, String key, List<String> fields) implements Command {
+        public Hdel {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(fields);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), fields.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hincrby(String commandType, String key, String field, String increment) implements Command {
+        public Hincrby {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(field);
+            requireNonNull(increment);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, field, increment);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Hscan(String commandType, String key, String cursor, Optional<String> pattern, Optional<String> count)
+            implements Command {
+        public Hscan {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(cursor);
+            requireNonNull(pattern);
+            requireNonNull(count);
+        }
+
+        @Override
+        public List<String> elements() {
+            final var values = new ArrayList<>(List.of(commandType, key, cursor));
+            pattern.ifPresent(it -> values.addAll(List.of("MATCH", it)));
+            count.ifPresent(it -> values.addAll(List.of("COUNT", it)));
+            return values;
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param arguments options followed by scores and members
+     */
+    record Zadd(String commandType, String key, List<String> arguments) implements Command {
+        public Zadd {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(arguments);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), arguments.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Zincrby(String commandType, String key, String increment, String member) implements Command {
+        public Zincrby {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(increment);
+            requireNonNull(member);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, increment, member);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Zscore(String commandType, String key, String member) implements Command {
+        public Zscore {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(member);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, member);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Zcard(String commandType, String key) implements Command {
+        public Zcard {
+            requireNonNull(commandType);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * ZRANK or ZREVRANK, depending on the command type.
+     */
+    record Zrank(String commandType, String key, String member) implements Command {
+        public Zrank {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(member);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, member);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param options BYSCORE, REV, LIMIT with offset and count, WITHSCORES
+     */
+    record Zrange(String commandType, String key, String start, String stop, List<String> options) implements Command {
+        public Zrange {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(start);
+            requireNonNull(stop);
+            requireNonNull(options);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key, start, stop), options.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param options WITHSCORES, LIMIT with offset and count
+     */
+    record Zrangebyscore(String commandType, String key, String min, String max, List<String> options)
+            implements Command {
+        public Zrangebyscore {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(min);
+            requireNonNull(max);
+            requireNonNull(options);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key, min, max), options.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Zrem(String commandType, String key, List<String> members) implements Command {
+        public Zrem {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(members);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), members.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Zremrangebyscore(String commandType, String key, String min, String max) implements Command {
+        public Zremrangebyscore {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(min);
+            requireNonNull(max);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, min, max);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * EXPIRE in seconds or PEXPIRE in milliseconds, depending on the command type.
+     */
+    record Expire(String commandType, String key, String time) implements Command {
+        public Expire {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(time);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, time);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * TTL in seconds or PTTL in milliseconds, depending on the command type.
+     */
+    record Ttl(String commandType, String key) implements Command {
+        public Ttl {
+            requireNonNull(commandType);
+            requireNonNull(key);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param values elements to count, named so they do not clash with {@link #elements()}
+     */
+    record Pfadd(String commandType, String key, List<String> values) implements Command {
+        public Pfadd {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(values);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), values.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Pfcount(String commandType, List<String> countedKeys) implements Command {
+        public Pfcount {
+            requireNonNull(commandType);
+            requireNonNull(countedKeys);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType), countedKeys.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return countedKeys;
+        }
+    }
+
+    record Pfmerge(String commandType, String destination, List<String> sources) implements Command {
+        public Pfmerge {
+            requireNonNull(commandType);
+            requireNonNull(destination);
+            requireNonNull(sources);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, destination), sources.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return concat(Stream.of(destination), sources.stream()).toList();
+        }
+    }
+
+    record Setbit(String commandType, String key, String offset, String value) implements Command {
+        public Setbit {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(offset);
+            requireNonNull(value);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, offset, value);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Getbit(String commandType, String key, String offset) implements Command {
+        public Getbit {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(offset);
+        }
+
+        @Override
+        public List<String> elements() {
+            return List.of(commandType, key, offset);
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param range start, end and BYTE or BIT, empty for the whole value
+     */
+    record Bitcount(String commandType, String key, List<String> range) implements Command {
+        public Bitcount {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(range);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key), range.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    /**
+     * @param range start, end and BYTE or BIT, each optional
+     */
+    record Bitpos(String commandType, String key, String bit, List<String> range) implements Command {
+        public Bitpos {
+            requireNonNull(commandType);
+            requireNonNull(key);
+            requireNonNull(bit);
+            requireNonNull(range);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, key, bit), range.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return List.of(key);
+        }
+    }
+
+    record Bitop(String commandType, String operation, String destination, List<String> sources) implements Command {
+        public Bitop {
+            requireNonNull(commandType);
+            requireNonNull(operation);
+            requireNonNull(destination);
+            requireNonNull(sources);
+        }
+
+        @Override
+        public List<String> elements() {
+            return concat(Stream.of(commandType, operation, destination), sources.stream()).toList();
+        }
+
+        @Override
+        public List<String> keys() {
+            return concat(Stream.of(destination), sources.stream()).toList();
+        }
     }
 }
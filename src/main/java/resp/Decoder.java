@@ -1,6 +1,7 @@
 package resp;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -8,12 +9,20 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Integer.parseInt;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 
 public final class Decoder {
+    // bounds the table against clients sending random command names
+    private static final int MAX_COMMAND_SPELLINGS = 1024;
+    /**
+     * Lower case command name by spelling as sent, so dispatching "GET" or "get" looks up a table instead of
+     * allocating a lower case copy for every command. Filled on first sight of every spelling.
+     */
+    private static final Map<String, String> COMMAND_NAMES = new ConcurrentHashMap<>();
 
     public Optional<String> decodeSimpleString(BufferedReader reader) {
         try {
@@ -32,28 +41,37 @@ public final class Decoder {
      * @return parsed Command
      */
     public Optional<Command> parseCommand(BufferedReader reader) {
+        return parseCommand(reader, new ArrayList<>());
+    }
+
+    /**
+     * Like {@link #parseCommand(BufferedReader)} with arguments read into a list owned by the connection, commands copy
+     * what they keep so the list can be reused for the next command.
+     *
+     * @param arguments cleared and refilled with the arguments of the command
+     */
+    public Optional<Command> parseCommand(BufferedReader reader, List<String> arguments) {
         try {
             while (!reader.ready()) {
             }
-            return of(decodeAsArrayResp(reader));
+            arguments.clear();
+            return of(decodeAsArrayResp(reader, arguments));
         } catch (IOException ioException) {
             return empty();
         }
     }
 
-    private Command decodeAsArrayResp(BufferedReader reader) {
+    private Command decodeAsArrayResp(BufferedReader reader, List<String> elements) {
         try {
-            final var arrayLength = parseInt(reader.readLine().substring(1));
+            final var arrayLength = readLength(reader);
             if (arrayLength == 0) {
                 throw new IllegalArgumentException("Client just sent empty array");
             }
 
-            final var elements = new ArrayList<String>();
             for (var i = 0; i < arrayLength; i++) {
-                final var element = decodeBulkString(reader).orElseThrow();
-                elements.add(element);
+                elements.add(decodeBulkString(reader));
             }
-            return switch (elements.get(0).toLowerCase()) {
+            return switch (commandName(elements.get(0))) {
                 case "ping" -> new Command.Ping(elements.get(0));
                 case "echo" -> new Command.Echo(elements.get(0), elements.get(1));
                 case "set" -> {
@@ -63,22 +81,113 @@ public final class Decoder {
                     yield new Command.Set(elements.get(0), elements.get(1), elements.get(2), of(elements.get(4)));
                 }
                 case "get" -> new Command.Get(elements.get(0), elements.get(1));
-                case "info" -> new Command.Info(elements.get(0), elements.get(1));
+                case "info" -> new Command.Info(elements.get(0), elements.size() > 1 ? elements.get(1) : "default");
                 case "replconf" -> new Command.Replconf(elements.get(0), elements.get(1), elements.get(2));
                 case "psync" -> new Command.Psync(elements.get(0), elements.get(1), elements.get(2));
                 case "wait" -> new Command.Wait(elements.get(0), elements.get(1), elements.get(2));
                 case "config" -> new Command.Config(elements.get(0), elements.get(1), elements.get(2));
                 case "type" -> new Command.Type(elements.get(0), elements.get(1));
                 case "xadd" -> {
+                    final var trimArguments = trimArguments(elements);
+                    final var idPosition = 2 + trimArguments.size();
                     final var keyValues = elements.stream()
-                            .skip(3)
+                            .skip(idPosition + 1)
                             .toList();
                     final var map = new HashMap<String, String>();
                     for (var i = 0; i < keyValues.size(); i = i + 2) {
                         map.put(keyValues.get(i), keyValues.get(i + 1));
                     }
-                    yield new Command.Xadd(elements.get(0), elements.get(1), elements.get(2), map);
+                    yield new Command.Xadd(elements.get(0), elements.get(1), elements.get(idPosition), map, trimArguments);
                 }
+                case "incr" -> new Command.Incr(elements.get(0), elements.get(1));
+                case "decr" -> new Command.Decr(elements.get(0), elements.get(1));
+                case "incrby" -> new Command.Incrby(elements.get(0), elements.get(1), elements.get(2));
+                case "decrby" -> new Command.Decrby(elements.get(0), elements.get(1), elements.get(2));
+                case "incrbyfloat" -> new Command.Incrbyfloat(elements.get(0), elements.get(1), elements.get(2));
+                case "object" -> new Command.ObjectInfo(elements.get(0), elements.get(1), elements.get(2));
+                case "hset" -> new Command.Hset(elements.get(0), elements.get(1), keysWithValues(elements, 2));
+                case "hget" -> new Command.Hget(elements.get(0), elements.get(1), elements.get(2));
+                case "hmget" -> new Command.Hmget(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "hgetall" -> new Command.Hgetall(elements.get(0), elements.get(1));
+                case "hdel" -> new Command.Hdel(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "hincrby" -> new Command.Hincrby(elements.get(0), elements.get(1), elements.get(2), elements.get(3));
+                case "hscan" -> new Command.Hscan(
+                        elements.get(0),
+                        elements.get(1),
+                        elements.get(2),
+                        findOption(elements, "match"),
+                        findOption(elements, "count")
+                );
+                case "zadd" -> new Command.Zadd(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "zincrby" -> new Command.Zincrby(elements.get(0), elements.get(1), elements.get(2), elements.get(3));
+                case "zscore" -> new Command.Zscore(elements.get(0), elements.get(1), elements.get(2));
+                case "zcard" -> new Command.Zcard(elements.get(0), elements.get(1));
+                case "zrank", "zrevrank" -> new Command.Zrank(elements.get(0), elements.get(1), elements.get(2));
+                case "zrange" -> new Command.Zrange(elements.get(0), elements.get(1), elements.get(2), elements.get(3),
+                        List.copyOf(elements.subList(4, elements.size())));
+                case "zrangebyscore" -> new Command.Zrangebyscore(elements.get(0), elements.get(1), elements.get(2),
+                        elements.get(3), List.copyOf(elements.subList(4, elements.size())));
+                case "zrem" -> new Command.Zrem(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "zremrangebyscore" -> new Command.Zremrangebyscore(elements.get(0), elements.get(1),
+                        elements.get(2), elements.get(3));
+                case "pfadd" -> new Command.Pfadd(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "pfcount" -> new Command.Pfcount(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "pfmerge" -> new Command.Pfmerge(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "setbit" -> new Command.Setbit(elements.get(0), elements.get(1), elements.get(2), elements.get(3));
+                case "getbit" -> new Command.Getbit(elements.get(0), elements.get(1), elements.get(2));
+                case "bitcount" -> new Command.Bitcount(elements.get(0), elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size())));
+                case "bitpos" -> new Command.Bitpos(elements.get(0), elements.get(1), elements.get(2),
+                        List.copyOf(elements.subList(3, elements.size())));
+                case "bitop" -> new Command.Bitop(elements.get(0), elements.get(1), elements.get(2),
+                        List.copyOf(elements.subList(3, elements.size())));
+                case "expire", "pexpire" -> new Command.Expire(elements.get(0), elements.get(1), elements.get(2));
+                case "ttl", "pttl" -> new Command.Ttl(elements.get(0), elements.get(1));
+                // a bare XGROUP gets the arity error of the server instead of closing the connection
+                case "xgroup" -> elements.size() < 2
+                        ? new Command.Xgroup(elements.get(0), "", List.of())
+                        : new Command.Xgroup(
+                                elements.get(0),
+                                elements.get(1),
+                                List.copyOf(elements.subList(2, elements.size()))
+                        );
+                case "xreadgroup" -> xreadgroup(elements);
+                case "xack" -> new Command.Xack(
+                        elements.get(0),
+                        elements.get(1),
+                        elements.get(2),
+                        List.copyOf(elements.subList(3, elements.size()))
+                );
+                case "xpending" -> new Command.Xpending(
+                        elements.get(0),
+                        elements.get(1),
+                        elements.get(2),
+                        List.copyOf(elements.subList(3, elements.size()))
+                );
+                case "xclaim" -> new Command.Xclaim(
+                        elements.get(0),
+                        elements.get(1),
+                        elements.get(2),
+                        elements.get(3),
+                        elements.get(4),
+                        List.copyOf(elements.subList(5, elements.size()))
+                );
+                case "xautoclaim" -> new Command.Xautoclaim(
+                        elements.get(0),
+                        elements.get(1),
+                        elements.get(2),
+                        elements.get(3),
+                        elements.get(4),
+                        elements.get(5),
+                        List.copyOf(elements.subList(6, elements.size()))
+                );
+                case "xtrim" -> new Command.Xtrim(elements.get(0), elements.get(1), List.copyOf(elements.subList(2, elements.size())));
                 case "xrange" -> new Command.Xrange(elements.get(0), elements.get(1), elements.get(2), elements.get(3));
                 case "xread" -> {
                     final var block = findBlock(elements);
@@ -93,6 +202,76 @@ public final class Decoder {
                     }
                     yield new Command.Xread(elements.get(0), block, map);
                 }
+                case "asking" -> new Command.Asking(elements.get(0));
+                case "cluster" -> new Command.Cluster(
+                        elements.get(0),
+                        elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size()))
+                );
+                case "restore" -> new Command.Restore(elements.get(0), elements.get(1), elements.get(2), elements.get(3),
+                        elements.stream().skip(4).anyMatch(it -> it.equalsIgnoreCase("replace")));
+                case "migrate" -> {
+                    var copy = false;
+                    var keys = List.of(elements.get(3));
+                    for (var i = 6; i < elements.size(); i++) {
+                        if (elements.get(i).equalsIgnoreCase("copy")) {
+                            copy = true;
+                        }
+                        if (elements.get(i).equalsIgnoreCase("keys")) {
+                            keys = List.copyOf(elements.subList(i + 1, elements.size()));
+                            break;
+                        }
+                    }
+                    yield new Command.Migrate(elements.get(0), elements.get(1), elements.get(2), elements.get(5), copy, keys);
+                }
+                case "latency" -> new Command.Latency(
+                        elements.get(0),
+                        elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size()))
+                );
+                case "memory" -> new Command.Memory(
+                        elements.get(0),
+                        elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size()))
+                );
+                case "hotkeys" -> new Command.Hotkeys(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "bigkeys" -> new Command.Bigkeys(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "slowlog" -> new Command.Slowlog(
+                        elements.get(0),
+                        elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size()))
+                );
+                case "multi" -> new Command.Multi(elements.get(0));
+                case "exec" -> new Command.Exec(elements.get(0));
+                case "discard" -> new Command.Discard(elements.get(0));
+                case "watch" -> new Command.Watch(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "unwatch" -> new Command.Unwatch(elements.get(0));
+                case "mget" -> new Command.Mget(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "mset" -> new Command.Mset(elements.get(0), keysWithValues(elements, 1));
+                case "msetnx" -> new Command.Msetnx(elements.get(0), keysWithValues(elements, 1));
+                case "hello" -> new Command.Hello(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "client" -> new Command.Client(
+                        elements.get(0),
+                        elements.get(1),
+                        List.copyOf(elements.subList(2, elements.size()))
+                );
+                case "subscribe" -> new Command.Subscribe(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "unsubscribe" -> new Command.Unsubscribe(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "psubscribe" -> new Command.Psubscribe(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "punsubscribe" -> new Command.Punsubscribe(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "publish" -> new Command.Publish(elements.get(0), elements.get(1), elements.get(2));
+                case "scan" -> new Command.Scan(
+                        elements.get(0),
+                        elements.get(1),
+                        findOption(elements, "match"),
+                        findOption(elements, "count"),
+                        findOption(elements, "type")
+                );
+                case "xinfo" -> new Command.Xinfo(elements.get(0), elements.get(1), elements.get(2));
+                case "del" -> new Command.Del(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "exists" -> new Command.Exists(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "unlink" -> new Command.Unlink(elements.get(0), List.copyOf(elements.subList(1, elements.size())));
+                case "flushall" -> new Command.Flushall(elements.get(0), elements.size() > 1 ? of(elements.get(1)) : empty());
                 default -> throw new IllegalStateException("Unexpected value: " + elements.get(0));
             };
         } catch (IOException ioException) {
@@ -100,22 +279,159 @@ public final class Decoder {
         }
     }
 
+    /**
+     * Reads a single reply, used when this server or a benchmark client talks to another server. Arrays are consumed
+     * together with all nested elements and only their header is returned.
+     *
+     * @param reader BufferedReader
+     * @return simple string, integer or bulk string content, errors keep their leading '-', arrays their leading '*'
+     */
+    public Optional<String> decodeReply(BufferedReader reader) {
+        try {
+            final var line = reader.readLine();
+            if (line == null) {
+                return empty();
+            }
+            return switch (line.charAt(0)) {
+                case '+', ':' -> of(line.substring(1));
+                case '$' -> line.equals("$-1") ? empty() : of(reader.readLine());
+                case '*' -> {
+                    final var arrayLength = parseInt(line.substring(1));
+                    for (var i = 0; i < arrayLength; i++) {
+                        decodeReply(reader);
+                    }
+                    yield arrayLength < 0 ? empty() : of(line);
+                }
+                default -> of(line);
+            };
+        } catch (IOException ioException) {
+            return empty();
+        }
+    }
+
     private Optional<String> findBlock(List<String> xread) {
         var blockTime = Optional.<String>empty();
-        if (xread.get(1).equals("block")) {
+        if (xread.size() > 2 && xread.get(1).equalsIgnoreCase("block")) {
             blockTime = of(xread.get(2));
         }
         return blockTime;
     }
 
-    private Optional<String> decodeBulkString(BufferedReader reader) {
-        try {
-            final var dollarLine = reader.readLine();
-            final var numberOfBytes = parseInt(dollarLine.substring(1));
-            final var data = reader.readLine();
-            return of(data);
-        } catch (IOException ioException) {
-            return empty();
+    /**
+     * XREADGROUP GROUP group consumer [COUNT count] [BLOCK milliseconds] [NOACK] STREAMS key [key ...] id [id ...]
+     */
+    private Command.Xreadgroup xreadgroup(List<String> elements) {
+        if (elements.size() < 4 || !elements.get(1).equalsIgnoreCase("group")) {
+            throw new IllegalArgumentException("Missing GROUP option for XREADGROUP");
+        }
+        var count = Optional.<String>empty();
+        var block = Optional.<String>empty();
+        var noAck = false;
+        var position = 4;
+        for (; position < elements.size() && !elements.get(position).equalsIgnoreCase("streams"); position++) {
+            switch (elements.get(position).toLowerCase()) {
+                case "count" -> count = of(elements.get(++position));
+                case "block" -> block = of(elements.get(++position));
+                case "noack" -> noAck = true;
+                default -> throw new IllegalArgumentException("Unknown XREADGROUP option: " + elements.get(position));
+            }
+        }
+        final var keysWithIds = elements.subList(Math.min(position + 1, elements.size()), elements.size());
+        if (keysWithIds.isEmpty() || keysWithIds.size() % 2 != 0) {
+            throw new IllegalArgumentException("Unbalanced XREADGROUP list of streams");
+        }
+        final var step = keysWithIds.size() / 2;
+        final var map = new LinkedHashMap<String, String>();
+        for (var i = 0; i < step; i++) {
+            map.put(keysWithIds.get(i), keysWithIds.get(i + step));
+        }
+        return new Command.Xreadgroup(elements.get(0), elements.get(2), elements.get(3), count, block, noAck, map);
+    }
+
+    /**
+     * Trimming options of XADD after the key: MAXLEN|MINID [=|~] threshold [LIMIT count].
+     */
+    private List<String> trimArguments(List<String> xadd) {
+        var position = 2;
+        if (position >= xadd.size()) {
+            return List.of();
+        }
+        final var strategy = xadd.get(position).toLowerCase();
+        if (!strategy.equals("maxlen") && !strategy.equals("minid")) {
+            return List.of();
+        }
+        position++;
+        if (position < xadd.size() && (xadd.get(position).equals("~") || xadd.get(position).equals("="))) {
+            position++;
+        }
+        position++;
+        if (position < xadd.size() && xadd.get(position).equalsIgnoreCase("limit")) {
+            position += 2;
+        }
+        return List.copyOf(xadd.subList(2, Math.min(position, xadd.size())));
+    }
+
+    private Optional<String> findOption(List<String> elements, String option) {
+        for (var i = 2; i < elements.size() - 1; i++) {
+            if (elements.get(i).equalsIgnoreCase(option)) {
+                return of(elements.get(i + 1));
+            }
+        }
+        return empty();
+    }
+
+    /**
+     * Pairs from the given position on, a key given twice keeps its position and takes the last value.
+     */
+    private Map<String, String> keysWithValues(List<String> elements, int first) {
+        if (elements.size() < first + 2 || (elements.size() - first) % 2 != 0) {
+            throw new IllegalArgumentException("Wrong number of arguments for " + elements.get(0));
+        }
+        final var map = new LinkedHashMap<String, String>();
+        for (var i = first; i < elements.size(); i = i + 2) {
+            map.put(elements.get(i), elements.get(i + 1));
+        }
+        return map;
+    }
+
+    private String decodeBulkString(BufferedReader reader) throws IOException {
+        final var numberOfBytes = readLength(reader);
+        return reader.readLine();
+    }
+
+    /**
+     * Reads the length line of an array or bulk string, like "*2" or "$3", without creating a String for it.
+     */
+    private static int readLength(BufferedReader reader) throws IOException {
+        if (reader.read() < 0) {
+            throw new EOFException();
+        }
+        var negative = false;
+        var length = 0;
+        for (var character = reader.read(); character != '\r'; character = reader.read()) {
+            if (character < 0) {
+                throw new EOFException();
+            } else if (character == '-') {
+                negative = true;
+            } else if (character >= '0' && character <= '9') {
+                length = length * 10 + character - '0';
+            } else {
+                throw new IllegalArgumentException("Invalid length in request: " + (char) character);
+            }
+        }
+        reader.read();
+        return negative ? -length : length;
+    }
+
+    private static String commandName(String spelling) {
+        final var name = COMMAND_NAMES.get(spelling);
+        if (name != null) {
+            return name;
+        }
+        final var lowerCase = spelling.toLowerCase();
+        if (COMMAND_NAMES.size() < MAX_COMMAND_SPELLINGS) {
+            COMMAND_NAMES.put(spelling, lowerCase);
         }
+        return lowerCase;
     }
 }
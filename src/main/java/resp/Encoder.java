@@ -3,19 +3,116 @@ package resp;
 import java.util.List;
 import java.util.Optional;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
 
 public final class Encoder {
+    private static final int SHARED_INTEGERS = 10_000;
+    private static final String[] INTEGERS = new String[SHARED_INTEGERS];
+    private static final String[] BULK_INTEGERS = new String[SHARED_INTEGERS];
+    private static final byte[][] BULK_INTEGER_BYTES = new byte[SHARED_INTEGERS][];
+    private static final byte[] OK = "+OK\r\n".getBytes();
+    private static final byte[] NULL_BULK_STRING = "$-1\r\n".getBytes();
+
+    static {
+        for (var i = 0; i < SHARED_INTEGERS; i++) {
+            INTEGERS[i] = ":" + i + "\r\n";
+            BULK_INTEGERS[i] = "$" + String.valueOf(i).length() + "\r\n" + i + "\r\n";
+            BULK_INTEGER_BYTES[i] = BULK_INTEGERS[i].getBytes();
+        }
+    }
 
     public String encodeAsSimpleString(String toEncode) {
         return "+" + toEncode + "\r\n";
     }
 
+    /**
+     * The length counts the UTF-8 bytes the reply is written with, not characters.
+     */
     public String encodeAsBulkString(String toEncode) {
-        final var firstRow = "$" + toEncode.length() + "\r\n";
+        final var firstRow = "$" + utf8Length(toEncode) + "\r\n";
         return firstRow + toEncode + "\r\n";
     }
 
+    /**
+     * Small integers come pre-encoded, replying with a counter allocates nothing.
+     */
+    public String encodeAsBulkString(long integer) {
+        if (integer >= 0 && integer < SHARED_INTEGERS) {
+            return BULK_INTEGERS[(int) integer];
+        }
+        return encodeAsBulkString(String.valueOf(integer));
+    }
+
+    /**
+     * Bulk string encoded straight into the bytes written to the socket, a single array instead of the reply String
+     * and its {@link String#getBytes()} copy. Values with characters beyond ASCII take the way through the String
+     * and are written as UTF-8.
+     */
+    public byte[] encodeAsBulkStringBytes(String toEncode) {
+        final var length = toEncode.length();
+        var digits = 1;
+        for (var rest = length; rest >= 10; rest /= 10) {
+            digits++;
+        }
+        final var bytes = new byte[1 + digits + 2 + length + 2];
+        bytes[0] = '$';
+        for (int i = digits, remaining = length; i > 0; i--, remaining /= 10) {
+            bytes[i] = (byte) ('0' + remaining % 10);
+        }
+        bytes[digits + 1] = '\r';
+        bytes[digits + 2] = '\n';
+        final var offset = digits + 3;
+        for (var i = 0; i < length; i++) {
+            final var character = toEncode.charAt(i);
+            if (character >= 0x80) {
+                return encodeAsBulkString(toEncode).getBytes(UTF_8);
+            }
+            bytes[offset + i] = (byte) character;
+        }
+        bytes[offset + length] = '\r';
+        bytes[offset + length + 1] = '\n';
+        return bytes;
+    }
+
+    /**
+     * Bulk string of raw bytes, for values that are not text like bitmaps.
+     */
+    public byte[] encodeAsBulkStringBytes(byte[] toEncode) {
+        final var header = ("$" + toEncode.length + "\r\n").getBytes(US_ASCII);
+        final var bytes = new byte[header.length + toEncode.length + 2];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(toEncode, 0, bytes, header.length, toEncode.length);
+        bytes[bytes.length - 2] = '\r';
+        bytes[bytes.length - 1] = '\n';
+        return bytes;
+    }
+
+    /**
+     * Small integers come pre-encoded and shared, the returned array must not be modified.
+     */
+    public byte[] encodeAsBulkStringBytes(long integer) {
+        if (integer >= 0 && integer < SHARED_INTEGERS) {
+            return BULK_INTEGER_BYTES[(int) integer];
+        }
+        return encodeAsBulkStringBytes(String.valueOf(integer));
+    }
+
+    /**
+     * Shared, must not be modified.
+     */
+    public byte[] encodeAsNullBulkStringBytes() {
+        return NULL_BULK_STRING;
+    }
+
+    /**
+     * +OK, shared and must not be modified.
+     */
+    public byte[] encodeAsOkBytes() {
+        return OK;
+    }
+
     public String encodeAsBulkString(Optional<String> toEncode) {
         return toEncode
                 .map(this::encodeAsBulkString)
@@ -47,11 +144,74 @@ public final class Encoder {
         return firstRow + String.join("", toWrap);
     }
 
+    /**
+     * Like {@link #wrapContentAsArray} for elements encoded as bytes, which may hold the raw bytes of a bitmap.
+     */
+    public byte[] wrapContentAsArrayBytes(List<byte[]> toWrap) {
+        final var firstRow = ("*" + toWrap.size() + "\r\n").getBytes(US_ASCII);
+        var length = firstRow.length;
+        for (var element : toWrap) {
+            length += element.length;
+        }
+        final var bytes = new byte[length];
+        System.arraycopy(firstRow, 0, bytes, 0, firstRow.length);
+        var offset = firstRow.length;
+        for (var element : toWrap) {
+            System.arraycopy(element, 0, bytes, offset, element.length);
+            offset += element.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * RESP3 map, keys and values are already encoded and alternate.
+     */
+    public String wrapContentAsMap(List<String> toWrap) {
+        final var firstRow = "%" + toWrap.size() / 2 + "\r\n";
+        return firstRow + String.join("", toWrap);
+    }
+
+    /**
+     * RESP3 out of band message, only sent to connections that switched protocol with HELLO 3.
+     */
+    public String wrapContentAsPush(List<String> toWrap) {
+        final var firstRow = ">" + toWrap.size() + "\r\n";
+        return firstRow + String.join("", toWrap);
+    }
+
+    /**
+     * RESP3 null, RESP2 connections get {@link #encodeAsBulkString(Optional)} of an empty value instead.
+     */
+    public String encodeAsNull() {
+        return "_\r\n";
+    }
+
+    public String encodeAsNullArray() {
+        return "*-1\r\n";
+    }
+
     public String encodeAsInteger(long integer) {
+        if (integer >= 0 && integer < SHARED_INTEGERS) {
+            return INTEGERS[(int) integer];
+        }
         return ":" + integer + "\r\n";
     }
 
     public String encodeAsError(String toEncode) {
         return "-" + toEncode + "\r\n";
     }
+
+    private static int utf8Length(String value) {
+        var length = value.length();
+        for (var i = 0; i < value.length(); i++) {
+            final var character = value.charAt(i);
+            if (character >= 0x800) {
+                // a surrogate pair takes 4 bytes for its 2 characters
+                length += Character.isSurrogate(character) ? 1 : 2;
+            } else if (character >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
 }
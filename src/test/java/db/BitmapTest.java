@@ -0,0 +1,155 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitmapTest {
+
+    @Test
+    void bitZeroIsTheHighBitOfTheFirstByte() {
+        final var bitmap = new Bitmap();
+
+        assertFalse(bitmap.set(0, true));
+        assertTrue(bitmap.set(0, true));
+        bitmap.set(15, true);
+
+        assertEquals(2, bitmap.length());
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, bitmap.bytes());
+        assertTrue(bitmap.get(0));
+        assertFalse(bitmap.get(1));
+        assertFalse(bitmap.get(1_000));
+    }
+
+    @Test
+    void countsAndFindsBitsAcrossWords() {
+        final var bitmap = new Bitmap();
+        bitmap.set(3, true);
+        bitmap.set(64, true);
+        bitmap.set(200, true);
+
+        assertEquals(3, bitmap.count(0, 207));
+        assertEquals(2, bitmap.count(4, 207));
+        assertEquals(1, bitmap.count(64, 64));
+        assertEquals(64, bitmap.position(true, 4, 207));
+        assertEquals(0, bitmap.position(false, 0, 207));
+        assertEquals(-1, bitmap.position(true, 65, 199));
+    }
+
+    @Test
+    void combinesPaddingShorterSourcesWithZeroBytes() {
+        final var shorter = Bitmap.of(new byte[]{(byte) 0xF0});
+        final var longer = Bitmap.of(new byte[]{0x0F, (byte) 0xFF});
+
+        assertArrayEquals(new byte[]{0x00, 0x00}, Bitmap.combine("and", List.of(shorter, longer)).bytes());
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xFF}, Bitmap.combine("or", List.of(shorter, longer)).bytes());
+        assertArrayEquals(new byte[]{(byte) 0x0F}, Bitmap.combine("not", List.of(shorter)).bytes());
+    }
+
+    @Test
+    void getAfterSetbitOfTheHighBitReturnsTheRawByte() {
+        final var database = new Database();
+
+        database.setBit("bitmap", 0, true);
+
+        final var value = database.get("bitmap", string -> fail(), integer -> fail(), Function.identity(), null);
+        assertArrayEquals(new byte[]{(byte) 0x80}, value);
+    }
+
+    @Test
+    void bitcountCountsTheUtf8BytesOfAString() {
+        final var database = new Database();
+
+        database.set("string", "é");
+
+        // C3 A9
+        assertEquals(8, database.bitCount("string", Optional.empty()));
+        assertTrue(database.getBit("string", 0));
+        assertEquals("é", database.get("string").orElseThrow());
+    }
+
+    @Test
+    void setbitKeepsTheUtf8BytesOfAString() {
+        final var database = new Database();
+        database.set("string", "é");
+
+        database.setBit("string", 23, true);
+
+        final var value = database.get("string", string -> fail(), integer -> fail(), Function.identity(), null);
+        assertArrayEquals(new byte[]{(byte) 0xC3, (byte) 0xA9, 0x01}, value);
+        assertArrayEquals("é\u0001".getBytes(UTF_8), value);
+        assertNull(database.get("missing", string -> fail(), integer -> fail(), Function.identity(), null));
+    }
+
+    @Test
+    void mgetReturnsTheRawBytesOfABitmap() {
+        final var database = new Database();
+        database.setBit("bitmap", 0, true);
+        database.set("string", "é");
+
+        final var values = database.getAll(List.of("bitmap", "string", "missing"),
+                string -> string.getBytes(UTF_8), integer -> fail(), Function.identity(), null);
+
+        assertArrayEquals(new byte[]{(byte) 0x80}, values.get("bitmap"));
+        assertArrayEquals("é".getBytes(UTF_8), values.get("string"));
+        assertNull(values.get("missing"));
+    }
+
+    @Test
+    void getInsideAnAtomicSectionReturnsTheRawBytesOfABitmap() {
+        final var keyspace = Keyspace.keyspace(2);
+        keyspace.execute("bitmap", db -> db.setBit("bitmap", 0, true));
+
+        final var value = keyspace.executeAtomically(List.of("bitmap"), databaseOfKey -> databaseOfKey.apply("bitmap")
+                .get("bitmap", string -> fail(), integer -> fail(), Function.identity(), null));
+
+        assertArrayEquals(new byte[]{(byte) 0x80}, value);
+    }
+
+    @Test
+    void dumpAndRestoreCarryTheRawBytesOfABitmap() {
+        final var source = new Database();
+        source.setBit("bitmap", 0, true);
+        source.setBit("bitmap", 15, true);
+        source.expire("bitmap", Duration.ofMinutes(1));
+        final var target = new Database();
+        target.set("bitmap", "replaced");
+
+        final var dump = source.dump("bitmap");
+        assertEquals(1, dump.size());
+        final var restore = dump.get(0);
+        assertEquals("RESTORE", restore.get(0));
+        target.restore(restore.get(1), Long.parseLong(restore.get(2)), restore.get(3), restore.contains("REPLACE"));
+
+        final var value = target.get("bitmap", string -> fail(), integer -> fail(), Function.identity(), null);
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, value);
+        assertTrue(target.ttl("bitmap") > 0);
+    }
+
+    @Test
+    void restoreRejectsAnExistingKeyWithoutReplace() {
+        final var database = new Database();
+        database.set("key", "value");
+        final var serialized = Bitmap.of(new byte[]{1}).serialize();
+
+        final var busy = assertThrows(IllegalArgumentException.class,
+                () -> database.restore("key", 0, serialized, false));
+        assertEquals("BUSYKEY Target key name already exists.", busy.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> database.restore("other", 0, "not a dump", true));
+    }
+
+    private static byte[] fail() {
+        throw new AssertionError("expected the bytes of a bitmap");
+    }
+}
@@ -0,0 +1,79 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseTest {
+    // every access counts, so a lookup that touches the key shows in its counter
+    private final Database database = new Database(
+            LazyFree.lazyFree(), LazyFreePolicy.SYNC, EncodingPolicy.DEFAULT, new LfuPolicy(0, 0));
+
+    @Test
+    void existsLeavesTheLfuCounterAlone() {
+        database.set("key", "value");
+
+        for (var i = 0; i < 10; i++) {
+            assertTrue(database.exists("key"));
+        }
+
+        assertEquals(Optional.of(LfuPolicy.INITIAL_COUNTER), database.frequency("key"));
+        database.get("key");
+        assertEquals(Optional.of(LfuPolicy.INITIAL_COUNTER + 1), database.frequency("key"));
+    }
+
+    @Test
+    void existsIgnoresExpiredKeys() throws InterruptedException {
+        database.set("string", "value");
+        database.set("expired", "value", Duration.ofMillis(1));
+        Thread.sleep(5);
+
+        assertTrue(database.exists("string"));
+        assertFalse(database.exists("expired"));
+        assertFalse(database.exists("missing"));
+    }
+
+    @Test
+    void versionOfAMissingKeyChangesWhenTheKeyIsCreatedAndDeleted() {
+        final var watched = database.watch("key");
+
+        database.set("key", "value");
+        database.delete("key");
+
+        assertFalse(database.exists("key"));
+        assertNotEquals(watched, database.version("key"));
+    }
+
+    @Test
+    void flushChangesTheVersionOfWatchedKeysItRemoves() {
+        database.set("key", "value");
+        final var watchedExisting = database.watch("key");
+        final var watchedMissing = database.watch("missing");
+
+        database.flush(false);
+
+        assertNotEquals(watchedExisting, database.version("key"));
+        assertEquals(watchedMissing, database.version("missing"));
+    }
+
+    @Test
+    void versionIsDroppedOnceTheLastWatcherIsGone() {
+        final var watched = database.watch("key");
+        assertEquals(watched, database.watch("key"));
+
+        database.unwatch("key");
+        database.set("key", "value");
+        assertNotEquals(watched, database.version("key"));
+
+        database.unwatch("key");
+        assertEquals(0, database.version("key"));
+        database.set("key", "other");
+        assertEquals(0, database.version("key"));
+    }
+}
@@ -0,0 +1,163 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictTest {
+
+    @Test
+    void putGetAndRemove() {
+        final var dict = new Dict<String>();
+
+        assertNull(dict.put("key", "one"));
+        assertEquals("one", dict.put("key", "two"));
+        assertEquals("two", dict.get("key"));
+        assertEquals(1, dict.size());
+        assertEquals("two", dict.remove("key"));
+        assertNull(dict.remove("key"));
+        assertFalse(dict.containsKey("key"));
+        assertEquals(0, dict.size());
+    }
+
+    @Test
+    void keepsEveryKeyWhileRehashingIncrementally() {
+        final var dict = new Dict<Integer>();
+
+        for (var i = 0; i < 10_000; i++) {
+            dict.put("key:" + i, i);
+            assertEquals(i / 2, dict.get("key:" + i / 2));
+        }
+        assertEquals(10_000, dict.size());
+        assertEquals(10_000, dict.keys().size());
+        for (var i = 0; i < 10_000; i++) {
+            assertEquals(i, dict.get("key:" + i));
+        }
+    }
+
+    @Test
+    void keepsEveryKeyWhileShrinking() {
+        final var dict = new Dict<Integer>();
+        for (var i = 0; i < 10_000; i++) {
+            dict.put("key:" + i, i);
+        }
+
+        for (var i = 0; i < 9_900; i++) {
+            assertEquals(i, dict.remove("key:" + i));
+        }
+
+        assertEquals(100, dict.size());
+        for (var i = 9_900; i < 10_000; i++) {
+            assertEquals(i, dict.get("key:" + i));
+        }
+        final var visited = new HashSet<String>();
+        dict.forEach((key, value) -> visited.add(key));
+        assertEquals(100, visited.size());
+    }
+
+    @Test
+    void cronCompletesRehash() {
+        final var dict = new Dict<Integer>();
+        for (var i = 0; i < 1_025; i++) {
+            dict.put("key:" + i, i);
+        }
+
+        assertFalse(dict.rehash(Integer.MAX_VALUE));
+        assertFalse(dict.rehash(1));
+        assertEquals(1_025, dict.keys().size());
+    }
+
+    @Test
+    void scanVisitsEveryKeyPresentForTheWholeScanWhileGrowing() {
+        final var dict = new Dict<Integer>();
+        for (var i = 0; i < 1_000; i++) {
+            dict.put("old:" + i, i);
+        }
+        final var visited = new HashSet<String>();
+
+        var cursor = 0L;
+        var added = 0;
+        do {
+            cursor = dict.scan(cursor, (key, value) -> visited.add(key));
+            for (var i = 0; i < 5 && added < 10_000; i++) {
+                dict.put("new:" + added++, i);
+            }
+        } while (cursor != 0);
+
+        assertTrue(added > 1_000, "the table grew during the scan");
+        for (var i = 0; i < 1_000; i++) {
+            assertTrue(visited.contains("old:" + i), "old:" + i);
+        }
+    }
+
+    @Test
+    void scanVisitsEveryKeyPresentForTheWholeScanWhileShrinking() {
+        final var dict = new Dict<Integer>();
+        for (var i = 0; i < 20_000; i++) {
+            dict.put("key:" + i, i);
+        }
+        dict.rehash(Integer.MAX_VALUE);
+        final Set<String> kept = new HashSet<>();
+        for (var i = 0; i < 20_000; i += 100) {
+            kept.add("key:" + i);
+        }
+        final var visited = new HashSet<String>();
+
+        var cursor = 0L;
+        var removed = 0;
+        do {
+            cursor = dict.scan(cursor, (key, value) -> visited.add(key));
+            for (var i = 0; i < 100 && removed < 20_000; removed++) {
+                if (!kept.contains("key:" + removed)) {
+                    dict.remove("key:" + removed);
+                    i++;
+                }
+            }
+        } while (cursor != 0);
+
+        assertEquals(kept.size(), dict.size());
+        assertTrue(visited.containsAll(kept));
+    }
+
+    @Test
+    void scanWithReplacerVisitsEveryValue() {
+        final var dict = new Dict<Integer>();
+        for (var i = 0; i < 3_000; i++) {
+            dict.put("key:" + i, i);
+        }
+
+        var cursor = 0L;
+        do {
+            cursor = dict.scan(cursor, 16, (key, value, frequency) -> value + 1);
+        } while (cursor != 0);
+
+        for (var i = 0; i < 3_000; i++) {
+            assertEquals(i + 1, dict.get("key:" + i));
+        }
+    }
+
+    @Test
+    void spreadsKeysWithTheSameStringHashCode() {
+        // every concatenation of "Aa" and "BB" has the same String.hashCode
+        final var keys = new HashSet<String>();
+        for (var bits = 0; bits < 1 << 10; bits++) {
+            final var key = new StringBuilder();
+            for (var i = 0; i < 10; i++) {
+                key.append((bits >> i & 1) == 0 ? "Aa" : "BB");
+            }
+            keys.add(key.toString());
+        }
+        assertEquals(1, keys.stream().map(String::hashCode).distinct().count());
+
+        final var hashes = new HashSet<Integer>();
+        keys.forEach(key -> hashes.add(Dict.hash(key)));
+
+        assertTrue(hashes.size() > keys.size() - 4);
+    }
+}
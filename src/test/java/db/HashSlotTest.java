@@ -0,0 +1,42 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HashSlotTest {
+
+    @Test
+    void slotIsTheCrc16OfTheKey() {
+        // the example of the cluster specification, CRC16 of "123456789" is 0x31c3
+        assertEquals(0x31c3, HashSlot.slot("123456789"));
+    }
+
+    @Test
+    void onlyTheHashTagIsHashed() {
+        assertEquals(HashSlot.slot("user"), HashSlot.slot("{user}:profile"));
+        assertEquals(HashSlot.slot("user"), HashSlot.slot("name:{user}:{other}"));
+        assertEquals(HashSlot.slot("{}user"), HashSlot.slot("{}user"));
+    }
+
+    @Test
+    void nonAsciiKeysAreHashedAsUtf8() {
+        assertEquals(slotOfUtf8("é"), HashSlot.slot("é"));
+        assertEquals(slotOfUtf8("€uro"), HashSlot.slot("€uro"));
+        assertEquals(slotOfUtf8("😀"), HashSlot.slot("😀"));
+        assertEquals(slotOfUtf8("\ud83d"), HashSlot.slot("{\ud83d}"));
+    }
+
+    private static int slotOfUtf8(String key) {
+        var crc = 0;
+        for (var b : key.getBytes(UTF_8)) {
+            crc ^= (b & 0xff) << 8;
+            for (var bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            crc &= 0xffff;
+        }
+        return crc & (HashSlot.SLOTS - 1);
+    }
+}
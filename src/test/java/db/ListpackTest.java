@@ -0,0 +1,74 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ListpackTest {
+
+    @Test
+    void insertsAndWalksElements() {
+        final var listpack = new Listpack();
+
+        listpack.insert(listpack.end(), bytes("field"), bytes("value"));
+        listpack.insert(0, bytes("first"));
+
+        assertEquals(3, listpack.elements());
+        assertEquals(List.of("first", "field", "value"), elements(listpack));
+    }
+
+    @Test
+    void keepsLongAndMultibyteElements() {
+        final var listpack = new Listpack();
+        final var long1 = "x".repeat(200);
+        final var long2 = "y".repeat(20_000);
+
+        listpack.insert(listpack.end(), bytes(long1), bytes("é😀"), bytes(long2), bytes(""));
+
+        assertEquals(List.of(long1, "é😀", long2, ""), elements(listpack));
+    }
+
+    @Test
+    void findsPairsByTheirFirstElement() {
+        final var listpack = new Listpack();
+        listpack.insert(listpack.end(), bytes("a"), bytes("b"), bytes("b"), bytes("c"));
+
+        final var position = listpack.findPair(bytes("b"));
+
+        assertEquals("b", listpack.get(position));
+        assertEquals("c", listpack.get(listpack.next(position)));
+        assertEquals(-1, listpack.findPair(bytes("c")));
+    }
+
+    @Test
+    void replacesAndRemovesElements() {
+        final var listpack = new Listpack();
+        listpack.insert(listpack.end(), bytes("a"), bytes("1"), bytes("b"), bytes("2"), bytes("c"), bytes("3"));
+
+        listpack.replace(listpack.next(listpack.findPair(bytes("b"))), bytes("two hundred"));
+        listpack.remove(0, 2);
+
+        assertEquals(4, listpack.elements());
+        assertEquals(List.of("b", "two hundred", "c", "3"), elements(listpack));
+
+        listpack.clear();
+        assertEquals(0, listpack.elements());
+        assertEquals(0, listpack.end());
+    }
+
+    private static List<String> elements(Listpack listpack) {
+        final var elements = new ArrayList<String>();
+        for (var position = 0; position < listpack.end(); position = listpack.next(position)) {
+            elements.add(listpack.get(position));
+        }
+        return elements;
+    }
+
+    private static byte[] bytes(String element) {
+        return element.getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LzfTest {
+
+    @Test
+    void roundTripsIncompressibleInput() {
+        final var input = new byte[10_000];
+        new Random(42).nextBytes(input);
+
+        final var compressed = compress(input);
+
+        // a control byte per run of 32 literals
+        assertTrue(compressed.length <= input.length + input.length / 32 + 1);
+        assertArrayEquals(input, decompress(compressed, input.length));
+    }
+
+    @Test
+    void roundTripsLongBackReferences() {
+        final var block = new byte[4_000];
+        new Random(7).nextBytes(block);
+        final var input = new byte[3 * block.length + 1_000];
+        for (var i = 0; i < 3; i++) {
+            System.arraycopy(block, 0, input, i * block.length, block.length);
+        }
+        Arrays.fill(input, 3 * block.length, input.length, (byte) 'a');
+
+        final var compressed = compress(input);
+
+        assertTrue(compressed.length < block.length * 11 / 10, "repeated blocks become back references");
+        assertArrayEquals(input, decompress(compressed, input.length));
+    }
+
+    @Test
+    void roundTripsReferencesAtTheMaximumOffset() {
+        final var block = new byte[8_191];
+        new Random(3).nextBytes(block);
+        final var input = new byte[2 * block.length];
+        System.arraycopy(block, 0, input, 0, block.length);
+        System.arraycopy(block, 0, input, block.length, block.length);
+
+        final var compressed = compress(input);
+
+        assertTrue(compressed.length < input.length * 3 / 4);
+        assertArrayEquals(input, decompress(compressed, input.length));
+    }
+
+    @Test
+    void roundTripsShortInputs() {
+        for (var length = 1; length < 70; length++) {
+            final var input = "ab".repeat(length).substring(0, length).getBytes(UTF_8);
+            assertArrayEquals(input, decompress(compress(input), length), "length " + length);
+        }
+    }
+
+    @Test
+    void returnsZeroWhenTheOutputIsTooSmall() {
+        final var input = new byte[100];
+        new Random(1).nextBytes(input);
+
+        assertEquals(0, Lzf.compress(input, new byte[90]));
+    }
+
+    private static byte[] compress(byte[] input) {
+        final var output = new byte[input.length + input.length / 32 + 1];
+        final var length = Lzf.compress(input, output);
+        assertTrue(length > 0);
+        return Arrays.copyOf(output, length);
+    }
+
+    private static byte[] decompress(byte[] compressed, int length) {
+        final var output = new byte[length];
+        Lzf.decompress(compressed, output);
+        return output;
+    }
+}
@@ -0,0 +1,94 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlabTest {
+
+    @Test
+    void readsBackValuesOfEverySize() {
+        final var slab = new Slab();
+        final var handles = new HashMap<Integer, byte[]>();
+
+        for (var length : new int[]{0, 1, 24, 25, 100, 1_000, 100_000, Slab.PAGE_SIZE, 3 * Slab.PAGE_SIZE}) {
+            final var value = value(length, length);
+            handles.put(slab.allocate(value), value);
+        }
+
+        handles.forEach((handle, value) -> assertArrayEquals(value, slab.read(handle)));
+        assertEquals(9, slab.stats().values());
+    }
+
+    @Test
+    void reusesSlotsAndHandlesOfFreedValues() {
+        final var slab = new Slab();
+        final var first = slab.allocate(value(1, 100));
+        final var allocated = slab.stats().allocatedBytes();
+
+        slab.free(first);
+        final var second = slab.allocate(value(2, 100));
+
+        assertEquals(first, second);
+        assertEquals(allocated, slab.stats().allocatedBytes());
+        assertArrayEquals(value(2, 100), slab.read(second));
+    }
+
+    @Test
+    void compactionMovesLiveValuesAndReleasesEmptiedPages() {
+        final var slab = new Slab();
+        final var handles = new int[50_000];
+        for (var i = 0; i < handles.length; i++) {
+            handles[i] = slab.allocate(value(i, 100));
+        }
+        final var allocated = slab.stats().allocatedBytes();
+        for (var i = 0; i < handles.length; i++) {
+            if (i % 10 != 0) {
+                slab.free(handles[i]);
+            }
+        }
+
+        final var released = slab.compact();
+
+        assertTrue(released >= 4L * Slab.PAGE_SIZE, "released " + released);
+        assertEquals(allocated - released, slab.stats().allocatedBytes());
+        assertEquals(5_000, slab.stats().values());
+        for (var i = 0; i < handles.length; i += 10) {
+            assertArrayEquals(value(i, 100), slab.read(handles[i]), "value " + i);
+        }
+        assertEquals(0, slab.compact());
+
+        final var added = slab.allocate(value(-1, 100));
+        assertArrayEquals(value(-1, 100), slab.read(added));
+        for (var i = 0; i < handles.length; i += 10) {
+            assertArrayEquals(value(i, 100), slab.read(handles[i]), "value " + i);
+        }
+    }
+
+    @Test
+    void freeingALargeValueReleasesItsPage() {
+        final var slab = new Slab();
+        final var handle = slab.allocate(value(0, 2 * Slab.PAGE_SIZE));
+
+        slab.free(handle);
+
+        assertEquals(new SlabStats(0, 0, 0), slab.stats());
+    }
+
+    /**
+     * @return bytes of the given length starting with the number, so every value differs
+     */
+    private static byte[] value(int number, int length) {
+        final var prefix = (number + ":").getBytes(UTF_8);
+        final var bytes = new byte[length];
+        for (var i = 0; i < length; i++) {
+            bytes[i] = i < prefix.length ? prefix[i] : (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+}
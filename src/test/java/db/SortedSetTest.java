@@ -0,0 +1,114 @@
+package db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SortedSetTest {
+    private static final Comparator<ScoredMember> ORDER = Comparator.comparingDouble(ScoredMember::score)
+            .thenComparing(ScoredMember::member);
+
+    @Test
+    void ordersByScoreThenMember() {
+        final var sortedSet = new SortedSet(EncodingPolicy.DEFAULT);
+
+        sortedSet.put("b", 1);
+        sortedSet.put("a", 1);
+        sortedSet.put("c", 0.5);
+
+        assertEquals("listpack", sortedSet.encoding());
+        assertEquals(List.of(new ScoredMember("c", 0.5), new ScoredMember("a", 1), new ScoredMember("b", 1)),
+                sortedSet.range(0, 2, false));
+        assertEquals(Optional.of(2L), sortedSet.rank("b"));
+    }
+
+    @Test
+    void convertsToSkiplistPastTheListpackLimits() {
+        final var sortedSet = new SortedSet(EncodingPolicy.DEFAULT);
+        for (var i = 0; i < 128; i++) {
+            sortedSet.put("member:" + i, i);
+        }
+        assertEquals("listpack", sortedSet.encoding());
+
+        sortedSet.put("member:128", 128);
+
+        assertEquals("skiplist", sortedSet.encoding());
+        assertEquals(Optional.of(128L), sortedSet.rank("member:128"));
+        assertEquals(Optional.of(64.0), sortedSet.score("member:64"));
+    }
+
+    @Test
+    void listpackMatchesASortedModel() {
+        checkAgainstModel(new EncodingPolicy(0, 128, 64, 1_000, 64, 3000, 0), 300);
+    }
+
+    @Test
+    void skiplistRanksAndSpansMatchASortedModel() {
+        checkAgainstModel(new EncodingPolicy(0, 128, 64, 0, 64, 3000, 0), 2_000);
+    }
+
+    /**
+     * Random puts, score updates and removals, comparing ranks, rank ranges and score ranges with a sorted list after
+     * every step, so a span that is off by one shows up as a wrong rank or range start.
+     */
+    private static void checkAgainstModel(EncodingPolicy encodingPolicy, int members) {
+        final var random = new Random(11);
+        final var sortedSet = new SortedSet(encodingPolicy);
+        final var model = new HashMap<String, Double>();
+        for (var step = 0; step < 5_000; step++) {
+            final var member = "m" + random.nextInt(members);
+            // few distinct scores so ties fall back to the member order
+            final double score = random.nextInt(50);
+            if (random.nextInt(4) == 0) {
+                sortedSet.remove(member);
+                model.remove(member);
+            } else {
+                sortedSet.put(member, score);
+                model.put(member, score);
+            }
+            if (step % 50 == 0) {
+                assertMatches(sortedSet, model, random);
+            }
+        }
+        assertMatches(sortedSet, model, random);
+
+        final var range = new ScoreRange(10, false, 20, true);
+        final var removed = sortedSet.removeRangeByScore(range);
+        final var before = model.size();
+        model.values().removeIf(score -> score >= 10 && score < 20);
+        assertEquals(before - model.size(), removed);
+        assertMatches(sortedSet, model, random);
+    }
+
+    private static void assertMatches(SortedSet sortedSet, Map<String, Double> model, Random random) {
+        final var sorted = new ArrayList<ScoredMember>();
+        model.forEach((member, score) -> sorted.add(new ScoredMember(member, score)));
+        sorted.sort(ORDER);
+        assertEquals(sorted.size(), sortedSet.size());
+        if (sorted.isEmpty()) {
+            return;
+        }
+        for (var i = 0; i < 10; i++) {
+            final var rank = random.nextInt(sorted.size());
+            assertEquals(Optional.of((long) rank), sortedSet.rank(sorted.get(rank).member()));
+            final var stop = rank + random.nextInt(sorted.size() - rank);
+            assertEquals(sorted.subList(rank, stop + 1), sortedSet.range(rank, stop, false));
+            final var reversed = new ArrayList<>(sorted.reversed());
+            assertEquals(reversed.subList(rank, stop + 1), sortedSet.range(rank, stop, true));
+        }
+        final double min = random.nextInt(50);
+        final var range = new ScoreRange(min, true, min + 5, false);
+        final var inRange = sorted.stream().filter(it -> it.score() > min && it.score() <= min + 5).toList();
+        assertEquals(inRange, sortedSet.rangeByScore(range, 0, -1, false));
+        assertEquals(inRange.stream().skip(2).limit(3).toList(), sortedSet.rangeByScore(range, 2, 3, false));
+        assertEquals(inRange.reversed(), sortedSet.rangeByScore(range, 0, -1, true));
+    }
+}
@@ -0,0 +1,146 @@
+package db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillFileTest {
+    private static final int VALUE_LENGTH = 100_000;
+    @TempDir
+    Path directory;
+    private SpillFile spillFile;
+
+    @AfterEach
+    void deleteSegments() {
+        if (spillFile != null) {
+            spillFile.clear();
+        }
+    }
+
+    @Test
+    void readsBackAppendedValues() {
+        spillFile = new SpillFile(directory);
+
+        final var empty = spillFile.append(new byte[0]);
+        final var short1 = spillFile.append("value".getBytes(UTF_8));
+        final var large = spillFile.append(value(3, SpillFile.SEGMENT_SIZE - 8));
+
+        assertArrayEquals(new byte[0], spillFile.read(empty));
+        assertArrayEquals("value".getBytes(UTF_8), spillFile.read(short1));
+        assertArrayEquals(value(3, SpillFile.SEGMENT_SIZE - 8), spillFile.read(large));
+        assertEquals(new SpillStats(3, 5 + SpillFile.SEGMENT_SIZE - 8, 2L * SpillFile.SEGMENT_SIZE), spillFile.stats());
+    }
+
+    @Test
+    void reusesHandlesOfFreedValues() {
+        spillFile = new SpillFile(directory);
+        final var first = spillFile.append(value(1, 10));
+        final var kept = spillFile.append(value(2, 10));
+
+        spillFile.free(first);
+        final var second = spillFile.append(value(3, 10));
+
+        assertEquals(first, second);
+        assertArrayEquals(value(3, 10), spillFile.read(second));
+        assertArrayEquals(value(2, 10), spillFile.read(kept));
+        assertEquals(2, spillFile.stats().values());
+    }
+
+    @Test
+    void deletesASegmentWhoseValuesWereAllFreed() {
+        spillFile = new SpillFile(directory);
+        final var values = fill(400);
+        final var files = spillFile.stats().fileBytes();
+
+        // the first segment holds the first 167 values
+        for (var i = 0; i < 167; i++) {
+            spillFile.free(values.remove(i));
+        }
+
+        assertEquals(files - SpillFile.SEGMENT_SIZE, spillFile.stats().fileBytes());
+        assertReadable(values);
+    }
+
+    @Test
+    void compactionMovesLiveValuesOutOfTheEmptiestSegment() {
+        spillFile = new SpillFile(directory);
+        final var values = fill(400);
+        for (var i = 0; i < 167; i++) {
+            if (i % 4 != 0) {
+                spillFile.free(values.remove(i));
+            }
+        }
+        final var files = spillFile.stats().fileBytes();
+
+        // a megabyte per step like the cron, the segment goes once its last value has moved
+        var released = 0L;
+        for (var step = 0; step < 100 && released == 0; step++) {
+            released = spillFile.compact(1 << 20);
+            assertReadable(values);
+        }
+
+        assertEquals(SpillFile.SEGMENT_SIZE, released);
+        // the moved values fit into the last segment
+        assertEquals(files - SpillFile.SEGMENT_SIZE, spillFile.stats().fileBytes());
+        assertEquals(values.size(), spillFile.stats().values());
+        assertEquals(0, spillFile.compact(1 << 20));
+    }
+
+    @Test
+    void valuesFreedDuringCompactionStayFreed() {
+        spillFile = new SpillFile(directory);
+        final var values = fill(400);
+        for (var i = 0; i < 167; i++) {
+            if (i % 4 != 0) {
+                spillFile.free(values.remove(i));
+            }
+        }
+
+        spillFile.compact(1 << 20);
+        for (var i = 0; i < 167; i += 8) {
+            spillFile.free(values.remove(i));
+        }
+        for (var step = 0; step < 100; step++) {
+            spillFile.compact(1 << 20);
+        }
+        final var added = spillFile.append(value(-1, VALUE_LENGTH));
+
+        assertArrayEquals(value(-1, VALUE_LENGTH), spillFile.read(added));
+        assertReadable(values);
+        assertEquals(values.size() + 1, spillFile.stats().values());
+        assertEquals((values.size() + 1L) * VALUE_LENGTH, spillFile.stats().usedBytes());
+    }
+
+    private Map<Integer, Integer> fill(int count) {
+        final var handles = new HashMap<Integer, Integer>();
+        for (var i = 0; i < count; i++) {
+            handles.put(i, spillFile.append(value(i, VALUE_LENGTH)));
+        }
+        return handles;
+    }
+
+    private void assertReadable(Map<Integer, Integer> values) {
+        values.forEach((number, handle) -> assertArrayEquals(value(number, VALUE_LENGTH), spillFile.read(handle)));
+    }
+
+    /**
+     * @return bytes of the given length starting with the number, so every value differs
+     */
+    private static byte[] value(int number, int length) {
+        final var prefix = (number + ":").getBytes(UTF_8);
+        final var bytes = new byte[length];
+        for (var i = 0; i < length; i++) {
+            bytes[i] = i < prefix.length ? prefix[i] : (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package resp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DecoderTest {
+    private final Decoder decoder = new Decoder();
+    private final Encoder encoder = new Encoder();
+
+    @Test
+    void xreadBlockIgnoresCase() {
+        for (var keyword : List.of("block", "BLOCK", "Block")) {
+            final var command = parse("XREAD", keyword, "10", "STREAMS", "stream", "0-0");
+
+            assertEquals(new Command.Xread("XREAD", Optional.of("10"), Map.of("stream", "0-0")), command);
+        }
+    }
+
+    @Test
+    void xreadWithoutBlock() {
+        final var command = parse("xread", "streams", "a", "b", "1-0", "2-0");
+
+        assertEquals(new Command.Xread("xread", Optional.empty(), Map.of("a", "1-0", "b", "2-0")), command);
+    }
+
+    @Test
+    void bareXgroupParsesForTheArityError() {
+        assertEquals(new Command.Xgroup("XGROUP", "", List.of()), parse("XGROUP"));
+        assertEquals(new Command.Xgroup("XGROUP", "CREATE", List.of()), parse("XGROUP", "CREATE"));
+    }
+
+    @Test
+    void existsTakesEveryKey() {
+        assertEquals(new Command.Exists("EXISTS", List.of("a", "b", "a")), parse("EXISTS", "a", "b", "a"));
+        assertEquals(new Command.Exists("exists", List.of()), parse("exists"));
+    }
+
+    private Command parse(String... elements) {
+        final var reader = new BufferedReader(new StringReader(encoder.encodeAsArray(List.of(elements))));
+        return decoder.parseCommand(reader).orElseThrow();
+    }
+}
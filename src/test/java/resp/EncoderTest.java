@@ -0,0 +1,27 @@
+package resp;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EncoderTest {
+    private final Encoder encoder = new Encoder();
+
+    @Test
+    void bulkStringLengthCountsUtf8Bytes() {
+        assertEquals("$2\r\né\r\n", encoder.encodeAsBulkString("é"));
+        assertEquals("$4\r\n😀\r\n", encoder.encodeAsBulkString("😀"));
+        assertArrayEquals("$2\r\né\r\n".getBytes(UTF_8), encoder.encodeAsBulkStringBytes("é"));
+        assertArrayEquals("$5\r\nhello\r\n".getBytes(UTF_8), encoder.encodeAsBulkStringBytes("hello"));
+    }
+
+    @Test
+    void rawBytesAreWrittenAsTheyAre() {
+        final var bytes = encoder.encodeAsBulkStringBytes(new byte[]{(byte) 0x80, 0x00});
+
+        assertArrayEquals("$2\r\n\u0080\u0000\r\n".getBytes(ISO_8859_1), bytes);
+    }
+}